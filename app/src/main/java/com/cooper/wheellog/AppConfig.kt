@@ -5,6 +5,8 @@ import android.content.SharedPreferences
 import android.net.Uri
 import androidx.appcompat.app.AppCompatDelegate.MODE_NIGHT_UNSPECIFIED
 import androidx.preference.PreferenceManager
+import com.cooper.wheellog.telemetry.DecodeSettings
+import com.cooper.wheellog.utils.AlarmSettings
 import com.cooper.wheellog.utils.MiBandEnum
 import com.cooper.wheellog.utils.ThemeEnum
 import com.wheellog.shared.Constants
@@ -15,6 +17,13 @@ class AppConfig(var context: Context) {
     private val sharedPreferences: SharedPreferences = PreferenceManager.getDefaultSharedPreferences(context)
     private var specificPrefix: String = ""
     private val separator = ";"
+    private val pendingBatch = object : ThreadLocal<PendingBatch>() {
+        override fun initialValue() = PendingBatch()
+    }
+    // SharedPreferences holds listeners weakly, so keep a strong reference here
+    private val settingsListener = SharedPreferences.OnSharedPreferenceChangeListener { _, _ ->
+        invalidateSettings()
+    }
 
     init {
         // Clear all preferences if they are incompatible
@@ -24,6 +33,7 @@ class AppConfig(var context: Context) {
             setValue("versionSettings", currentVer)
             PreferenceManager.setDefaultValues(context, R.xml.preferences, false)
         }
+        sharedPreferences.registerOnSharedPreferenceChangeListener(settingsListener)
     }
 
     //region -=[ general settings ]=-    
@@ -155,6 +165,20 @@ class AppConfig(var context: Context) {
         get() = getValue(R.string.use_reconnect, false)
         set(value) = setValue(R.string.use_reconnect, value)
 
+    /** ms without notifications before the link is reconnected */
+    var reconnectStallTime: Int
+        get() = getValue(R.string.reconnect_stall_time, 750)
+        set(value) = setValue(R.string.reconnect_stall_time, value)
+
+    /** percents of lost bytes that make the link reconnect, 0 - never */
+    var reconnectLoss: Int
+        get() = getValue(R.string.reconnect_loss, 0)
+        set(value) = setValue(R.string.reconnect_loss, value)
+
+    var legacyDataBroadcast: Boolean
+        get() = getValue(R.string.legacy_data_broadcast, true)
+        set(value) = setValue(R.string.legacy_data_broadcast, value)
+
     var detectBatteryOptimization: Boolean
         get() = getValue(R.string.use_detect_battery_optimization, true)
         set(value) = setValue(R.string.use_detect_battery_optimization, value)
@@ -209,6 +233,10 @@ class AppConfig(var context: Context) {
         get() = getValue(R.string.continue_this_day_log, false)
         set(value) = setValue(R.string.continue_this_day_log, value)
 
+    var binaryTripLog: Boolean
+        get() = getValue(R.string.binary_trip_log, false)
+        set(value) = setValue(R.string.binary_trip_log, value)
+
     var continueThisDayLogMacException: String
         get() = getValue(R.string.continue_this_day_log_exception, "")
         set(value) = setValue(R.string.continue_this_day_log_exception, value)
@@ -244,11 +272,16 @@ class AppConfig(var context: Context) {
 
     var lastMac: String
         get() {
-            specificPrefix = getValue(R.string.last_mac, "")
+            val mac = getValue(R.string.last_mac, "")
+            if (mac != specificPrefix) {
+                specificPrefix = mac
+                invalidateSettings()
+            }
             return specificPrefix
         }
         set(value) {
             specificPrefix = value
+            invalidateSettings()
             setValue(R.string.last_mac, value)
         }
 
@@ -351,6 +384,10 @@ class AppConfig(var context: Context) {
         get() = getSpecific(R.string.warning_speed_period, 0)
         set(value) = setSpecific(R.string.warning_speed_period, value)
 
+    var pwmPredictionHorizon
+        get() = getSpecific(R.string.pwm_prediction_horizon, 0)
+        set(value) = setSpecific(R.string.pwm_prediction_horizon, value)
+
     var alarmCurrent
         get() = getSpecific(R.string.alarm_current, 0)
         set(value) = setSpecific(R.string.alarm_current, value)
@@ -358,6 +395,10 @@ class AppConfig(var context: Context) {
     var alarmBattery
         get() = getSpecific(R.string.alarm_battery, 0)
         set(value) = setSpecific(R.string.alarm_battery, value)
+
+    var alarmRules: String
+        get() = getSpecific(R.string.alarm_rules, "")
+        set(value) = setSpecific(R.string.alarm_rules, value)
     //endregion
     
     //region inmotion
@@ -590,6 +631,16 @@ class AppConfig(var context: Context) {
         get() = getValue("wheel_adv_data_$specificPrefix", "")
         set(value) = setValue("wheel_adv_data_$specificPrefix", value)
 
+    /** Adapter the wheel was detected with, see WheelDetectionIndex.cacheEntry */
+    var detectedAdapterForWheel: String
+        get() = getValue("wheel_adapter_$specificPrefix", "")
+        set(value) = setValue("wheel_adapter_$specificPrefix", value)
+
+    /** Handshake replies of the wheel, see HandshakeCache */
+    var handshakeForWheel: String
+        get() = getValue("wheel_handshake_$specificPrefix", "")
+        set(value) = setValue("wheel_handshake_$specificPrefix", value)
+
     var userDistance: Long
         get() = getValue("user_distance_$specificPrefix", 0L)
         set(value) = setValue("user_distance_$specificPrefix", value)
@@ -622,18 +673,90 @@ class AppConfig(var context: Context) {
         setValue(context.getString(resId), value)
     }
 
+    /**
+     * Collects the following setValue calls made on this thread and writes them with a single
+     * apply() on the matching [endBatch]. Batches may be nested.
+     * Values written inside a batch are not visible to getters until the batch ends.
+     */
+    fun beginBatch() {
+        pendingBatch.get()!!.depth++
+    }
+
+    fun endBatch() {
+        val batch = pendingBatch.get()!!
+        if (batch.depth == 0 || --batch.depth > 0 || batch.values.isEmpty()) {
+            return
+        }
+        val editor = sharedPreferences.edit()
+        for ((key, value) in batch.values) {
+            putValue(editor, key, value)
+        }
+        batch.values.clear()
+        editor.apply()
+        invalidateSettings()
+    }
+
+    /**
+     * Drops the settings snapshots compiled from the preferences.
+     */
+    private fun invalidateSettings() {
+        DecodeSettings.invalidate()
+        AlarmSettings.invalidate()
+    }
+
     fun setValue(key: String, value: Any?) {
+        val batch = pendingBatch.get()!!
+        if (batch.depth > 0) {
+            if (batch.values.containsKey(key) || !isStored(key, value)) {
+                batch.values[key] = value
+            }
+            return
+        }
+        if (isStored(key, value)) {
+            return
+        }
+        val editor = sharedPreferences.edit()
+        putValue(editor, key, value)
+        editor.apply()
+        invalidateSettings()
+    }
+
+    private fun putValue(editor: SharedPreferences.Editor, key: String, value: Any?) {
         when (value) {
-            is String? -> sharedPreferences.edit().putString(key, value).apply()
-            is String -> sharedPreferences.edit().putString(key, value).apply()
-            is Int -> sharedPreferences.edit().putInt(key, value).apply()
-            is Float -> sharedPreferences.edit().putFloat(key, value).apply()
-            is Double -> sharedPreferences.edit().putFloat(key, value.toFloat()).apply()
-            is Boolean -> sharedPreferences.edit().putBoolean(key, value).apply()
-            is Long -> sharedPreferences.edit().putLong(key, value).apply()
+            is String? -> editor.putString(key, value)
+            is String -> editor.putString(key, value)
+            is Int -> editor.putInt(key, value)
+            is Float -> editor.putFloat(key, value)
+            is Double -> editor.putFloat(key, value.toFloat())
+            is Boolean -> editor.putBoolean(key, value)
+            is Long -> editor.putLong(key, value)
+        }
+    }
+
+    private fun isStored(key: String, value: Any?): Boolean {
+        if (!sharedPreferences.contains(key)) {
+            return false
+        }
+        return try {
+            when (value) {
+                is String? -> sharedPreferences.getString(key, null) == value
+                is Int -> sharedPreferences.getInt(key, 0) == value
+                is Float -> sharedPreferences.getFloat(key, 0f) == value
+                is Double -> sharedPreferences.getFloat(key, 0f) == value.toFloat()
+                is Boolean -> sharedPreferences.getBoolean(key, false) == value
+                is Long -> sharedPreferences.getLong(key, 0L) == value
+                else -> false
+            }
+        } catch (ex: ClassCastException) {
+            false
         }
     }
 
+    private class PendingBatch {
+        var depth = 0
+        val values = LinkedHashMap<String, Any?>()
+    }
+
     private fun <T : Any?> getSpecific(resId: Int, defaultValue: T): T {
         return getValue(specificPrefix + "_" + context.getString(resId), defaultValue)
     }
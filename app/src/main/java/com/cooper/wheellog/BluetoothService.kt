@@ -3,12 +3,19 @@ package com.cooper.wheellog
 import android.app.Service
 import android.bluetooth.*
 import android.content.Intent
+import android.content.SharedPreferences
 import android.os.*
 import android.os.PowerManager.WakeLock
+import androidx.preference.PreferenceManager
+import com.cooper.wheellog.telemetry.DecodeThread
+import com.cooper.wheellog.telemetry.LinkHealth
+import com.cooper.wheellog.telemetry.PipelineClock
+import com.cooper.wheellog.telemetry.TelemetryBus
+import com.cooper.wheellog.telemetry.TelemetryListener
+import com.cooper.wheellog.telemetry.TraceRecorder
 import com.cooper.wheellog.utils.*
 import com.cooper.wheellog.utils.Constants.WHEEL_TYPE
 import com.cooper.wheellog.utils.SomeUtil.Companion.playSound
-import com.cooper.wheellog.utils.StringUtil.Companion.toHexStringRaw
 import com.welie.blessed.*
 import timber.log.Timber
 import java.text.SimpleDateFormat
@@ -22,11 +29,12 @@ class BluetoothService: Service() {
         } else {
             null
         }
-    private var reconnectTimer: Timer? = null
+    private var linkTimer: TickScheduler.Task? = null
+    private var rssiTimer: TickScheduler.Task? = null
 
     private var disconnectRequested = false
 
-    private var beepTimer: Timer? = null
+    private var beepTimer: TickScheduler.Task? = null
     private var timerTicks = 0
 
     private val mBinder: IBinder = LocalBinder()
@@ -42,13 +50,41 @@ class BluetoothService: Service() {
         }
 
     private val sdf = SimpleDateFormat("yyyy_MM_dd_HH_mm_ss", Locale.US)
-    private val sdf2 = SimpleDateFormat("HH:mm:ss.SSS", Locale.US)
+    private val rawCapture = RawCaptureWriter()
     private val wakeLogTag = "WheelLog:WakeLockTag"
+    private val decodeThread = DecodeThread { data, characteristic, timestamp ->
+        readData(data, characteristic, timestamp)
+    }.apply { start() }
+    private val mainHandler = Handler(Looper.getMainLooper())
+    // BLE callbacks and writes have their own looper, so a busy main thread doesn't delay ingest
+    private val bleThread = HandlerThread("WheelLog-ble", Process.THREAD_PRIORITY_DISPLAY).apply { start() }
+    private val bleHandler = Handler(bleThread.looper)
+    // alarms are checked on the decode thread with every frame, independent of the activity
+    private val alarmListener = TelemetryListener { sample ->
+        if (AlarmSettings.current.enabled) {
+            Alarms.checkAlarm(sample, applicationContext)
+        }
+    }
+    private val writeQueue = WriteQueue(object : WriteQueue.Link<BluetoothGattCharacteristic> {
+        override fun write(target: BluetoothGattCharacteristic, chunk: ByteArray): Boolean {
+            return try {
+                wheelConnection?.writeCharacteristic(target, chunk, WriteType.WITHOUT_RESPONSE) ?: false
+            } catch (e: NullPointerException) {
+                // sometimes mBluetoothGatt is null... If the user starts to connect and disconnect quickly
+                Timber.i("writeBluetoothGattCharacteristic throws NullPointerException: %s", e.message)
+                false
+            }
+        }
+
+        override fun postDelayed(action: Runnable, delay: Long) {
+            bleHandler.postDelayed(action, delay)
+        }
+    })
     private val central: BluetoothCentralManager by lazy {
         BluetoothCentralManager(
             this,
             bluetoothCentralManagerCallback,
-            Handler(Looper.getMainLooper())
+            bleHandler
         )
     }
 
@@ -57,6 +93,11 @@ class BluetoothService: Service() {
 
             override fun onConnectedPeripheral(peripheral: BluetoothPeripheral) {
                 super.onConnectedPeripheral(peripheral)
+                // connection state is handled on the main thread as before, only data stays on the BLE thread
+                mainHandler.post { connected() }
+            }
+
+            private fun connected() {
                 val connectionSound = WheelLog.AppConfig.connectionSound
                 val noConnectionSound = WheelLog.AppConfig.noConnectionSound * 1000
                 if (connectionSound) {
@@ -73,6 +114,8 @@ class BluetoothService: Service() {
                 }
                 mDisconnectTime = null
                 isWheelSearch = false
+                LinkHealth.connected()
+                startLinkMonitor()
                 broadcastConnectionUpdate()
             }
 
@@ -81,8 +124,16 @@ class BluetoothService: Service() {
                 status: HciStatus
             ) {
                 super.onDisconnectedPeripheral(peripheral, status)
+                mainHandler.post { disconnected() }
+            }
+
+            private fun disconnected() {
                 Timber.i("Disconnected from wheel.")
                 mDisconnectTime = Calendar.getInstance().time
+                // keep-alives are started again with the handshake of the next connection
+                TickScheduler.cancel(TickScheduler.CONNECTION)
+                stopLinkMonitor()
+                writeQueue.clear()
                 if (!disconnectRequested && wheelAddress.isNotEmpty()) {
                     Timber.i("Trying to reconnect")
                     val connectionSound = WheelLog.AppConfig.connectionSound
@@ -130,19 +181,12 @@ class BluetoothService: Service() {
         object : BluetoothPeripheralCallback() {
             override fun onServicesDiscovered(peripheral: BluetoothPeripheral) {
                 super.onServicesDiscovered(peripheral)
+                mainHandler.post { servicesDiscovered() }
+            }
+
+            private fun servicesDiscovered() {
                 Timber.i("onServicesDiscovered called")
-                var recognisedWheel = WheelData.getInstance().detectWheel(
-                        wheelAddress,
-                        applicationContext,
-                        R.raw.bluetooth_services
-                    )
-                if (!recognisedWheel) {
-                    recognisedWheel = WheelData.getInstance().detectWheel(
-                        wheelAddress,
-                        applicationContext,
-                        R.raw.bluetooth_proxy_services
-                    )
-                }
+                val recognisedWheel = WheelData.getInstance().detectWheel(wheelAddress, applicationContext)
                 WheelData.getInstance().isConnected = recognisedWheel
                 if (recognisedWheel) {
                     sendBroadcast(Intent(Constants.ACTION_WHEEL_TYPE_RECOGNIZED))
@@ -159,8 +203,9 @@ class BluetoothService: Service() {
                 status: GattStatus
             ) {
                 super.onCharacteristicWrite(peripheral, value, characteristic, status)
+                writeQueue.onWriteComplete(characteristic, value, status == GattStatus.SUCCESS)
                 if (status != GattStatus.SUCCESS) {
-                    readData(characteristic, value)
+                    decodeThread.post(value, characteristic.uuid)
                 }
             }
 
@@ -171,9 +216,19 @@ class BluetoothService: Service() {
                 status: GattStatus
             ) {
                 super.onCharacteristicUpdate(peripheral, value, characteristic, status)
-                Timber.i("onCharacteristicChanged called %s", characteristic.uuid.toString())
                 if (status == GattStatus.SUCCESS) {
-                    readData(characteristic, value)
+                    decodeThread.post(value, characteristic.uuid)
+                }
+            }
+
+            override fun onReadRemoteRssi(
+                peripheral: BluetoothPeripheral,
+                rssi: Int,
+                status: GattStatus
+            ) {
+                super.onReadRemoteRssi(peripheral, rssi, status)
+                if (status == GattStatus.SUCCESS) {
+                    LinkHealth.rssi = rssi
                 }
             }
 
@@ -188,59 +243,36 @@ class BluetoothService: Service() {
             }
         }
 
-    private fun readData(characteristic: BluetoothGattCharacteristic, value: ByteArray) {
-        // RAW data
+    // runs on decodeThread
+    private fun readData(value: ByteArray, characteristicUuid: UUID?, timestamp: Long) {
+        LinkHealth.frame(timestamp, value.size)
+        // once quit() was called the raw file belongs to onDestroy
+        if (decodeThread.running) {
+            writeRawData(value, characteristicUuid, timestamp)
+        }
+        FrameRouter.route(value, characteristicUuid, applicationContext)
+    }
+
+    // runs on decodeThread
+    private fun writeRawData(value: ByteArray, characteristicUuid: UUID?, timestamp: Long) {
         if (WheelLog.AppConfig.enableRawData) {
             if (fileUtilRawData == null) {
                 fileUtilRawData = FileUtil(applicationContext)
             }
             if (fileUtilRawData!!.isNull) {
-                val fileNameForRawData = "RAW_" + sdf.format(Date()) + ".csv"
-                fileUtilRawData!!.prepareFile(fileNameForRawData, WheelData.getInstance().mac)
+                val fileNameForRawData = "RAW_" + sdf.format(Date()) + RawCapture.FILE_EXTENSION
+                if (fileUtilRawData!!.prepareFile(fileNameForRawData, WheelData.getInstance().mac)) {
+                    // keep file I/O off the decode thread
+                    fileUtilRawData!!.enableAsyncWrites()
+                    rawCapture.header(System.currentTimeMillis(), SystemClock.elapsedRealtime())
+                    fileUtilRawData!!.write(rawCapture.buffer, rawCapture.length)
+                }
             }
-            fileUtilRawData!!.writeLine(
-                String.format(
-                    Locale.US, "%s,%s",
-                    sdf2.format(System.currentTimeMillis()),
-                    toHexStringRaw(value)
-                )
-            )
+            rawCapture.frame(timestamp, characteristicUuid, value, value.size)
+            fileUtilRawData!!.write(rawCapture.buffer, rawCapture.length)
         } else if (fileUtilRawData != null && !fileUtilRawData!!.isNull) {
             fileUtilRawData!!.close()
         }
-        val wd = WheelData.getInstance()
-        when (wd.wheelType) {
-            WHEEL_TYPE.KINGSONG -> if (characteristic.uuid == Constants.KINGSONG_READ_CHARACTER_UUID) {
-                wd.decodeResponse(value, applicationContext)
-                if (WheelData.getInstance().name.isEmpty()) {
-                    KingsongAdapter.getInstance().requestNameData()
-                } else if (WheelData.getInstance().serial.isEmpty()) {
-                    KingsongAdapter.getInstance().requestSerialData()
-                }
-            }
-            WHEEL_TYPE.GOTWAY, WHEEL_TYPE.GOTWAY_VIRTUAL, WHEEL_TYPE.VETERAN ->
-                wd.decodeResponse(value, applicationContext)
-            WHEEL_TYPE.INMOTION -> if (characteristic.uuid == Constants.INMOTION_READ_CHARACTER_UUID)
-                wd.decodeResponse(value, applicationContext)
-            WHEEL_TYPE.INMOTION_V2 -> if (characteristic.uuid == Constants.INMOTION_V2_READ_CHARACTER_UUID)
-                wd.decodeResponse(value, applicationContext)
-            WHEEL_TYPE.NINEBOT_Z -> {
-                Timber.i("Ninebot Z reading")
-                if (characteristic.uuid == Constants.NINEBOT_Z_READ_CHARACTER_UUID) {
-                    wd.decodeResponse(value, applicationContext)
-                }
-            }
-            WHEEL_TYPE.NINEBOT -> {
-                Timber.i("Ninebot reading")
-                if (characteristic.uuid == Constants.NINEBOT_READ_CHARACTER_UUID
-                    || characteristic.uuid == Constants.NINEBOT_Z_READ_CHARACTER_UUID) {
-                    // in case of S2 or Mini
-                    Timber.i("Ninebot read cont")
-                    wd.decodeResponse(value, applicationContext)
-                }
-            }
-            else -> {}
-        }
     }
 
     private fun broadcastConnectionUpdate(autoConnect: Boolean = false) {
@@ -260,52 +292,88 @@ class BluetoothService: Service() {
     var isWheelSearch = false
         private set
 
-    fun startReconnectTimer() {
-        if (reconnectTimer != null) {
-            stopReconnectTimer()
-        }
-        val magicPeriod = 15000
-        reconnectTimer = Timer().apply {
-            scheduleAtFixedRate(object : TimerTask() {
-                override fun run() {
-                    val wd = WheelData.getInstance()
-                    if (connectionState == ConnectionState.CONNECTED
-                        && wd != null
-                        && wd.lastLifeData > 0
-                        && (System.currentTimeMillis() - wd.lastLifeData) / 1000 > magicPeriod) {
-                        toggleReconnectToWheel()
-                    }
+    // the link is only watched while connected, so a parked service doesn't wake the scheduler
+    private fun startLinkMonitor() {
+        stopLinkMonitor()
+        rssiTimer = TickScheduler.schedule("rssi", RSSI_PERIOD, RSSI_PERIOD) {
+            wheelConnection?.readRemoteRssi()
+        }
+        if (WheelLog.AppConfig.useReconnect) {
+            linkTimer = TickScheduler.schedule("link", LINK_PERIOD, LINK_PERIOD) {
+                if (connectionState == ConnectionState.CONNECTED) {
+                    checkLink()
                 }
-            }, magicPeriod.toLong(), magicPeriod.toLong())
+            }
+        }
+    }
+
+    private fun stopLinkMonitor() {
+        linkTimer?.cancel()
+        linkTimer = null
+        rssiTimer?.cancel()
+        rssiTimer = null
+    }
+
+    // switching reconnect on or off applies to the current connection
+    private val reconnectListener = SharedPreferences.OnSharedPreferenceChangeListener { _, key ->
+        if (key == getString(R.string.use_reconnect) && connectionState == ConnectionState.CONNECTED) {
+            startLinkMonitor()
         }
     }
 
-    fun stopReconnectTimer() {
-        reconnectTimer?.cancel()
-        reconnectTimer = null
+    // runs on the scheduler thread
+    private fun checkLink() {
+        val lastLifeData = WheelData.getInstance()?.lastLifeData ?: -1L
+        val lifeDataAge = if (lastLifeData > 0) PipelineClock.now() - lastLifeData else Long.MAX_VALUE
+        // wheels that only answer requests are given a few request intervals, they stretch when parked
+        val requestInterval = WheelData.getInstance()?.adapter?.requestInterval ?: 0L
+        val reason = LinkHealth.check(SystemClock.elapsedRealtime(),
+            WheelLog.AppConfig.reconnectStallTime.toLong(), requestInterval,
+            WheelLog.AppConfig.reconnectLoss, lifeDataAge)
+        if (reason != LinkHealth.OK) {
+            Timber.i("Link check failed (%d), %s", reason, LinkHealth.dump())
+            toggleReconnectToWheel()
+        }
     }
 
     override fun onBind(p0: Intent?): IBinder {
         mgr = this.getSystemService(POWER_SERVICE) as PowerManager
         startForeground(Constants.MAIN_NOTIFICATION_ID, WheelLog.Notifications.notification)
-        if (WheelLog.AppConfig.useReconnect) {
-            startReconnectTimer()
-        }
+        PreferenceManager.getDefaultSharedPreferences(this)
+            .registerOnSharedPreferenceChangeListener(reconnectListener)
+        TelemetryBus.subscribe(alarmListener)
+        AlarmOutput.prepare(applicationContext)
         Timber.i("BluetoothService is started.")
         return mBinder
     }
 
     override fun onDestroy() {
         super.onDestroy()
+        decodeThread.quit()
+        // the raw file is written by the decode thread, close it only once that has stopped
+        try {
+            decodeThread.join(DECODE_QUIT_TIMEOUT)
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+        }
+        if (decodeThread.isAlive) {
+            Timber.w("Decode thread didn't stop in %d ms", DECODE_QUIT_TIMEOUT)
+        }
         fileUtilRawData?.close()
         stopBeepTimer()
-        stopReconnectTimer()
+        stopLinkMonitor()
+        PreferenceManager.getDefaultSharedPreferences(this)
+            .unregisterOnSharedPreferenceChangeListener(reconnectListener)
+        TelemetryBus.unsubscribe(alarmListener)
+        Alarms.stop()
+        AlarmOutput.release()
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
             stopForeground(STOP_FOREGROUND_REMOVE)
         }
         central.connectedPeripherals.forEach { it.cancelConnection() }
         central.close()
-        Timber.i("BluetoothService is destroyed.")
+        bleThread.quitSafely()
+        Timber.i("BluetoothService is destroyed, scheduler: %s", TickScheduler.stats)
     }
 
     fun connect(): Boolean {
@@ -407,98 +475,64 @@ class BluetoothService: Service() {
         return characteristic
     }
 
-    @Synchronized
-    fun writeWheelCharacteristic(cmd: ByteArray?): Boolean {
+    /**
+     * Queues [cmd] for the wheel, returns false if it is not connected.
+     * [callback] is called once the command is written or dropped.
+     */
+    @JvmOverloads
+    fun writeWheelCharacteristic(
+        cmd: ByteArray?,
+        priority: WriteQueue.Priority = WriteQueue.Priority.COMMAND,
+        callback: WriteQueue.Callback? = null
+    ): Boolean {
         if (wheelConnection == null || cmd == null || wheelConnection!!.state != ConnectionState.CONNECTED) {
             return false
         }
-        val stringBuilder = StringBuilder(cmd.size)
-        for (aData in cmd) {
-            stringBuilder.append(String.format(Locale.US, "%02X", aData))
-        }
-        Timber.i("Transmitted: %s", stringBuilder.toString())
-        try {
-            when (WheelData.getInstance().wheelType) {
-                WHEEL_TYPE.KINGSONG -> {
-                    val characteristic = getServiceCharacteristic(
-                        Constants.KINGSONG_SERVICE_UUID,
-                        Constants.KINGSONG_READ_CHARACTER_UUID
-                    ) ?: return false
-                    return wheelConnection!!.writeCharacteristic(characteristic, cmd, WriteType.WITHOUT_RESPONSE)
-                }
-                WHEEL_TYPE.GOTWAY, WHEEL_TYPE.GOTWAY_VIRTUAL, WHEEL_TYPE.VETERAN -> {
-                    val characteristic = getServiceCharacteristic(
-                        Constants.GOTWAY_SERVICE_UUID,
-                        Constants.GOTWAY_READ_CHARACTER_UUID
-                    ) ?: return false
-                    return wheelConnection!!.writeCharacteristic(characteristic, cmd, WriteType.WITHOUT_RESPONSE)
-                }
-                WHEEL_TYPE.NINEBOT -> {
-                    if (WheelData.getInstance().protoVer.compareTo("") == 0) {
-                        val characteristic = getServiceCharacteristic(
-                            Constants.NINEBOT_SERVICE_UUID,
-                            Constants.NINEBOT_WRITE_CHARACTER_UUID
-                        ) ?: return false
-                        return wheelConnection!!.writeCharacteristic(characteristic, cmd, WriteType.WITHOUT_RESPONSE)
-                    }
+        val wheelType = WheelData.getInstance().wheelType
+        val characteristic = getWriteCharacteristic(wheelType) ?: return false
+        TraceRecorder.recordBytes("Transmitted", TraceRecorder.SENT, cmd, cmd.size)
+        writeQueue.enqueue(characteristic, cmd, priority, WriteQueue.Pacing.forType(wheelType), callback)
+        return true
+    }
+
+    private fun getWriteCharacteristic(wheelType: WHEEL_TYPE): BluetoothGattCharacteristic? {
+        return when (wheelType) {
+            WHEEL_TYPE.KINGSONG -> getServiceCharacteristic(
+                Constants.KINGSONG_SERVICE_UUID,
+                Constants.KINGSONG_READ_CHARACTER_UUID
+            )
+            WHEEL_TYPE.GOTWAY, WHEEL_TYPE.GOTWAY_VIRTUAL, WHEEL_TYPE.VETERAN -> getServiceCharacteristic(
+                Constants.GOTWAY_SERVICE_UUID,
+                Constants.GOTWAY_READ_CHARACTER_UUID
+            )
+            WHEEL_TYPE.NINEBOT -> {
+                if (WheelData.getInstance().protoVer.compareTo("") == 0) {
+                    getServiceCharacteristic(
+                        Constants.NINEBOT_SERVICE_UUID,
+                        Constants.NINEBOT_WRITE_CHARACTER_UUID
+                    )
+                } else {
                     // if S2 or Mini, then pass to Ninebot_Z case
-                    Timber.i("Passing to NZ")
-                    val characteristic = getServiceCharacteristic(
+                    getServiceCharacteristic(
                         Constants.NINEBOT_Z_SERVICE_UUID,
                         Constants.NINEBOT_Z_WRITE_CHARACTER_UUID
-                    ) ?: return false
-                    return wheelConnection!!.writeCharacteristic(characteristic, cmd, WriteType.WITHOUT_RESPONSE)
-                }
-                WHEEL_TYPE.NINEBOT_Z -> {
-                    val characteristic = getServiceCharacteristic(
-                        Constants.NINEBOT_Z_SERVICE_UUID,
-                        Constants.NINEBOT_Z_WRITE_CHARACTER_UUID
-                    ) ?: return false
-                    return wheelConnection!!.writeCharacteristic(characteristic, cmd, WriteType.WITHOUT_RESPONSE)
-                }
-                WHEEL_TYPE.INMOTION -> {
-                    val characteristic = getServiceCharacteristic(
-                        Constants.INMOTION_WRITE_SERVICE_UUID,
-                        Constants.INMOTION_WRITE_CHARACTER_UUID
-                    ) ?: return false
-                    val buf = ByteArray(20)
-                    val i2 = cmd.size / 20
-                    val i3 = cmd.size - i2 * 20
-                    var i4 = 0
-                    while (i4 < i2) {
-                        System.arraycopy(cmd, i4 * 20, buf, 0, 20)
-                        if (!wheelConnection!!.writeCharacteristic(characteristic, buf, WriteType.WITHOUT_RESPONSE)) {
-                            return false
-                        }
-                        try {
-                            Thread.sleep(20)
-                        } catch (e: InterruptedException) {
-                            e.printStackTrace()
-                        }
-                        i4++
-                    }
-                    if (i3 > 0) {
-                        System.arraycopy(cmd, i2 * 20, buf, 0, i3)
-                        if (!wheelConnection!!.writeCharacteristic(characteristic, buf, WriteType.WITHOUT_RESPONSE)) {
-                            return false
-                        }
-                    }
-                    return true
-                }
-                WHEEL_TYPE.INMOTION_V2 -> {
-                    val characteristic = getServiceCharacteristic(
-                        Constants.INMOTION_V2_SERVICE_UUID,
-                        Constants.INMOTION_V2_WRITE_CHARACTER_UUID
-                    ) ?: return false
-                    return wheelConnection!!.writeCharacteristic(characteristic, cmd, WriteType.WITHOUT_RESPONSE)
+                    )
                 }
-                else -> {}
             }
-        } catch (e: NullPointerException) {
-            // sometimes mBluetoothGatt is null... If the user starts to connect and disconnect quickly
-            Timber.i("writeBluetoothGattCharacteristic throws NullPointerException: %s", e.message)
+            WHEEL_TYPE.NINEBOT_Z -> getServiceCharacteristic(
+                Constants.NINEBOT_Z_SERVICE_UUID,
+                Constants.NINEBOT_Z_WRITE_CHARACTER_UUID
+            )
+            WHEEL_TYPE.INMOTION -> getServiceCharacteristic(
+                Constants.INMOTION_WRITE_SERVICE_UUID,
+                Constants.INMOTION_WRITE_CHARACTER_UUID
+            )
+            WHEEL_TYPE.INMOTION_V2 -> getServiceCharacteristic(
+                Constants.INMOTION_V2_SERVICE_UUID,
+                Constants.INMOTION_V2_WRITE_CHARACTER_UUID
+            )
+            else -> null
         }
-        return false
     }
 
     fun getWheelServices(): List<BluetoothGattService>? {
@@ -524,21 +558,17 @@ class BluetoothService: Service() {
         }
         timerTicks = 0
         val noConnectionSound = WheelLog.AppConfig.noConnectionSound * 1000
-        val beepTimerTask: TimerTask = object : TimerTask() {
-            override fun run() {
-                timerTicks++
-                if (timerTicks * noConnectionSound > 300000) {
-                    stopBeepTimer()
-                }
-                playSound(applicationContext, R.raw.sound_no_connection)
+        beepTimer = TickScheduler.schedule(
+            "no connection beep",
+            noConnectionSound.toLong(),
+            noConnectionSound.toLong()
+        ) {
+            timerTicks++
+            if (timerTicks * noConnectionSound > 300000) {
+                stopBeepTimer()
             }
-        }
-        beepTimer = Timer().apply {
-            scheduleAtFixedRate(
-                beepTimerTask,
-                noConnectionSound.toLong(),
-                noConnectionSound.toLong()
-            )
+            // off the scheduler thread, the other tasks don't wait for the sound
+            AlarmOutput.play(applicationContext, R.raw.sound_no_connection)
         }
     }
 
@@ -556,4 +586,13 @@ class BluetoothService: Service() {
             return this@BluetoothService
         }
     }
+
+    companion object {
+        /** ms between link checks */
+        private const val LINK_PERIOD = 100L
+        /** ms between RSSI reads */
+        private const val RSSI_PERIOD = 2000L
+        /** ms to wait for the decode thread to finish its frame on destroy */
+        private const val DECODE_QUIT_TIMEOUT = 500L
+    }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package com.cooper.wheellog
+
+import android.content.Context
+import com.cooper.wheellog.utils.Constants
+import com.cooper.wheellog.utils.Constants.WHEEL_TYPE
+import com.cooper.wheellog.utils.KingsongAdapter
+import java.util.*
+
+/**
+ * Passes a notification to WheelData.decodeResponse if it came from the read characteristic
+ * of the current wheel type. Shared by BluetoothService and the replay.
+ */
+object FrameRouter {
+
+    /**
+     * Returns false if the notification is not decoded for the current wheel type.
+     */
+    @JvmStatic
+    fun route(value: ByteArray, characteristicUuid: UUID?, context: Context): Boolean {
+        val wd = WheelData.getInstance()
+        when (wd.wheelType) {
+            WHEEL_TYPE.KINGSONG -> if (characteristicUuid == Constants.KINGSONG_READ_CHARACTER_UUID) {
+                wd.decodeResponse(value, context)
+                if (WheelData.getInstance().name.isEmpty()) {
+                    KingsongAdapter.getInstance().requestNameData()
+                } else if (WheelData.getInstance().serial.isEmpty()) {
+                    KingsongAdapter.getInstance().requestSerialData()
+                }
+                return true
+            }
+            WHEEL_TYPE.GOTWAY, WHEEL_TYPE.GOTWAY_VIRTUAL, WHEEL_TYPE.VETERAN -> {
+                wd.decodeResponse(value, context)
+                return true
+            }
+            WHEEL_TYPE.INMOTION -> if (characteristicUuid == Constants.INMOTION_READ_CHARACTER_UUID) {
+                wd.decodeResponse(value, context)
+                return true
+            }
+            WHEEL_TYPE.INMOTION_V2 -> if (characteristicUuid == Constants.INMOTION_V2_READ_CHARACTER_UUID) {
+                wd.decodeResponse(value, context)
+                return true
+            }
+            WHEEL_TYPE.NINEBOT_Z -> {
+                if (characteristicUuid == Constants.NINEBOT_Z_READ_CHARACTER_UUID) {
+                    wd.decodeResponse(value, context)
+                    return true
+                }
+            }
+            WHEEL_TYPE.NINEBOT -> {
+                if (characteristicUuid == Constants.NINEBOT_READ_CHARACTER_UUID
+                    || characteristicUuid == Constants.NINEBOT_Z_READ_CHARACTER_UUID) {
+                    // in case of S2 or Mini
+                    wd.decodeResponse(value, context)
+                    return true
+                }
+            }
+            else -> {}
+        }
+        return false
+    }
+
+    /**
+     * Characteristic the wheel type sends its data on, used for captures without characteristic ids.
+     */
+    @JvmStatic
+    fun readCharacteristic(wheelType: WHEEL_TYPE): UUID? {
+        return when (wheelType) {
+            WHEEL_TYPE.KINGSONG -> Constants.KINGSONG_READ_CHARACTER_UUID
+            WHEEL_TYPE.INMOTION -> Constants.INMOTION_READ_CHARACTER_UUID
+            WHEEL_TYPE.INMOTION_V2 -> Constants.INMOTION_V2_READ_CHARACTER_UUID
+            WHEEL_TYPE.NINEBOT_Z -> Constants.NINEBOT_Z_READ_CHARACTER_UUID
+            WHEEL_TYPE.NINEBOT -> Constants.NINEBOT_READ_CHARACTER_UUID
+            else -> null
+        }
+    }
+}
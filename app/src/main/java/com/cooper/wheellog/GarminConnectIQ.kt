@@ -5,6 +5,7 @@ import android.content.Context
 import android.content.Intent
 import android.os.IBinder
 import android.widget.Toast
+import com.cooper.wheellog.telemetry.TelemetrySample
 import com.cooper.wheellog.utils.Alarms
 import com.cooper.wheellog.utils.AudioUtil
 import com.cooper.wheellog.utils.Constants
@@ -250,31 +251,28 @@ internal class GarminConnectIQWebServer(context: Context) : NanoHTTPD("127.0.0.1
         playBeep(WheelLog.AppConfig.hornMode == 1, false)
     }
 
-    private val speedStr
-        get() = run {
-            val speed = if (!WheelLog.AppConfig.useMph) {
-                WheelData.getInstance().speedDouble
-            } else {
-                MathsUtil.kmToMiles(WheelData.getInstance().speedDouble)
-            }
-            if (speed.toString().length > 3) {
-                ((speed * 10).toInt().toFloat() / 10).toString()
-            } else speed.toString()
-        }
-
-    private val topSpeed
-        get() = if (!WheelLog.AppConfig.useMph) {
-            WheelData.getInstance().topSpeed
+    private fun speedStr(sample: TelemetrySample) = run {
+        val speed = if (!WheelLog.AppConfig.useMph) {
+            sample.speedDouble
         } else {
-            MathsUtil.kmToMiles(WheelData.getInstance().topSpeed.toDouble()).toInt()
+            MathsUtil.kmToMiles(sample.speedDouble)
         }
+        if (speed.toString().length > 3) {
+            ((speed * 10).toInt().toFloat() / 10).toString()
+        } else speed.toString()
+    }
 
-    private val temperature
-        get() = if (!WheelLog.AppConfig.useMph) {
-            WheelData.getInstance().temperature
-        } else {
-            MathsUtil.celsiusToFahrenheit(WheelData.getInstance().temperature.toDouble()).toInt()
-        }
+    private fun topSpeed(sample: TelemetrySample) = if (!WheelLog.AppConfig.useMph) {
+        sample.topSpeed
+    } else {
+        MathsUtil.kmToMiles(sample.topSpeed.toDouble()).toInt()
+    }
+
+    private fun temperature(sample: TelemetrySample) = if (!WheelLog.AppConfig.useMph) {
+        sample.temperature
+    } else {
+        MathsUtil.celsiusToFahrenheit(sample.temperature.toDouble()).toInt()
+    }
 
     private val avgSpeed
         get() = if (!WheelLog.AppConfig.useMph) {
@@ -292,6 +290,7 @@ internal class GarminConnectIQWebServer(context: Context) : NanoHTTPD("127.0.0.1
 
     override fun serve(session: IHTTPSession): Response {
         val wd = WheelData.getInstance()
+        val sample = wd.sample
         val ac = WheelLog.AppConfig
       
         return when (session.method) {
@@ -299,14 +298,14 @@ internal class GarminConnectIQWebServer(context: Context) : NanoHTTPD("127.0.0.1
                 when (session.uri) {
                     "/data/main" -> {
                         val message = JSONObject()
-                        message.put("speed", speedStr)
-                        message.put("topSpeed", ((topSpeed / 10).toFloat() / 10).toString())
+                        message.put("speed", speedStr(sample))
+                        message.put("topSpeed", ((topSpeed(sample) / 10).toFloat() / 10).toString())
                         message.put("speedLimit", ac.maxSpeed)
                         message.put("useMph", ac.useMph)
-                        message.put("battery", wd.batteryLevel)
-                        message.put("temp", temperature)
-                        message.put("pwm", String.format("%02.0f", wd.calculatedPwm))
-                        message.put("maxPwm", String.format("%02.0f", wd.maxPwm))
+                        message.put("battery", sample.batteryLevel)
+                        message.put("temp", temperature(sample))
+                        message.put("pwm", String.format("%02.0f", sample.calculatedPwm))
+                        message.put("maxPwm", String.format("%02.0f", sample.maxPwm))
                         message.put("connectedToWheel", wd.isConnected)
                         message.put("wheelModel", wd.model)
 
@@ -317,17 +316,17 @@ internal class GarminConnectIQWebServer(context: Context) : NanoHTTPD("127.0.0.1
                         message.put("useMph", ac.useMph)
                         message.put("avgRidingSpeed", avgRidingSpeed)
                         message.put("avgSpeed", avgSpeed)
-                        message.put("topSpeed", ((topSpeed / 10).toFloat() / 10).toString())
-                        message.put("voltage", wd.voltageDouble.toString())
+                        message.put("topSpeed", ((topSpeed(sample) / 10).toFloat() / 10).toString())
+                        message.put("voltage", sample.voltageDouble.toString())
                         message.put("maxVoltage", wd.maxVoltageForWheel.toString())
-                        message.put("battery", wd.batteryLevel)
+                        message.put("battery", sample.batteryLevel)
                         message.put("ridingTime", wd.ridingTimeString)
-                        message.put("distance", wd.distance)
-                        message.put("pwm", String.format("%02.0f", wd.calculatedPwm))
-                        message.put("maxPwm", String.format("%02.0f", wd.maxPwm))
-                        message.put("torque", wd.torque)
-                        message.put("power", wd.powerDouble)
-                        message.put("maxPower", wd.maxPowerDouble)
+                        message.put("distance", sample.distance.toInt())
+                        message.put("pwm", String.format("%02.0f", sample.calculatedPwm))
+                        message.put("maxPwm", String.format("%02.0f", sample.maxPwm))
+                        message.put("torque", sample.torque)
+                        message.put("power", sample.powerDouble)
+                        message.put("maxPower", sample.maxPowerDouble)
 
                         message.put("connectedToWheel", wd.isConnected)
 
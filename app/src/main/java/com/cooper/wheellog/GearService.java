@@ -16,8 +16,10 @@ import android.widget.Toast;
 
 import androidx.core.content.ContextCompat;
 
+import com.cooper.wheellog.telemetry.TelemetrySample;
 import com.cooper.wheellog.utils.Alarms;
 import com.cooper.wheellog.utils.Constants;
+import com.cooper.wheellog.utils.TickScheduler;
 import com.samsung.android.sdk.SsdkUnsupportedException;
 import com.samsung.android.sdk.accessory.SA;
 import com.samsung.android.sdk.accessory.SAAgent;
@@ -27,8 +29,6 @@ import com.samsung.android.sdk.accessory.SASocket;
 import java.io.IOException;
 import java.util.AbstractCollection;
 import java.util.Locale;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.Vector;
 
 import static java.lang.String.format;
@@ -41,7 +41,7 @@ public class GearService extends SAAgent {
     AbstractCollection<GearSAPServiceProviderConnection> mConnectionBag = new Vector<>();
     LocationManager mLocationManager;
     boolean mIsListening = false;
-    private Timer keepAliveTimer;
+    private TickScheduler.Task keepAliveTimer;
     private Notification mNotification;
 
     public class GearBinder extends Binder {
@@ -124,28 +124,29 @@ LocationListener locationListener = new LocationListener() {
     }
 
     public void startKeepAliveTimer() { //Se le pueden pasar parámetros
-        TimerTask timerTask = new TimerTask() {
+        Runnable keepAlive = new Runnable() {
             @Override
             public void run() {
                 String message;
                 if (WheelData.getInstance()!=null) {
+                    TelemetrySample sample = WheelData.getInstance().getSample();
                     message = String.format(Locale.ROOT, "{ \"speed\":%.2f," +
                                     "\"voltage\":%.2f,\"current\":%.2f,\"power\":%.2f," +
                                     "\"batteryLevel\":%d,\"distance\":%d,\"totalDistance\":%d,\"temperature\":%d," +
                                     "\"temperature2\":%d," +
                                     "\"angle\":%.2f,\"roll\":%.2f,\"isAlarmExecuting\":%d",
 //                        "\"mode\":%s,\"alert\":%s"+
-                            WheelData.getInstance().getSpeedDouble(),
-                            WheelData.getInstance().getVoltageDouble(),
-                            WheelData.getInstance().getCurrentDouble(),
-                            WheelData.getInstance().getPowerDouble(),
-                            WheelData.getInstance().getBatteryLevel(),
-                            WheelData.getInstance().getDistance(),
-                            WheelData.getInstance().getTotalDistance(),
-                            WheelData.getInstance().getTemperature(),
-                            WheelData.getInstance().getTemperature2(),
-                            WheelData.getInstance().getAngle(),
-                            WheelData.getInstance().getRoll(),
+                            sample.getSpeedDouble(),
+                            sample.getVoltageDouble(),
+                            sample.getCurrentDouble(),
+                            sample.getPowerDouble(),
+                            sample.getBatteryLevel(),
+                            (int) sample.getDistance(),
+                            sample.getTotalDistance(),
+                            sample.getTemperature(),
+                            sample.getTemperature2(),
+                            sample.getAngle(),
+                            sample.getRoll(),
                             Alarms.INSTANCE.getAlarm()
 //                        WheelData.getInstance().getModeStr(),
 //                        WheelData.getInstance().getAlert()
@@ -164,8 +165,7 @@ LocationListener locationListener = new LocationListener() {
                 transmitMessage(message);
             }
         };
-        keepAliveTimer = new Timer();
-        keepAliveTimer.scheduleAtFixedRate(timerTask, 0, 200); //cada 500ms
+        keepAliveTimer = TickScheduler.schedule("Gear keep-alive", 0, 200, keepAlive); //cada 500ms
     }
 
     public void removeConnection(GearSAPServiceProviderConnection connection) {
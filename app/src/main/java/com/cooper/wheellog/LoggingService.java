@@ -18,16 +18,27 @@ import androidx.annotation.Nullable;
 
 import com.cooper.wheellog.data.TripData;
 import com.cooper.wheellog.data.TripDatabase;
+import com.cooper.wheellog.telemetry.LatencyStats;
+import com.cooper.wheellog.telemetry.TelemetryBus;
+import com.cooper.wheellog.telemetry.TelemetryListener;
+import com.cooper.wheellog.telemetry.TelemetrySample;
+import com.cooper.wheellog.utils.BinaryTripLog;
+import com.cooper.wheellog.utils.BinaryTripLogReader;
+import com.cooper.wheellog.utils.BinaryTripLogWriter;
 import com.cooper.wheellog.utils.Constants;
+import com.cooper.wheellog.utils.CsvTripLogRowWriter;
 import com.cooper.wheellog.utils.FileUtil;
 import com.cooper.wheellog.utils.NotificationUtil;
 import com.cooper.wheellog.utils.ParserLogToWheelData;
 import com.cooper.wheellog.utils.PermissionsUtil;
+import com.cooper.wheellog.utils.TripLogRowWriter;
 import com.welie.blessed.ConnectionState;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 import timber.log.Timber;
@@ -35,14 +46,25 @@ import timber.log.Timber;
 public class LoggingService extends Service
 {
     private static LoggingService instance = null;
-    SimpleDateFormat sdf;
-    private Location mLocation;
-    private Location mLastLocation;
+    // written by the location listener on the main thread, read by the decode thread
+    private volatile Location mLocation;
+    private volatile Location mLastLocation;
     private double mLocationDistance;
     private LocationManager mLocationManager;
     private String mLocationProvider = LocationManager.NETWORK_PROVIDER;
     private boolean logLocationData = false;
     private FileUtil fileUtil;
+    private TripLogRowWriter rowWriter;
+    private boolean logLocationColumns = false;
+    // rows are written on the decode thread, onDestroy closes the log under this lock
+    private final Object logLock = new Object();
+    private boolean logClosed = false;
+    private Location mEncodedLocation;
+    private String mLatitude = "";
+    private String mLongitude = "";
+    private String mGpsSpeed = "";
+    private String mGpsAlt = "";
+    private String mGpsBearing = "";
 
     public static boolean isInstanceCreated() {
         return instance != null;
@@ -67,13 +89,12 @@ public class LoggingService extends Service
                         }
                     }
                     break;
-                case Constants.ACTION_WHEEL_DATA_AVAILABLE:
-                    updateFile();
-                    break;
             }
         }
     };
 
+    private final TelemetryListener mTelemetryListener = this::updateFile;
+
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
@@ -92,7 +113,6 @@ public class LoggingService extends Service
         fileUtil = new FileUtil(getApplicationContext());
 
         IntentFilter intentFilter = new IntentFilter();
-        intentFilter.addAction(Constants.ACTION_WHEEL_DATA_AVAILABLE);
         intentFilter.addAction(Constants.ACTION_BLUETOOTH_CONNECTION_STATE);
         registerReceiver(mBluetoothUpdateReceiver, intentFilter);
 
@@ -117,15 +137,25 @@ public class LoggingService extends Service
             logLocationData = false;
         }
 
-        sdf = new SimpleDateFormat("yyyy-MM-dd,HH:mm:ss.SSS", Locale.US);
+        boolean binaryLog = WheelLog.AppConfig.getBinaryTripLog();
+        String logExtension = binaryLog ? BinaryTripLog.FILE_EXTENSION : ".csv";
+        rowWriter = binaryLog ? new BinaryTripLogWriter() : new CsvTripLogRowWriter();
+        List<BinaryTripLog.Column> lastLogColumns = null;
 
         boolean writeToLastLog = false;
         String mac = WheelData.getInstance().getMac();
         if (WheelLog.AppConfig.getContinueThisDayLog() &&
                 !WheelLog.AppConfig.getContinueThisDayLogMacException().equals(mac)) {
-            FileUtil lastFileUtil = FileUtil.getLastLog(getApplicationContext());
-            if (lastFileUtil != null &&
-                    lastFileUtil.getFile().getPath().contains(mac.replace(':', '_'))) {
+            FileUtil lastFileUtil = FileUtil.getLastLog(getApplicationContext(), logExtension);
+            if (lastFileUtil != null && !lastFileUtil.getFile().getPath().contains(mac.replace(':', '_'))) {
+                // the last log is of another wheel
+                lastFileUtil = null;
+            }
+            if (binaryLog && lastFileUtil != null) {
+                // rows are appended with the columns of the existing file
+                lastLogColumns = readBinaryLogColumns(lastFileUtil);
+            }
+            if (lastFileUtil != null && (!binaryLog || lastLogColumns != null)) {
                 fileUtil = lastFileUtil;
                 // parse prev log for filling wheeldata values
                 ParserLogToWheelData parser = new ParserLogToWheelData();
@@ -139,7 +169,7 @@ public class LoggingService extends Service
         if (!writeToLastLog) {
             SimpleDateFormat sdFormatter = new SimpleDateFormat("yyyy_MM_dd_HH_mm_ss", Locale.US);
 
-            String filename = sdFormatter.format(new Date()) + ".csv";
+            String filename = sdFormatter.format(new Date()) + logExtension;
 
             if (!fileUtil.prepareFile(filename, WheelData.getInstance().getMac())) {
                 stopSelf();
@@ -148,7 +178,9 @@ public class LoggingService extends Service
             WheelLog.AppConfig.setContinueThisDayLogMacException("");
         }
 
-        String locationHeaderString = "";
+        // rows are written by a background thread, see onDestroy for the final sync
+        fileUtil.enableAsyncWrites();
+
         if (logLocationData) {
             mLocationManager = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
 
@@ -178,7 +210,6 @@ public class LoggingService extends Service
             }
 
             if (logLocationData) {
-                locationHeaderString = "latitude,longitude,gps_speed,gps_alt,gps_heading,gps_distance,";
                 mLocation = getLastBestLocation();
                 mLocationProvider = LocationManager.NETWORK_PROVIDER;
                 if (useGPS) {
@@ -190,8 +221,17 @@ public class LoggingService extends Service
         }
 
         if (!writeToLastLog) {
-            fileUtil.writeLine("date,time," + locationHeaderString + "speed,voltage,phase_current,current,power,torque,pwm,battery_level,distance,totaldistance,system_temp,temp2,tilt,roll,mode,alert");
+            logLocationColumns = logLocationData;
+            rowWriter.header(BinaryTripLog.columns(logLocationColumns));
+            fileUtil.write(rowWriter.getBuffer(), rowWriter.getLength());
+        } else if (binaryLog) {
+            logLocationColumns = BinaryTripLog.hasLocation(lastLogColumns);
+            ((BinaryTripLogWriter) rowWriter).start(lastLogColumns, false);
+        } else {
+            logLocationColumns = logLocationData;
         }
+        // every frame is logged on the decode thread, coalescing on the main thread would drop rows
+        TelemetryBus.subscribe(mTelemetryListener);
 
         Intent serviceIntent = new Intent(Constants.ACTION_LOGGING_SERVICE_TOGGLED);
         serviceIntent.putExtra(Constants.INTENT_EXTRA_LOGGING_FILE_LOCATION, fileUtil.getAbsolutePath());
@@ -218,6 +258,7 @@ public class LoggingService extends Service
     public void onDestroy() {
         String path = "";
         boolean isBusy = false;
+        TelemetryBus.unsubscribe(mTelemetryListener);
 
         if (logLocationData && mLastLocation != null) {
             WheelLog.AppConfig.setLastLocationLaltitude(mLastLocation.getLatitude());
@@ -226,7 +267,15 @@ public class LoggingService extends Service
 
         if (fileUtil != null) {
             path = fileUtil.getAbsolutePath();
-            fileUtil.close();
+            synchronized (logLock) {
+                logClosed = true;
+                // drains pending rows and syncs the file before it is uploaded
+                fileUtil.close();
+            }
+            int droppedLines = fileUtil.getDroppedLines();
+            if (droppedLines > 0) {
+                Timber.wtf("Log writer dropped %d rows", droppedLines);
+            }
         }
 
         Timber.wtf("DataLogger Stopping...");
@@ -237,8 +286,9 @@ public class LoggingService extends Service
             isBusy = true;
             try {
                 Timber.wtf("Uploading %s to electro.club", fileUtil.fileName);
-                byte[] data = fileUtil.readBytes();
-                ElectroClub.getInstance().uploadTrack(data, fileUtil.fileName, true, success -> {
+                byte[] data = fileUtil.readCsvBytes();
+                String csvName = fileUtil.fileName.replace(BinaryTripLog.FILE_EXTENSION, ".csv");
+                ElectroClub.getInstance().uploadTrack(data, csvName, true, success -> {
                     if (!success) {
                         Timber.wtf("Upload failed...");
                         WheelLog.Notifications.setCustomTitle("Upload failed.");
@@ -290,55 +340,59 @@ public class LoggingService extends Service
                 Environment.MEDIA_MOUNTED_READ_ONLY.equals(state);
     }
 
-    private void updateFile() {
-        String LocationDataString = "";
-        if (logLocationData) {
-            String longitude = "";
-            String latitude = "";
-            String gpsSpeed = "";
-            String gpsAlt = "";
-            String gpsBearing = "";
-            if (mLocation != null) {
-                longitude = String.valueOf(mLocation.getLongitude());
-                latitude = String.valueOf(mLocation.getLatitude());
-                gpsSpeed = String.valueOf(mLocation.getSpeed() * 3.6);
-                gpsAlt = String.valueOf(mLocation.getAltitude());
-                gpsBearing = String.valueOf(mLocation.getBearing());
+    @Nullable
+    private List<BinaryTripLog.Column> readBinaryLogColumns(FileUtil log) {
+        try (InputStream inputStream = log.getInputStream()) {
+            if (inputStream == null) {
+                return null;
+            }
+            return new BinaryTripLogReader(inputStream).getColumns();
+        } catch (IOException e) {
+            Timber.i("Cannot continue %s: %s", log.fileName, e.getMessage());
+            return null;
+        }
+    }
+
+    // runs on the decode thread
+    private void updateFile(TelemetrySample sample) {
+        synchronized (logLock) {
+            if (!logClosed) {
+                writeRow(sample);
+            }
+        }
+    }
+
+    private void writeRow(TelemetrySample sample) {
+        TripLogRowWriter row = rowWriter;
+        row.beginRow();
+        row.time(sample.getTimestamp());
+        if (logLocationColumns) {
+            Location location = mLocation;
+            if (logLocationData && location != null) {
+                if (location != mEncodedLocation) {
+                    mLatitude = String.valueOf(location.getLatitude());
+                    mLongitude = String.valueOf(location.getLongitude());
+                    mGpsSpeed = String.valueOf(location.getSpeed() * 3.6);
+                    mGpsAlt = String.valueOf(location.getAltitude());
+                    mGpsBearing = String.valueOf(location.getBearing());
+                    mEncodedLocation = location;
+                }
                 if (mLastLocation != null)
-                    mLocationDistance += mLastLocation.distanceTo(mLocation);
+                    mLocationDistance += mLastLocation.distanceTo(location);
 
-                mLastLocation = mLocation;
+                mLastLocation = location;
             }
-            LocationDataString = String.format(Locale.US, "%s,%s,%s,%s,%s,%.0f,",
-                    latitude,
-                    longitude,
-                    gpsSpeed,
-                    gpsAlt,
-                    gpsBearing,
-                    mLocationDistance
-            );
+            row.text(mLatitude);
+            row.text(mLongitude);
+            row.text(mGpsSpeed);
+            row.text(mGpsAlt);
+            row.text(mGpsBearing);
+            row.fixed(mLocationDistance, 0);
         }
-        WheelData wd = WheelData.getInstance();
-        fileUtil.writeLine(String.format(Locale.US, "%s,%s%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%d,%d,%d,%d,%d,%.2f,%.2f,%s,%s",
-                sdf.format(WheelData.getInstance().getTimeStamp()),
-                LocationDataString,
-                wd.getSpeedDouble(),
-                wd.getVoltageDouble(),
-                wd.getPhaseCurrentDouble(),
-                wd.getCurrentDouble(),
-                wd.getPowerDouble(),
-                wd.getTorque(),
-                wd.getCalculatedPwm(),
-                wd.getBatteryLevel(),
-                wd.getDistance(),
-                wd.getTotalDistance(),
-                wd.getTemperature(),
-                wd.getTemperature2(),
-                wd.getAngle(),
-                wd.getRoll(),
-                wd.getModeStr(),
-                wd.getAlert()
-        ));
+        row.telemetry(sample, WheelData.getInstance().getAlert());
+        row.endRow();
+        fileUtil.write(row.getBuffer(), row.getLength());
+        LatencyStats.record(LatencyStats.LOG, sample);
     }
 
     // Define a listener that responds to location updates
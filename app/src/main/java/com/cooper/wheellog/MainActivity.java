@@ -41,6 +41,8 @@ import androidx.viewpager2.widget.ViewPager2;
 import com.cooper.wheellog.companion.WearOs;
 
 import com.cooper.wheellog.data.TripDatabase;
+import com.cooper.wheellog.telemetry.TelemetryBus;
+import com.cooper.wheellog.telemetry.TelemetryListener;
 import com.cooper.wheellog.utils.Constants;
 import com.cooper.wheellog.utils.Constants.ALARM_TYPE;
 import com.cooper.wheellog.utils.Constants.WHEEL_TYPE;
@@ -174,9 +176,6 @@ public class MainActivity extends AppCompatActivity {
                     pagerAdapter.configureSecondDisplay();
                     pagerAdapter.updateScreen(true);
                     break;
-                case Constants.ACTION_WHEEL_DATA_AVAILABLE:
-                    pagerAdapter.updateScreen(intent.hasExtra(Constants.INTENT_EXTRA_GRAPH_UPDATE_AVILABLE));
-                    break;
                 case Constants.ACTION_WHEEL_NEWS_AVAILABLE:
                     Timber.i("Received news");
                     showSnackBar(intent.getStringExtra(Constants.INTENT_EXTRA_NEWS), 1500);
@@ -212,6 +211,30 @@ public class MainActivity extends AppCompatActivity {
         }
     };
 
+    /**
+     * Telemetry listener for MainView UI. Subscribed only while MainView is active.
+     **/
+    private final TelemetryListener mMainViewTelemetryListener = sample ->
+            pagerAdapter.updateScreen(sample.getGraphUpdate());
+
+    /**
+     * Telemetry listener that always works. It shouldn't have any UI work.
+     **/
+    private final TelemetryListener mCoreTelemetryListener = sample -> {
+        if (wearOs != null) {
+            wearOs.sendUpdateData();
+        }
+        if (WheelLog.AppConfig.getMibandMode() != MiBandEnum.Alarm) {
+            WheelLog.Notifications.update();
+        }
+        if (!LoggingService.isInstanceCreated() &&
+                WheelLog.AppConfig.getStartAutoLoggingWhenIsMoving() &&
+                WheelLog.AppConfig.getAutoLog() &&
+                sample.getSpeedDouble() > 3.5) {
+            toggleLoggingService();
+        }
+    };
+
     /**
      * A broadcast receiver that always works. It shouldn't have any UI work.
      **/
@@ -269,25 +292,6 @@ public class MainActivity extends AppCompatActivity {
                     Timber.i("Reset battery lowest");
                     Objects.requireNonNull(pagerAdapter.getWheelView()).resetBatteryLowest();
                     break;
-                case Constants.ACTION_WHEEL_DATA_AVAILABLE:
-                    if (wearOs != null) {
-                        wearOs.sendUpdateData();
-                    }
-                    if (WheelLog.AppConfig.getMibandMode() != MiBandEnum.Alarm) {
-                        WheelLog.Notifications.update();
-                    }
-                    if (!LoggingService.isInstanceCreated() &&
-                            WheelLog.AppConfig.getStartAutoLoggingWhenIsMoving() &&
-                            WheelLog.AppConfig.getAutoLog() &&
-                            WheelData.getInstance().getSpeedDouble() > 3.5) {
-                        toggleLoggingService();
-                    }
-                    if (WheelLog.AppConfig.getAlarmsEnabled()) {
-                        Alarms.INSTANCE.checkAlarm(
-                                WheelData.getInstance().getCalculatedPwm() / 100,
-                                getApplicationContext());
-                    }
-                    break;
                 case Constants.ACTION_PEBBLE_SERVICE_TOGGLED:
                     setMenuIconStates();
                     WheelLog.Notifications.update();
@@ -532,6 +536,7 @@ public class MainActivity extends AppCompatActivity {
         }
 
         registerReceiver(mCoreBroadcastReceiver, makeCoreIntentFilter());
+        TelemetryBus.subscribeOnMainThread(mCoreTelemetryListener);
         WheelLog.Notifications.update();
 
         DialogHelper.INSTANCE.checkBatteryOptimizationsAndShowAlert(this);
@@ -558,6 +563,7 @@ public class MainActivity extends AppCompatActivity {
         }
 
         registerReceiver(mMainViewBroadcastReceiver, makeIntentFilter());
+        TelemetryBus.subscribeOnMainThread(mMainViewTelemetryListener);
         pagerAdapter.updateScreen(true);
     }
 
@@ -570,6 +576,7 @@ public class MainActivity extends AppCompatActivity {
     public void onPause() {
         super.onPause();
         unregisterReceiver(mMainViewBroadcastReceiver);
+        TelemetryBus.unsubscribe(mMainViewTelemetryListener);
     }
 
     @Override
@@ -603,6 +610,7 @@ public class MainActivity extends AppCompatActivity {
                 eventsLoggingTree.close();
                 eventsLoggingTree = null;
                 unregisterReceiver(mCoreBroadcastReceiver);
+                TelemetryBus.unsubscribe(mCoreTelemetryListener);
                 // Kill YandexMetrika process.
                 var am = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
                 var runningProcesses = am.getRunningAppProcesses();
@@ -915,7 +923,6 @@ public class MainActivity extends AppCompatActivity {
 
     private IntentFilter makeIntentFilter() {
         final IntentFilter intentFilter = new IntentFilter();
-        intentFilter.addAction(Constants.ACTION_WHEEL_DATA_AVAILABLE);
         intentFilter.addAction(Constants.ACTION_LOGGING_SERVICE_TOGGLED);
         intentFilter.addAction(Constants.ACTION_PEBBLE_SERVICE_TOGGLED);
         intentFilter.addAction(Constants.ACTION_WHEEL_TYPE_RECOGNIZED);
@@ -930,7 +937,6 @@ public class MainActivity extends AppCompatActivity {
     private IntentFilter makeCoreIntentFilter() {
         final IntentFilter intentFilter = new IntentFilter();
         intentFilter.addAction(Constants.ACTION_BLUETOOTH_CONNECTION_STATE);
-        intentFilter.addAction(Constants.ACTION_WHEEL_DATA_AVAILABLE);
         intentFilter.addAction(Constants.ACTION_LOGGING_SERVICE_TOGGLED);
         intentFilter.addAction(Constants.ACTION_PEBBLE_SERVICE_TOGGLED);
         intentFilter.addAction(Constants.ACTION_PREFERENCE_RESET);
@@ -9,6 +9,9 @@ import androidx.gridlayout.widget.GridLayout
 import androidx.preference.PreferenceManager
 import androidx.recyclerview.widget.DividerItemDecoration
 import androidx.recyclerview.widget.RecyclerView
+import com.cooper.wheellog.telemetry.LatencyStats
+import com.cooper.wheellog.telemetry.LinkHealth
+import com.cooper.wheellog.telemetry.TraceRecorder
 import com.cooper.wheellog.utils.Constants.WHEEL_TYPE
 import com.cooper.wheellog.utils.FileUtil
 import com.cooper.wheellog.utils.MathsUtil
@@ -26,11 +29,16 @@ import com.github.mikephil.charting.data.LineData
 import com.github.mikephil.charting.data.LineDataSet
 import com.github.mikephil.charting.formatter.IndexAxisValueFormatter
 import kotlinx.coroutines.*
+import java.text.SimpleDateFormat
 import java.util.*
+import kotlin.math.roundToInt
 
 class MainPageAdapter(private var pages: MutableList<Int>, val activity: MainActivity) : RecyclerView.Adapter<MainPageAdapter.ViewHolder>(), OnSharedPreferenceChangeListener {
 
-    private var xAxisLabels = ArrayList<String>()
+    // range of the graph points on the chart, their time labels are formatted only when drawn
+    private var graphFirst = 0L
+    private var graphEnd = 0L
+    private val graphTimeFormat = SimpleDateFormat("HH:mm:ss", Locale.US)
 
     var wheelView: WheelView? = null
     private var chart1: LineChart? = null
@@ -128,6 +136,15 @@ class MainPageAdapter(private var pages: MutableList<Int>, val activity: MainAct
                 eventsTextView = view.findViewById(R.id.events_textbox)
                 eventsTextView?.text = logsCashe
                 eventsTextView?.typeface = WheelLog.ThemeManager.getTypeface(view.context)
+                // long tap appends the recent decoder trace, the link health and the latency stats,
+                // which are also saved to a file
+                eventsTextView?.setOnLongClickListener {
+                    logEvent(TraceRecorder.dump())
+                    logEvent(LinkHealth.dump())
+                    logEvent(LatencyStats.dump())
+                    LatencyStats.export(activity)?.let { logEvent("Latency saved to $it\n") }
+                    true
+                }
             }
             R.layout.main_view_trips -> {
                 listOfTrips = view.findViewById(R.id.list_trips)
@@ -159,21 +176,23 @@ class MainPageAdapter(private var pages: MutableList<Int>, val activity: MainAct
         when (pages[position]) {
             R.layout.main_view_main -> {
                 data.bmsView = false
+                val sample = data.sample
                 wheelView?.apply {
-                    setSpeed(data.speed)
-                    setBattery(data.batteryLevel)
+                    setSpeed((sample.speed / 10.0).roundToInt())
+                    setBattery(sample.batteryLevel)
                     setBatteryLowest(data.batteryLowestLevel)
-                    setTemperature(data.temperature)
+                    setTemperature(sample.temperature)
                     setRideTime(data.ridingTimeString)
-                    setTopSpeed(data.topSpeedDouble)
-                    setDistance(data.distanceDouble)
-                    setTotalDistance(data.totalDistanceDouble)
-                    setVoltage(data.voltageDouble)
-                    setCurrent(data.currentDouble)
+                    setTopSpeed(sample.topSpeedDouble)
+                    setDistance(sample.distanceDouble)
+                    setTotalDistance(sample.totalDistanceDouble)
+                    setVoltage(sample.voltageDouble)
+                    setCurrent(sample.currentDouble)
                     setAverageSpeed(data.averageRidingSpeedDouble)
-                    setMaxPwm(data.maxPwm)
-                    setMaxTemperature(data.maxTemp)
-                    setPwm(data.calculatedPwm)
+                    setMaxPwm(sample.maxPwm)
+                    setMaxTemperature(sample.maxTemp)
+                    setPwm(sample.calculatedPwm)
+                    frameReceived = sample.received
                     updateViewBlocksVisibility()
                     redrawTextBoxes()
                     invalidate()
@@ -241,8 +260,10 @@ class MainPageAdapter(private var pages: MutableList<Int>, val activity: MainAct
                 if (!updateGraph || chart1 == null) {
                     return
                 }
-                xAxisLabels = WheelData.getInstance().xAxis
-                if (xAxisLabels.size > 0) {
+                val graph = WheelData.getInstance().graph
+                graphEnd = graph.end
+                graphFirst = graph.first(graphEnd)
+                if (graphEnd > graphFirst) {
                     val dataSetSpeed: LineDataSet
                     val dataSetCurrent: LineDataSet
                     if (chart1!!.data == null) {
@@ -276,20 +297,14 @@ class MainPageAdapter(private var pages: MutableList<Int>, val activity: MainAct
                     dataSetSpeed.clear()
                     dataSetCurrent.clear()
 
-                    val currentAxis = ArrayList(WheelData.getInstance().currentAxis)
-                    val speedAxis = ArrayList(WheelData.getInstance().speedAxis)
-                    for (d in currentAxis) {
-                        var value = 0f
-                        if (d != null) value = d
-                        dataSetCurrent.addEntry(Entry(dataSetCurrent.entryCount.toFloat(), value))
-                    }
-                    for (d in speedAxis) {
-                        var value = 0f
-                        if (d != null) value = d
+                    // points are read in place from the ring of the decoding thread
+                    for (i in graphFirst until graphEnd) {
+                        dataSetCurrent.addEntry(Entry(dataSetCurrent.entryCount.toFloat(), graph.current(i)))
+                        val speed = graph.speed(i)
                         if (WheelLog.AppConfig.useMph)
-                            dataSetSpeed.addEntry(Entry(dataSetSpeed.entryCount.toFloat(), MathsUtil.kmToMiles(value)))
+                            dataSetSpeed.addEntry(Entry(dataSetSpeed.entryCount.toFloat(), MathsUtil.kmToMiles(speed)))
                         else
-                            dataSetSpeed.addEntry(Entry(dataSetSpeed.entryCount.toFloat(), value))
+                            dataSetSpeed.addEntry(Entry(dataSetSpeed.entryCount.toFloat(), speed))
                     }
                     dataSetCurrent.notifyDataSetChanged()
                     dataSetSpeed.notifyDataSetChanged()
@@ -391,7 +406,10 @@ class MainPageAdapter(private var pages: MutableList<Int>, val activity: MainAct
 
     private var chartAxisValueFormatter: IndexAxisValueFormatter = object : IndexAxisValueFormatter () {
         override fun getFormattedValue(value: Float): String {
-            return if (value < xAxisLabels.size) xAxisLabels[value.toInt()] else ""
+            val index = graphFirst + value.toLong()
+            return if (value >= 0 && index < graphEnd) {
+                graphTimeFormat.format(Date(WheelData.getInstance().graph.time(index)))
+            } else ""
         }
 
         // we don't draw numbers, so no decimal digits needed
@@ -9,6 +9,9 @@ import android.content.IntentFilter;
 import android.os.Handler;
 import android.os.IBinder;
 
+import com.cooper.wheellog.telemetry.TelemetryBus;
+import com.cooper.wheellog.telemetry.TelemetryListener;
+import com.cooper.wheellog.telemetry.TelemetrySample;
 import com.cooper.wheellog.utils.Constants;
 import com.cooper.wheellog.utils.Constants.PEBBLE_APP_SCREEN;
 import com.getpebble.android.kit.PebbleKit;
@@ -90,30 +93,32 @@ public class PebbleService extends Service {
             if (data == null) {
                 return;
             }
+            TelemetrySample sample = data.getSample();
+            int speed = (int) Math.round(sample.getSpeed() / 10.0);
 
             switch (displayedScreen) {
                 case GUI:
-                    if (refreshAll || lastSpeed != data.getSpeed())
+                    if (refreshAll || lastSpeed != speed)
                     {
-                        lastSpeed = data.getSpeed();
+                        lastSpeed = speed;
                         outgoingDictionary.addInt32(KEY_SPEED, lastSpeed);
                     }
 
-                    if (refreshAll || lastBattery != data.getBatteryLevel())
+                    if (refreshAll || lastBattery != sample.getBatteryLevel())
                     {
-                        lastBattery = data.getBatteryLevel();
+                        lastBattery = sample.getBatteryLevel();
                         outgoingDictionary.addInt32(KEY_BATTERY, lastBattery);
                     }
 
-                    if (refreshAll || lastTemperature != data.getTemperature())
+                    if (refreshAll || lastTemperature != sample.getTemperature())
                     {
-                        lastTemperature = data.getTemperature();
+                        lastTemperature = sample.getTemperature();
                         outgoingDictionary.addInt32(KEY_TEMPERATURE, lastTemperature);
                     }
 
-                    if (refreshAll || lastFanStatus != data.getFanStatus())
+                    if (refreshAll || lastFanStatus != sample.getFanStatus())
                     {
-                        lastFanStatus = data.getFanStatus();
+                        lastFanStatus = sample.getFanStatus();
                         outgoingDictionary.addInt32(KEY_FAN_STATE, lastFanStatus);
                     }
 
@@ -123,21 +128,21 @@ public class PebbleService extends Service {
                         outgoingDictionary.addInt32(KEY_BT_STATE, lastConnectionState ? 1 : 0);
                     }
 
-                    if (refreshAll || lastVoltage != data.getVoltage())
+                    if (refreshAll || lastVoltage != sample.getVoltage())
                     {
-                        lastVoltage = data.getVoltage();
+                        lastVoltage = sample.getVoltage();
                         outgoingDictionary.addInt32(KEY_VOLTAGE, lastVoltage);
                     }
 
-                    if (refreshAll || lastCurrent != data.getCurrent())
+                    if (refreshAll || lastCurrent != sample.getCurrent())
                     {
-                        lastCurrent = data.getCurrent();
+                        lastCurrent = sample.getCurrent();
                         outgoingDictionary.addInt32(KEY_CURRENT, lastCurrent);
                     }
 
-                    if (refreshAll || lastPWM != (int) data.getCalculatedPwm())
+                    if (refreshAll || lastPWM != (int) sample.getCalculatedPwm())
                     {
-                        lastPWM = (int) data.getCalculatedPwm();
+                        lastPWM = (int) sample.getCalculatedPwm();
                         outgoingDictionary.addInt32(KEY_PWM, lastCurrent);
                     }
                     break;
@@ -148,15 +153,15 @@ public class PebbleService extends Service {
                         outgoingDictionary.addInt32(KEY_RIDE_TIME, lastRideTime);
                     }
 
-                    if (refreshAll || lastDistance != data.getDistance())
+                    if (refreshAll || lastDistance != (int) sample.getDistance())
                     {
-                        lastDistance = data.getDistance();
+                        lastDistance = (int) sample.getDistance();
                         outgoingDictionary.addInt32(KEY_DISTANCE, lastDistance/100);
                     }
 
-                    if (refreshAll || lastTopSpeed != data.getTopSpeed())
+                    if (refreshAll || lastTopSpeed != sample.getTopSpeed())
                     {
-                        lastTopSpeed = data.getTopSpeed();
+                        lastTopSpeed = sample.getTopSpeed();
                         outgoingDictionary.addInt32(KEY_TOP_SPEED, lastTopSpeed/10);
                     }
                     break;
@@ -215,15 +220,21 @@ public class PebbleService extends Service {
                     break;
             }
 
-            // There's something new to send, start the check
-            if (message_pending &&
-                    last_message_send_time + MESSAGE_TIMEOUT >= Calendar.getInstance().getTimeInMillis())
-                data_available = true;
-            else
-                mHandler.post(mSendPebbleData);
+            scheduleSend();
         }
     };
 
+    private final TelemetryListener mTelemetryListener = sample -> scheduleSend();
+
+    private void scheduleSend() {
+        // There's something new to send, start the check
+        if (message_pending &&
+                last_message_send_time + MESSAGE_TIMEOUT >= Calendar.getInstance().getTimeInMillis())
+            data_available = true;
+        else
+            mHandler.post(mSendPebbleData);
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return null;
@@ -239,12 +250,12 @@ public class PebbleService extends Service {
 
         IntentFilter intentFilter = new IntentFilter();
         intentFilter.addAction(Constants.ACTION_BLUETOOTH_CONNECTION_STATE);
-        intentFilter.addAction(Constants.ACTION_WHEEL_DATA_AVAILABLE);
         intentFilter.addAction(Constants.ACTION_ALARM_TRIGGERED);
         intentFilter.addAction(Constants.ACTION_PEBBLE_APP_READY);
         intentFilter.addAction(Constants.ACTION_PEBBLE_APP_SCREEN);
         intentFilter.addAction(Constants.ACTION_PEBBLE_AFFECTING_PREFERENCE_CHANGED);
         registerReceiver(mBroadcastReceiver, intentFilter);
+        TelemetryBus.subscribeOnMainThread(mTelemetryListener);
 
         Intent serviceStartedIntent = new Intent(Constants.ACTION_PEBBLE_SERVICE_TOGGLED)
                 .putExtra(Constants.INTENT_EXTRA_IS_RUNNING, true);
@@ -260,6 +271,7 @@ public class PebbleService extends Service {
     @Override
     public void onDestroy() {
         unregisterReceiver(mBroadcastReceiver);
+        TelemetryBus.unsubscribe(mTelemetryListener);
         unregisterReceiver(ackReceiver);
         unregisterReceiver(nackReceiver);
         mHandler.removeCallbacksAndMessages(null);
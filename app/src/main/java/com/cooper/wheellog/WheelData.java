@@ -7,21 +7,18 @@ import android.content.Context;
 import android.content.Intent;
 import android.media.AudioManager;
 
+import com.cooper.wheellog.telemetry.DecodeSettings;
+import com.cooper.wheellog.telemetry.GraphRing;
+import com.cooper.wheellog.telemetry.PipelineClock;
+import com.cooper.wheellog.telemetry.LatencyStats;
+import com.cooper.wheellog.telemetry.TraceRecorder;
+import com.cooper.wheellog.telemetry.TelemetryBus;
+import com.cooper.wheellog.telemetry.TelemetrySample;
 import com.cooper.wheellog.utils.*;
 import com.cooper.wheellog.utils.Constants.WHEEL_TYPE;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Iterator;
 import java.util.Locale;
 import java.util.Objects;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
@@ -30,15 +27,16 @@ import timber.log.Timber;
 public class WheelData {
     private static final int TIME_BUFFER = 10;
     private static WheelData mInstance;
-    private Timer ridingTimerControl;
+    private TickScheduler.Task ridingTimerControl;
     private BluetoothService mBluetoothService;
 
     private long graph_last_update_time;
     private static final int GRAPH_UPDATE_INTERVAL = 1000; // milliseconds
     private static final int RIDING_SPEED = 200; // 2km/h
-    private final ArrayList<String> xAxis = new ArrayList<>();
-    private final ArrayList<Float> currentAxis = new ArrayList<>();
-    private final ArrayList<Float> speedAxis = new ArrayList<>();
+    // graph points are only added on the decoding thread, the UI reads them in place
+    private final GraphRing graph = new GraphRing(3600000 / GRAPH_UPDATE_INTERVAL);
+    // set by full_reset, the decoding thread clears the graph points with the next frame
+    private volatile boolean graphResetRequested = false;
     // BMS
     private final SmartBms mSmartBms1 = new SmartBms();
     private final SmartBms mSmartBms2 = new SmartBms();
@@ -103,6 +101,8 @@ public class WheelData {
     private long timestamp_raw;
     private long timestamp_last;
     private long mLastLifeData = -1;
+    // fields above are the working frame, the sample is the last published one
+    private volatile TelemetrySample mSample = TelemetrySample.EMPTY;
 
     public BaseAdapter getAdapter() {
         switch (mWheelType) {
@@ -132,10 +132,18 @@ public class WheelData {
     }
 
     public boolean bluetoothCmd(byte[] cmd) {
+        return bluetoothCmd(cmd, WriteQueue.Priority.COMMAND);
+    }
+
+    /**
+     * Queues a command for the wheel, false if it is not connected.
+     * Keep-alive requests use POLL, so they wait behind commands of the user.
+     */
+    public boolean bluetoothCmd(byte[] cmd, WriteQueue.Priority priority) {
         if (mBluetoothService == null) {
             return false;
         }
-        return mBluetoothService.writeWheelCharacteristic(cmd);
+        return mBluetoothService.writeWheelCharacteristic(cmd, priority);
     }
 
     public void setBluetoothService(BluetoothService value) {
@@ -146,10 +154,7 @@ public class WheelData {
         if (mInstance == null)
             mInstance = new WheelData();
         else {
-            if (mInstance.ridingTimerControl != null) {
-                mInstance.ridingTimerControl.cancel();
-                mInstance.ridingTimerControl = null;
-            }
+            mInstance.stopRidingTimerControl();
         }
 
         mInstance.full_reset();
@@ -158,25 +163,35 @@ public class WheelData {
     }
 
     public void startRidingTimerControl() {
-        TimerTask timerTask = new TimerTask() {
-            @Override
-            public void run() {
-                if (mConnectionState && (mSpeed > RIDING_SPEED)) mRidingTime += 1;
-            }
-        };
-        ridingTimerControl = new Timer();
-        ridingTimerControl.scheduleAtFixedRate(timerTask, 0, 1000);
+        ridingTimerControl = TickScheduler.schedule("riding time", 0, 1000, this::ridingTimerTick);
+    }
+
+    /**
+     * Stops the riding time timer, a replay calls ridingTimerTick itself on the recorded time.
+     * Returns true if it was running.
+     */
+    public boolean stopRidingTimerControl() {
+        if (ridingTimerControl != null) {
+            ridingTimerControl.cancel();
+            ridingTimerControl = null;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called once a second, counts the riding time.
+     */
+    public void ridingTimerTick() {
+        if (mConnectionState && (mSpeed > RIDING_SPEED)) mRidingTime += 1;
     }
 
     ///// test purpose, please let it be
     public void startAlarmTest() {
-        new Timer().scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                Context mContext = WheelLog.Companion.getAppContext();
-                Alarms.INSTANCE.checkAlarm(mCalculatedPwm, mContext);
-            }
-        }, 1000, 200000);
+        TickScheduler.schedule("alarm test", 1000, 200000, () -> {
+            Context mContext = WheelLog.Companion.getAppContext();
+            Alarms.INSTANCE.checkAlarm(buildSample(false, 0), mContext);
+        });
 
 //        mCalculatedPwm = 70 / 100.0;
 //        mSpeed = 50_00;
@@ -575,6 +590,7 @@ public class WheelData {
     public void setWheelType(WHEEL_TYPE wheelType) {
         boolean isChanged = wheelType != mWheelType;
         mWheelType = wheelType;
+        LatencyStats.setAdapter(wheelType.toString());
         if (isChanged) {
             Context mContext = WheelLog.Companion.getAppContext();
             Intent intent = new Intent(Constants.ACTION_WHEEL_TYPE_CHANGED);
@@ -629,7 +645,7 @@ public class WheelData {
         if (adapter == null) {
             return 0;
         }
-        return WheelLog.AppConfig.getCellVoltageTiltback() / 100d * adapter.getCellsForWheel();
+        return DecodeSettings.getCurrent().getCellVoltageTiltback() / 100d * adapter.getCellsForWheel();
     }
 
     public boolean isVoltageTiltbackUnsupported() {
@@ -904,16 +920,8 @@ public class WheelData {
         mSmartBms2.reset();
     }
 
-    ArrayList<String> getXAxis() {
-        return xAxis;
-    }
-
-    ArrayList<Float> getCurrentAxis() {
-        return currentAxis;
-    }
-
-    ArrayList<Float> getSpeedAxis() {
-        return speedAxis;
+    GraphRing getGraph() {
+        return graph;
     }
 
     void setConnected(boolean connected) {
@@ -964,7 +972,7 @@ public class WheelData {
     }
 
     public void setBatteryLevel(int battery) {
-        if (WheelLog.AppConfig.getFixedPercents()) {
+        if (DecodeSettings.getCurrent().getFixedPercents()) {
             double maxVoltage = getMaxVoltageForWheel();
             double minVoltage = getVoltageTiltbackForWheel();
             double voltagePercentStep = (maxVoltage - minVoltage) / 100.0;
@@ -981,31 +989,34 @@ public class WheelData {
     }
 
     void decodeResponse(byte[] data, Context mContext) {
-        timestamp_raw = System.currentTimeMillis();//new Date(); //sdf.format(new Date());
-
-        StringBuilder stringBuilder = new StringBuilder(data.length);
-        for (byte aData : data)
-            stringBuilder.append(String.format(Locale.US, "%02X", aData));
-        Timber.i("Received: %s", stringBuilder);
-        if (protoVer != "") {
-            Timber.i("Decode, proto: %s", protoVer);
+        timestamp_raw = PipelineClock.now();
+        long received = LatencyStats.takeFrameReceived();
+
+        TraceRecorder.recordBytes("Received", TraceRecorder.FRAME, data, data.length);
+        boolean new_data;
+        // settings reported by the wheel are written once per notification
+        WheelLog.AppConfig.beginBatch();
+        try {
+            new_data = getAdapter().decode(data);
+        } finally {
+            WheelLog.AppConfig.endBatch();
         }
-        boolean new_data = getAdapter().decode(data);
 
         if (!new_data)
             return;
-        mLastLifeData = System.currentTimeMillis();
+        mLastLifeData = PipelineClock.now();
         resetRideTime();
         updateRideTime();
         setTopSpeed(mSpeed);
         setVoltageSag(mVoltage);
         setMaxTemp(mTemperature);
-        if ((mWheelType == WHEEL_TYPE.KINGSONG) || (mWheelType == WHEEL_TYPE.INMOTION_V2) || WheelLog.AppConfig.getHwPwm()) {
+        DecodeSettings settings = DecodeSettings.getCurrent();
+        if ((mWheelType == WHEEL_TYPE.KINGSONG) || (mWheelType == WHEEL_TYPE.INMOTION_V2) || settings.getHwPwm()) {
             mCalculatedPwm = (double) mOutput / 10000.0;
         } else {
-            double rotationSpeed = WheelLog.AppConfig.getRotationSpeed() / 10d;
-            double rotationVoltage = WheelLog.AppConfig.getRotationVoltage() / 10d;
-            double powerFactor = WheelLog.AppConfig.getPowerFactor() / 100d;
+            double rotationSpeed = settings.getRotationSpeed() / 10d;
+            double rotationVoltage = settings.getRotationVoltage() / 10d;
+            double powerFactor = settings.getPowerFactor() / 100d;
             mCalculatedPwm = mSpeed / (rotationSpeed / rotationVoltage * mVoltage * powerFactor);
         }
         setMaxPwm(mCalculatedPwm);
@@ -1016,24 +1027,23 @@ public class WheelData {
             setPower((int) Math.round(getCurrentDouble() * mVoltage));
         }
 
-        Intent intent = new Intent(Constants.ACTION_WHEEL_DATA_AVAILABLE);
-
-        if (graph_last_update_time + GRAPH_UPDATE_INTERVAL < Calendar.getInstance().getTimeInMillis()) {
-            graph_last_update_time = Calendar.getInstance().getTimeInMillis();
-            intent.putExtra(Constants.INTENT_EXTRA_GRAPH_UPDATE_AVILABLE, true);
-            currentAxis.add((float) getCurrentDouble());
-            speedAxis.add((float) getSpeedDouble());
-            xAxis.add(new SimpleDateFormat("HH:mm:ss", Locale.US).format(Calendar.getInstance().getTime()));
-            if (speedAxis.size() > (3600000 / GRAPH_UPDATE_INTERVAL)) {
-                speedAxis.remove(0);
-                currentAxis.remove(0);
-                xAxis.remove(0);
-            }
+        boolean graphUpdate = false;
+        if (graphResetRequested) {
+            graphResetRequested = false;
+            graph.clear();
+        }
+        if (graph_last_update_time + GRAPH_UPDATE_INTERVAL < timestamp_raw) {
+            graph_last_update_time = timestamp_raw;
+            graphUpdate = true;
+            graph.add(timestamp_raw, (float) getSpeedDouble(), (float) getCurrentDouble());
         }
 
         timestamp_last = timestamp_raw;
-        intent.putExtra("Speed", mSpeed);
-        mContext.sendBroadcast(intent);
+        TelemetrySample sample = buildSample(graphUpdate, received);
+        mSample = sample;
+        LatencyStats.record(LatencyStats.DECODE, sample);
+        TelemetryBus.publish(sample);
+        TelemetryBus.sendLegacyBroadcast(mContext, sample);
 
         if (!mWheelIsReady && getAdapter().isReady()) {
             mWheelIsReady = true;
@@ -1048,6 +1058,41 @@ public class WheelData {
         return mLastLifeData;
     }
 
+    /**
+     * Last decoded frame. Use it instead of separate getters when values must belong to the same frame.
+     */
+    public TelemetrySample getSample() {
+        return mSample;
+    }
+
+    private TelemetrySample buildSample(boolean graphUpdate, long received) {
+        return new TelemetrySample(
+                timestamp_raw,
+                mSpeed,
+                mTopSpeed,
+                mVoltage,
+                mCurrent,
+                mPhaseCurrent,
+                mPower,
+                mTorque,
+                getTemperature(),
+                getTemperature2(),
+                getMaxTemp(),
+                mBattery,
+                mFanStatus,
+                mTotalDistance - mStartTotalDistance,
+                mTotalDistance,
+                mAngle,
+                mRoll,
+                getCalculatedPwm(),
+                getMaxPwm(),
+                getMaxCurrentDouble(),
+                getMaxPowerDouble(),
+                mModeStr,
+                graphUpdate,
+                received);
+    }
+
     private void CheckMuteMusic() {
         if (!WheelLog.AppConfig.getUseStopMusic())
             return;
@@ -1059,16 +1104,16 @@ public class WheelData {
             MainActivity.audioManager.setStreamMute(AudioManager.STREAM_MUSIC, true);
         } else {
             if (mLowSpeedMusicTime == 0)
-                mLowSpeedMusicTime = System.currentTimeMillis();
+                mLowSpeedMusicTime = PipelineClock.now();
 
-            if ((System.currentTimeMillis() - mLowSpeedMusicTime) >= 1500)
+            if ((PipelineClock.now() - mLowSpeedMusicTime) >= 1500)
                 MainActivity.audioManager.setStreamMute(AudioManager.STREAM_MUSIC, false);
         }
     }
 
     public void resetRideTime() {
         if (rideStartTime == 0) {
-            rideStartTime = Calendar.getInstance().getTimeInMillis();
+            rideStartTime = PipelineClock.now();
             mRidingTime = 0;
         }
     }
@@ -1088,7 +1133,7 @@ public class WheelData {
     }
 
     public void updateRideTime() {
-        int currentTime = (int) (Calendar.getInstance().getTimeInMillis() - rideStartTime) / 1000;
+        int currentTime = (int) (PipelineClock.now() - rideStartTime) / 1000;
         setCurrentTime(currentTime);
     }
 
@@ -1099,14 +1144,14 @@ public class WheelData {
         if (mWheelType == WHEEL_TYPE.NINEBOT) NinebotAdapter.stopTimer();
         mWheelType = WHEEL_TYPE.Unknown;
         //mWheelType = WHEEL_TYPE.GOTWAY; //test
-        xAxis.clear();
-        speedAxis.clear();
-        currentAxis.clear();
+        graphResetRequested = true;
+        graph.clear();
         reset();
         resetBmsData();
     }
 
     void reset() {
+        mSample = TelemetrySample.EMPTY;
         mLowSpeedMusicTime = 0;
         mSpeed = 0;
         mTorque = 0;
@@ -1152,10 +1197,9 @@ public class WheelData {
         mWheelIsReady = false;
     }
 
-    boolean detectWheel(String deviceAddress, Context mContext, int servicesResId) {
+    boolean detectWheel(String deviceAddress, Context mContext) {
         WheelLog.AppConfig.setLastMac(deviceAddress);
         String advData = WheelLog.AppConfig.getAdvDataForWheel();
-        String adapterName = "";
         protoVer = "";
         if (StringUtil.inArray(advData, new String[]{"4e421300000000ec", "4e421302000000ea",})) {
             protoVer = "S2";
@@ -1163,8 +1207,6 @@ public class WheelData {
             protoVer = "Mini";
         }
         Timber.i("ProtoVer %s, adv: %s", protoVer, advData );
-        boolean detected_wheel = false;
-        String text = StringUtil.Companion.getRawTextResource(mContext, servicesResId);
         if (mBluetoothService == null) {
             Timber.wtf("[error] BluetoothService is null. The wheel could not be detected.");
             return false;
@@ -1173,59 +1215,18 @@ public class WheelData {
         if (wheelServices == null) {
             return false;
         }
-        try {
-            JSONArray arr = new JSONArray(text);
-            for (int i = 0; i < arr.length() && !detected_wheel; i++) {
-                JSONObject services = arr.getJSONObject(i);
-                if (services.length() - 1 != wheelServices.size()) {
-                    Timber.i("Services len not corresponds, go to the next");
-                    continue;
-                }
-                adapterName = services.getString("adapter");
-                Timber.i("Searching for %s", adapterName);
-                Iterator<String> iterator = services.keys();
-                // skip adapter key
-                iterator.next();
-                boolean go_next_adapter = false;
-                while (iterator.hasNext()) {
-                    String keyName = iterator.next();
-                    Timber.i("Key name %s", keyName);
-                    UUID s_uuid = UUID.fromString(keyName);
-                    BluetoothGattService service = mBluetoothService.getWheelService(s_uuid);
-                    if (service == null) {
-                        Timber.i("No such service");
-                        go_next_adapter = true;
-                        break;
-                    }
-
-                    JSONArray service_uuid = services.getJSONArray(keyName);
-                    if (service_uuid.length() != service.getCharacteristics().size()) {
-                        Timber.i("Characteristics len not corresponds, go to the next");
-                        go_next_adapter = true;
-                        break;
-                    }
-                    for (int j = 0; j < service_uuid.length(); j++) {
-                        UUID c_uuid = UUID.fromString(service_uuid.getString(j));
-                        Timber.i("UUid %s", service_uuid.getString(j));
-                        BluetoothGattCharacteristic characteristic = service.getCharacteristic(c_uuid);
-                        if (characteristic == null) {
-                            Timber.i("UUid not found");
-                            go_next_adapter = true;
-                            break;
-                        } else {Timber.i("UUid found");}
-                    }
-                    if (go_next_adapter) {
-                        break;
-                    }
-                }
-                if (!go_next_adapter) {
-                    Timber.i("Wheel Detected as %s", adapterName);
-                    detected_wheel = true;
-                }
+        String signature = WheelDetectionIndex.signature(wheelServices);
+        // a reconnecting wheel is checked against the adapter it was detected with before
+        String adapterName = WheelDetectionIndex.cachedAdapter(WheelLog.AppConfig.getDetectedAdapterForWheel(), signature);
+        if (adapterName == null) {
+            adapterName = WheelDetectionIndex.getInstance(mContext).find(signature);
+            if (adapterName != null) {
+                WheelLog.AppConfig.setDetectedAdapterForWheel(WheelDetectionIndex.cacheEntry(adapterName, signature));
             }
-        } catch (JSONException e) {
-            e.printStackTrace();
+        } else {
+            Timber.i("Wheel known as %s", adapterName);
         }
+        boolean detected_wheel = adapterName != null;
 
         if (detected_wheel) {
             Timber.i("Protocol recognized as %s", adapterName);
@@ -1353,6 +1354,7 @@ public class WheelData {
                 return true;
             }
         } else {
+            WheelLog.AppConfig.setDetectedAdapterForWheel("");
             WheelLog.AppConfig.setLastMac("");
             Timber.i("Protocol recognized as Unknown");
             for (BluetoothGattService service : wheelServices) {
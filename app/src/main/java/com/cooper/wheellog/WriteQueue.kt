@@ -0,0 +1,242 @@
+package com.cooper.wheellog
+
+import com.cooper.wheellog.utils.Constants.WHEEL_TYPE
+import timber.log.Timber
+import java.util.ArrayDeque
+import kotlin.math.min
+
+/**
+ * Commands to the wheel, written one BLE write at a time. The next write starts from the write
+ * completion callback, so callers never wait for the link.
+ *
+ * Safety commands go ahead of user commands, both go ahead of keep-alive polls.
+ * A poll equal to one that is still waiting is not queued again.
+ * [T] is the characteristic a command is written to.
+ */
+class WriteQueue<T>(private val link: Link<T>) {
+
+    interface Link<T> {
+        /** Starts a BLE write, false if it can't be started */
+        fun write(target: T, chunk: ByteArray): Boolean
+
+        /** Runs [action] after [delay] ms */
+        fun postDelayed(action: Runnable, delay: Long)
+    }
+
+    fun interface Callback {
+        /** [success] is false if the command was not written completely */
+        fun onComplete(success: Boolean)
+    }
+
+    enum class Priority {
+        /** horn and other commands that must not wait */
+        SAFETY,
+        /** user actions and settings */
+        COMMAND,
+        /** keep-alive and data requests, repeated anyway */
+        POLL
+    }
+
+    /**
+     * Splitting of the commands of a protocol: writes of at most [chunkSize] bytes, 0 for any size,
+     * [pause] ms between the writes of one command.
+     */
+    class Pacing(val chunkSize: Int, val pause: Long) {
+        companion object {
+            @JvmField
+            val NONE = Pacing(0, 0)
+
+            @JvmStatic
+            fun forType(wheelType: WHEEL_TYPE): Pacing {
+                return when (wheelType) {
+                    WHEEL_TYPE.INMOTION -> Pacing(20, 20)
+                    else -> NONE
+                }
+            }
+        }
+    }
+
+    private class Command<T>(
+        val target: T,
+        val data: ByteArray,
+        val priority: Priority,
+        val pacing: Pacing
+    ) {
+        val callbacks = ArrayList<Callback>(1)
+        var offset = 0
+    }
+
+    private val queues = Array(Priority.values().size) { ArrayDeque<Command<T>>() }
+    private var current: Command<T>? = null
+    // chunk of current in flight, a completion for any other write is late and ignored
+    private var written: ByteArray? = null
+    // a write is in progress
+    private var busy = false
+    // waiting between the writes of a command
+    private var paused = false
+    // completions and timeouts of a write started before clear() are ignored
+    private var generation = 0
+
+    var writes = 0L
+        private set
+    var mergedPolls = 0L
+        private set
+    var lateCompletions = 0L
+        private set
+
+    val size: Int
+        @Synchronized get() = queues.sumOf { it.size } + if (current != null) 1 else 0
+
+    /**
+     * Queues [data] for [target], [callback] is called once it is written or dropped.
+     */
+    @JvmOverloads
+    fun enqueue(
+        target: T,
+        data: ByteArray,
+        priority: Priority,
+        pacing: Pacing = Pacing.NONE,
+        callback: Callback? = null
+    ) {
+        val failed = ArrayList<Command<T>>()
+        synchronized(this) {
+            if (priority == Priority.POLL) {
+                val same = queues[priority.ordinal].firstOrNull { it.target == target && it.data.contentEquals(data) }
+                if (same != null) {
+                    mergedPolls++
+                    callback?.let { same.callbacks.add(it) }
+                    return
+                }
+            }
+            // callers may reuse the array before it is written
+            val command = Command(target, data.copyOf(), priority, pacing)
+            callback?.let { command.callbacks.add(it) }
+            queues[priority.ordinal].add(command)
+            pump(failed)
+        }
+        complete(failed, false)
+    }
+
+    /**
+     * Called from the BLE write callback with the characteristic and the value written.
+     * A completion of a write that already timed out doesn't match the write in progress and
+     * is ignored, it is not taken for the completion of the next one.
+     */
+    fun onWriteComplete(target: T, chunk: ByteArray, success: Boolean) {
+        val writeGeneration = synchronized(this) {
+            val command = current
+            if (!busy || command == null || command.target != target || written?.contentEquals(chunk) != true) {
+                lateCompletions++
+                return
+            }
+            generation
+        }
+        writeComplete(writeGeneration, success)
+    }
+
+    /**
+     * Drops all commands, their callbacks get false. Called on disconnect.
+     */
+    fun clear() {
+        val dropped = ArrayList<Command<T>>()
+        synchronized(this) {
+            generation++
+            current?.let { dropped.add(it) }
+            current = null
+            written = null
+            busy = false
+            paused = false
+            for (queue in queues) {
+                dropped.addAll(queue)
+                queue.clear()
+            }
+        }
+        complete(dropped, false)
+    }
+
+    private fun writeComplete(writeGeneration: Int, success: Boolean) {
+        val done = ArrayList<Command<T>>()
+        val failed = ArrayList<Command<T>>()
+        synchronized(this) {
+            val command = current
+            if (writeGeneration != generation || !busy || command == null) {
+                return
+            }
+            generation++
+            busy = false
+            written = null
+            if (!success) {
+                failed.add(command)
+                current = null
+            } else if (command.offset >= command.data.size) {
+                done.add(command)
+                current = null
+            } else if (command.pacing.pause > 0) {
+                paused = true
+                val pauseGeneration = generation
+                link.postDelayed({ resume(pauseGeneration) }, command.pacing.pause)
+            }
+            pump(failed)
+        }
+        complete(failed, false)
+        complete(done, true)
+    }
+
+    private fun resume(pauseGeneration: Int) {
+        val failed = ArrayList<Command<T>>()
+        synchronized(this) {
+            if (pauseGeneration != generation || !paused) {
+                return
+            }
+            paused = false
+            pump(failed)
+        }
+        complete(failed, false)
+    }
+
+    /**
+     * Starts the next write if none is in progress. Commands that fail to start are added to [failed].
+     */
+    private fun pump(failed: MutableList<Command<T>>) {
+        while (!busy && !paused) {
+            val command = current ?: queues.firstNotNullOfOrNull { it.poll() } ?: return
+            current = command
+            val chunkSize = if (command.pacing.chunkSize > 0) command.pacing.chunkSize else command.data.size
+            val end = min(command.data.size, command.offset + chunkSize)
+            val chunk = if (command.offset == 0 && end == command.data.size) {
+                command.data
+            } else {
+                command.data.copyOfRange(command.offset, end)
+            }
+            if (!link.write(command.target, chunk)) {
+                Timber.i("Unable to write %s command", command.priority)
+                failed.add(command)
+                current = null
+                continue
+            }
+            writes++
+            command.offset = end
+            written = chunk
+            busy = true
+            val writeGeneration = generation
+            link.postDelayed({ writeComplete(writeGeneration, false) }, WRITE_TIMEOUT)
+        }
+    }
+
+    private fun complete(commands: List<Command<T>>, success: Boolean) {
+        for (command in commands) {
+            for (callback in command.callbacks) {
+                try {
+                    callback.onComplete(success)
+                } catch (e: Exception) {
+                    Timber.e(e, "Write callback failed")
+                }
+            }
+        }
+    }
+
+    companion object {
+        /** ms, a write without completion is given up */
+        const val WRITE_TIMEOUT = 1000L
+    }
+}
@@ -32,22 +32,23 @@ class WearOs(var context: Context): MessageClient.OnMessageReceivedListener, Sha
             return
         }
         val wd = WheelData.getInstance()
+        val sample = wd.sample
         val dataRequest = PutDataMapRequest.create(Constants.wearOsDataItemPath)
         dataRequest.dataMap.apply {
-            putDouble(Constants.wearOsSpeedData, wd.speedDouble)
-            putDouble(Constants.wearOsMaxSpeedData, wd.topSpeed.toDouble())
-            putDouble(Constants.wearOsVoltageData, wd.voltageDouble)
-            putDouble(Constants.wearOsCurrentData, wd.currentDouble)
-            putDouble(Constants.wearOsMaxCurrentData, wd.maxCurrentDouble)
-            putDouble(Constants.wearOsPowerData, wd.powerDouble)
-            putDouble(Constants.wearOsMaxPowerData, wd.maxPowerDouble)
-            putDouble(Constants.wearOsPWMData, wd.calculatedPwm)
-            putDouble(Constants.wearOsMaxPWMData, wd.maxPwm)
-            putDouble(Constants.wearOsTemperatureData, wd.temperature.toDouble())
-            putDouble(Constants.wearOsMaxTemperatureData, wd.maxTemp.toDouble())
-            putInt(Constants.wearOsBatteryData,wd.batteryLevel)
+            putDouble(Constants.wearOsSpeedData, sample.speedDouble)
+            putDouble(Constants.wearOsMaxSpeedData, sample.topSpeed.toDouble())
+            putDouble(Constants.wearOsVoltageData, sample.voltageDouble)
+            putDouble(Constants.wearOsCurrentData, sample.currentDouble)
+            putDouble(Constants.wearOsMaxCurrentData, sample.maxCurrentDouble)
+            putDouble(Constants.wearOsPowerData, sample.powerDouble)
+            putDouble(Constants.wearOsMaxPowerData, sample.maxPowerDouble)
+            putDouble(Constants.wearOsPWMData, sample.calculatedPwm)
+            putDouble(Constants.wearOsMaxPWMData, sample.maxPwm)
+            putDouble(Constants.wearOsTemperatureData, sample.temperature.toDouble())
+            putDouble(Constants.wearOsMaxTemperatureData, sample.maxTemp.toDouble())
+            putInt(Constants.wearOsBatteryData, sample.batteryLevel)
             putInt(Constants.wearOsBatteryLowData, wd.batteryLowestLevel)
-            putDouble(Constants.wearOsDistanceData, wd.distanceDouble)
+            putDouble(Constants.wearOsDistanceData, sample.distanceDouble)
             putString(Constants.wearOsUnitData,
                     if (WheelLog.AppConfig.useMph)
                         context.getString(R.string.mph)
@@ -55,9 +56,9 @@ class WearOs(var context: Context): MessageClient.OnMessageReceivedListener, Sha
                         context.getString(R.string.kmh))
             putBoolean(Constants.wearOsCurrentOnDialData, WheelLog.AppConfig.currentOnDial)
             putInt(Constants.wearOsAlarmData, Alarms.alarm)
-            putLong(Constants.wearOsTimestampData, wd.lastLifeData)
+            putLong(Constants.wearOsTimestampData, sample.timestamp)
             val sdf = SimpleDateFormat("HH:mm", Locale.US)
-            putString(Constants.wearOsTimeStringData, sdf.format(Date(wd.lastLifeData)))
+            putString(Constants.wearOsTimeStringData, sdf.format(Date(sample.timestamp)))
         }
         val request = dataRequest.asPutDataRequest()
         request.setUrgent()
@@ -11,6 +11,7 @@ import androidx.viewpager2.widget.ViewPager2
 import com.cooper.wheellog.BuildConfig
 import com.cooper.wheellog.R
 import com.cooper.wheellog.utils.LogHeaderEnum
+import com.cooper.wheellog.utils.TripLogReader
 import com.cooper.wheellog.utils.SomeUtil.Companion.getColorEx
 import com.github.mikephil.charting.components.YAxis
 import com.github.mikephil.charting.data.Entry
@@ -23,7 +24,6 @@ import timber.log.Timber
 import java.io.*
 import java.text.SimpleDateFormat
 import java.util.*
-import kotlin.collections.HashMap
 
 class MapActivity : AppCompatActivity() {
 
@@ -38,7 +38,6 @@ class MapActivity : AppCompatActivity() {
     )
     private val viewModel: MapViewModel by viewModels()
 
-    private val header = HashMap<LogHeaderEnum, Int>()
     private val backgroundScope: CoroutineScope = CoroutineScope(Dispatchers.Default + Job())
 
     override fun onCreate(savedInstanceState: Bundle?) {
@@ -117,15 +116,15 @@ class MapActivity : AppCompatActivity() {
             return tripData.apply { errorMessage = "Failed to create inputStream."}
         }
 
-        val reader = BufferedReader(InputStreamReader(inputStream))
-        val headerLine = reader.readLine().split(",").toTypedArray()
-        for (i in headerLine.indices) {
-            try {
-                header[LogHeaderEnum.valueOf(headerLine[i].uppercase())] = i
-            } catch (ignored: IllegalArgumentException) {
-            }
+        val reader = try {
+            TripLogReader.open(inputStream)
+        } catch (ex: IOException) {
+            inputStream.close()
+            Timber.wtf(ex.localizedMessage)
+            // TODO: localize me
+            return tripData.apply { errorMessage = "Could not open the file " + ex.localizedMessage }
         }
-        if (!header.containsKey(LogHeaderEnum.LATITUDE) || !header.containsKey(LogHeaderEnum.LONGITUDE)) {
+        if (!reader.hasColumn(LogHeaderEnum.LATITUDE) || !reader.hasColumn(LogHeaderEnum.LONGITUDE)) {
             inputStream.close()
             // TODO: localize me
             Timber.wtf("%s file does not contain geolocation data.", extras.get("title"))
@@ -150,21 +149,20 @@ class MapActivity : AppCompatActivity() {
 
         try {
             var i = 0
-            reader.forEachLine { line ->
-                val row = line.split(",")
-                val latitudeNew = row[header[LogHeaderEnum.LATITUDE]!!].toDoubleOrNull() ?: 0.0
-                val longitudeNew = row[header[LogHeaderEnum.LONGITUDE]!!].toDoubleOrNull() ?: 0.0
+            while (reader.next()) {
+                val latitudeNew = reader.getDouble(LogHeaderEnum.LATITUDE)
+                val longitudeNew = reader.getDouble(LogHeaderEnum.LONGITUDE)
                 // stats
-                val batteryLevel = row[header[LogHeaderEnum.BATTERY_LEVEL]!!].toIntOrNull() ?: 0
+                val batteryLevel = reader.getInt(LogHeaderEnum.BATTERY_LEVEL)
                 endBattery = batteryLevel
-                val voltage = row[header[LogHeaderEnum.VOLTAGE]!!].toDoubleOrNull() ?: 0.0
-                val current = row[header[LogHeaderEnum.CURRENT]!!].toDoubleOrNull() ?: 0.0
-                val power = row[header[LogHeaderEnum.POWER]!!].toDoubleOrNull() ?: 0.0
-                var speed = row[header[LogHeaderEnum.SPEED]!!].toDoubleOrNull() ?: 0.0
-                val temperature = row[header[LogHeaderEnum.SYSTEM_TEMP]!!].toIntOrNull() ?: 0
-                val timeString = row[header[LogHeaderEnum.TIME]!!]
+                val voltage = reader.getDouble(LogHeaderEnum.VOLTAGE)
+                val current = reader.getDouble(LogHeaderEnum.CURRENT)
+                val power = reader.getDouble(LogHeaderEnum.POWER)
+                var speed = reader.getDouble(LogHeaderEnum.SPEED)
+                val temperature = reader.getInt(LogHeaderEnum.SYSTEM_TEMP)
+                val timeString = reader.getString(LogHeaderEnum.TIME)
                 val time = sdfTime.parse(timeString)!!.time / 100f
-                val pwm = row[header[LogHeaderEnum.PWM]!!].toDoubleOrNull() ?: 0.0
+                val pwm = reader.getDouble(LogHeaderEnum.PWM)
                 entriesVoltage.add(Entry(time, voltage.toFloat()))
                 entriesCurrent.add(Entry(time, current.toFloat()))
                 entriesPower.add(Entry(time, power.toFloat()))
@@ -177,9 +175,9 @@ class MapActivity : AppCompatActivity() {
                     && latitudeNew != 0.0 && longitudeNew != 0.0) {
                     latitude = latitudeNew
                     longitude = longitudeNew
-                    val altitude = row[header[LogHeaderEnum.GPS_ALT]!!].toDoubleOrNull() ?: 0.0
-                    speed = row[header[LogHeaderEnum.GPS_SPEED]!!].toDoubleOrNull() ?: 0.0
-                    distance = row[header[LogHeaderEnum.DISTANCE]!!].toIntOrNull() ?: 0
+                    val altitude = reader.getDouble(LogHeaderEnum.GPS_ALT)
+                    speed = reader.getDouble(LogHeaderEnum.GPS_SPEED)
+                    distance = reader.getInt(LogHeaderEnum.DISTANCE)
 
                     geoLine.add(LogGeoPoint(latitude, longitude, altitude).also {
                         it.speed = speed
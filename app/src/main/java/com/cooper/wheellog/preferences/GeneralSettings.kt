@@ -1,6 +1,8 @@
 package com.cooper.wheellog.preferences
 
 import android.content.Context
+import android.widget.Toast
+import androidx.preference.EditTextPreference
 import androidx.preference.Preference
 import androidx.preference.PreferenceCategory
 import androidx.preference.PreferenceScreen
@@ -9,6 +11,8 @@ import com.cooper.wheellog.R
 import com.cooper.wheellog.WheelData
 import com.cooper.wheellog.WheelLog
 import com.cooper.wheellog.presentation.preferences.SeekBarPreference
+import com.cooper.wheellog.utils.AlarmField
+import com.cooper.wheellog.utils.AlarmRules
 import com.cooper.wheellog.utils.Constants
 import com.cooper.wheellog.utils.MathsUtil
 
@@ -249,6 +253,17 @@ class GeneralSettings(context: Context, ps: PreferenceScreen) : BaseSettingsClas
                 setDefaultValue(0)
                 addPreference(this)
             }
+            SeekBarPreference(context).apply {
+                key = mac + getString(R.string.pwm_prediction_horizon)
+                title = getString(R.string.pwm_prediction_horizon_title)
+                summary = getString(R.string.pwm_prediction_horizon_description)
+                min = 0
+                max = 3000
+                unit = "ms"
+                increment = 100
+                setDefaultValue(0)
+                addPreference(this)
+            }
         }
         PreferenceCategory(context).apply {
             title = getString(R.string.current_alarm_title)
@@ -295,6 +310,30 @@ class GeneralSettings(context: Context, ps: PreferenceScreen) : BaseSettingsClas
                 addPreference(this)
             }
         }
+        PreferenceCategory(context).apply {
+            title = getString(R.string.alarm_rules_section_title)
+            ps.addPreference(this)
+            EditTextPreference(context).apply {
+                key = mac + getString(R.string.alarm_rules)
+                title = getString(R.string.alarm_rules_title)
+                dialogMessage = context.getString(R.string.alarm_rules_description, AlarmField.keys)
+                summaryProvider = EditTextPreference.SimpleSummaryProvider.getInstance()
+                setDefaultValue("")
+                // one rule per line
+                setOnBindEditTextListener {
+                    it.setSingleLine(false)
+                    it.minLines = 3
+                }
+                setOnPreferenceChangeListener { _, newValue ->
+                    val error = AlarmRules.errors(newValue as String).firstOrNull()
+                    if (error != null) {
+                        Toast.makeText(context, context.getString(R.string.alarm_rules_error, error.first, error.second), Toast.LENGTH_LONG).show()
+                    }
+                    error == null
+                }
+                addPreference(this)
+            }
+        }
     }
 
     fun switchAlarmsIsVisible(fragment: PreferencesFragment) {
@@ -308,7 +347,8 @@ class GeneralSettings(context: Context, ps: PreferenceScreen) : BaseSettingsClas
         )
         val preferencesCommon = arrayOf(
                 getString(R.string.alarm_current),
-                getString(R.string.alarm_temperature)
+                getString(R.string.alarm_temperature),
+                getString(R.string.alarm_rules)
         )
         val preferencesKs = arrayOf(
                 getString(R.string.rotation_voltage),
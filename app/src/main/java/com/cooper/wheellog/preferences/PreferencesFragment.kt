@@ -365,12 +365,6 @@ class PreferencesFragment : PreferenceFragmentCompat(), OnSharedPreferenceChange
             }
             R.string.notification_buttons -> WheelLog.Notifications.update()
             R.string.beep_on_volume_up -> WheelLog.VolumeKeyController.setActive(wd.isConnected && WheelLog.AppConfig.useBeepOnVolumeUp)
-            R.string.use_reconnect -> {
-                if (WheelLog.AppConfig.useReconnect)
-                    wd.bluetoothService?.startReconnectTimer()
-                else
-                    wd.bluetoothService?.stopReconnectTimer()
-            }
             R.string.alarm_factor2 -> {
                 if (WheelLog.AppConfig.alarmFactor2 <= WheelLog.AppConfig.alarmFactor1) {
                     WheelLog.AppConfig.alarmFactor2 = MathsUtil.clamp(WheelLog.AppConfig.alarmFactor1 + 10, 1,100)
@@ -227,6 +227,37 @@ class SpeedSettings(context: Context, ps: PreferenceScreen) : BaseSettingsClass(
             summary = getString(R.string.use_reconnect_description)
             ps.addPreference(this)
         }
+        SeekBarPreference(context).apply {
+            key = getString(R.string.reconnect_stall_time)
+            title = getString(R.string.reconnect_stall_time_title)
+            summary = getString(R.string.reconnect_stall_time_description)
+            min = 300
+            max = 5000
+            unit = "ms"
+            increment = 50
+            setDefaultValue(WheelLog.AppConfig.reconnectStallTime)
+            ps.addPreference(this)
+            dependency = getString(R.string.use_reconnect)
+        }
+        SeekBarPreference(context).apply {
+            key = getString(R.string.reconnect_loss)
+            title = getString(R.string.reconnect_loss_title)
+            summary = getString(R.string.reconnect_loss_description)
+            min = 0
+            max = 50
+            unit = "%"
+            increment = 1
+            setDefaultValue(WheelLog.AppConfig.reconnectLoss)
+            ps.addPreference(this)
+            dependency = getString(R.string.use_reconnect)
+        }
+        SwitchPreference(context).apply {
+            key = getString(R.string.legacy_data_broadcast)
+            title = getString(R.string.legacy_data_broadcast_title)
+            summary = getString(R.string.legacy_data_broadcast_description)
+            setDefaultValue(WheelLog.AppConfig.legacyDataBroadcast)
+            ps.addPreference(this)
+        }
         PreferenceCategory(context).apply {
             title = getString(R.string.beep_category)
             ps.addPreference(this)
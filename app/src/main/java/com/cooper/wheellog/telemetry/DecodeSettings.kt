@@ -0,0 +1,87 @@
+package com.cooper.wheellog.telemetry
+
+import com.cooper.wheellog.AppConfig
+import com.cooper.wheellog.WheelLog
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Settings read while decoding frames, compiled once from [AppConfig].
+ * The snapshot is rebuilt after any preference change (see [AppConfig]), so the decode path
+ * reads plain fields instead of SharedPreferences lookups.
+ */
+data class DecodeSettings(
+    val useRatio: Boolean,
+    val useBetterPercents: Boolean,
+    val fixedPercents: Boolean,
+    /** Gotway/Veteran sign mode: 0 - absolute values, 1 or -1 - sign multiplier */
+    val gotwayNegative: Int,
+    /** Gotway voltage type, -1 if not set */
+    val gotwayVoltage: Int,
+    val hwPwm: Boolean,
+    val rotationSpeed: Int,
+    val rotationVoltage: Int,
+    val powerFactor: Int,
+    val cellVoltageTiltback: Int
+) {
+    val gotwayVoltageScaler: Double = when (gotwayVoltage) {
+        1 -> 1.25
+        2 -> 1.5
+        3 -> 1.7380952380952380952380952380952
+        4 -> 2.0
+        else -> 1.0
+    }
+
+    val gotwayCells: Int = when (gotwayVoltage) {
+        0 -> 16
+        1 -> 20
+        else -> 24
+    }
+
+    companion object {
+        private class Snapshot(val settings: DecodeSettings, val config: AppConfig, val generation: Int)
+
+        // bumped by invalidate, a snapshot built from older preferences is not used
+        private val generation = AtomicInteger()
+        @Volatile
+        private var cached: Snapshot? = null
+
+        /**
+         * Current snapshot. It is built lazily after [invalidate] or when AppConfig is replaced.
+         */
+        @JvmStatic
+        val current: DecodeSettings
+            get() {
+                val config = WheelLog.AppConfig
+                val snapshot = cached
+                if (snapshot != null && snapshot.config === config && snapshot.generation == generation.get()) {
+                    return snapshot.settings
+                }
+                // taken before reading the preferences, so a change while building outdates the snapshot
+                val building = generation.get()
+                return from(config).also {
+                    cached = Snapshot(it, config, building)
+                }
+            }
+
+        @JvmStatic
+        fun invalidate() {
+            generation.incrementAndGet()
+        }
+
+        @JvmStatic
+        fun from(config: AppConfig): DecodeSettings {
+            return DecodeSettings(
+                useRatio = config.useRatio,
+                useBetterPercents = config.useBetterPercents,
+                fixedPercents = config.fixedPercents,
+                gotwayNegative = config.gotwayNegative.toIntOrNull() ?: 0,
+                gotwayVoltage = config.gotwayVoltage.toIntOrNull() ?: -1,
+                hwPwm = config.hwPwm,
+                rotationSpeed = config.rotationSpeed,
+                rotationVoltage = config.rotationVoltage,
+                powerFactor = config.powerFactor,
+                cellVoltageTiltback = config.cellVoltageTiltback
+            )
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.cooper.wheellog.telemetry
+
+import android.os.Process
+import android.os.SystemClock
+import timber.log.Timber
+import java.util.UUID
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * Decodes BLE notifications outside of the main thread.
+ * BLE callbacks only copy bytes into a [FrameRing], everything else runs here
+ * and the UI receives only the published [TelemetrySample].
+ */
+class DecodeThread(private val handler: FrameHandler) : Thread("WheelLog-decode") {
+
+    fun interface FrameHandler {
+        /** [timestamp] is SystemClock.elapsedRealtime() when the notification arrived */
+        fun onFrame(data: ByteArray, characteristic: UUID?, timestamp: Long)
+    }
+
+    private val ring = FrameRing()
+    // adapters take whole arrays, so keep one reusable array per notification length
+    private val scratch = arrayOfNulls<ByteArray>(FrameRing.MAX_FRAME_SIZE + 1)
+    private val consumer = FrameRing.Consumer { buffer, length, characteristic, timestamp ->
+        val data = scratch[length] ?: ByteArray(length).also { scratch[length] = it }
+        System.arraycopy(buffer, 0, data, 0, length)
+        // the ring keeps ns for the latency stats, handlers get ms
+        LatencyStats.frameReceived(timestamp)
+        try {
+            handler.onFrame(data, characteristic, timestamp / 1_000_000)
+        } catch (e: Exception) {
+            Timber.e(e, "Decode failed")
+        }
+    }
+
+    /** false once [quit] was called, the frame being decoded may still finish */
+    @Volatile
+    var running = true
+        private set
+
+    val droppedFrames: Long
+        get() = ring.dropped
+
+    init {
+        isDaemon = true
+    }
+
+    /**
+     * Called from the BLE callback thread.
+     */
+    fun post(value: ByteArray, characteristic: UUID?): Boolean {
+        if (!ring.offer(value, characteristic, SystemClock.elapsedRealtimeNanos())) {
+            Timber.w("Decode queue overflow, dropped %d", ring.dropped)
+            return false
+        }
+        LockSupport.unpark(this)
+        return true
+    }
+
+    override fun run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY)
+        while (running) {
+            if (ring.drain(consumer) == 0) {
+                LockSupport.park(this)
+            }
+        }
+    }
+
+    fun quit() {
+        running = false
+        LockSupport.unpark(this)
+    }
+}
@@ -0,0 +1,76 @@
+package com.cooper.wheellog.telemetry
+
+import java.util.UUID
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Single-producer/single-consumer queue of BLE notifications.
+ * Slots are preallocated; the producer copies bytes into a slot and the consumer reads them in place,
+ * so the hand-off needs neither locks nor allocations.
+ */
+class FrameRing(capacity: Int = DEFAULT_CAPACITY) {
+    private val size = Integer.highestOneBit(maxOf(capacity, 2) - 1) shl 1
+    private val mask = (size - 1).toLong()
+    private val frames = Array(size) { ByteArray(MAX_FRAME_SIZE) }
+    private val lengths = IntArray(size)
+    private val characteristics = arrayOfNulls<UUID>(size)
+    private val timestamps = LongArray(size)
+
+    // next slot to read, written only by consumer
+    private val head = AtomicLong()
+    // next slot to write, written only by producer
+    private val tail = AtomicLong()
+
+    /** Frames rejected because the queue was full or the frame was too big. */
+    @Volatile
+    var dropped = 0L
+        private set
+
+    val isEmpty: Boolean
+        get() = head.get() == tail.get()
+
+    fun interface Consumer {
+        /** [buffer] is valid only during the call, the first [length] bytes belong to the frame. */
+        fun accept(buffer: ByteArray, length: Int, characteristic: UUID?, timestamp: Long)
+    }
+
+    /**
+     * Producer side. Returns false if the frame was dropped.
+     */
+    fun offer(value: ByteArray, characteristic: UUID?, timestamp: Long): Boolean {
+        val t = tail.get()
+        if (value.size > MAX_FRAME_SIZE || t - head.get() >= size) {
+            dropped++
+            return false
+        }
+        val i = (t and mask).toInt()
+        System.arraycopy(value, 0, frames[i], 0, value.size)
+        lengths[i] = value.size
+        characteristics[i] = characteristic
+        timestamps[i] = timestamp
+        tail.lazySet(t + 1)
+        return true
+    }
+
+    /**
+     * Consumer side. Passes all queued frames to [consumer] and returns their count.
+     */
+    fun drain(consumer: Consumer): Int {
+        var h = head.get()
+        val t = tail.get()
+        val count = (t - h).toInt()
+        while (h < t) {
+            val i = (h and mask).toInt()
+            consumer.accept(frames[i], lengths[i], characteristics[i], timestamps[i])
+            h++
+            head.lazySet(h)
+        }
+        return count
+    }
+
+    companion object {
+        const val DEFAULT_CAPACITY = 64
+        // maximum ATT payload
+        const val MAX_FRAME_SIZE = 512
+    }
+}
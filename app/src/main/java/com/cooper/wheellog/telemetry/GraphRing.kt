@@ -0,0 +1,61 @@
+package com.cooper.wheellog.telemetry
+
+/**
+ * Speed and current points of the main graph, written by the decode thread and read by the UI.
+ * Points are appended into preallocated slots and published with a volatile count, readers take
+ * the range [first]..[end] and read it in place instead of the writer copying the lists.
+ * The ring keeps [SLACK] slots more than it shows, so a reader has that many appends
+ * before the oldest visible point is overwritten.
+ */
+class GraphRing(val maxPoints: Int) {
+    private val capacity = maxPoints + SLACK
+    private val times = LongArray(capacity)
+    private val speeds = FloatArray(capacity)
+    private val currents = FloatArray(capacity)
+
+    // points ever added, written only by the decode thread
+    @Volatile
+    private var count = 0L
+    // first point after the last clear()
+    @Volatile
+    private var start = 0L
+
+    /** End of the points added so far, exclusive. */
+    val end: Long
+        get() = count
+
+    /**
+     * Decode thread only.
+     */
+    fun add(time: Long, speed: Float, current: Float) {
+        val i = slot(count)
+        times[i] = time
+        speeds[i] = speed
+        currents[i] = current
+        count++
+    }
+
+    /**
+     * Hides all points added so far, may be called from any thread.
+     */
+    fun clear() {
+        start = count
+    }
+
+    /** First visible point for a range ending at [end]. */
+    fun first(end: Long): Long {
+        return maxOf(start, end - maxPoints, 0L)
+    }
+
+    fun time(index: Long): Long = times[slot(index)]
+
+    fun speed(index: Long): Float = speeds[slot(index)]
+
+    fun current(index: Long): Float = currents[slot(index)]
+
+    private fun slot(index: Long): Int = (index % capacity).toInt()
+
+    companion object {
+        const val SLACK = 60
+    }
+}
@@ -0,0 +1,204 @@
+package com.cooper.wheellog.telemetry
+
+import android.content.Context
+import android.os.SystemClock
+import com.cooper.wheellog.utils.FileUtil
+import java.text.SimpleDateFormat
+import java.util.*
+
+/**
+ * Latency of the stages a frame passes after its notification arrived, as fixed-bucket
+ * histograms per adapter. The arrival time travels with the frame in [TelemetrySample.received],
+ * each stage records the time since then. The clock is SystemClock.elapsedRealtimeNanos().
+ */
+object LatencyStats {
+    /** Adapter decoded the frame, the sample is about to be published */
+    const val DECODE = 0
+    /** Sample delivered to a main thread subscriber */
+    const val DELIVERY = 1
+    /** WheelView drawn with the sample */
+    const val DRAW = 2
+    /** Alarms evaluated for the sample */
+    const val ALARM = 3
+    /** Trip log row of the sample handed to the log writer */
+    const val LOG = 4
+    /** Alarm sound started, measured from raising the alarm instead of the notification */
+    const val AUDIBLE = 5
+    private val STAGES = arrayOf("decode", "delivery", "draw", "alarm", "log", "audible")
+    private const val UNKNOWN = "Unknown"
+
+    /** µs, upper bounds of the buckets, the last bucket takes the rest */
+    @JvmField
+    val BOUNDS = longArrayOf(250, 500, 1_000, 2_000, 5_000, 10_000, 20_000, 50_000, 100_000, 200_000, 500_000, 1_000_000)
+
+    class Histogram {
+        val counts = LongArray(BOUNDS.size + 1)
+        var count = 0L
+            private set
+        /** µs */
+        var total = 0L
+            private set
+        /** µs */
+        var max = 0L
+            private set
+
+        internal fun add(latency: Long) {
+            var i = 0
+            while (i < BOUNDS.size && latency > BOUNDS[i]) {
+                i++
+            }
+            counts[i]++
+            count++
+            total += latency
+            if (latency > max) {
+                max = latency
+            }
+        }
+
+        /**
+         * µs, upper bound of the bucket that holds the [percent] percentile, -1 if it is the last bucket.
+         */
+        fun percentile(percent: Int): Long {
+            val rank = (count * percent + 99) / 100
+            var seen = 0L
+            for (i in BOUNDS.indices) {
+                seen += counts[i]
+                if (seen >= rank) {
+                    return BOUNDS[i]
+                }
+            }
+            return -1
+        }
+    }
+
+    private val adapters = LinkedHashMap<String, Array<Histogram>>()
+    private var current = histograms(UNKNOWN)
+    // written and read on the decode thread only
+    private var frameReceived = 0L
+
+    /** Adapter the following frames are counted for */
+    @JvmStatic
+    var adapter = UNKNOWN
+        set(value) {
+            synchronized(this) {
+                field = value
+                current = histograms(value)
+            }
+        }
+
+    /**
+     * Called by the decode thread before it passes a frame that arrived at [received] on.
+     */
+    @JvmStatic
+    fun frameReceived(received: Long) {
+        frameReceived = received
+    }
+
+    /**
+     * Arrival of the frame being decoded, 0 once taken, so frames not from the wheel (replay) are not counted.
+     */
+    @JvmStatic
+    fun takeFrameReceived(): Long {
+        val received = frameReceived
+        frameReceived = 0
+        return received
+    }
+
+    @JvmStatic
+    fun now(): Long {
+        return SystemClock.elapsedRealtimeNanos()
+    }
+
+    @JvmStatic
+    fun record(stage: Int, sample: TelemetrySample) {
+        if (sample.received != 0L) {
+            record(stage, sample.received, now())
+        }
+    }
+
+    /**
+     * Records a frame that arrived at [received] and reached [stage] at [time], both in ns.
+     */
+    @JvmStatic
+    fun record(stage: Int, received: Long, time: Long) {
+        if (received == 0L) {
+            return
+        }
+        synchronized(this) {
+            current[stage].add(maxOf(0L, time - received) / 1000)
+        }
+    }
+
+    @JvmStatic
+    fun histogram(adapter: String, stage: Int): Histogram? {
+        synchronized(this) {
+            return adapters[adapter]?.get(stage)
+        }
+    }
+
+    @JvmStatic
+    fun clear() {
+        synchronized(this) {
+            adapters.clear()
+            current = histograms(adapter)
+        }
+    }
+
+    private fun histograms(adapter: String): Array<Histogram> {
+        return adapters.getOrPut(adapter) { Array(STAGES.size) { Histogram() } }
+    }
+
+    /**
+     * Formats the histograms with frames, one line per stage and its bucket counts.
+     */
+    @JvmStatic
+    fun dump(): String {
+        val result = StringBuilder()
+        synchronized(this) {
+            for ((name, stages) in adapters) {
+                for (stage in stages.indices) {
+                    val histogram = stages[stage]
+                    if (histogram.count == 0L) {
+                        continue
+                    }
+                    result.append(String.format(Locale.US, "%s %s: %d frames, avg %s, p50 %s, p95 %s, p99 %s, max %s\n",
+                        name, STAGES[stage], histogram.count, millis(histogram.total / histogram.count),
+                        bound(histogram.percentile(50)), bound(histogram.percentile(95)),
+                        bound(histogram.percentile(99)), millis(histogram.max)))
+                    for (i in histogram.counts.indices) {
+                        if (histogram.counts[i] != 0L) {
+                            result.append(' ').append(bound(if (i < BOUNDS.size) BOUNDS[i] else -1))
+                                .append(": ").append(histogram.counts[i])
+                        }
+                    }
+                    result.append('\n')
+                }
+            }
+        }
+        return if (result.isEmpty()) "No latency data\n" else result.toString()
+    }
+
+    /**
+     * Writes [dump] to a file in the log folder, returns its path or null if it could not be written.
+     */
+    @JvmStatic
+    fun export(context: Context): String? {
+        val fileUtil = FileUtil(context)
+        val fileName = "latency_" + SimpleDateFormat("yyyy_MM_dd_HH_mm_ss", Locale.US).format(Date()) + ".txt"
+        if (!fileUtil.prepareFile(fileName)) {
+            return null
+        }
+        val path = fileUtil.absolutePath
+        fileUtil.writeLine(dump())
+        fileUtil.close()
+        return path
+    }
+
+    private fun millis(micros: Long): String {
+        return String.format(Locale.US, "%.2f ms", micros / 1000.0)
+    }
+
+    private fun bound(micros: Long): String {
+        return if (micros < 0) ">" + millis(BOUNDS.last()) else "≤" + millis(micros)
+    }
+}
@@ -0,0 +1,235 @@
+package com.cooper.wheellog.telemetry
+
+import java.util.*
+import kotlin.math.max
+
+/**
+ * Health of the BLE link: gaps between notifications, notification rate, bytes the adapters had
+ * to drop (broken frames, failed checksums) and RSSI. BluetoothService feeds it the notifications
+ * and asks [check] on every watchdog run whether the link should be reconnected.
+ *
+ * Times are ms of SystemClock.elapsedRealtime(), the clock of the decode thread timestamps.
+ */
+object LinkHealth {
+    const val OK = 0
+    /** No notification for longer than the stall time */
+    const val STALLED = 1
+    /** Too many bytes lost in the last window */
+    const val LOSSY = 2
+    /** Notifications arrive, but none of them decodes to live data */
+    const val SILENT = 3
+
+    /** ms, upper bounds of the gap buckets, the last bucket takes the rest */
+    @JvmField
+    val GAP_BOUNDS = longArrayOf(10, 20, 50, 100, 200, 500, 1_000, 2_000, 5_000)
+    /** ms, period of the rate and loss figures */
+    const val WINDOW = 2_000L
+    /** the link stalls after this many typical (95th percentile) gaps without a notification */
+    const val STALL_GAPS = 4
+    /** the link of a polled wheel stalls after this many request intervals without a notification */
+    const val STALL_REQUESTS = 4
+    /** gaps needed before the typical gap is trusted */
+    const val MIN_GAPS = 20
+    /** weight the recent gaps keep with every [WINDOW], so the typical gap follows the link */
+    const val GAP_DECAY = 0.875
+    /** ms without live data, while notifications arrive, before the link counts as silent */
+    const val LIFE_DATA_TIMEOUT = 15_000L
+
+    private val gaps = LongArray(GAP_BOUNDS.size + 1)
+    // decaying counts of the gaps, the typical gap is taken from them
+    private val recentGaps = DoubleArray(GAP_BOUNDS.size + 1)
+    private var recentCount = 0.0
+    private var frames = 0L
+    private var bytes = 0L
+    private var lostBytes = 0L
+    private var firstFrame = 0L
+    private var lastFrame = 0L
+    private var windowStart = 0L
+    private var windowFrames = 0
+    private var windowBytes = 0L
+    private var windowLost = 0L
+    private val reconnects = IntArray(4)
+
+    /** notifications per second in the last window */
+    var rate = 0.0
+        private set
+
+    /** percents of the bytes lost in the last window */
+    var loss = 0.0
+        private set
+
+    /** dBm, 0 until read */
+    @Volatile
+    @JvmStatic
+    var rssi = 0
+
+    /**
+     * Called on a new connection, the gap since the last notification of the previous one is not counted.
+     */
+    @JvmStatic
+    fun connected() {
+        synchronized(this) {
+            firstFrame = 0
+            lastFrame = 0
+            windowStart = 0
+            windowFrames = 0
+            windowBytes = 0
+            windowLost = 0
+            rate = 0.0
+            loss = 0.0
+        }
+    }
+
+    /**
+     * Called by the decode thread for a notification of [size] bytes that arrived at [time].
+     */
+    @JvmStatic
+    fun frame(time: Long, size: Int) {
+        synchronized(this) {
+            if (lastFrame != 0L) {
+                val gap = time - lastFrame
+                var i = 0
+                while (i < GAP_BOUNDS.size && gap > GAP_BOUNDS[i]) {
+                    i++
+                }
+                gaps[i]++
+                recentGaps[i]++
+                recentCount++
+            } else {
+                firstFrame = time
+            }
+            lastFrame = time
+            frames++
+            bytes += size
+            windowFrames++
+            windowBytes += size
+            roll(time)
+        }
+    }
+
+    /**
+     * Called by an adapter that dropped [count] received bytes.
+     */
+    @JvmStatic
+    fun lost(count: Int) {
+        synchronized(this) {
+            lostBytes += count
+            windowLost += count
+        }
+    }
+
+    /**
+     * Returns [OK] or the reason to reconnect. The link is stalled after [stallTime] ms without a
+     * notification, longer if the wheel notifies slowly or is only asked every [requestInterval] ms.
+     * [lossPercent] of lost bytes in a window make the link lossy, 0 to ignore losses.
+     * [lifeDataAge] is the time since the last live data.
+     * A reason is returned once, the checks start again with the next notification.
+     */
+    @JvmStatic
+    fun check(time: Long, stallTime: Long, requestInterval: Long, lossPercent: Int, lifeDataAge: Long): Int {
+        synchronized(this) {
+            if (lastFrame == 0L) {
+                return OK
+            }
+            roll(time)
+            val result = when {
+                time - lastFrame > stallThreshold(stallTime, requestInterval) -> STALLED
+                lossPercent > 0 && loss >= lossPercent -> LOSSY
+                time - firstFrame > LIFE_DATA_TIMEOUT && lifeDataAge > LIFE_DATA_TIMEOUT -> SILENT
+                else -> OK
+            }
+            if (result != OK) {
+                reconnects[result]++
+                connected()
+            }
+            return result
+        }
+    }
+
+    /**
+     * ms without a notification after which the link is stalled, at least [stallTime] and
+     * [STALL_REQUESTS] times the current [requestInterval] of a polled wheel.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun stallThreshold(stallTime: Long, requestInterval: Long = 0): Long {
+        synchronized(this) {
+            val threshold = max(stallTime, STALL_REQUESTS * requestInterval)
+            if (recentCount < MIN_GAPS) {
+                return threshold
+            }
+            val rank = recentCount * 0.95
+            var seen = 0.0
+            var typical = GAP_BOUNDS.last()
+            for (i in GAP_BOUNDS.indices) {
+                seen += recentGaps[i]
+                if (seen >= rank) {
+                    typical = GAP_BOUNDS[i]
+                    break
+                }
+            }
+            return max(threshold, STALL_GAPS * typical)
+        }
+    }
+
+    /** Notifications per gap bucket, see [GAP_BOUNDS] */
+    @JvmStatic
+    fun gaps(): LongArray {
+        synchronized(this) {
+            return gaps.copyOf()
+        }
+    }
+
+    @JvmStatic
+    fun clear() {
+        synchronized(this) {
+            gaps.fill(0)
+            recentGaps.fill(0.0)
+            recentCount = 0.0
+            frames = 0
+            bytes = 0
+            lostBytes = 0
+            reconnects.fill(0)
+            rssi = 0
+            connected()
+        }
+    }
+
+    private fun roll(time: Long) {
+        if (windowStart == 0L) {
+            windowStart = time
+        } else if (time - windowStart >= WINDOW) {
+            rate = windowFrames * 1000.0 / (time - windowStart)
+            loss = if (windowBytes + windowLost > 0) windowLost * 100.0 / (windowBytes + windowLost) else 0.0
+            windowStart = time
+            windowFrames = 0
+            windowBytes = 0
+            windowLost = 0
+            for (i in recentGaps.indices) {
+                recentGaps[i] *= GAP_DECAY
+            }
+            recentCount *= GAP_DECAY
+        }
+    }
+
+    /**
+     * Formats the totals, the last window and the gap histogram.
+     */
+    @JvmStatic
+    fun dump(): String {
+        val result = StringBuilder()
+        synchronized(this) {
+            result.append(String.format(Locale.US,
+                "Link: %d frames, %d bytes, %d lost, %.1f/s, %.1f%% lost, rssi %d dBm, reconnects stalled %d, lossy %d, silent %d\n",
+                frames, bytes, lostBytes, rate, loss, rssi,
+                reconnects[STALLED], reconnects[LOSSY], reconnects[SILENT]))
+            for (i in gaps.indices) {
+                if (gaps[i] != 0L) {
+                    result.append(if (i < GAP_BOUNDS.size) " ≤" + GAP_BOUNDS[i] else " >" + GAP_BOUNDS.last())
+                        .append(" ms: ").append(gaps[i])
+                }
+            }
+        }
+        return result.append('\n').toString()
+    }
+}
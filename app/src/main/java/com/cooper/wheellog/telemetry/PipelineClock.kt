@@ -0,0 +1,24 @@
+package com.cooper.wheellog.telemetry
+
+/**
+ * Wall clock of the decode pipeline. Ride time, riding time, alarm timing and frame timestamps
+ * read it instead of System.currentTimeMillis(), so a replay can run them on the recorded time.
+ */
+object PipelineClock {
+
+    fun interface Source {
+        fun currentTimeMillis(): Long
+    }
+
+    @JvmField
+    val SYSTEM = Source { System.currentTimeMillis() }
+
+    @Volatile
+    @JvmStatic
+    var source: Source = SYSTEM
+
+    @JvmStatic
+    fun now(): Long {
+        return source.currentTimeMillis()
+    }
+}
@@ -0,0 +1,123 @@
+package com.cooper.wheellog.telemetry
+
+import android.content.Context
+import android.content.Intent
+import android.os.Handler
+import android.os.Looper
+import com.cooper.wheellog.WheelLog
+import com.cooper.wheellog.utils.Constants
+import timber.log.Timber
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * In-process delivery of decoded frames.
+ * Replaces the per-frame ACTION_WHEEL_DATA_AVAILABLE broadcast, which is now only sent
+ * as an optional, rate-limited output for third-party applications.
+ */
+object TelemetryBus {
+    const val LEGACY_BROADCAST_INTERVAL = 250L // milliseconds
+
+    private val subscribers = CopyOnWriteArrayList<Subscriber>()
+    private val mainHandler by lazy { Handler(Looper.getMainLooper()) }
+    private var lastLegacyBroadcast = 0L
+    private var legacyGraphUpdatePending = false
+
+    /**
+     * Listener is called on the thread that decodes data.
+     * It must not touch UI and should return quickly.
+     */
+    @JvmStatic
+    fun subscribe(listener: TelemetryListener) {
+        add(Subscriber(listener, null))
+    }
+
+    /**
+     * Listener is called on the main thread.
+     * Frames that arrive while the previous one is still queued are coalesced into the newest one.
+     */
+    @JvmStatic
+    fun subscribeOnMainThread(listener: TelemetryListener) {
+        add(Subscriber(listener, mainHandler))
+    }
+
+    @JvmStatic
+    fun unsubscribe(listener: TelemetryListener) {
+        subscribers.removeAll { it.listener === listener }
+    }
+
+    private fun add(subscriber: Subscriber) {
+        unsubscribe(subscriber.listener)
+        subscribers.add(subscriber)
+    }
+
+    @JvmStatic
+    fun publish(sample: TelemetrySample) {
+        for (subscriber in subscribers) {
+            subscriber.deliver(sample)
+        }
+    }
+
+    /**
+     * Sends ACTION_WHEEL_DATA_AVAILABLE no more often than [LEGACY_BROADCAST_INTERVAL].
+     * The graph flag of skipped frames is carried over to the next broadcast.
+     */
+    @JvmStatic
+    fun sendLegacyBroadcast(context: Context, sample: TelemetrySample) {
+        if (!WheelLog.AppConfig.legacyDataBroadcast) {
+            return
+        }
+        legacyGraphUpdatePending = legacyGraphUpdatePending || sample.graphUpdate
+        if (sample.timestamp - lastLegacyBroadcast < LEGACY_BROADCAST_INTERVAL) {
+            return
+        }
+        lastLegacyBroadcast = sample.timestamp
+        val intent = Intent(Constants.ACTION_WHEEL_DATA_AVAILABLE)
+        if (legacyGraphUpdatePending) {
+            intent.putExtra(Constants.INTENT_EXTRA_GRAPH_UPDATE_AVILABLE, true)
+            legacyGraphUpdatePending = false
+        }
+        intent.putExtra("Speed", sample.speed)
+        context.sendBroadcast(intent)
+    }
+
+    private class Subscriber(val listener: TelemetryListener, val handler: Handler?) {
+        private val pending = AtomicReference<TelemetrySample?>()
+        // a coalesced frame had a graph point, the delivered frame carries it
+        private val graphPending = AtomicBoolean()
+        private val drain = Runnable {
+            val sample = pending.getAndSet(null) ?: return@Runnable
+            if (graphPending.getAndSet(false) && !sample.graphUpdate) {
+                notify(sample.copy(graphUpdate = true))
+            } else {
+                notify(sample)
+            }
+        }
+
+        fun deliver(sample: TelemetrySample) {
+            if (handler == null || (pending.get() == null && Looper.myLooper() == handler.looper)) {
+                notify(sample)
+                return
+            }
+            // set before the frame is visible, so the drain can't miss it
+            if (sample.graphUpdate) {
+                graphPending.set(true)
+            }
+            if (pending.getAndSet(sample) == null) {
+                handler.post(drain)
+            }
+        }
+
+        private fun notify(sample: TelemetrySample) {
+            if (handler != null) {
+                LatencyStats.record(LatencyStats.DELIVERY, sample)
+            }
+            try {
+                listener.onTelemetry(sample)
+            } catch (e: Exception) {
+                Timber.e(e, "Telemetry listener failed")
+            }
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package com.cooper.wheellog.telemetry
+
+fun interface TelemetryListener {
+    fun onTelemetry(sample: TelemetrySample)
+}
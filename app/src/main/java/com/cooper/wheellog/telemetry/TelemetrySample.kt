@@ -0,0 +1,79 @@
+package com.cooper.wheellog.telemetry
+
+/**
+ * Immutable result of one decoded wheel frame.
+ * Adapters fill [com.cooper.wheellog.WheelData] field by field, then WheelData freezes the frame
+ * into a sample and publishes it with a single reference write, so readers never see a half-updated frame.
+ *
+ * Raw values use the same units as WheelData: speed, voltage, current and power in hundredths.
+ */
+data class TelemetrySample(
+    val timestamp: Long,
+    val speed: Int,
+    val topSpeed: Int,
+    val voltage: Int,
+    val current: Int,
+    val phaseCurrent: Int,
+    val power: Int,
+    val torque: Double,
+    /** °C */
+    val temperature: Int,
+    /** °C */
+    val temperature2: Int,
+    /** °C */
+    val maxTemp: Int,
+    val batteryLevel: Int,
+    val fanStatus: Int,
+    /** trip distance in meters */
+    val distance: Long,
+    /** meters */
+    val totalDistance: Long,
+    val angle: Double,
+    val roll: Double,
+    /** percents */
+    val calculatedPwm: Double,
+    /** percents */
+    val maxPwm: Double,
+    val maxCurrentDouble: Double,
+    val maxPowerDouble: Double,
+    val modeStr: String,
+    /** true if graph axes were updated with this frame */
+    val graphUpdate: Boolean,
+    /** arrival of the notification, see LatencyStats, 0 if the frame did not come from the wheel */
+    val received: Long = 0
+) {
+    val speedDouble: Double
+        get() = speed / 100.0
+
+    val topSpeedDouble: Double
+        get() = topSpeed / 100.0
+
+    val voltageDouble: Double
+        get() = voltage / 100.0
+
+    val currentDouble: Double
+        get() = current / 100.0
+
+    val phaseCurrentDouble: Double
+        get() = phaseCurrent / 100.0
+
+    val powerDouble: Double
+        get() = power / 100.0
+
+    /** km */
+    val distanceDouble: Double
+        get() = distance / 1000.0
+
+    /** km */
+    val totalDistanceDouble: Double
+        get() = totalDistance / 1000.0
+
+    companion object {
+        @JvmField
+        val EMPTY = TelemetrySample(
+            0, 0, 0, 0, 0, 0, 0, 0.0,
+            0, 0, 0, 0, 0, 0, 0,
+            0.0, 0.0, 0.0, 0.0, 0.0, 0.0, "Unknown", false
+        )
+    }
+}
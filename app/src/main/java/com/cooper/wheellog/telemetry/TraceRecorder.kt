@@ -0,0 +1,120 @@
+package com.cooper.wheellog.telemetry
+
+import com.cooper.wheellog.utils.StringUtil
+import java.text.SimpleDateFormat
+import java.util.*
+
+/**
+ * Fixed-size in-memory ring of decoder events.
+ * Recording only copies numbers and up to [MAX_PAYLOAD] bytes into preallocated slots,
+ * text is produced only by [dump]. Tags are expected to be string constants.
+ */
+object TraceRecorder {
+    const val CAPACITY = 512
+    const val MAX_PAYLOAD = 64
+
+    /** Received notification, payload - frame bytes */
+    const val FRAME = 1
+    /** Decoded message payload after unescaping or decryption */
+    const val PAYLOAD = 2
+    /** Checksum passed, a - check value */
+    const val VERIFY_OK = 3
+    /** Checksum failed, a - calculated, b - value from packet */
+    const val VERIFY_FAIL = 4
+    /** Unpacker state change, a - new state, b - buffer size */
+    const val STATE = 5
+    /** Keep-alive rate change, a - ms between requests, b - average round trip time in ms */
+    const val POLL_RATE = 6
+    /** Command written to the wheel, payload - command bytes */
+    const val SENT = 7
+
+    private val times = LongArray(CAPACITY)
+    private val tags = arrayOfNulls<String>(CAPACITY)
+    private val types = IntArray(CAPACITY)
+    private val argsA = IntArray(CAPACITY)
+    private val argsB = IntArray(CAPACITY)
+    private val lengths = IntArray(CAPACITY)
+    private val payloads = Array(CAPACITY) { ByteArray(MAX_PAYLOAD) }
+    private var count = 0L
+
+    @JvmStatic
+    fun record(tag: String, type: Int, a: Int, b: Int) {
+        synchronized(this) {
+            val i = next(tag, type)
+            argsA[i] = a
+            argsB[i] = b
+            lengths[i] = 0
+        }
+    }
+
+    @JvmStatic
+    fun recordBytes(tag: String, type: Int, data: ByteArray, length: Int) {
+        synchronized(this) {
+            val i = next(tag, type)
+            argsA[i] = 0
+            argsB[i] = 0
+            lengths[i] = length
+            System.arraycopy(data, 0, payloads[i], 0, minOf(length, MAX_PAYLOAD))
+        }
+    }
+
+    private fun next(tag: String, type: Int): Int {
+        val i = (count % CAPACITY).toInt()
+        count++
+        times[i] = System.currentTimeMillis()
+        tags[i] = tag
+        types[i] = type
+        return i
+    }
+
+    @JvmStatic
+    fun clear() {
+        synchronized(this) {
+            count = 0
+            Arrays.fill(tags, null)
+        }
+    }
+
+    /**
+     * Formats recorded events, oldest first.
+     */
+    @JvmStatic
+    fun dump(): String {
+        val timeFormatter = SimpleDateFormat("HH:mm:ss.SSS", Locale.US)
+        val result = StringBuilder()
+        synchronized(this) {
+            val first = maxOf(0L, count - CAPACITY)
+            for (n in first until count) {
+                val i = (n % CAPACITY).toInt()
+                result.append(timeFormatter.format(Date(times[i])))
+                    .append(' ')
+                    .append(tags[i])
+                    .append(' ')
+                    .append(format(i))
+                    .append('\n')
+            }
+        }
+        return result.toString()
+    }
+
+    private fun format(i: Int): String {
+        val a = argsA[i]
+        val b = argsB[i]
+        return when (types[i]) {
+            FRAME -> "frame " + bytes(i)
+            PAYLOAD -> "payload " + bytes(i)
+            SENT -> "sent " + bytes(i)
+            VERIFY_OK -> String.format(Locale.US, "check OK %02X", a)
+            VERIFY_FAIL -> String.format(Locale.US, "check FALSE, calc: %02X, packet: %02X", a, b)
+            STATE -> String.format(Locale.US, "state %d, size %d", a, b)
+            POLL_RATE -> String.format(Locale.US, "poll every %d ms, round trip %d ms", a, b)
+            else -> String.format(Locale.US, "event %d: %d %d", types[i], a, b)
+        }
+    }
+
+    private fun bytes(i: Int): String {
+        val length = lengths[i]
+        val hex = StringUtil.toHexString(payloads[i], minOf(length, MAX_PAYLOAD))
+        return if (length > MAX_PAYLOAD) "$hex ($length bytes)" else hex
+    }
+}
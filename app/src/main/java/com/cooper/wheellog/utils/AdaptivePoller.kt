@@ -0,0 +1,172 @@
+package com.cooper.wheellog.utils
+
+import com.cooper.wheellog.WheelData
+import com.cooper.wheellog.telemetry.TraceRecorder
+import timber.log.Timber
+import java.util.Locale
+import kotlin.math.abs
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * Paces the keep-alive of a request/response protocol (InMotion, Ninebot). The keep-alive task
+ * runs every [period] ms and sends one request every [cycle] runs.
+ *
+ * The period is short while riding and during the handshake, long when parked.
+ * It grows while the wheel misses replies or answers slower than it is asked, and shrinks again
+ * after [RECOVERY] timely replies. Round trip times and misses are kept per request type,
+ * the type is the command byte the reply repeats.
+ */
+class AdaptivePoller @JvmOverloads constructor(
+    private val name: String,
+    /** keep-alive runs per request */
+    private val cycle: Int,
+    /** request type of the live data, the poller slows down only once it is answered */
+    private val liveType: Int,
+    /** ms, period while riding */
+    private val fastPeriod: Long = TickScheduler.QUANTUM,
+    /** ms, period when parked */
+    private val slowPeriod: Long = 4 * fastPeriod
+) {
+    class RequestStats {
+        var sent = 0L
+            internal set
+        var answered = 0L
+            internal set
+        /** requests without a reply before the next request of the type */
+        var missed = 0L
+            internal set
+        /** ms, moving average */
+        var roundTrip = 0L
+            internal set
+        internal var pendingSince = NOT_PENDING
+    }
+
+    private val types = HashMap<Int, RequestStats>()
+    private var task: TickScheduler.Task? = null
+    private var backoff = 1
+    private var timelyReplies = 0
+    private var liveAnswered = false
+
+    /** ms between keep-alive runs */
+    @Volatile
+    var period = fastPeriod
+        private set
+
+    /** ms between requests */
+    val interval: Long
+        get() = period * cycle
+
+    /** requests per second */
+    val rate: Double
+        get() = 1000.0 / interval
+
+    /**
+     * Schedules [keepAlive] with the connection tasks, its period follows the poller from then on.
+     */
+    fun start(delay: Long, keepAlive: Runnable): TickScheduler.Task {
+        reset()
+        return TickScheduler.schedule("$name keep-alive", delay, period, TickScheduler.CONNECTION) {
+            keepAlive.run()
+            update(WheelData.getInstance()?.speedDouble ?: 0.0)
+        }.also { task = it }
+    }
+
+    @Synchronized
+    fun reset() {
+        types.clear()
+        backoff = 1
+        timelyReplies = 0
+        liveAnswered = false
+        period = fastPeriod
+    }
+
+    @JvmOverloads
+    @Synchronized
+    fun sent(type: Int, time: Long = now()) {
+        val stats = types.getOrPut(type) { RequestStats() }
+        if (stats.pendingSince != NOT_PENDING) {
+            stats.missed++
+            congested()
+        }
+        stats.pendingSince = time
+        stats.sent++
+    }
+
+    /**
+     * Called for every verified reply, replies nobody asked for are ignored.
+     */
+    @JvmOverloads
+    @Synchronized
+    fun answered(type: Int, time: Long = now()) {
+        val stats = types[type] ?: return
+        if (stats.pendingSince == NOT_PENDING) {
+            return
+        }
+        val roundTrip = max(0L, time - stats.pendingSince)
+        stats.pendingSince = NOT_PENDING
+        stats.roundTrip = if (stats.answered == 0L) roundTrip else (stats.roundTrip * 3 + roundTrip) / 4
+        stats.answered++
+        if (type == liveType) {
+            liveAnswered = true
+        }
+        if (roundTrip > interval) {
+            congested()
+        } else if (++timelyReplies >= RECOVERY && backoff > 1) {
+            backoff /= 2
+            timelyReplies = 0
+        }
+    }
+
+    /**
+     * Chooses the period for the wheel riding at [speed] km/h, called after every keep-alive run.
+     */
+    @Synchronized
+    fun update(speed: Double) {
+        val base = if (!liveAnswered || abs(speed) >= MOVING_SPEED) fastPeriod else slowPeriod
+        val target = min(MAX_PERIOD, base * backoff)
+        if (target == period) {
+            return
+        }
+        period = target
+        task?.period = target
+        val roundTrip = types[liveType]?.roundTrip ?: 0L
+        Timber.i("%s polls every %d ms", name, interval)
+        TraceRecorder.record(name, TraceRecorder.POLL_RATE, interval.toInt(), roundTrip.toInt())
+    }
+
+    @Synchronized
+    fun stats(type: Int): RequestStats? {
+        return types[type]
+    }
+
+    @Synchronized
+    override fun toString(): String {
+        val result = StringBuilder(String.format(Locale.US, "%s: every %d ms", name, interval))
+        for ((type, stats) in types) {
+            result.append(String.format(Locale.US, ", %02X rtt %d ms, missed %d of %d",
+                type, stats.roundTrip, stats.missed, stats.sent))
+        }
+        return result.toString()
+    }
+
+    private fun congested() {
+        timelyReplies = 0
+        backoff = min(MAX_BACKOFF, backoff * 2)
+    }
+
+    private fun now(): Long {
+        return System.nanoTime() / 1_000_000
+    }
+
+    companion object {
+        /** km/h */
+        const val MOVING_SPEED = 3.0
+        /** timely replies before the backoff is halved */
+        const val RECOVERY = 20
+        const val MAX_BACKOFF = 8
+        /** ms */
+        const val MAX_PERIOD = 200L
+        private const val NOT_PENDING = Long.MIN_VALUE
+    }
+}
@@ -0,0 +1,91 @@
+package com.cooper.wheellog.utils
+
+import com.cooper.wheellog.telemetry.TelemetrySample
+
+/**
+ * Telemetry values an [AlarmRule] can compare, in the units shown to the rider.
+ */
+enum class AlarmField(val key: String) {
+    /** km/h */
+    SPEED("speed") {
+        override fun read(sample: TelemetrySample, rules: AlarmRules) = sample.speedDouble
+    },
+    /** V */
+    VOLTAGE("voltage") {
+        override fun read(sample: TelemetrySample, rules: AlarmRules) = sample.voltageDouble
+    },
+    /** A */
+    CURRENT("current") {
+        override fun read(sample: TelemetrySample, rules: AlarmRules) = sample.currentDouble
+    },
+    /** A */
+    PHASE_CURRENT("phase_current") {
+        override fun read(sample: TelemetrySample, rules: AlarmRules) = sample.phaseCurrentDouble
+    },
+    /** W */
+    POWER("power") {
+        override fun read(sample: TelemetrySample, rules: AlarmRules) = sample.powerDouble
+    },
+    TORQUE("torque") {
+        override fun read(sample: TelemetrySample, rules: AlarmRules) = sample.torque
+    },
+    /** °C */
+    TEMPERATURE("temperature") {
+        override fun read(sample: TelemetrySample, rules: AlarmRules) = sample.temperature.toDouble()
+    },
+    /** °C */
+    TEMPERATURE2("temperature2") {
+        override fun read(sample: TelemetrySample, rules: AlarmRules) = sample.temperature2.toDouble()
+    },
+    /** percents */
+    BATTERY("battery") {
+        override fun read(sample: TelemetrySample, rules: AlarmRules) = sample.batteryLevel.toDouble()
+    },
+    /** percents */
+    PWM("pwm") {
+        override fun read(sample: TelemetrySample, rules: AlarmRules) = sample.calculatedPwm
+    },
+    /** degrees */
+    ANGLE("angle") {
+        override fun read(sample: TelemetrySample, rules: AlarmRules) = sample.angle
+    },
+    /** degrees */
+    ROLL("roll") {
+        override fun read(sample: TelemetrySample, rules: AlarmRules) = sample.roll
+    },
+    /** km of the trip */
+    DISTANCE("distance") {
+        override fun read(sample: TelemetrySample, rules: AlarmRules) = sample.distanceDouble
+    },
+    /** V the voltage is below the last voltage without load */
+    SAG("sag") {
+        override fun read(sample: TelemetrySample, rules: AlarmRules) = rules.sag
+    },
+    /** V, the largest cell difference of the BMSes */
+    CELL_DIFF("cell_diff") {
+        override fun read(sample: TelemetrySample, rules: AlarmRules) = rules.cellDiff
+    },
+    /** V, the lowest cell of the BMSes, 0 without BMS data */
+    MIN_CELL("min_cell") {
+        override fun read(sample: TelemetrySample, rules: AlarmRules) = rules.minCell
+    };
+
+    abstract fun read(sample: TelemetrySample, rules: AlarmRules): Double
+
+    companion object {
+        private val FIELDS = values()
+
+        val count: Int
+            get() = FIELDS.size
+
+        @JvmStatic
+        fun find(key: String): AlarmField? {
+            return FIELDS.firstOrNull { it.key == key }
+        }
+
+        /** keys of all fields, for the help of the preference */
+        @JvmStatic
+        val keys: String
+            get() = FIELDS.joinToString(", ") { it.key }
+    }
+}
@@ -0,0 +1,136 @@
+package com.cooper.wheellog.utils
+
+import android.content.Context
+import android.media.AudioAttributes
+import android.media.SoundPool
+import android.os.Build
+import android.os.VibrationEffect
+import android.os.Vibrator
+import android.os.VibratorManager
+import com.cooper.wheellog.R
+import com.cooper.wheellog.telemetry.LatencyStats
+import com.cooper.wheellog.utils.Constants.ALARM_TYPE
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.launch
+import timber.log.Timber
+import java.util.concurrent.Executors
+
+/**
+ * Sound and vibration of the alarms. Everything is prepared by [prepare] when the service starts,
+ * so the first alarm of a ride starts as fast as the others: the alarm sounds are decoded into a
+ * SoundPool, the alarm tone is synthesized, the vibrator is looked up once and all output runs on
+ * one thread. The time from raising an alarm to the start of its sound goes to LatencyStats.
+ */
+object AlarmOutput {
+    private val SOUNDS = intArrayOf(R.raw.lowbat, R.raw.warning_pwm, R.raw.sound_warning_speed, R.raw.sound_no_connection)
+    private const val MAX_STREAMS = 2
+
+    private val scope = CoroutineScope(SupervisorJob() +
+            Executors.newSingleThreadExecutor { Thread(it, "AlarmOutput").apply { isDaemon = true } }.asCoroutineDispatcher())
+    private var soundPool: SoundPool? = null
+    /** resource id to sound id of the pool */
+    private val sounds = HashMap<Int, Int>()
+    /** sound ids that finished loading */
+    private val loaded = HashSet<Int>()
+    private var vibrator: Vibrator? = null
+
+    @Synchronized
+    fun prepare(context: Context) {
+        if (soundPool != null) {
+            return
+        }
+        vibrator = vibrator(context)
+        val pool = SoundPool.Builder()
+            .setMaxStreams(MAX_STREAMS)
+            .setAudioAttributes(
+                AudioAttributes.Builder()
+                    .setUsage(AudioAttributes.USAGE_MEDIA)
+                    .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                    .build()
+            )
+            .build()
+        pool.setOnLoadCompleteListener { _, soundId, status ->
+            if (status == 0) {
+                synchronized(this) {
+                    loaded.add(soundId)
+                }
+            }
+        }
+        for (resId in SOUNDS) {
+            sounds[resId] = pool.load(context.applicationContext, resId, 1)
+        }
+        soundPool = pool
+        scope.launch { AudioUtil.prepare() }
+    }
+
+    @Synchronized
+    fun release() {
+        soundPool?.release()
+        soundPool = null
+        sounds.clear()
+        loaded.clear()
+    }
+
+    /**
+     * Plays a sound of the app, from the pool if it is loaded. [triggered] is the
+     * LatencyStats.now() of the alarm, 0 to not count it.
+     */
+    fun play(context: Context, resId: Int, triggered: Long = 0) {
+        scope.launch {
+            if (!playPooled(resId)) {
+                SomeUtil.playSound(context, resId)
+            }
+            LatencyStats.record(LatencyStats.AUDIBLE, triggered, LatencyStats.now())
+        }
+    }
+
+    /**
+     * Plays the alarm tone of [alarmType], see AudioUtil.playAlarm.
+     */
+    fun tone(alarmType: ALARM_TYPE, triggered: Long) {
+        scope.launch {
+            if (AudioUtil.playAlarm(alarmType)) {
+                LatencyStats.record(LatencyStats.AUDIBLE, triggered, LatencyStats.now())
+            }
+        }
+    }
+
+    fun vibrate(context: Context, pattern: LongArray) {
+        val vib = synchronized(this) {
+            vibrator ?: vibrator(context).also { vibrator = it }
+        }
+        if (vib.hasVibrator()) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                val vibrationEffect = VibrationEffect.createWaveform(pattern, -1)
+                vib.vibrate(vibrationEffect)
+            } else {
+                @Suppress("DEPRECATION")
+                vib.vibrate(pattern, -1)
+            }
+        }
+    }
+
+    @Synchronized
+    private fun playPooled(resId: Int): Boolean {
+        val pool = soundPool ?: return false
+        val soundId = sounds[resId] ?: return false
+        if (!loaded.contains(soundId)) {
+            Timber.i("Sound %d is not loaded yet", resId)
+            return false
+        }
+        return pool.play(soundId, 1f, 1f, 1, 0, 1f) != 0
+    }
+
+    private fun vibrator(context: Context): Vibrator {
+        return if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            val vibratorManager =
+                context.getSystemService(Context.VIBRATOR_MANAGER_SERVICE) as VibratorManager
+            vibratorManager.defaultVibrator
+        } else {
+            @Suppress("DEPRECATION")
+            context.getSystemService(Context.VIBRATOR_SERVICE) as Vibrator
+        }
+    }
+}
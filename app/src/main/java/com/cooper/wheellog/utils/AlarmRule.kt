@@ -0,0 +1,200 @@
+package com.cooper.wheellog.utils
+
+import java.util.*
+
+/**
+ * An alarm defined by the rider, compiled from a line like
+ *
+ *     temperature2 > 70 and current > 40 for 2s hysteresis 5 cooldown 30s
+ *
+ * The condition compares [AlarmField]s with `>`, `>=`, `<` and `<=`, joined by `and`, `or`
+ * and parentheses, `and` binds first. It may be followed by
+ * - `for` - time the condition has to hold before the alarm is raised,
+ * - `hysteresis` - margin the values have to fall back by to clear the alarm, in the units of
+ *   each field,
+ * - `cooldown` - least time between two raises of the alarm. The alarm is raised again after it
+ *   while the condition holds, every [AlarmRules.REPEAT_PERIOD] if not given.
+ *
+ * Times are in seconds, or in milliseconds when followed by `ms`.
+ */
+class AlarmRule(
+    val text: String,
+    val condition: Condition,
+    /** ms */
+    val hold: Long,
+    val hysteresis: Double,
+    /** ms */
+    val coolDown: Long
+) {
+    val fields: Set<AlarmField> = EnumSet.noneOf(AlarmField::class.java).also { condition.collect(it) }
+
+    /**
+     * Compiled condition, tested against the values of [AlarmField]s indexed by their ordinal.
+     * [hysteresis] moves the thresholds towards the clear side while the alarm is raised.
+     */
+    abstract class Condition {
+        abstract fun test(values: DoubleArray, hysteresis: Double): Boolean
+
+        internal abstract fun collect(fields: MutableSet<AlarmField>)
+    }
+
+    class Compare(
+        val field: AlarmField,
+        val greater: Boolean,
+        val orEqual: Boolean,
+        val threshold: Double
+    ) : Condition() {
+        private val slot = field.ordinal
+
+        override fun test(values: DoubleArray, hysteresis: Double): Boolean {
+            val value = values[slot]
+            return if (greater) {
+                val limit = threshold - hysteresis
+                if (orEqual) value >= limit else value > limit
+            } else {
+                val limit = threshold + hysteresis
+                if (orEqual) value <= limit else value < limit
+            }
+        }
+
+        override fun collect(fields: MutableSet<AlarmField>) {
+            fields.add(field)
+        }
+    }
+
+    class And(private val left: Condition, private val right: Condition) : Condition() {
+        override fun test(values: DoubleArray, hysteresis: Double): Boolean {
+            return left.test(values, hysteresis) && right.test(values, hysteresis)
+        }
+
+        override fun collect(fields: MutableSet<AlarmField>) {
+            left.collect(fields)
+            right.collect(fields)
+        }
+    }
+
+    class Or(private val left: Condition, private val right: Condition) : Condition() {
+        override fun test(values: DoubleArray, hysteresis: Double): Boolean {
+            return left.test(values, hysteresis) || right.test(values, hysteresis)
+        }
+
+        override fun collect(fields: MutableSet<AlarmField>) {
+            left.collect(fields)
+            right.collect(fields)
+        }
+    }
+
+    private class Parser(private val text: String) {
+        private val tokens = ArrayList<String>()
+        private var pos = 0
+
+        init {
+            var start = 0
+            while (start < text.length) {
+                val match = TOKEN.find(text, start)
+                if (match == null || match.range.first != start) {
+                    if (text.substring(start).isBlank()) {
+                        break
+                    }
+                    throw IllegalArgumentException("Unexpected \"${text.substring(start).trim()}\"")
+                }
+                tokens.add(match.groupValues[1].lowercase(Locale.US))
+                start = match.range.last + 1
+            }
+        }
+
+        fun rule(): AlarmRule {
+            val condition = or()
+            var hold = 0L
+            var hysteresis = 0.0
+            var coolDown = 0L
+            while (pos < tokens.size) {
+                when (val option = next()) {
+                    "for" -> hold = duration()
+                    "hysteresis" -> hysteresis = number()
+                    "cooldown" -> coolDown = duration()
+                    else -> throw IllegalArgumentException("Unexpected \"$option\"")
+                }
+            }
+            if (hold < 0 || hysteresis < 0 || coolDown < 0) {
+                throw IllegalArgumentException("Negative option")
+            }
+            return AlarmRule(text.trim(), condition, hold, hysteresis, coolDown)
+        }
+
+        private fun peek(): String? = tokens.getOrNull(pos)
+
+        private fun next(): String {
+            return tokens.getOrNull(pos++) ?: throw IllegalArgumentException("Unexpected end")
+        }
+
+        private fun or(): Condition {
+            var condition = and()
+            while (peek() == "or") {
+                pos++
+                condition = Or(condition, and())
+            }
+            return condition
+        }
+
+        private fun and(): Condition {
+            var condition = comparison()
+            while (peek() == "and") {
+                pos++
+                condition = And(condition, comparison())
+            }
+            return condition
+        }
+
+        private fun comparison(): Condition {
+            val key = next()
+            if (key == "(") {
+                val condition = or()
+                if (next() != ")") {
+                    throw IllegalArgumentException("Missing \")\"")
+                }
+                return condition
+            }
+            val field = AlarmField.find(key) ?: throw IllegalArgumentException("Unknown field \"$key\"")
+            return when (val operator = next()) {
+                ">" -> Compare(field, greater = true, orEqual = false, threshold = number())
+                ">=" -> Compare(field, greater = true, orEqual = true, threshold = number())
+                "<" -> Compare(field, greater = false, orEqual = false, threshold = number())
+                "<=" -> Compare(field, greater = false, orEqual = true, threshold = number())
+                else -> throw IllegalArgumentException("Unknown operator \"$operator\"")
+            }
+        }
+
+        private fun number(): Double {
+            val token = next()
+            return token.toDoubleOrNull() ?: throw IllegalArgumentException("Not a number \"$token\"")
+        }
+
+        private fun duration(): Long {
+            val value = number()
+            return when (peek()) {
+                "ms" -> {
+                    pos++
+                    value.toLong()
+                }
+                "s" -> {
+                    pos++
+                    (value * 1000).toLong()
+                }
+                else -> (value * 1000).toLong()
+            }
+        }
+    }
+
+    companion object {
+        private val TOKEN = Regex("""\s*(-?\d+(?:\.\d+)?|[A-Za-z_][A-Za-z0-9_]*|>=|<=|[<>()])""")
+
+        /**
+         * Compiles a rule, throws IllegalArgumentException with the reason if it is not valid.
+         */
+        @JvmStatic
+        fun parse(text: String): AlarmRule {
+            return Parser(text).rule()
+        }
+    }
+}
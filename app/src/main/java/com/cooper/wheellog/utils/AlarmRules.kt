@@ -0,0 +1,141 @@
+package com.cooper.wheellog.utils
+
+import com.cooper.wheellog.telemetry.TelemetrySample
+import timber.log.Timber
+import kotlin.math.abs
+
+/**
+ * The [AlarmRule]s of the current wheel and their state. The fields the rules use are read
+ * once per frame into an array the compiled conditions index, so [check] allocates nothing and
+ * its cost grows only with the comparisons of the rules.
+ */
+class AlarmRules private constructor(val text: String, val rules: Array<AlarmRule>) {
+    private val fields = rules.flatMapTo(HashSet()) { it.fields }.sorted().toTypedArray()
+    private val values = DoubleArray(AlarmField.count)
+    /** time the condition of a rule became true, [NONE] while it is false */
+    private val since = LongArray(rules.size) { NONE }
+    private val lastRaised = LongArray(rules.size) { NONE }
+    private val active = BooleanArray(rules.size)
+    private var restVoltage = 0.0
+
+    /** indices into [rules] of the rules raised by the last [check] */
+    val raised = IntArray(rules.size)
+
+    /** V, see [AlarmField.SAG] */
+    var sag = 0.0
+        private set
+    var cellDiff = 0.0
+        private set
+    var minCell = 0.0
+        private set
+
+    /**
+     * Checks the rules with a frame, returns how many of them were raised, see [raised].
+     */
+    fun check(sample: TelemetrySample, bms1: SmartBms?, bms2: SmartBms?): Int {
+        if (rules.isEmpty()) {
+            return 0
+        }
+        val voltage = sample.voltageDouble
+        if (restVoltage == 0.0 || abs(sample.currentDouble) < REST_CURRENT) {
+            restVoltage = voltage
+        }
+        sag = maxOf(0.0, restVoltage - voltage)
+        // no safe calls, they would box the doubles
+        cellDiff = maxOf(if (bms1 != null) bms1.cellDiff else 0.0, if (bms2 != null) bms2.cellDiff else 0.0)
+        minCell = minCell(if (bms1 != null) bms1.minCell else 0.0, if (bms2 != null) bms2.minCell else 0.0)
+        for (field in fields) {
+            values[field.ordinal] = field.read(sample, this)
+        }
+        val time = sample.timestamp
+        var count = 0
+        for (i in rules.indices) {
+            val rule = rules[i]
+            if (!rule.condition.test(values, if (active[i]) rule.hysteresis else 0.0)) {
+                since[i] = NONE
+                active[i] = false
+                continue
+            }
+            if (since[i] == NONE) {
+                since[i] = time
+            }
+            val repeat = active[i]
+            if (!repeat && time - since[i] < rule.hold) {
+                continue
+            }
+            active[i] = true
+            // raised again while the condition holds, every REPEAT_PERIOD if the rule has no cool-down
+            val coolDown = if (repeat && rule.coolDown == 0L) REPEAT_PERIOD else rule.coolDown
+            if (lastRaised[i] == NONE || time - lastRaised[i] >= coolDown) {
+                lastRaised[i] = time
+                raised[count++] = i
+            }
+        }
+        return count
+    }
+
+    /** rules whose condition holds */
+    val activeCount: Int
+        get() = active.count { it }
+
+    private fun minCell(first: Double, second: Double): Double {
+        return when {
+            first == 0.0 -> second
+            second == 0.0 -> first
+            else -> minOf(first, second)
+        }
+    }
+
+    companion object {
+        private const val NONE = Long.MIN_VALUE
+        /** A, below it the voltage counts as the voltage without load */
+        const val REST_CURRENT = 1.0
+        /** ms between the raises of a rule without cool-down while its condition holds */
+        const val REPEAT_PERIOD = 5000L
+
+        @JvmField
+        val EMPTY = AlarmRules("", emptyArray())
+
+        /**
+         * Compiles the rules of [text], one per line. Empty lines and lines starting with #
+         * are skipped, so are lines that are not valid, see [errors].
+         */
+        @JvmStatic
+        fun compile(text: String): AlarmRules {
+            val rules = ArrayList<AlarmRule>()
+            forEachRule(text) { line, rule ->
+                try {
+                    rules.add(AlarmRule.parse(rule))
+                } catch (e: IllegalArgumentException) {
+                    Timber.w("Alarm rule %d skipped: %s", line, e.message)
+                }
+            }
+            return AlarmRules(text, rules.toTypedArray())
+        }
+
+        /**
+         * Line numbers and reasons of the lines of [text] that are not valid rules.
+         */
+        @JvmStatic
+        fun errors(text: String): List<Pair<Int, String>> {
+            val errors = ArrayList<Pair<Int, String>>()
+            forEachRule(text) { line, rule ->
+                try {
+                    AlarmRule.parse(rule)
+                } catch (e: IllegalArgumentException) {
+                    errors.add(Pair(line, e.message ?: ""))
+                }
+            }
+            return errors
+        }
+
+        private inline fun forEachRule(text: String, action: (Int, String) -> Unit) {
+            text.lines().forEachIndexed { i, line ->
+                val rule = line.trim()
+                if (rule.isNotEmpty() && !rule.startsWith("#")) {
+                    action(i + 1, rule)
+                }
+            }
+        }
+    }
+}
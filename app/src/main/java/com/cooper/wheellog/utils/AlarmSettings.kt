@@ -0,0 +1,106 @@
+package com.cooper.wheellog.utils
+
+import com.cooper.wheellog.AppConfig
+import com.cooper.wheellog.WheelLog
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Alarm thresholds of the current wheel, compiled once from [AppConfig] into the units of
+ * [com.cooper.wheellog.telemetry.TelemetrySample]. Like DecodeSettings the snapshot is rebuilt
+ * after any preference change, so the per-frame check reads plain fields.
+ */
+data class AlarmSettings(
+    val enabled: Boolean,
+    /** PWM alarms instead of the speed alarms */
+    val altered: Boolean,
+    /** fraction of full PWM the alarm starts at */
+    val pwmStart: Double,
+    /** fraction of full PWM the alarm tone is longest at */
+    val pwmFull: Double,
+    /** fraction of full PWM, 0 - off */
+    val warningPwm: Double,
+    /** km/h, 0 - off */
+    val warningSpeed: Int,
+    /** ms between warnings, 0 - off */
+    val warningPeriod: Long,
+    /** ms, warns when the PWM trend reaches [pwmStart] within it, 0 - off */
+    val predictionHorizon: Long,
+    /** km/h, 0 - off */
+    val speed1: Int,
+    /** percents, the speed alarm starts below it */
+    val battery1: Int,
+    val speed2: Int,
+    val battery2: Int,
+    val speed3: Int,
+    val battery3: Int,
+    /** hundredths of A, 0 - off */
+    val current: Int,
+    /** °C, 0 - off */
+    val temperature: Int,
+    /** percents, 0 - off */
+    val battery: Int,
+    /** rules defined by the rider, see AlarmRules */
+    val rules: String,
+    val vibrate: Boolean,
+    val beep: Boolean,
+    val mibandText: Boolean
+) {
+    companion object {
+        private class Snapshot(val settings: AlarmSettings, val config: AppConfig, val generation: Int)
+
+        // bumped by invalidate, a snapshot built from older preferences is not used
+        private val generation = AtomicInteger()
+        @Volatile
+        private var cached: Snapshot? = null
+
+        /**
+         * Current snapshot. It is built lazily after [invalidate] or when AppConfig is replaced.
+         */
+        @JvmStatic
+        val current: AlarmSettings
+            get() {
+                val config = WheelLog.AppConfig
+                val snapshot = cached
+                if (snapshot != null && snapshot.config === config && snapshot.generation == generation.get()) {
+                    return snapshot.settings
+                }
+                // taken before reading the preferences, so a change while building outdates the snapshot
+                val building = generation.get()
+                return from(config).also {
+                    cached = Snapshot(it, config, building)
+                }
+            }
+
+        @JvmStatic
+        fun invalidate() {
+            generation.incrementAndGet()
+        }
+
+        @JvmStatic
+        fun from(config: AppConfig): AlarmSettings {
+            return AlarmSettings(
+                enabled = config.alarmsEnabled,
+                altered = config.alteredAlarms,
+                pwmStart = config.alarmFactor1 / 100.0,
+                pwmFull = config.alarmFactor2 / 100.0,
+                warningPwm = config.warningPwm / 100.0,
+                warningSpeed = config.warningSpeed,
+                warningPeriod = config.warningSpeedPeriod * 1000L,
+                predictionHorizon = config.pwmPredictionHorizon.toLong(),
+                speed1 = config.alarm1Speed,
+                battery1 = config.alarm1Battery,
+                speed2 = config.alarm2Speed,
+                battery2 = config.alarm2Battery,
+                speed3 = config.alarm3Speed,
+                battery3 = config.alarm3Battery,
+                current = config.alarmCurrent * 100,
+                temperature = config.alarmTemperature,
+                battery = config.alarmBattery,
+                rules = config.alarmRules,
+                vibrate = !config.disablePhoneVibrate,
+                beep = !config.disablePhoneBeep,
+                mibandText = config.mibandMode === MiBandEnum.Alarm
+            )
+        }
+    }
+}
@@ -2,17 +2,13 @@ package com.cooper.wheellog.utils
 
 import android.content.Context
 import android.content.Intent
-import android.os.Build
-import android.os.VibrationEffect
-import android.os.Vibrator
-import android.os.VibratorManager
 import com.cooper.wheellog.R
 import com.cooper.wheellog.WheelData
 import com.cooper.wheellog.WheelLog
-import com.cooper.wheellog.utils.AudioUtil.playAlarm
+import com.cooper.wheellog.telemetry.LatencyStats
+import com.cooper.wheellog.telemetry.PipelineClock
+import com.cooper.wheellog.telemetry.TelemetrySample
 import com.cooper.wheellog.utils.Constants.ALARM_TYPE
-import com.cooper.wheellog.utils.SomeUtil.Companion.playSound
-import kotlinx.coroutines.*
 import timber.log.Timber
 import java.util.*
 import kotlin.math.roundToInt
@@ -23,22 +19,38 @@ object Alarms {
     private var currentAlarmExecuting = TempBoolean().apply { timeToResetToDefault = 170 }
     private var temperatureAlarmExecuting = TempBoolean().apply { timeToResetToDefault = 570 }
     private var batteryAlarmExecuting = TempBoolean().apply { timeToResetToDefault = 970 }
-    private var lastPlayWarningSpeedTime = System.currentTimeMillis()
-    private var alarmTimer: Timer? = null
-    private const val checkPeriod: Long = 200
-    private lateinit var timerTask: TimerTask
+    private var lastPlayWarningSpeedTime = PipelineClock.now()
+    private var lastPredictedWarningTime = 0L
+    private val pwmPredictor = PwmPredictor()
+    /** ms between the warnings of a predicted PWM alarm */
+    private const val PREDICTED_WARNING_PERIOD = 1000L
+    private var alarmTimer: TickScheduler.Task? = null
+    const val checkPeriod: Long = 200
     private var isStarted: Boolean = false
+    private var lastSample: TelemetrySample? = null
+    private var lastCheck = 0L
+    private var rules = AlarmRules.EMPTY
+    private var rulesSettings: AlarmSettings? = null
+    private val rulePattern = longArrayOf(0, 200, 100, 200)
 
-    private fun newTimerTask(): TimerTask {
-        return object : TimerTask() {
-            override fun run() {
-                val wd = WheelData.getInstance() ?: return
-                val mContext: Context = WheelLog.appContext ?: return
-                if (!reCheckAlarm(wd.calculatedPwm / 100, mContext)) {
-                    stop()
-                }
-            }
+    /**
+     * When false running alarms are not re-checked by a timer,
+     * the caller calls [recheck] every [checkPeriod] instead (used by the replay).
+     */
+    @Volatile
+    var useTimer = true
+
+    /**
+     * Repeats running alarms with the last checked frame if no frame was checked for [checkPeriod],
+     * so they keep sounding while the wheel is silent. Stops them when none is raised anymore.
+     */
+    @Synchronized
+    fun recheck(mContext: Context) {
+        if (!isStarted || PipelineClock.now() - lastCheck < checkPeriod) {
+            return
         }
+        val sample = lastSample ?: WheelData.getInstance()?.sample ?: return
+        evaluate(sample, mContext)
     }
 
     val alarm: Int
@@ -63,115 +75,152 @@ object Alarms {
     fun start() {
         stop()
         isStarted = true
-        timerTask = newTimerTask()
-        alarmTimer = Timer().apply {
-            scheduleAtFixedRate(timerTask, 0, checkPeriod)
+        if (useTimer) {
+            alarmTimer = TickScheduler.schedule("alarms", checkPeriod, checkPeriod) {
+                val mContext: Context = WheelLog.appContext ?: return@schedule
+                recheck(mContext)
+            }
         }
     }
 
     @Synchronized
     fun stop() {
         if (isStarted) {
-            timerTask.cancel()
             alarmTimer?.cancel()
             alarmTimer = null
             isStarted = false
         }
     }
 
-    fun checkAlarm(pwm: Double, mContext: Context): Boolean {
-        if (isStarted) {
-            return true
-        }
-        return reCheckAlarm(pwm, mContext)
+    /**
+     * Checks the alarms with a decoded frame. Called for every frame on the decoding thread,
+     * an alarm is raised with the frame that crosses its threshold and then repeated no more often
+     * than its cool-down allows.
+     */
+    @Synchronized
+    fun checkAlarm(sample: TelemetrySample, mContext: Context): Boolean {
+        pwmPredictor.add(sample.timestamp, sample.calculatedPwm / 100, sample.speedDouble,
+            sample.currentDouble, sample.voltageDouble)
+        val executed = evaluate(sample, mContext)
+        checkRules(sample, mContext)
+        LatencyStats.record(LatencyStats.ALARM, sample)
+        return executed
     }
 
-    private fun reCheckAlarm(pwm: Double, mContext: Context): Boolean {
-        val executed = if (WheelLog.AppConfig.alteredAlarms) {
-            alertedAlarms(pwm, mContext)
+    private fun evaluate(sample: TelemetrySample, mContext: Context): Boolean {
+        lastSample = sample
+        lastCheck = PipelineClock.now()
+        val settings = AlarmSettings.current
+        val executed = if (settings.altered) {
+            alertedAlarms(sample, settings, mContext)
         } else {
-            oldAlarms(mContext)
+            oldAlarms(sample, settings, mContext)
         }
-                || currentAlarms(mContext)
-                || temperatureAlarms(mContext)
-                || batteryAlarms(mContext)
+                || currentAlarms(sample, settings, mContext)
+                || temperatureAlarms(sample, settings, mContext)
+                || batteryAlarms(sample, settings, mContext)
         if (executed && !isStarted) {
             start()
+        } else if (!executed) {
+            stop()
         }
         return executed
     }
 
-    private fun alertedAlarms(pwm: Double, mContext: Context): Boolean {
-        if (pwm > WheelLog.AppConfig.alarmFactor1 / 100.0) {
-            AudioUtil.toneDuration =
-                (200 * (pwm - WheelLog.AppConfig.alarmFactor1 / 100.0) / (WheelLog.AppConfig.alarmFactor2 / 100.0 - WheelLog.AppConfig.alarmFactor1 / 100.0)).roundToInt()
-            AudioUtil.toneDuration = MathsUtil.clamp(AudioUtil.toneDuration, 20, 200)
-            raiseAlarm(ALARM_TYPE.PWM, pwm, mContext)
+    /**
+     * Checks the rules of the rider. They are compiled again only when their text changed.
+     */
+    private fun checkRules(sample: TelemetrySample, mContext: Context) {
+        val settings = AlarmSettings.current
+        if (settings !== rulesSettings) {
+            rulesSettings = settings
+            if (rules.text != settings.rules) {
+                rules = AlarmRules.compile(settings.rules)
+            }
+        }
+        val data = WheelData.getInstance()
+        val count = rules.check(sample, data?.bms1, data?.bms2)
+        for (i in 0 until count) {
+            raiseRule(rules.rules[rules.raised[i]], settings, mContext)
+        }
+    }
+
+    private fun alertedAlarms(sample: TelemetrySample, settings: AlarmSettings, mContext: Context): Boolean {
+        val pwm = sample.calculatedPwm / 100
+        if (pwm > settings.pwmStart) {
+            if (!speedAlarmExecuting.value) {
+                AudioUtil.toneDuration =
+                    (200 * (pwm - settings.pwmStart) / (settings.pwmFull - settings.pwmStart)).roundToInt()
+                AudioUtil.toneDuration = MathsUtil.clamp(AudioUtil.toneDuration, 20, 200)
+                raiseAlarm(ALARM_TYPE.PWM, pwm, sample, settings, mContext)
+                speedAlarmExecuting.value = true
+            }
             return true
         } else {
             // check if speed alarm executing and stop it
             speedAlarmExecuting.value = false
+            // the trend reaches the alarm soon
+            if (settings.predictionHorizon != 0L && pwmPredictor.willCross(settings.pwmStart, settings.predictionHorizon)
+                    && PipelineClock.now() - lastPredictedWarningTime > PREDICTED_WARNING_PERIOD) {
+                lastPredictedWarningTime = PipelineClock.now()
+                Timber.i("Predicted PWM %.2f in %d ms", pwmPredictor.predict(settings.predictionHorizon), settings.predictionHorizon)
+                AlarmOutput.play(mContext, R.raw.warning_pwm)
+                return false
+            }
             // pre alarm
-            val warningPwm = WheelLog.AppConfig.warningPwm / 100.0
-            val warningSpeedPeriod = WheelLog.AppConfig.warningSpeedPeriod * 1000
-            if (warningPwm != 0.0 && warningSpeedPeriod != 0 && pwm >= warningPwm && System.currentTimeMillis() - lastPlayWarningSpeedTime > warningSpeedPeriod) {
-                lastPlayWarningSpeedTime = System.currentTimeMillis()
-                playSound(mContext, R.raw.warning_pwm)
+            if (settings.warningPwm != 0.0 && settings.warningPeriod != 0L && pwm >= settings.warningPwm && PipelineClock.now() - lastPlayWarningSpeedTime > settings.warningPeriod) {
+                lastPlayWarningSpeedTime = PipelineClock.now()
+                AlarmOutput.play(mContext, R.raw.warning_pwm)
             } else {
-                val warningSpeed = WheelLog.AppConfig.warningSpeed
-                if (warningSpeed != 0 && warningSpeedPeriod != 0 && WheelData.getInstance().speedDouble >= warningSpeed && System.currentTimeMillis() - lastPlayWarningSpeedTime > warningSpeedPeriod) {
-                    lastPlayWarningSpeedTime = System.currentTimeMillis()
-                    playSound(mContext, R.raw.sound_warning_speed)
+                if (settings.warningSpeed != 0 && settings.warningPeriod != 0L && sample.speedDouble >= settings.warningSpeed && PipelineClock.now() - lastPlayWarningSpeedTime > settings.warningPeriod) {
+                    lastPlayWarningSpeedTime = PipelineClock.now()
+                    AlarmOutput.play(mContext, R.raw.sound_warning_speed)
                 }
             }
         }
         return false
     }
 
-    private fun oldAlarms(mContext: Context): Boolean {
-        if (checkOldAlarmSpeed(WheelLog.AppConfig.alarm1Speed, WheelLog.AppConfig.alarm1Battery)) {
-            AudioUtil.toneDuration = 50
-            raiseAlarm(ALARM_TYPE.SPEED1, WheelData.getInstance().speedDouble, mContext)
-            return true
-        } else if (checkOldAlarmSpeed(
-                WheelLog.AppConfig.alarm2Speed,
-                WheelLog.AppConfig.alarm2Battery
-            )
-        ) {
-            AudioUtil.toneDuration = 100
-            raiseAlarm(ALARM_TYPE.SPEED2, WheelData.getInstance().speedDouble, mContext)
-            return true
-        } else if (checkOldAlarmSpeed(
-                WheelLog.AppConfig.alarm3Speed,
-                WheelLog.AppConfig.alarm3Battery
-            )
-        ) {
-            AudioUtil.toneDuration = 180
-            raiseAlarm(ALARM_TYPE.SPEED3, WheelData.getInstance().speedDouble, mContext)
-            return true
-        } else {
-            // check if speed alarm executing and stop it
-            speedAlarmExecuting.value = false
+    private fun oldAlarms(sample: TelemetrySample, settings: AlarmSettings, mContext: Context): Boolean {
+        val type = when {
+            checkOldAlarmSpeed(sample, settings.speed1, settings.battery1) -> ALARM_TYPE.SPEED1
+            checkOldAlarmSpeed(sample, settings.speed2, settings.battery2) -> ALARM_TYPE.SPEED2
+            checkOldAlarmSpeed(sample, settings.speed3, settings.battery3) -> ALARM_TYPE.SPEED3
+            else -> {
+                // check if speed alarm executing and stop it
+                speedAlarmExecuting.value = false
+                return false
+            }
         }
-        return false
+        if (!speedAlarmExecuting.value) {
+            AudioUtil.toneDuration = when (type) {
+                ALARM_TYPE.SPEED1 -> 50
+                ALARM_TYPE.SPEED2 -> 100
+                else -> 180
+            }
+            raiseAlarm(type, sample.speedDouble, sample, settings, mContext)
+            speedAlarmExecuting.value = true
+        }
+        return true
     }
 
-    private fun checkOldAlarmSpeed(alarmSpeed: Int, alarmBattery: Int): Boolean {
+    private fun checkOldAlarmSpeed(sample: TelemetrySample, alarmSpeed: Int, alarmBattery: Int): Boolean {
         return alarmSpeed > 0
             && alarmBattery > 0
-            && WheelData.getInstance().batteryLevel <= alarmBattery
-            && WheelData.getInstance().speedDouble >= alarmSpeed
+            && sample.batteryLevel <= alarmBattery
+            && sample.speedDouble >= alarmSpeed
     }
 
-    private fun temperatureAlarms(mContext: Context): Boolean {
+    private fun temperatureAlarms(sample: TelemetrySample, settings: AlarmSettings, mContext: Context): Boolean {
         if (temperatureAlarmExecuting.value) {
             return true
         }
-        val alarmTemperature = WheelLog.AppConfig.alarmTemperature
-        if (alarmTemperature > 0 && WheelData.getInstance().temperature >= alarmTemperature) {
+        if (settings.temperature > 0 && sample.temperature >= settings.temperature) {
             raiseAlarm(
                 ALARM_TYPE.TEMPERATURE,
-                WheelData.getInstance().temperature.toDouble(),
+                sample.temperature.toDouble(),
+                sample,
+                settings,
                 mContext
             )
             temperatureAlarmExecuting.value = true
@@ -179,15 +228,16 @@ object Alarms {
         return temperatureAlarmExecuting.value
     }
 
-    private fun currentAlarms(mContext: Context): Boolean {
+    private fun currentAlarms(sample: TelemetrySample, settings: AlarmSettings, mContext: Context): Boolean {
         if (currentAlarmExecuting.value) {
             return true
         }
-        val alarmCurrent = WheelLog.AppConfig.alarmCurrent * 100
-        if (alarmCurrent > 0 && WheelData.getInstance().current >= alarmCurrent) {
+        if (settings.current > 0 && sample.current >= settings.current) {
             raiseAlarm(
                 ALARM_TYPE.CURRENT,
-                WheelData.getInstance().currentDouble,
+                sample.currentDouble,
+                sample,
+                settings,
                 mContext
             )
             currentAlarmExecuting.value = true
@@ -195,15 +245,16 @@ object Alarms {
         return currentAlarmExecuting.value
     }
 
-    private fun batteryAlarms(mContext: Context): Boolean {
+    private fun batteryAlarms(sample: TelemetrySample, settings: AlarmSettings, mContext: Context): Boolean {
         if (batteryAlarmExecuting.value) {
             return true
         }
-        val alarmBattery = WheelLog.AppConfig.alarmBattery
-        if (alarmBattery > 0 && WheelData.getInstance().batteryLevel <= alarmBattery) {
+        if (settings.battery > 0 && sample.batteryLevel <= settings.battery) {
             raiseAlarm(
                     ALARM_TYPE.BATTERY,
-                    WheelData.getInstance().batteryLevel.toDouble(),
+                    sample.batteryLevel.toDouble(),
+                    sample,
+                    settings,
                     mContext
             )
             batteryAlarmExecuting.value = true
@@ -211,7 +262,23 @@ object Alarms {
         return batteryAlarmExecuting.value
     }
 
-    private fun raiseAlarm(alarmType: ALARM_TYPE, value: Double, mContext: Context) {
+    private fun raiseRule(rule: AlarmRule, settings: AlarmSettings, mContext: Context) {
+        val triggered = LatencyStats.now()
+        Timber.i("Alarm rule raised: %s", rule.text)
+        if (settings.vibrate) {
+            AlarmOutput.vibrate(mContext, rulePattern)
+        }
+        if (settings.beep) {
+            AlarmOutput.play(mContext, R.raw.sound_warning_speed, triggered)
+        }
+        if (settings.mibandText) {
+            WheelLog.Notifications.alarmText = rule.text
+            WheelLog.Notifications.update()
+        }
+    }
+
+    private fun raiseAlarm(alarmType: ALARM_TYPE, value: Double, sample: TelemetrySample, settings: AlarmSettings, mContext: Context) {
+        val triggered = LatencyStats.now()
         val intent = Intent(Constants.ACTION_ALARM_TRIGGERED)
         intent.putExtra(Constants.INTENT_EXTRA_ALARM_TYPE, alarmType)
         intent.putExtra(Constants.INTENT_EXTRA_ALARM_VALUE, value)
@@ -225,20 +292,18 @@ object Alarms {
             ALARM_TYPE.BATTERY -> longArrayOf(0, 100, 500)
 
         }
-        if (!WheelLog.AppConfig.disablePhoneVibrate) {
-            vibrate(mContext, pattern)
+        if (settings.vibrate) {
+            AlarmOutput.vibrate(mContext, pattern)
         }
-        if (!WheelLog.AppConfig.disablePhoneBeep) {
-            CoroutineScope(Job()).launch {
-                Timber.i("Scheduled alarm. $alarmType")
-                if (alarmType == ALARM_TYPE.BATTERY) {
-                    playSound(mContext, R.raw.lowbat)
-                }
-                else playAlarm(alarmType)
+        if (settings.beep) {
+            Timber.i("Scheduled alarm. $alarmType")
+            if (alarmType == ALARM_TYPE.BATTERY) {
+                AlarmOutput.play(mContext, R.raw.lowbat, triggered)
             }
+            else AlarmOutput.tone(alarmType, triggered)
         }
         mContext.sendBroadcast(intent)
-        if (WheelLog.AppConfig.mibandMode === MiBandEnum.Alarm) {
+        if (settings.mibandText) {
             val miText: String = when (alarmType) {
                 ALARM_TYPE.SPEED1,
                 ALARM_TYPE.SPEED2,
@@ -247,49 +312,29 @@ object Alarms {
                     String.format(
                         Locale.US,
                         mContext.getString(R.string.alarm_text_speed_v),
-                        WheelData.getInstance().speedDouble
+                        sample.speedDouble
                     )
                 ALARM_TYPE.CURRENT ->
                     String.format(
                         Locale.US,
                         mContext.getString(R.string.alarm_text_current_v),
-                        WheelData.getInstance().currentDouble
+                        sample.currentDouble
                     )
                 ALARM_TYPE.TEMPERATURE ->
                     String.format(
                         Locale.US,
                         mContext.getString(R.string.alarm_text_temperature_v),
-                        WheelData.getInstance().temperature
+                        sample.temperature
                     )
                 ALARM_TYPE.BATTERY ->
                     String.format(
                             Locale.US,
                             mContext.getString(R.string.alarm_text_battery_v),
-                            WheelData.getInstance().batteryLevel
+                            sample.batteryLevel
                     )
             }
             WheelLog.Notifications.alarmText = miText
             WheelLog.Notifications.update()
         }
     }
-
-    private fun vibrate(mContext: Context, pattern: LongArray) {
-        val vib = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-            val vibratorManager =
-                mContext.getSystemService(Context.VIBRATOR_MANAGER_SERVICE) as VibratorManager
-            vibratorManager.defaultVibrator
-        } else  {
-            @Suppress("DEPRECATION")
-            mContext.getSystemService(Context.VIBRATOR_SERVICE) as Vibrator
-        }
-        if (vib.hasVibrator()) {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                val vibrationEffect = VibrationEffect.createWaveform(pattern, -1)
-                vib.vibrate(vibrationEffect)
-            } else {
-                @Suppress("DEPRECATION")
-                vib.vibrate(pattern, -1)
-            }
-        }
-    }
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+package com.cooper.wheellog.utils
+
+import timber.log.Timber
+import java.io.BufferedOutputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.OutputStream
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Writes text lines or binary records to [output] from a background thread.
+ * Lines are buffered and flushed every [flushRows] lines or [flushInterval] ms, whichever comes first,
+ * and on [close]. When the queue is full new lines are dropped and counted in [droppedLines],
+ * so are lines written after [close].
+ * The output stream itself is not closed.
+ */
+class AsyncLineWriter @JvmOverloads constructor(
+    private val output: OutputStream,
+    private val flushRows: Int = DEFAULT_FLUSH_ROWS,
+    private val flushInterval: Long = DEFAULT_FLUSH_INTERVAL,
+    queueCapacity: Int = DEFAULT_QUEUE_CAPACITY
+) {
+    private val buffered = BufferedOutputStream(output, BUFFER_SIZE)
+    private val queue = ArrayBlockingQueue<ByteArray>(queueCapacity)
+    private val dropped = AtomicInteger()
+    private val thread = Thread({ run() }, "WheelLog-log-writer")
+
+    // guards closed, so no line is queued behind the end marker
+    private val lock = Any()
+    private var closed = false
+
+    val droppedLines: Int
+        get() = dropped.get()
+
+    init {
+        thread.start()
+    }
+
+    /**
+     * Queues [line] for writing, returns false if it was dropped.
+     */
+    fun writeLine(line: String): Boolean {
+        return enqueue((line + "\r\n").toByteArray())
+    }
+
+    /**
+     * Queues a copy of the first [length] bytes of [line], returns false if it was dropped.
+     */
+    fun writeLine(line: ByteArray, length: Int): Boolean {
+        val data = line.copyOf(length + NEW_LINE.size)
+        System.arraycopy(NEW_LINE, 0, data, length, NEW_LINE.size)
+        return enqueue(data)
+    }
+
+    /**
+     * Same as [writeLine] without the line break.
+     */
+    fun write(data: ByteArray, length: Int): Boolean {
+        return enqueue(data.copyOf(length))
+    }
+
+    private fun enqueue(line: ByteArray): Boolean {
+        synchronized(lock) {
+            if (closed || !queue.offer(line)) {
+                dropped.incrementAndGet()
+                return false
+            }
+        }
+        return true
+    }
+
+    /**
+     * Writes all queued lines, flushes them and syncs the file descriptor if there is one.
+     */
+    fun close() {
+        synchronized(lock) {
+            if (closed) {
+                return
+            }
+            closed = true
+        }
+        try {
+            // queued after all accepted lines, the writer stops when it gets there
+            queue.put(END)
+            thread.join()
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+        }
+        try {
+            (output as? FileOutputStream)?.fd?.sync()
+        } catch (e: IOException) {
+            Timber.e(e, "Log sync failed")
+        }
+    }
+
+    private fun run() {
+        var pending = 0
+        var lastFlush = System.currentTimeMillis()
+        while (true) {
+            val line = try {
+                queue.poll(flushInterval, TimeUnit.MILLISECONDS)
+            } catch (e: InterruptedException) {
+                null
+            }
+            if (line === END) {
+                break
+            }
+            try {
+                if (line != null) {
+                    buffered.write(line)
+                    pending++
+                }
+                val now = System.currentTimeMillis()
+                if (pending > 0 && (pending >= flushRows || now - lastFlush >= flushInterval)) {
+                    buffered.flush()
+                    pending = 0
+                    lastFlush = now
+                }
+            } catch (e: IOException) {
+                Timber.e(e, "Log write failed")
+            }
+        }
+        try {
+            buffered.flush()
+        } catch (e: IOException) {
+            Timber.e(e, "Log write failed")
+        }
+    }
+
+    companion object {
+        const val DEFAULT_FLUSH_ROWS = 50
+        const val DEFAULT_FLUSH_INTERVAL = 1000L
+        const val DEFAULT_QUEUE_CAPACITY = 1024
+        private const val BUFFER_SIZE = 16 * 1024
+        private val NEW_LINE = "\r\n".toByteArray()
+        private val END = ByteArray(0)
+    }
+}
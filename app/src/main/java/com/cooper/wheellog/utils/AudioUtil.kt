@@ -8,7 +8,6 @@ import android.os.Build
 import com.cooper.wheellog.WheelData
 import com.cooper.wheellog.WheelLog
 import com.cooper.wheellog.utils.Constants.ALARM_TYPE
-import kotlinx.coroutines.*
 import timber.log.Timber
 import kotlin.math.sin
 
@@ -54,21 +53,33 @@ object AudioUtil {
         }
     }
 
+    // written to stop the static track, allocated once
+    private val silence = ShortArray(numSamples)
+
+    /**
+     * Synthesizes the tone and creates the track ahead of the first alarm.
+     */
+    fun prepare() {
+        audioTrack
+    }
+
     private fun prepareTone() {
+        // each part of the tone computes only its own waves
         for (i in 0 until numSamples) {
-            val originalWave = sin(2 * Math.PI * freq * i / sampleRate)
-            val harmonic1 = 0.5 * sin(2 * Math.PI * 2 * freq * i / sampleRate)
-            val harmonic2 = 0.25 * sin(2 * Math.PI * 4 * freq * i / sampleRate)
-            val secondWave = sin(2 * Math.PI * freq * 1.34f * i / sampleRate)
-            val thirdWave = sin(2 * Math.PI * freq * 2.0f * i / sampleRate)
-            val fourthWave = sin(2 * Math.PI * freq * 2.68f * i / sampleRate)
             if (i <= numSamples * 3 / 10) {
+                val originalWave = sin(2 * Math.PI * freq * i / sampleRate)
+                val harmonic1 = 0.5 * sin(2 * Math.PI * 2 * freq * i / sampleRate)
+                val harmonic2 = 0.25 * sin(2 * Math.PI * 4 * freq * i / sampleRate)
                 buffer[i] =
                     ((originalWave + harmonic1 + harmonic2) * Short.MAX_VALUE).toInt()
                         .toShort() //+ harmonic1 + harmonic2
             } else if (i < numSamples * 3 / 5) {
+                val originalWave = sin(2 * Math.PI * freq * i / sampleRate)
+                val secondWave = sin(2 * Math.PI * freq * 1.34f * i / sampleRate)
                 buffer[i] = ((originalWave + secondWave) * Short.MAX_VALUE).toInt().toShort()
             } else {
+                val thirdWave = sin(2 * Math.PI * freq * 2.0f * i / sampleRate)
+                val fourthWave = sin(2 * Math.PI * freq * 2.68f * i / sampleRate)
                 buffer[i] = ((thirdWave + fourthWave) * Short.MAX_VALUE).toInt().toShort()
             }
         }
@@ -76,41 +87,44 @@ object AudioUtil {
 
     var toneDuration = 0
 
-    suspend fun playAlarm(alarmType: ALARM_TYPE) {
+    /**
+     * Plays the alarm tone, blocking while it is written to the track. Returns false if
+     * the wheel beeps instead or the track failed.
+     */
+    fun playAlarm(alarmType: ALARM_TYPE): Boolean {
         if (WheelLog.AppConfig.useWheelBeepForAlarm && WheelData.getInstance() != null) {
             SomeUtil.playBeep(onlyByWheel = true, onlyDefault = false)
-            return
+            return false
         }
         try {
-            withContext(Dispatchers.IO) {
-                audioTrack.apply {
-                    if (playState == AudioTrack.PLAYSTATE_PLAYING) {
-                        stop()
-                        val emptyBuffer = ShortArray(numSamples)
-                        write(emptyBuffer, 0, buffer.size)
+            audioTrack.apply {
+                if (playState == AudioTrack.PLAYSTATE_PLAYING) {
+                    stop()
+                    write(silence, 0, buffer.size)
+                }
+                when (alarmType) {
+                    ALARM_TYPE.CURRENT -> {
+                        write(buffer, sampleRate * 3 / 10, 2 * sampleRate / 20)
+                    }
+                    // 100 ms for current
+                    ALARM_TYPE.SPEED1,
+                    ALARM_TYPE.SPEED2,
+                    ALARM_TYPE.SPEED3,
+                    ALARM_TYPE.PWM -> {
+                        write(buffer, sampleRate / 20, toneDuration * sampleRate / 1000)
                     }
-                    when (alarmType) {
-                        ALARM_TYPE.CURRENT -> {
-                            write(buffer, sampleRate * 3 / 10, 2 * sampleRate / 20)
-                        }
-                        // 100 ms for current
-                        ALARM_TYPE.SPEED1,
-                        ALARM_TYPE.SPEED2,
-                        ALARM_TYPE.SPEED3,
-                        ALARM_TYPE.PWM -> {
-                            write(buffer, sampleRate / 20, toneDuration * sampleRate / 1000)
-                        }
-                        // 50, 100, 150 ms depends on number of speed alarm
-                        else -> {
-                            write(buffer, sampleRate * 3 / 10, 6 * sampleRate / 10)
-                        }
-                        // 600 ms temperature
+                    // 50, 100, 150 ms depends on number of speed alarm
+                    else -> {
+                        write(buffer, sampleRate * 3 / 10, 6 * sampleRate / 10)
                     }
-                    play()
+                    // 600 ms temperature
                 }
+                play()
             }
+            return true
         } catch (ex: Exception) {
             Timber.i(ex)
+            return false
         }
     }
 }
\ No newline at end of file
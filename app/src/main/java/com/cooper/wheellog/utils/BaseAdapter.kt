@@ -55,4 +55,7 @@ abstract class BaseAdapter {
         get() = 0
     open val isReady: Boolean
         get() = false
+    /** ms between the data requests of wheels that only answer requests, 0 if the wheel notifies by itself */
+    open val requestInterval: Long
+        get() = 0
 }
\ No newline at end of file
@@ -0,0 +1,138 @@
+package com.cooper.wheellog.utils
+
+import java.io.InputStream
+import java.io.OutputStream
+
+/**
+ * Binary trip log (.wlt), an alternative to the CSV trip log with the same columns.
+ *
+ * File layout: [MAGIC], version byte, column count, then for each column its type, decimals and name.
+ * Rows follow, each is [ROW], the varint length of its values, the values and a [checksum] of them.
+ * Every [SYNC_INTERVAL] rows and at the start of every appended session a [SYNC] marker is written,
+ * after which all columns start again from zero, so a reader can skip a damaged part of the file.
+ * Numbers are stored as zigzag varint deltas from the previous row, text is stored only when it changes.
+ */
+object BinaryTripLog {
+    const val FILE_EXTENSION = ".wlt"
+    const val MIME_TYPE = "application/octet-stream"
+    const val VERSION = 2
+    const val SYNC_INTERVAL = 256
+
+    @JvmField
+    val MAGIC = byteArrayOf('W'.code.toByte(), 'L'.code.toByte(), 'T'.code.toByte(), 'R'.code.toByte())
+    @JvmField
+    val SYNC = byteArrayOf(0xFF.toByte(), 'S'.code.toByte(), 'Y'.code.toByte(), 'N'.code.toByte())
+    const val ROW = 0x01
+
+    /** ms timestamp, exported as "date,time" */
+    const val TYPE_TIME = 1
+    /** double with fixed decimals, stored in units of 10^-decimals */
+    const val TYPE_FIXED = 2
+    const val TYPE_INT = 3
+    const val TYPE_TEXT = 4
+
+    // values of TYPE_FIXED that are not plain numbers
+    const val NEGATIVE_ZERO = Long.MIN_VALUE
+    const val NAN = Long.MIN_VALUE + 1
+    const val POSITIVE_INFINITY = Long.MIN_VALUE + 2
+    const val NEGATIVE_INFINITY = Long.MIN_VALUE + 3
+
+    class Column(val name: String, val type: Int, val decimals: Int = 0)
+
+    /**
+     * Columns written by LoggingService, in the same order as the CSV log.
+     */
+    @JvmStatic
+    fun columns(withLocation: Boolean): List<Column> {
+        val result = ArrayList<Column>()
+        result.add(Column("time", TYPE_TIME))
+        if (withLocation) {
+            result.add(Column("latitude", TYPE_TEXT))
+            result.add(Column("longitude", TYPE_TEXT))
+            result.add(Column("gps_speed", TYPE_TEXT))
+            result.add(Column("gps_alt", TYPE_TEXT))
+            result.add(Column("gps_heading", TYPE_TEXT))
+            result.add(Column("gps_distance", TYPE_FIXED, 0))
+        }
+        result.add(Column("speed", TYPE_FIXED, 2))
+        result.add(Column("voltage", TYPE_FIXED, 2))
+        result.add(Column("phase_current", TYPE_FIXED, 2))
+        result.add(Column("current", TYPE_FIXED, 2))
+        result.add(Column("power", TYPE_FIXED, 2))
+        result.add(Column("torque", TYPE_FIXED, 2))
+        result.add(Column("pwm", TYPE_FIXED, 2))
+        result.add(Column("battery_level", TYPE_INT))
+        result.add(Column("distance", TYPE_INT))
+        result.add(Column("totaldistance", TYPE_INT))
+        result.add(Column("system_temp", TYPE_INT))
+        result.add(Column("temp2", TYPE_INT))
+        result.add(Column("tilt", TYPE_FIXED, 2))
+        result.add(Column("roll", TYPE_FIXED, 2))
+        result.add(Column("mode", TYPE_TEXT))
+        result.add(Column("alert", TYPE_TEXT))
+        return result
+    }
+
+    /**
+     * CRC-8 (polynomial 0x07) of a row.
+     */
+    @JvmStatic
+    fun checksum(data: ByteArray, offset: Int, length: Int): Int {
+        var crc = 0
+        for (i in offset until offset + length) {
+            crc = CRC8[(crc xor data[i].toInt()) and 0xFF]
+        }
+        return crc
+    }
+
+    private val CRC8 = IntArray(256) {
+        var crc = it
+        for (bit in 0 until 8) {
+            crc = if (crc and 0x80 != 0) (crc shl 1) xor 0x07 else crc shl 1
+        }
+        crc and 0xFF
+    }
+
+    @JvmStatic
+    fun hasLocation(columns: List<Column>): Boolean {
+        return columns.any { it.name == "latitude" }
+    }
+
+    /**
+     * CSV header line for [columns], the time column becomes "date,time".
+     */
+    @JvmStatic
+    fun csvHeader(columns: List<Column>): String {
+        return columns.joinToString(",") { if (it.type == TYPE_TIME) "date,time" else it.name }
+    }
+
+    @JvmStatic
+    fun isBinary(fileName: String): Boolean {
+        return fileName.endsWith(FILE_EXTENSION)
+    }
+
+    /**
+     * Streams [input] as CSV text, identical to the CSV log written with the same values.
+     */
+    @JvmStatic
+    fun exportCsv(input: InputStream, output: OutputStream) {
+        val reader = BinaryTripLogReader(input)
+        val encoder = CsvRowEncoder()
+        output.write(csvHeader(reader.columns).toByteArray())
+        output.write(CRLF)
+        while (reader.next()) {
+            encoder.reset()
+            for (i in reader.columns.indices) {
+                if (i > 0) {
+                    encoder.comma()
+                }
+                reader.appendCsv(i, encoder)
+            }
+            output.write(encoder.buffer, 0, encoder.length)
+            output.write(CRLF)
+        }
+        output.flush()
+    }
+
+    private val CRLF = "\r\n".toByteArray()
+}
@@ -0,0 +1,305 @@
+package com.cooper.wheellog.utils
+
+import com.cooper.wheellog.utils.BinaryTripLog.Column
+import timber.log.Timber
+import java.io.*
+import java.util.*
+
+/**
+ * Reads rows of a [BinaryTripLog] file. Damaged data is skipped up to the next sync marker,
+ * a row cut off at the end of the file (e.g. after a crash) is ignored.
+ */
+class BinaryTripLogReader(input: InputStream) : TripLogReader {
+    private val stream = if (input is BufferedInputStream) input else BufferedInputStream(input)
+    val columns: List<Column>
+    private val values: LongArray
+    private val texts: Array<String>
+    private val columnByHeader = IntArray(LogHeaderEnum.values().size) { -1 }
+    private val timeEncoder = CsvRowEncoder(16)
+    private var timeColumn = -1
+    private var synced = false
+    private var row = ByteArray(256)
+    private var position = 0
+    private var rowLength = 0
+
+    init {
+        val magic = ByteArray(BinaryTripLog.MAGIC.size)
+        if (readFully(magic, magic.size) != magic.size || !magic.contentEquals(BinaryTripLog.MAGIC)) {
+            throw IOException("Not a binary trip log")
+        }
+        val version = stream.read()
+        if (version != BinaryTripLog.VERSION) {
+            throw IOException("Unsupported binary trip log version $version")
+        }
+        val count = varint().toInt()
+        val list = ArrayList<Column>(count)
+        for (i in 0 until count) {
+            val type = readByte()
+            val decimals = readByte()
+            val name = String(readBytes(varint().toInt()))
+            list.add(Column(name, type, decimals))
+            if (type == BinaryTripLog.TYPE_TIME) {
+                timeColumn = i
+                columnByHeader[LogHeaderEnum.DATE.ordinal] = i
+                columnByHeader[LogHeaderEnum.TIME.ordinal] = i
+            } else {
+                try {
+                    columnByHeader[LogHeaderEnum.valueOf(name.uppercase(Locale.US)).ordinal] = i
+                } catch (ignored: IllegalArgumentException) {
+                }
+            }
+        }
+        columns = list
+        values = LongArray(count)
+        texts = Array(count) { "" }
+    }
+
+    override fun hasColumn(column: LogHeaderEnum): Boolean {
+        return columnByHeader[column.ordinal] != -1
+    }
+
+    override fun next(): Boolean {
+        while (true) {
+            try {
+                when (val tag = stream.read()) {
+                    -1 -> return false
+                    BinaryTripLog.ROW -> if (synced) {
+                        readRow()
+                        return true
+                    } else {
+                        throw IOException("Row before sync marker")
+                    }
+                    BinaryTripLog.SYNC[0].toInt() and 0xFF -> {
+                        for (i in 1 until BinaryTripLog.SYNC.size) {
+                            if (readByte() != BinaryTripLog.SYNC[i].toInt() and 0xFF) {
+                                throw IOException("Broken sync marker")
+                            }
+                        }
+                        values.fill(0)
+                        texts.fill("")
+                        synced = true
+                    }
+                    else -> throw IOException("Unexpected tag $tag")
+                }
+            } catch (e: EOFException) {
+                return false
+            } catch (e: IOException) {
+                Timber.i("Skip damaged trip log data: %s", e.message)
+                if (!skipToSync()) {
+                    return false
+                }
+            }
+        }
+    }
+
+    override val timestamp: Long
+        get() = if (timeColumn >= 0) values[timeColumn] else 0L
+
+    override fun getDouble(column: LogHeaderEnum): Double {
+        val i = columnByHeader[column.ordinal]
+        if (i == -1) {
+            return 0.0
+        }
+        return when (columns[i].type) {
+            BinaryTripLog.TYPE_FIXED -> when (val units = values[i]) {
+                BinaryTripLog.NEGATIVE_ZERO -> -0.0
+                BinaryTripLog.NAN -> Double.NaN
+                BinaryTripLog.POSITIVE_INFINITY -> Double.POSITIVE_INFINITY
+                BinaryTripLog.NEGATIVE_INFINITY -> Double.NEGATIVE_INFINITY
+                else -> units / Math.pow(10.0, columns[i].decimals.toDouble())
+            }
+            BinaryTripLog.TYPE_TEXT -> texts[i].toDoubleOrNull() ?: 0.0
+            else -> values[i].toDouble()
+        }
+    }
+
+    override fun getInt(column: LogHeaderEnum): Int {
+        return getLong(column).toInt()
+    }
+
+    override fun getLong(column: LogHeaderEnum): Long {
+        val i = columnByHeader[column.ordinal]
+        if (i == -1) {
+            return 0L
+        }
+        return when (columns[i].type) {
+            BinaryTripLog.TYPE_INT, BinaryTripLog.TYPE_TIME -> values[i]
+            else -> getString(column).toLongOrNull() ?: 0L
+        }
+    }
+
+    override fun getString(column: LogHeaderEnum): String {
+        val i = columnByHeader[column.ordinal]
+        if (i == -1) {
+            return ""
+        }
+        if (columns[i].type == BinaryTripLog.TYPE_TIME) {
+            // "yyyy-MM-dd,HH:mm:ss.SSS"
+            val dateTime = timeEncoder.reset().dateTime(values[i]).toString()
+            return if (column == LogHeaderEnum.DATE) dateTime.substring(0, 10) else dateTime.substring(11)
+        }
+        timeEncoder.reset()
+        appendCsv(i, timeEncoder)
+        return timeEncoder.toString()
+    }
+
+    /**
+     * Appends column [i] of the current row to [encoder] the way the CSV log writes it.
+     */
+    fun appendCsv(i: Int, encoder: CsvRowEncoder) {
+        val column = columns[i]
+        when (column.type) {
+            BinaryTripLog.TYPE_TIME -> encoder.dateTime(values[i])
+            BinaryTripLog.TYPE_INT -> encoder.integer(values[i])
+            BinaryTripLog.TYPE_TEXT -> encoder.text(texts[i])
+            BinaryTripLog.TYPE_FIXED -> when (val units = values[i]) {
+                BinaryTripLog.NEGATIVE_ZERO -> encoder.fixedUnits(0, column.decimals, true)
+                BinaryTripLog.NAN -> encoder.text("NaN")
+                BinaryTripLog.POSITIVE_INFINITY -> encoder.text("Infinity")
+                BinaryTripLog.NEGATIVE_INFINITY -> encoder.text("-Infinity")
+                else -> encoder.fixedUnits(Math.abs(units), column.decimals, units < 0)
+            }
+        }
+    }
+
+    override fun close() {
+        stream.close()
+    }
+
+    private fun readRow() {
+        // on a bad row go back to right after its tag, a sync marker may follow within its length
+        stream.mark(MAX_ROW_LENGTH + 16)
+        val length: Int
+        try {
+            length = varint().toInt()
+            if (length < 0 || length > MAX_ROW_LENGTH) {
+                throw IOException("Bad row length $length")
+            }
+            if (length > row.size) {
+                row = ByteArray(maxOf(row.size * 2, length))
+            }
+            if (readFully(row, length) != length) {
+                throw IOException("Cut off row")
+            }
+            if (readByte() != BinaryTripLog.checksum(row, 0, length)) {
+                throw IOException("Bad row checksum")
+            }
+        } catch (e: IOException) {
+            stream.reset()
+            throw if (e is EOFException) IOException("Cut off row") else e
+        }
+        position = 0
+        rowLength = length
+        for (i in columns.indices) {
+            if (columns[i].type == BinaryTripLog.TYPE_TEXT) {
+                val textLength = rowVarint().toInt() - 1
+                if (textLength >= 0) {
+                    if (textLength > length - position) {
+                        throw IOException("Bad text length $textLength")
+                    }
+                    texts[i] = String(row, position, textLength)
+                    position += textLength
+                }
+            } else {
+                val zigzag = rowVarint()
+                values[i] += (zigzag ushr 1) xor -(zigzag and 1)
+            }
+        }
+        if (position != length) {
+            throw IOException("Row length $length, read $position")
+        }
+    }
+
+    /**
+     * Scans forward to the next sync marker and leaves the stream right before it.
+     */
+    private fun skipToSync(): Boolean {
+        synced = false
+        var matched = 0
+        while (true) {
+            if (matched == 0) {
+                stream.mark(BinaryTripLog.SYNC.size)
+            }
+            val b = stream.read()
+            if (b == -1) {
+                return false
+            }
+            if (b == BinaryTripLog.SYNC[matched].toInt() and 0xFF) {
+                matched++
+                if (matched == BinaryTripLog.SYNC.size) {
+                    stream.reset()
+                    return true
+                }
+            } else if (matched > 0) {
+                // restart right after the byte where the failed match began
+                stream.reset()
+                stream.read()
+                matched = 0
+            }
+        }
+    }
+
+    private fun rowVarint(): Long {
+        var result = 0L
+        var shift = 0
+        while (shift < 64 && position < rowLength) {
+            val b = row[position++].toInt()
+            result = result or ((b and 0x7F).toLong() shl shift)
+            if (b and 0x80 == 0) {
+                return result
+            }
+            shift += 7
+        }
+        throw IOException("Malformed varint")
+    }
+
+    private fun varint(): Long {
+        var result = 0L
+        var shift = 0
+        while (shift < 64) {
+            val b = readByte()
+            result = result or ((b and 0x7F).toLong() shl shift)
+            if (b and 0x80 == 0) {
+                return result
+            }
+            shift += 7
+        }
+        throw IOException("Malformed varint")
+    }
+
+    private fun readByte(): Int {
+        val b = stream.read()
+        if (b == -1) {
+            throw EOFException()
+        }
+        return b
+    }
+
+    private fun readBytes(length: Int): ByteArray {
+        if (length < 0 || length > MAX_TEXT_LENGTH) {
+            throw IOException("Bad text length $length")
+        }
+        val result = ByteArray(length)
+        if (readFully(result, length) != length) {
+            throw EOFException()
+        }
+        return result
+    }
+
+    private fun readFully(target: ByteArray, length: Int): Int {
+        var total = 0
+        while (total < length) {
+            val read = stream.read(target, total, length - total)
+            if (read == -1) {
+                break
+            }
+            total += read
+        }
+        return total
+    }
+
+    companion object {
+        private const val MAX_TEXT_LENGTH = 64 * 1024
+        private const val MAX_ROW_LENGTH = 256 * 1024
+    }
+}
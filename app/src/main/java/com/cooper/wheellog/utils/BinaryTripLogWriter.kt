@@ -0,0 +1,157 @@
+package com.cooper.wheellog.utils
+
+import com.cooper.wheellog.utils.BinaryTripLog.Column
+
+/**
+ * Encodes rows of the binary trip log, see [BinaryTripLog] for the layout.
+ * [header] must be called once before the first row, also when appending to an existing file.
+ */
+class BinaryTripLogWriter : TripLogRowWriter {
+    override var buffer = ByteArray(256)
+        private set
+    override var length = 0
+        private set
+
+    private var columns: List<Column> = emptyList()
+    private var previous = LongArray(0)
+    private var previousText = arrayOfNulls<String>(0)
+    private var column = 0
+    private var rowsSinceSync = 0
+    private var bodyStart = 0
+
+    /**
+     * Writes the file header. [writeHeader] is false when rows are appended to an existing file.
+     */
+    fun start(columns: List<Column>, writeHeader: Boolean) {
+        this.columns = columns
+        previous = LongArray(columns.size)
+        previousText = arrayOfNulls(columns.size)
+        length = 0
+        if (writeHeader) {
+            bytes(BinaryTripLog.MAGIC)
+            byte(BinaryTripLog.VERSION)
+            varint(columns.size.toLong())
+            for (c in columns) {
+                byte(c.type)
+                byte(c.decimals)
+                string(c.name)
+            }
+        }
+        // appended rows must not depend on values from the previous session
+        rowsSinceSync = BinaryTripLog.SYNC_INTERVAL
+    }
+
+    override fun header(columns: List<Column>) {
+        start(columns, true)
+    }
+
+    override fun beginRow() {
+        if (columns.isEmpty()) {
+            throw IllegalStateException("header() was not called")
+        }
+        length = 0
+        column = 0
+        if (rowsSinceSync >= BinaryTripLog.SYNC_INTERVAL) {
+            bytes(BinaryTripLog.SYNC)
+            previous.fill(0)
+            previousText.fill(null)
+            rowsSinceSync = 0
+        }
+        rowsSinceSync++
+        byte(BinaryTripLog.ROW)
+        bodyStart = length
+    }
+
+    override fun time(timestamp: Long) {
+        number(timestamp)
+    }
+
+    override fun fixed(value: Double, decimals: Int) {
+        val units = when {
+            value.isNaN() -> BinaryTripLog.NAN
+            value == Double.POSITIVE_INFINITY -> BinaryTripLog.POSITIVE_INFINITY
+            value == Double.NEGATIVE_INFINITY -> BinaryTripLog.NEGATIVE_INFINITY
+            !CsvRowEncoder.isFast(value, decimals) -> Math.round(value * Math.pow(10.0, decimals.toDouble()))
+            else -> {
+                val abs = CsvRowEncoder.roundUnits(Math.abs(value), decimals)
+                if (!CsvRowEncoder.isNegative(value)) abs else if (abs == 0L) BinaryTripLog.NEGATIVE_ZERO else -abs
+            }
+        }
+        number(units)
+    }
+
+    override fun integer(value: Long) {
+        number(value)
+    }
+
+    override fun text(value: String) {
+        if (value == previousText[column]) {
+            varint(0)
+        } else {
+            val data = value.toByteArray()
+            varint(data.size + 1L)
+            bytes(data)
+            previousText[column] = value
+        }
+        column++
+    }
+
+    override fun endRow() {
+        if (column != columns.size) {
+            throw IllegalStateException("Row has $column columns, expected ${columns.size}")
+        }
+        val bodyLength = length - bodyStart
+        val checksum = BinaryTripLog.checksum(buffer, bodyStart, bodyLength)
+        // move the values behind their length
+        var lengthSize = 1
+        while (bodyLength ushr (7 * lengthSize) != 0) {
+            lengthSize++
+        }
+        ensure(lengthSize + 1)
+        System.arraycopy(buffer, bodyStart, buffer, bodyStart + lengthSize, bodyLength)
+        length = bodyStart
+        varint(bodyLength.toLong())
+        length += bodyLength
+        byte(checksum)
+    }
+
+    private fun number(value: Long) {
+        val delta = value - previous[column]
+        previous[column] = value
+        varint((delta shl 1) xor (delta shr 63))
+        column++
+    }
+
+    private fun string(value: String) {
+        val data = value.toByteArray()
+        varint(data.size.toLong())
+        bytes(data)
+    }
+
+    private fun varint(value: Long) {
+        ensure(10)
+        var v = value
+        while (v and 0x7FL.inv() != 0L) {
+            buffer[length++] = ((v and 0x7F) or 0x80).toByte()
+            v = v ushr 7
+        }
+        buffer[length++] = v.toByte()
+    }
+
+    private fun byte(value: Int) {
+        ensure(1)
+        buffer[length++] = value.toByte()
+    }
+
+    private fun bytes(value: ByteArray) {
+        ensure(value.size)
+        System.arraycopy(value, 0, buffer, length, value.size)
+        length += value.size
+    }
+
+    private fun ensure(extra: Int) {
+        if (length + extra > buffer.size) {
+            buffer = buffer.copyOf(maxOf(buffer.size * 2, length + extra))
+        }
+    }
+}
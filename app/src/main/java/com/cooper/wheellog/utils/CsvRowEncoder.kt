@@ -0,0 +1,248 @@
+package com.cooper.wheellog.utils
+
+import java.math.BigDecimal
+import java.math.RoundingMode
+import java.util.*
+import kotlin.math.abs
+import kotlin.math.floor
+
+/**
+ * Builds CSV rows in a reusable byte buffer.
+ * Output matches String.format(Locale.US, ...) with "%d", "%.Nf" and SimpleDateFormat
+ * "yyyy-MM-dd" / "HH:mm:ss.SSS" in the default time zone.
+ */
+class CsvRowEncoder(capacity: Int = DEFAULT_CAPACITY) {
+    var buffer = ByteArray(capacity)
+        private set
+    var length = 0
+        private set
+
+    private val calendar = Calendar.getInstance()
+    private val hourPrefix = ByteArray(13) // "yyyy-MM-dd,HH"
+    private var hourStart = Long.MAX_VALUE
+    private var hourEnd = Long.MIN_VALUE
+
+    fun reset(): CsvRowEncoder {
+        length = 0
+        return this
+    }
+
+    fun comma(): CsvRowEncoder {
+        return byte(','.code)
+    }
+
+    /**
+     * yyyy-MM-dd,HH:mm:ss.SSS
+     */
+    fun dateTime(timestamp: Long): CsvRowEncoder {
+        updateHour(timestamp)
+        ensure(hourPrefix.size)
+        System.arraycopy(hourPrefix, 0, buffer, length, hourPrefix.size)
+        length += hourPrefix.size
+        return minutes(timestamp)
+    }
+
+    /**
+     * HH:mm:ss.SSS
+     */
+    fun time(timestamp: Long): CsvRowEncoder {
+        updateHour(timestamp)
+        ensure(2)
+        System.arraycopy(hourPrefix, 11, buffer, length, 2)
+        length += 2
+        return minutes(timestamp)
+    }
+
+    fun integer(value: Long): CsvRowEncoder {
+        if (value == Long.MIN_VALUE) {
+            return text(value.toString())
+        }
+        var v = value
+        if (v < 0) {
+            byte('-'.code)
+            v = -v
+        }
+        return digits(v, 1)
+    }
+
+    fun integer(value: Int): CsvRowEncoder {
+        return integer(value.toLong())
+    }
+
+    /**
+     * Same as "%.{decimals}f"
+     */
+    fun fixed(value: Double, decimals: Int): CsvRowEncoder {
+        if (!isFast(value, decimals)) {
+            return text(String.format(Locale.US, "%.${decimals}f", value))
+        }
+        return fixedUnits(roundUnits(abs(value), decimals), decimals, isNegative(value))
+    }
+
+    /**
+     * Writes [units] of 10^-[decimals], e.g. 1234 with 2 decimals is "12.34".
+     */
+    fun fixedUnits(units: Long, decimals: Int, negative: Boolean): CsvRowEncoder {
+        if (negative) {
+            byte('-'.code)
+        }
+        val scale = POW10[decimals]
+        digits(units / scale, 1)
+        if (decimals > 0) {
+            byte('.'.code)
+            digits(units % scale, decimals)
+        }
+        return this
+    }
+
+    fun text(value: String): CsvRowEncoder {
+        ensure(value.length)
+        val start = length
+        for (i in value.indices) {
+            val c = value[i].code
+            if (c >= 0x80) {
+                // non-ASCII, fall back to the encoder
+                length = start
+                return bytes(value.toByteArray())
+            }
+            buffer[length++] = c.toByte()
+        }
+        return this
+    }
+
+    fun bytes(value: ByteArray): CsvRowEncoder {
+        ensure(value.size)
+        System.arraycopy(value, 0, buffer, length, value.size)
+        length += value.size
+        return this
+    }
+
+    /**
+     * Lower case hex without separators, same as StringUtil.toHexStringRaw
+     */
+    fun hex(value: ByteArray): CsvRowEncoder {
+        ensure(value.size * 2)
+        for (b in value) {
+            buffer[length++] = HEX_DIGITS[(b.toInt() shr 4) and 0x0F]
+            buffer[length++] = HEX_DIGITS[b.toInt() and 0x0F]
+        }
+        return this
+    }
+
+    override fun toString(): String {
+        return String(buffer, 0, length)
+    }
+
+    private fun minutes(timestamp: Long): CsvRowEncoder {
+        val inHour = (timestamp - hourStart).toInt()
+        ensure(10)
+        byte(':'.code)
+        digits((inHour / 60000).toLong(), 2)
+        byte(':'.code)
+        digits((inHour / 1000 % 60).toLong(), 2)
+        byte('.'.code)
+        digits((inHour % 1000).toLong(), 3)
+        return this
+    }
+
+    private fun updateHour(timestamp: Long) {
+        if (timestamp in hourStart until hourEnd) {
+            return
+        }
+        calendar.timeZone = TimeZone.getDefault()
+        calendar.timeInMillis = timestamp
+        hourStart = timestamp - calendar.get(Calendar.MINUTE) * 60000L -
+                calendar.get(Calendar.SECOND) * 1000L - calendar.get(Calendar.MILLISECOND)
+        hourEnd = hourStart + 3600000L
+        writeDigits(hourPrefix, 0, calendar.get(Calendar.YEAR), 4)
+        hourPrefix[4] = '-'.code.toByte()
+        writeDigits(hourPrefix, 5, calendar.get(Calendar.MONTH) + 1, 2)
+        hourPrefix[7] = '-'.code.toByte()
+        writeDigits(hourPrefix, 8, calendar.get(Calendar.DAY_OF_MONTH), 2)
+        hourPrefix[10] = ','.code.toByte()
+        writeDigits(hourPrefix, 11, calendar.get(Calendar.HOUR_OF_DAY), 2)
+    }
+
+    private fun writeDigits(target: ByteArray, offset: Int, value: Int, count: Int) {
+        var v = value
+        for (i in count - 1 downTo 0) {
+            target[offset + i] = ('0'.code + v % 10).toByte()
+            v /= 10
+        }
+    }
+
+    /**
+     * Writes non-negative [value] padded with zeros to [minDigits].
+     */
+    private fun digits(value: Long, minDigits: Int): CsvRowEncoder {
+        var count = 1
+        var v = value / 10
+        while (v > 0) {
+            count++
+            v /= 10
+        }
+        count = maxOf(count, minDigits)
+        ensure(count)
+        v = value
+        for (i in length + count - 1 downTo length) {
+            buffer[i] = ('0'.code + (v % 10).toInt()).toByte()
+            v /= 10
+        }
+        length += count
+        return this
+    }
+
+    private fun byte(value: Int): CsvRowEncoder {
+        ensure(1)
+        buffer[length++] = value.toByte()
+        return this
+    }
+
+    private fun ensure(extra: Int) {
+        if (length + extra > buffer.size) {
+            buffer = buffer.copyOf(maxOf(buffer.size * 2, length + extra))
+        }
+    }
+
+    companion object {
+        const val DEFAULT_CAPACITY = 256
+        const val MAX_DECIMALS = 6
+        private const val MAX_FAST_VALUE = 1e12
+        private const val TIE_TOLERANCE = 1e-6
+        private val POW10 = longArrayOf(1, 10, 100, 1000, 10000, 100000, 1000000)
+        private val HEX_DIGITS = "0123456789abcdef".toByteArray()
+
+        /**
+         * True if [value] can be written with [roundUnits], otherwise it goes through String.format.
+         */
+        @JvmStatic
+        fun isFast(value: Double, decimals: Int): Boolean {
+            return !value.isNaN() && abs(value) < MAX_FAST_VALUE && decimals <= MAX_DECIMALS
+        }
+
+        /**
+         * Formatter prints "-" for any negative value, including -0.0 and values rounded to zero.
+         */
+        @JvmStatic
+        fun isNegative(value: Double): Boolean {
+            return value < 0 || (value == 0.0 && 1.0 / value < 0)
+        }
+
+        /**
+         * Non-negative [value] rounded like "%.{decimals}f", in units of 10^-decimals.
+         */
+        @JvmStatic
+        fun roundUnits(value: Double, decimals: Int): Long {
+            val scaled = value * POW10[decimals]
+            var units = floor(scaled).toLong()
+            val fraction = scaled - units
+            if (abs(fraction - 0.5) < TIE_TOLERANCE) {
+                // Formatter rounds the shortest decimal representation half up
+                units = BigDecimal(value.toString()).setScale(decimals, RoundingMode.HALF_UP).unscaledValue().toLong()
+            } else if (fraction > 0.5) {
+                units++
+            }
+            return units
+        }
+    }
+}
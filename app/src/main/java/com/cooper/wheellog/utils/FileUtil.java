@@ -17,6 +17,7 @@ import com.google.common.io.ByteStreams;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -40,6 +41,9 @@ public class FileUtil {
     private final Hashtable<String, CachedFile> AndroidQCache = new Hashtable<>();
     private boolean ignoreTimber = false;
     private OutputStream stream;
+    private static final byte[] NEW_LINE = "\r\n".getBytes();
+    private AsyncLineWriter asyncWriter;
+    private int droppedLines = 0;
 
     static class CachedFile {
         public File file;
@@ -172,6 +176,26 @@ public class FileUtil {
         return ByteStreams.toByteArray(inputStream);
     }
 
+    /**
+     * Contents of the log as CSV, binary trip logs are converted.
+     */
+    public byte[] readCsvBytes() throws IOException {
+        if (!BinaryTripLog.isBinary(fileName)) {
+            return readBytes();
+        }
+        InputStream inputStream = getInputStream();
+        if (inputStream == null) {
+            throw new IOException("File not found.");
+        }
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            BinaryTripLog.exportCsv(inputStream, output);
+            return output.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
     public static byte[] readBytes(String filePath) throws IOException {
         InputStream inputStream = new FileInputStream(filePath);
         return ByteStreams.toByteArray(inputStream);
@@ -187,6 +211,13 @@ public class FileUtil {
     }
 
     public static FileUtil getLastLog(Context context) {
+        return getLastLog(context, ".csv");
+    }
+
+    /**
+     * Today's log with the given extension (".csv" or BinaryTripLog.FILE_EXTENSION).
+     */
+    public static FileUtil getLastLog(Context context, String fileExtension) {
         String fileStartsWith = new SimpleDateFormat("yyyy_MM_dd", Locale.US).format(new Date());
 
         // Android 9 or less
@@ -210,7 +241,7 @@ public class FileUtil {
                             continue;
                         }
                         String extension = f.getAbsolutePath().substring(indexExt);
-                        if (extension.equals(".csv") && f.getName().startsWith(fileStartsWith)) {
+                        if (extension.equals(fileExtension) && f.getName().startsWith(fileStartsWith)) {
                             FileUtil result = new FileUtil(context);
                             result.file = f;
                             result.fileName = f.getName();
@@ -230,7 +261,9 @@ public class FileUtil {
                 MediaStore.Downloads.SIZE,
                 MediaStore.Downloads._ID
         };
-        String where = String.format("%s = 'text/comma-separated-values'", MediaStore.Downloads.MIME_TYPE);
+        String where = fileExtension.equals(".csv")
+                ? String.format("%s = 'text/comma-separated-values'", MediaStore.Downloads.MIME_TYPE)
+                : String.format("%s LIKE '%%%s'", MediaStore.Downloads.DISPLAY_NAME, fileExtension);
         Cursor cursor = context.getContentResolver().query(uri,
                 projection,
                 where + " AND " + MediaStore.Downloads.DISPLAY_NAME + " LIKE ?",
@@ -273,7 +306,8 @@ public class FileUtil {
                             continue;
                         }
                         String extension = f.getAbsolutePath().substring(indexExt);
-                        if (extension.equals(".csv") && !f.getName().startsWith("RAW")) {
+                        if ((extension.equals(".csv") || extension.equals(BinaryTripLog.FILE_EXTENSION))
+                                && !f.getName().startsWith("RAW")) {
                             tripModels.add(new TripModel(f.getName(), sizeTokb(f.length()), f.getAbsolutePath()));
                         }
                     }
@@ -290,7 +324,8 @@ public class FileUtil {
                 MediaStore.Downloads.SIZE,
                 MediaStore.Downloads._ID
         };
-        String where = String.format("%s = 'text/comma-separated-values'", MediaStore.Downloads.MIME_TYPE);
+        String where = String.format("(%s = 'text/comma-separated-values' OR %s LIKE '%%%s')",
+                MediaStore.Downloads.MIME_TYPE, MediaStore.Downloads.DISPLAY_NAME, BinaryTripLog.FILE_EXTENSION);
         Cursor cursor = context.getContentResolver().query(uri,
                 projection,
                 where + " AND " + MediaStore.Downloads.DISPLAY_NAME + " NOT LIKE ?",
@@ -308,10 +343,33 @@ public class FileUtil {
         return tripModels;
     }
 
+    /**
+     * Moves writeLine I/O to a background writer until the stream is closed.
+     */
+    public void enableAsyncWrites() {
+        if (stream == null || asyncWriter != null) {
+            return;
+        }
+        asyncWriter = new AsyncLineWriter(stream);
+    }
+
+    /**
+     * Number of lines dropped by the background writer because its queue was full.
+     */
+    public int getDroppedLines() {
+        return droppedLines + (asyncWriter != null ? asyncWriter.getDroppedLines() : 0);
+    }
+
     public void close() {
         if (stream == null) {
             return;
         }
+        if (asyncWriter != null) {
+            // writes out queued lines and syncs them to disk
+            asyncWriter.close();
+            droppedLines += asyncWriter.getDroppedLines();
+            asyncWriter = null;
+        }
         try {
             stream.close();
             stream = null;
@@ -321,21 +379,63 @@ public class FileUtil {
     }
 
     public void writeLine(String line) {
-        if (isNull()) {
+        if (!canWrite()) {
+            return;
+        }
+        if (asyncWriter != null) {
+            asyncWriter.writeLine(line);
+            return;
+        }
+
+        try {
+            stream.write((line + "\r\n").getBytes());
+            stream.flush();
+        } catch (IOException e) {
             if (!ignoreTimber) {
-                Timber.e("Write failed. File is null");
+                Timber.e("IOException");
             }
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the first length bytes of line followed by a line break.
+     */
+    public void writeLine(byte[] line, int length) {
+        if (!canWrite()) {
             return;
         }
-        if (stream == null) {
+        if (asyncWriter != null) {
+            asyncWriter.writeLine(line, length);
+            return;
+        }
+
+        try {
+            stream.write(line, 0, length);
+            stream.write(NEW_LINE);
+            stream.flush();
+        } catch (IOException e) {
             if (!ignoreTimber) {
-                Timber.e("Write failed. Stream is null. Forgot to call prepareStream()?");
+                Timber.e("IOException");
             }
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the first length bytes of data as is.
+     */
+    public void write(byte[] data, int length) {
+        if (!canWrite()) {
+            return;
+        }
+        if (asyncWriter != null) {
+            asyncWriter.write(data, length);
             return;
         }
 
         try {
-            stream.write((line + "\r\n").getBytes());
+            stream.write(data, 0, length);
             stream.flush();
         } catch (IOException e) {
             if (!ignoreTimber) {
@@ -345,6 +445,22 @@ public class FileUtil {
         }
     }
 
+    private boolean canWrite() {
+        if (isNull()) {
+            if (!ignoreTimber) {
+                Timber.e("Write failed. File is null");
+            }
+            return false;
+        }
+        if (stream == null) {
+            if (!ignoreTimber) {
+                Timber.e("Write failed. Stream is null. Forgot to call prepareStream()?");
+            }
+            return false;
+        }
+        return true;
+    }
+
     @Nullable
     private ContentResolver getContentResolver() {
         if (context != null) {
@@ -358,6 +474,10 @@ public class FileUtil {
     private String getMimeType(@NotNull String fileName) {
         if (fileName.endsWith(".csv")) {
             return "text/csv";
+        } else if (BinaryTripLog.isBinary(fileName)) {
+            return BinaryTripLog.MIME_TYPE;
+        } else if (RawCapture.isRawCapture(fileName)) {
+            return RawCapture.MIME_TYPE;
         } else if (fileName.endsWith(".html") || fileName.endsWith(".htm")) {
             return "text/html";
         } else {
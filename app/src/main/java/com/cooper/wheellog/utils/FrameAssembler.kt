@@ -0,0 +1,42 @@
+package com.cooper.wheellog.utils
+
+/**
+ * Fixed-capacity buffer for assembling protocol frames byte by byte.
+ * The backing array is allocated once and reused for every frame,
+ * a frame always starts at index 0 and occupies [size] bytes.
+ */
+class FrameAssembler(capacity: Int = DEFAULT_CAPACITY) {
+    private val buffer = ByteArray(capacity)
+
+    var size = 0
+        private set
+
+    /** Backing array, valid only until the next [reset]. */
+    val array: ByteArray
+        get() = buffer
+
+    fun reset() {
+        size = 0
+    }
+
+    /**
+     * Appends a byte. Returns false if the frame does not fit.
+     */
+    fun write(c: Int): Boolean {
+        if (size == buffer.size) {
+            return false
+        }
+        buffer[size++] = c.toByte()
+        return true
+    }
+
+    operator fun get(index: Int): Byte = buffer[index]
+
+    /** Copy of the current frame, for code that keeps the data. */
+    fun toByteArray(): ByteArray = buffer.copyOf(size)
+
+    companion object {
+        // longest frame of all protocols is 255 bytes of payload plus header and footer
+        const val DEFAULT_CAPACITY = 512
+    }
+}
@@ -5,8 +5,11 @@ import android.os.Handler;
 
 import com.cooper.wheellog.WheelData;
 import com.cooper.wheellog.WheelLog;
+import com.cooper.wheellog.WriteQueue;
+import com.cooper.wheellog.telemetry.DecodeSettings;
+import com.cooper.wheellog.telemetry.LinkHealth;
+import com.cooper.wheellog.telemetry.TraceRecorder;
 
-import java.io.ByteArrayOutputStream;
 
 import timber.log.Timber;
 
@@ -18,12 +21,11 @@ public class GotwayAdapter extends BaseAdapter {
     private String imu = "";
     private String fw = "";
     private int attempt = 0;
+    private byte lastFrameType = -1;
     private int lock_Changes = 0;
 
     @Override
     public boolean decode(byte[] data) {
-        Timber.i("Decode Gotway/Begode");
-
         WheelData wd = WheelData.getInstance();
         wd.resetRideTime();
         boolean newDataFound = false;
@@ -44,17 +46,21 @@ public class GotwayAdapter extends BaseAdapter {
                 imu = dataS.substring(1, 7).trim();
             }
         }
+        DecodeSettings settings = DecodeSettings.getCurrent();
+        boolean useRatio = settings.getUseRatio();
+        boolean useBetterPercents = settings.getUseBetterPercents();
+        int gotwayNegative = settings.getGotwayNegative();
         for (byte c : data) {
             if (unpacker.addChar(c)) {
 
                 byte[] buff = unpacker.getBuffer();
-                Boolean useRatio = WheelLog.AppConfig.getUseRatio();
-                Boolean useBetterPercents = WheelLog.AppConfig.getUseBetterPercents();
-                int gotwayNegative = Integer.parseInt(WheelLog.AppConfig.getGotwayNegative());
+                if (buff[18] == lastFrameType && (buff[18] == (byte) 0x00 || buff[18] == (byte) 0x04)) {
+                    // frames A and B alternate, the other one was lost
+                    LinkHealth.lost(24);
+                }
+                lastFrameType = buff[18];
 
                 if (buff[18] == (byte) 0x00) {
-                    Timber.i("Begode frame A found (live data)");
-
                     int voltage = MathsUtil.shortFromBytesBE(buff, 2);
                     int speed = (int) Math.round(MathsUtil.signedShortFromBytesBE(buff, 4) * 3.6);
                     int distance = MathsUtil.shortFromBytesBE(buff, 8);
@@ -111,8 +117,6 @@ public class GotwayAdapter extends BaseAdapter {
                     newDataFound = true;
 
                 } else if (buff[18] == (byte) 0x04) {
-                    Timber.i("Begode frame B found (total distance and flags)");
-
                     int totalDistance = (int) MathsUtil.getInt4(buff, 2);
                     if (useRatio) {
                         wd.setTotalDistance(Math.round(totalDistance * RATIO_GW));
@@ -307,18 +311,12 @@ public class GotwayAdapter extends BaseAdapter {
 
     @Override
     public int getCellsForWheel() {
-        switch (WheelLog.AppConfig.getGotwayVoltage()) {
-            case "0":
-                return 16;
-            case "1":
-                return 20;
-        }
-        return 24;
+        return DecodeSettings.getCurrent().getGotwayCells();
     }
 
     @Override
     public void wheelBeep() {
-        WheelData.getInstance().bluetoothCmd("b".getBytes());
+        WheelData.getInstance().bluetoothCmd("b".getBytes(), WriteQueue.Priority.SAFETY);
     }
 
     @Override
@@ -347,36 +345,39 @@ public class GotwayAdapter extends BaseAdapter {
             done
         }
 
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final FrameAssembler buffer = new FrameAssembler();
         gotwayUnpacker.UnpackerState state = UnpackerState.unknown;
         int oldc = -1;
 
+        // backing array of the assembler, the frame starts at index 0
         byte[] getBuffer() {
-            return buffer.toByteArray();
+            return buffer.getArray();
         }
 
         boolean addChar(int c) {
             if (state == UnpackerState.collecting) {
                 buffer.write(c);
                 oldc = c;
-                int size = buffer.size();
+                int size = buffer.getSize();
                 if ((size == 20 && c != (byte) 0x18) || (size > 20 && size <= 24 && c != (byte) 0x5A)) {
-                    Timber.i("Invalid frame footer (expected 18 5A 5A 5A 5A)");
+                    // invalid frame footer (expected 18 5A 5A 5A 5A)
                     state = UnpackerState.unknown;
+                    LinkHealth.lost(size);
+                    TraceRecorder.record("Gotway", TraceRecorder.STATE, state.ordinal(), size);
                     return false;
                 }
                 if (size == 24) {
                     state = UnpackerState.done;
-                    Timber.i("Valid frame received");
+                    TraceRecorder.record("Gotway", TraceRecorder.STATE, state.ordinal(), size);
                     return true;
                 }
             } else {
                 if (c == (byte) 0xAA && oldc == (byte) 0x55) {
-                    Timber.i("Frame header found (55 AA), collecting data");
-                    buffer = new ByteArrayOutputStream();
+                    buffer.reset();
                     buffer.write(0x55);
                     buffer.write(0xAA);
                     state = UnpackerState.collecting;
+                    TraceRecorder.record("Gotway", TraceRecorder.STATE, state.ordinal(), 2);
                 }
                 oldc = c;
             }
@@ -392,29 +393,7 @@ public class GotwayAdapter extends BaseAdapter {
     }
 
     private double getScaledVoltage(double value) {
-        int voltage = 0;
-        double scaler = 1.0;
-        if (!WheelLog.AppConfig.getGotwayVoltage().equals("")) {
-            voltage = Integer.parseInt(WheelLog.AppConfig.getGotwayVoltage());
-        }
-        switch (voltage) {
-            case 0:
-                scaler = 1.0;
-                break;
-            case 1:
-                scaler = 1.25;
-                break;
-            case 2:
-                scaler = 1.5;
-                break;
-            case 3:
-                scaler = 1.7380952380952380952380952380952;
-                break;
-            case 4:
-                scaler = 2.0;
-                break;
-        }
-        return value * scaler;
+        return value * DecodeSettings.getCurrent().getGotwayVoltageScaler();
     }
 }
 
@@ -0,0 +1,151 @@
+package com.cooper.wheellog.utils
+
+import com.cooper.wheellog.WheelLog
+import timber.log.Timber
+import java.util.TreeMap
+
+/**
+ * Handshake replies of the wheel (serial, versions, settings, key), kept per wheel so that a
+ * reconnect can stream live data right away. The adapter stores the payloads as it receives them
+ * and replays them through its own parsers when the wheel connects again. The handshake is then
+ * read again between the live data requests, one request every [REFRESH_EVERY] live requests.
+ *
+ * Stored in the wheel settings as "adapter;type:payload;...", see AppConfig.handshakeForWheel.
+ */
+class HandshakeCache(
+    private val adapter: String,
+    /** reply types the adapter needs before it can decode live data */
+    private val required: IntArray,
+    /** reply types read again after a resumed connection, in order */
+    private val refreshed: IntArray
+) {
+    private val payloads = TreeMap<Int, ByteArray>()
+    private val fresh = HashSet<Int>()
+    private var changed = false
+    private var livePolls = 0
+    private var refreshRequests = 0
+
+    /** live data is streamed on replayed replies, the handshake is being read again */
+    @Volatile
+    var isRefreshing = false
+        private set
+
+    val isComplete: Boolean
+        get() = required.all { payloads.containsKey(it) }
+
+    @Synchronized
+    operator fun get(type: Int): ByteArray? {
+        return payloads[type]
+    }
+
+    @Synchronized
+    fun put(type: Int, payload: ByteArray) {
+        fresh.add(type)
+        if (payloads[type]?.contentEquals(payload) != true) {
+            payloads[type] = payload.copyOf()
+            changed = true
+        }
+    }
+
+    /**
+     * Reads the replies stored for the wheel, true if they are enough to go straight to live data.
+     */
+    @JvmOverloads
+    @Synchronized
+    fun load(entry: String = WheelLog.AppConfig.handshakeForWheel): Boolean {
+        payloads.clear()
+        fresh.clear()
+        changed = false
+        livePolls = 0
+        refreshRequests = 0
+        val fields = entry.split(';')
+        if (fields.first() == adapter) {
+            try {
+                for (field in fields.drop(1)) {
+                    val separator = field.indexOf(':')
+                    payloads[field.substring(0, separator).toInt(16)] = field.substring(separator + 1)
+                        .chunked(2).map { it.toInt(16).toByte() }.toByteArray()
+                }
+            } catch (e: RuntimeException) {
+                Timber.e(e, "Invalid handshake cache")
+                payloads.clear()
+            }
+        }
+        isRefreshing = isComplete
+        if (isRefreshing) {
+            Timber.i("%s handshake resumed from %d replies", adapter, payloads.size)
+        }
+        return isRefreshing
+    }
+
+    /**
+     * Stores the replies if they changed, called when the handshake is done.
+     */
+    @Synchronized
+    fun save() {
+        if (changed && isComplete) {
+            WheelLog.AppConfig.handshakeForWheel = encode()
+            changed = false
+        }
+    }
+
+    /**
+     * Drops the stored replies, the wheel goes through the full handshake again.
+     */
+    @Synchronized
+    fun forget() {
+        Timber.i("%s handshake cache dropped", adapter)
+        payloads.clear()
+        fresh.clear()
+        isRefreshing = false
+        changed = false
+        WheelLog.AppConfig.handshakeForWheel = ""
+    }
+
+    /**
+     * Called in place of every live data request while [isRefreshing], returns the type of the
+     * handshake request to send instead or [NONE]. Once all types were read again, or asked
+     * [REFRESH_TRIES] times each, the refresh ends and the replies are stored.
+     */
+    @Synchronized
+    fun nextRefresh(): Int {
+        if (!isRefreshing || ++livePolls % REFRESH_EVERY != 0) {
+            return NONE
+        }
+        val type = refreshed.firstOrNull { !fresh.contains(it) }
+        if (type == null || ++refreshRequests > refreshed.size * REFRESH_TRIES) {
+            isRefreshing = false
+            Timber.i("%s handshake refreshed", adapter)
+            save()
+            return NONE
+        }
+        return type
+    }
+
+    /**
+     * True if the wheel doesn't answer the live data after a resume, [live] are the stats of the
+     * live data requests. The cached replies are stale then (a new key or firmware).
+     */
+    fun resumeFailed(live: AdaptivePoller.RequestStats?): Boolean {
+        return isRefreshing && live != null && live.answered == 0L && live.sent >= RESUME_ATTEMPTS
+    }
+
+    @Synchronized
+    fun encode(): String {
+        val result = StringBuilder(adapter)
+        for ((type, payload) in payloads) {
+            result.append(';').append(Integer.toHexString(type)).append(':')
+                .append(StringUtil.toHexStringRaw(payload))
+        }
+        return result.toString()
+    }
+
+    companion object {
+        const val NONE = -1
+        /** live data requests per handshake request while refreshing */
+        const val REFRESH_EVERY = 4
+        const val REFRESH_TRIES = 3
+        /** live data requests without a reply before the cached replies are dropped */
+        const val RESUME_ATTEMPTS = 8
+    }
+}
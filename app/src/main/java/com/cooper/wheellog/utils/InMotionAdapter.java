@@ -3,6 +3,9 @@ package com.cooper.wheellog.utils;
 import com.cooper.wheellog.R;
 import com.cooper.wheellog.WheelData;
 import com.cooper.wheellog.WheelLog;
+import com.cooper.wheellog.WriteQueue;
+import com.cooper.wheellog.telemetry.DecodeSettings;
+import com.cooper.wheellog.telemetry.TraceRecorder;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -15,7 +18,8 @@ import static com.cooper.wheellog.utils.InMotionAdapter.Model.*;
 
 public class InMotionAdapter extends BaseAdapter {
     private static InMotionAdapter INSTANCE;
-    private Timer keepAliveTimer;
+    private TickScheduler.Task keepAliveTimer;
+    private final AdaptivePoller poller = new AdaptivePoller("InMotion", 10, CANMessage.IDValue.GetFastInfo.getValue());
     private int passwordSent = 0;
     private boolean needSlowData = true;
     protected boolean settingCommandReady = false;
@@ -28,10 +32,11 @@ public class InMotionAdapter extends BaseAdapter {
             if (!unpacker.addChar(c)) {
                 continue;
             }
-            CANMessage result = CANMessage.verify(unpacker.getBuffer());
+            CANMessage result = CANMessage.verify(unpacker.getBuffer(), unpacker.getSize());
             if (result == null) {
                 continue;
             }
+            poller.answered(result.id);
             // data OK
             CANMessage.IDValue idValue = CANMessage.IDValue.NoOp;
             for (CANMessage.IDValue id: CANMessage.IDValue.values()) {
@@ -101,6 +106,11 @@ public class InMotionAdapter extends BaseAdapter {
         return false;
     }
 
+    @Override
+    public long getRequestInterval() {
+        return poller.getInterval();
+    }
+
     @Override
     public boolean isReady() {
         return model != Model.UNKNOWN && !Objects.equals(WheelData.getInstance().getSerial(), "");
@@ -294,12 +304,12 @@ public class InMotionAdapter extends BaseAdapter {
     }
 
     public void startKeepAliveTimer(String password) {
-        TimerTask timerTask = new TimerTask() {
+        Runnable keepAlive = new Runnable() {
             @Override
             public void run() {
                 if (updateStep == 0) {
                     if (passwordSent < 6) {
-                        if (WheelData.getInstance().bluetoothCmd(InMotionAdapter.CANMessage.getPassword(password).writeBuffer())) {
+                        if (poll(InMotionAdapter.CANMessage.getPassword(password))) {
                             Timber.i("Sent password message");
                             passwordSent++;
                         } else {
@@ -307,7 +317,7 @@ public class InMotionAdapter extends BaseAdapter {
                         }
 
                     } else if (model == UNKNOWN | needSlowData) {
-                        if (WheelData.getInstance().bluetoothCmd(InMotionAdapter.CANMessage.getSlowData().writeBuffer())) {
+                        if (poll(InMotionAdapter.CANMessage.getSlowData())) {
                             Timber.i("Sent infos message");
                         } else {
                             updateStep = 5;
@@ -322,22 +332,26 @@ public class InMotionAdapter extends BaseAdapter {
                             updateStep = 5; // after +1 and %10 = 0
                         }
                     } else {
-                        if (!WheelData.getInstance().bluetoothCmd(CANMessage.standardMessage().writeBuffer())) {
+                        if (!poll(CANMessage.standardMessage())) {
                             Timber.i("Unable to send keep-alive message");
                             updateStep = 5;
-                        } else {
-                            Timber.i("Sent keep-alive message");
                         }
                     }
 
                 }
                 updateStep++;
                 updateStep %= 10;
-                Timber.i("Step: %d", updateStep);
             }
         };
-        keepAliveTimer = new Timer();
-        keepAliveTimer.scheduleAtFixedRate(timerTask, 200, 25);
+        keepAliveTimer = poller.start(200, keepAlive);
+    }
+
+    private boolean poll(CANMessage message) {
+        if (!WheelData.getInstance().bluetoothCmd(message.writeBuffer(), WriteQueue.Priority.POLL)) {
+            return false;
+        }
+        poller.sent(message.id);
+        return true;
     }
 
     @Override
@@ -409,9 +423,11 @@ public class InMotionAdapter extends BaseAdapter {
 
     @Override
     public void wheelBeep() {
-        if (getWheelModesWheel()) settingCommand = InMotionAdapter.CANMessage.wheelBeep().writeBuffer();
-        else settingCommand = InMotionAdapter.CANMessage.playSound((byte) 4).writeBuffer(); // old wheels like V8 and V5F don't have beep command, so let's play sound instead
-        settingCommandReady = true;
+        byte[] beep;
+        if (getWheelModesWheel()) beep = InMotionAdapter.CANMessage.wheelBeep().writeBuffer();
+        else beep = InMotionAdapter.CANMessage.playSound((byte) 4).writeBuffer(); // old wheels like V8 and V5F don't have beep command, so let's play sound instead
+        // the horn doesn't wait for the next keep-alive
+        WheelData.getInstance().bluetoothCmd(beep, WriteQueue.Priority.SAFETY);
     }
 
     public void wheelSound(byte soundNumber) {
@@ -493,7 +509,7 @@ public class InMotionAdapter extends BaseAdapter {
                 batt = 0.0;
             }
         } else {
-            Boolean useBetterPercents = WheelLog.AppConfig.getUseBetterPercents();
+            boolean useBetterPercents = DecodeSettings.getCurrent().getUseBetterPercents();
             if (model.belongToInputType("5") || model == Model.V8 || model == Model.Glide3 || model == Model.V8F || model == Model.V8S) {
                 if (useBetterPercents) {
                     if (volts > 84.00) {
@@ -846,23 +862,22 @@ public class InMotionAdapter extends BaseAdapter {
             return (byte) check;
         }
 
-        static CANMessage verify(byte[] buffer) {
+        static CANMessage verify(byte[] buffer, int length) {
 
-            if (buffer[0] != (byte) 0xAA || buffer[1] != (byte) 0xAA || buffer[buffer.length - 1] != (byte) 0x55 || buffer[buffer.length - 2] != (byte) 0x55) {
+            if (buffer[0] != (byte) 0xAA || buffer[1] != (byte) 0xAA || buffer[length - 1] != (byte) 0x55 || buffer[length - 2] != (byte) 0x55) {
                 return null;  // Header and tail not correct
             }
-            Timber.i("Before escape %s", StringUtil.toHexString(buffer));
-            int len = buffer.length - 3;
+            int len = length - 3;
             byte[] dataBuffer = Arrays.copyOfRange(buffer, 2, len);
 
-            Timber.i("After escape %s", StringUtil.toHexString(dataBuffer));
+            TraceRecorder.recordBytes("InMotion", TraceRecorder.PAYLOAD, dataBuffer, dataBuffer.length);
             byte check = CANMessage.computeCheck(dataBuffer);
 
             byte bufferCheck = buffer[len];
             if (check == bufferCheck) {
-                Timber.i("Check OK");
+                TraceRecorder.record("InMotion", TraceRecorder.VERIFY_OK, check & 0xFF, 0);
             } else {
-                Timber.i("Check FALSE, calc: %02X, packet: %02X", check, bufferCheck);
+                TraceRecorder.record("InMotion", TraceRecorder.VERIFY_FAIL, check & 0xFF, bufferCheck & 0xFF);
             }
             return (check == bufferCheck) ? new CANMessage(dataBuffer) : null;
 
@@ -1266,7 +1281,7 @@ public class InMotionAdapter extends BaseAdapter {
             done
         }
 
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final FrameAssembler buffer = new FrameAssembler();
         int oldc = 0;
         // there are two types of packets, basic and extended, if it is extended packet,
         // then len field should be 0xFE, and len of extended data should be in first data byte
@@ -1276,15 +1291,23 @@ public class InMotionAdapter extends BaseAdapter {
 
         UnpackerState state = UnpackerState.unknown;
 
+        // backing array of the assembler, the frame starts at index 0
         byte[] getBuffer() {
-            return buffer.toByteArray();
+            return buffer.getArray();
+        }
+
+        int getSize() {
+            return buffer.getSize();
         }
 
         boolean addChar(int c) {
             if (c != (byte) 0xA5 || oldc == (byte) 0xA5) {
                 if (state == UnpackerState.collecting) {
-                    buffer.write(c);
-                    int sz = buffer.size();
+                    if (!buffer.write(c)) {
+                        reset(); // no footer found
+                        return false;
+                    }
+                    int sz = buffer.getSize();
                     if (sz == 7) len_ex = c & 0xFF;
                     else if (sz == 15) len_p = c & 0xFF;
                     if ((sz > len_ex+21) && (len_p == 0xFE)) {
@@ -1295,12 +1318,11 @@ public class InMotionAdapter extends BaseAdapter {
                         state = UnpackerState.done;
                         updateStep = 0;
                         oldc = 0;
-                        Timber.i("Step reset");
                         return true;
                     }
                 } else {
                     if (c == (byte) 0xAA && oldc == (byte) 0xAA) {
-                        buffer = new ByteArrayOutputStream();
+                        buffer.reset();
                         buffer.write(0xAA);
                         buffer.write(0xAA);
                         state = UnpackerState.collecting;
@@ -1313,7 +1335,7 @@ public class InMotionAdapter extends BaseAdapter {
         }
 
         void reset(){
-            buffer = new ByteArrayOutputStream();
+            buffer.reset();
             oldc = 0;
             len_p = 0;
             len_ex = 0;
@@ -5,18 +5,23 @@ import android.content.Intent;
 
 import com.cooper.wheellog.WheelData;
 import com.cooper.wheellog.WheelLog;
+import com.cooper.wheellog.WriteQueue;
+import com.cooper.wheellog.telemetry.LinkHealth;
+import com.cooper.wheellog.telemetry.TraceRecorder;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Locale;
-import java.util.Timer;
-import java.util.TimerTask;
 import timber.log.Timber;
 
 public class InmotionAdapterV2 extends BaseAdapter {
     private static InmotionAdapterV2 INSTANCE;
-    private Timer keepAliveTimer;
+    private TickScheduler.Task keepAliveTimer;
+    private final AdaptivePoller poller = new AdaptivePoller("InMotion V2", 10, Message.Command.RealTimeInfo.getValue());
+    private final HandshakeCache handshake = new HandshakeCache("inmotion_v2",
+            new int[]{handshakeKey(Message.getCarType()), handshakeKey(Message.getVersions())},
+            handshakeKeys());
     private boolean settingCommandReady = false;
     private boolean requestSettings = false;
     private boolean turningOff = false;
@@ -32,12 +37,15 @@ public class InmotionAdapterV2 extends BaseAdapter {
     public boolean decode(byte[] data) {
         for (byte c : data) {
             if (unpacker.addChar(c)) {
-                Message result = Message.verify(unpacker.getBuffer());
+                Message result = Message.verify(unpacker.getBuffer(), unpacker.getSize());
 
                 if (result != null) {
-                    Timber.i("Get new data, command: %02X", result.command);
+                    poller.answered(result.command);
                     if (result.flags == Message.Flag.Initial.getValue()) {
                         if (result.command == Message.Command.MainInfo.getValue()) {
+                            if (result.data != null) {
+                                handshake.put(handshakeKey(result), result.data);
+                            }
                             return result.parseMainData();
                         } else if ((result.command == Message.Command.Diagnistic.getValue()) && turningOff) {
                             settingCommand = InmotionAdapterV2.Message.wheelOffSecondStage().writeBuffer();
@@ -48,6 +56,10 @@ public class InmotionAdapterV2 extends BaseAdapter {
                     } else if (result.flags == Message.Flag.Default.getValue()) {
                         if (result.command == Message.Command.Settings.getValue()) {
                             requestSettings = false;
+                            if (result.data != null) {
+                                handshake.put(handshakeKey(result), result.data);
+                                handshake.save();
+                            }
                             if (getInstance().getModel() == Model.V12) {
                                 return false;
                             } else {
@@ -108,6 +120,11 @@ public class InmotionAdapterV2 extends BaseAdapter {
         }
     }
 
+    @Override
+    public long getRequestInterval() {
+        return poller.getInterval();
+    }
+
     @Override
     public boolean isReady() {
         return mModel != Model.UNKNOWN && protoVer != 0;
@@ -150,22 +167,30 @@ public class InmotionAdapterV2 extends BaseAdapter {
 	public void startKeepAliveTimer() {
         updateStep = 0;
         stateCon = 0;
-        TimerTask timerTask = new TimerTask() {
+        if (handshake.load()) {
+            replayHandshake();
+            stateCon = 5;
+        }
+        Runnable keepAlive = new Runnable() {
             @Override
             public void run() {
                 if (updateStep == 0) {
+                    if (handshake.resumeFailed(poller.stats(Message.Command.RealTimeInfo.getValue()))) {
+                        handshake.forget();
+                        stateCon = 0;
+                    }
                     if (stateCon == 0) {
-                        if (WheelData.getInstance().bluetoothCmd(Message.getCarType().writeBuffer())) {
+                        if (poll(Message.getCarType())) {
                             Timber.i("Sent car type message");
                         } else updateStep = 35;
 
                     } else if (stateCon == 1) {
-                        if (WheelData.getInstance().bluetoothCmd(Message.getSerialNumber().writeBuffer())) {
+                        if (poll(Message.getSerialNumber())) {
                             Timber.i("Sent s/n message");
                         } else updateStep = 35;
 
                     } else if (stateCon == 2) {
-                        if (WheelData.getInstance().bluetoothCmd(Message.getVersions().writeBuffer())) {
+                        if (poll(Message.getVersions())) {
                             stateCon += 1;
                             Timber.i("Sent versions message");
                         } else updateStep = 35;
@@ -177,29 +202,34 @@ public class InmotionAdapterV2 extends BaseAdapter {
                             Timber.i("Sent command message");
                         } else updateStep = 35; // after +1 and %10 = 0
     				} else if (stateCon == 3 | requestSettings) {
-                        if (WheelData.getInstance().bluetoothCmd(Message.getCurrentSettings().writeBuffer())) {
+                        if (poll(Message.getCurrentSettings())) {
                             stateCon += 1;
                             Timber.i("Sent unknown data message");
                         } else updateStep = 35;
 
                     }
                     else if (stateCon == 4) {
-                        if (WheelData.getInstance().bluetoothCmd(Message.getUselessData().writeBuffer())) {
+                        if (poll(Message.getUselessData())) {
                             Timber.i("Sent useless data message");
                             stateCon += 1;
                         } else updateStep = 35;
 
                     }
                     else if (stateCon == 5) {
-                        if (WheelData.getInstance().bluetoothCmd(Message.getStatistics().writeBuffer())) {
+                        if (poll(Message.getStatistics())) {
                             Timber.i("Sent statistics data message");
                             stateCon += 1;
                         } else updateStep = 35;
 
                     }
                     else  {
-                        if (WheelData.getInstance().bluetoothCmd(InmotionAdapterV2.Message.getRealTimeData().writeBuffer())) {
-                            Timber.i("Sent realtime data message");
+                        int refresh = handshake.nextRefresh();
+                        if (refresh != HandshakeCache.NONE) {
+                            if (poll(handshakeRequest(refresh))) {
+                                Timber.i("Sent handshake refresh %04X", refresh);
+                            } else updateStep = 35;
+
+                        } else if (poll(InmotionAdapterV2.Message.getRealTimeData())) {
                             stateCon = 5;
                         } else updateStep = 35;
 
@@ -209,17 +239,79 @@ public class InmotionAdapterV2 extends BaseAdapter {
 				}
                 updateStep += 1;
                 updateStep %= 10;
-                Timber.i("Step: %d", updateStep);
             }
         };
-        keepAliveTimer = new Timer();
-        keepAliveTimer.scheduleAtFixedRate(timerTask, 100, 25);
+        keepAliveTimer = poller.start(100, keepAlive);
+    }
+
+    private boolean poll(Message message) {
+        if (!WheelData.getInstance().bluetoothCmd(message.writeBuffer(), WriteQueue.Priority.POLL)) {
+            return false;
+        }
+        poller.sent(message.command);
+        return true;
+    }
+
+    private static Message[] handshakeRequests() {
+        return new Message[]{Message.getCarType(), Message.getSerialNumber(), Message.getVersions(), Message.getCurrentSettings()};
+    }
+
+    /**
+     * Key of a handshake request and its reply in the handshake cache: the command,
+     * and for the main info the type of info in the first data byte.
+     */
+    private static int handshakeKey(Message message) {
+        int key = message.command << 8;
+        if (message.command == Message.Command.MainInfo.getValue() && message.data.length > 0) {
+            key |= message.data[0] & 0xFF;
+        }
+        return key;
+    }
+
+    private static int[] handshakeKeys() {
+        Message[] requests = handshakeRequests();
+        int[] keys = new int[requests.length];
+        for (int i = 0; i < requests.length; i++) {
+            keys[i] = handshakeKey(requests[i]);
+        }
+        return keys;
+    }
+
+    private static Message handshakeRequest(int key) {
+        for (Message request : handshakeRequests()) {
+            if (handshakeKey(request) == key) {
+                return request;
+            }
+        }
+        return Message.getRealTimeData();
+    }
+
+    /**
+     * Parses the cached handshake replies as if the wheel had sent them again.
+     */
+    private void replayHandshake() {
+        for (Message request : handshakeRequests()) {
+            byte[] data = handshake.get(handshakeKey(request));
+            if (data == null) {
+                continue;
+            }
+            Message reply = new Message();
+            reply.flags = request.flags;
+            reply.command = request.command;
+            reply.data = data;
+            reply.len = data.length + 1;
+            if (reply.command == Message.Command.MainInfo.getValue()) {
+                reply.parseMainData();
+            } else if (getModel() != Model.V12) {
+                reply.parseSettings();
+            }
+        }
     }
 
     @Override
     public void wheelBeep() {
-        settingCommand = InmotionAdapterV2.Message.playSound(0x18).writeBuffer();
-        settingCommandReady = true;
+        // the horn doesn't wait for the next keep-alive
+        WheelData.getInstance().bluetoothCmd(InmotionAdapterV2.Message.playSound(0x18).writeBuffer(), WriteQueue.Priority.SAFETY);
     }
 
     @Override
@@ -401,11 +493,12 @@ public class InmotionAdapterV2 extends BaseAdapter {
         }
 
         boolean parseMainData(){
-            Timber.i("Parse main data");
             WheelData wd = WheelData.getInstance();
             wd.resetRideTime();
             if ((data[0] == (byte) 0x01) && len >= 6) {
-                stateCon += 1;
+                if (!getInstance().handshake.isRefreshing()) {
+                    stateCon += 1;
+                }
                 Timber.i("Parse car type");
                 // 020601010100 -v11
                 // 020701010100 -v12
@@ -419,7 +512,9 @@ public class InmotionAdapterV2 extends BaseAdapter {
                 wd.setModel(mModel.getName());
                 wd.setVersion(String.format(Locale.ENGLISH,"-")); // need to find how to parse
             } else if ((data[0] == (byte) 0x02) && len >= 17) {
-                stateCon += 1;
+                if (!getInstance().handshake.isRefreshing()) {
+                    stateCon += 1;
+                }
                 Timber.i("Parse serial num");
                 String serialNumber;
                 serialNumber = new String(data, 1, 16);
@@ -622,7 +717,6 @@ public class InmotionAdapterV2 extends BaseAdapter {
         }
 
         boolean parseRealTimeInfoV11(Context sContext) {
-            Timber.i("Parse V11 realtime stats data");
             WheelData wd = WheelData.getInstance();
             int mVoltage = MathsUtil.shortFromBytesLE(data, 0);
             int mCurrent = MathsUtil.signedShortFromBytesLE(data, 2);
@@ -715,7 +809,6 @@ public class InmotionAdapterV2 extends BaseAdapter {
         }
 
         boolean parseRealTimeInfoV11_1_4(Context sContext) {
-            Timber.i("Parse V12 realtime stats data");
             WheelData wd = WheelData.getInstance();
             int mVoltage = MathsUtil.shortFromBytesLE(data, 0);
             int mCurrent = MathsUtil.signedShortFromBytesLE(data, 2);
@@ -810,7 +903,6 @@ public class InmotionAdapterV2 extends BaseAdapter {
 
 
         boolean parseRealTimeInfoV12(Context sContext) {
-            Timber.i("Parse V12 realtime stats data");
             WheelData wd = WheelData.getInstance();
             int mVoltage = MathsUtil.shortFromBytesLE(data, 0);
             int mCurrent = MathsUtil.signedShortFromBytesLE(data, 2);
@@ -1211,16 +1303,17 @@ public class InmotionAdapterV2 extends BaseAdapter {
             return (byte) check;
         }
 
-        static Message verify(byte[] buffer) {
-            Timber.i("Verify: %s", StringUtil.toHexString(buffer));
-            byte[] dataBuffer = Arrays.copyOfRange(buffer, 0, buffer.length - 1);
+        static Message verify(byte[] buffer, int length) {
+            TraceRecorder.recordBytes("InMotionV2", TraceRecorder.PAYLOAD, buffer, length);
+            byte[] dataBuffer = Arrays.copyOfRange(buffer, 0, length - 1);
             byte check = calcCheck(dataBuffer);
 
-            byte bufferCheck = buffer[buffer.length - 1];
+            byte bufferCheck = buffer[length - 1];
             if (check == bufferCheck) {
-                Timber.i("Check OK");
+                TraceRecorder.record("InMotionV2", TraceRecorder.VERIFY_OK, check & 0xFF, 0);
             } else {
-                Timber.i("Check FALSE, calc: %02X, packet: %02X",check, bufferCheck);
+                TraceRecorder.record("InMotionV2", TraceRecorder.VERIFY_FAIL, check & 0xFF, bufferCheck & 0xFF);
+                LinkHealth.lost(length);
             }
             return (check == bufferCheck) ? new Message(dataBuffer) : null;
         }
@@ -1248,14 +1341,19 @@ public class InmotionAdapterV2 extends BaseAdapter {
         }
 
 
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final FrameAssembler buffer = new FrameAssembler();
         int oldc = 0;
         int len = 0;
         int flags = 0;
         UnpackerState state = UnpackerState.unknown;
 
+        // backing array of the assembler, the frame starts at index 0
         byte[] getBuffer() {
-            return buffer.toByteArray();
+            return buffer.getArray();
+        }
+
+        int getSize() {
+            return buffer.getSize();
         }
 
         boolean addChar(int c) {
@@ -1266,12 +1364,10 @@ public class InmotionAdapterV2 extends BaseAdapter {
                     case collecting:
 
                         buffer.write(c);
-                        if (buffer.size() == len + 5) {
+                        if (buffer.getSize() == len + 5) {
                             state = UnpackerState.done;
                             updateStep = 0;
                             oldc = 0;
-                            Timber.i("Len %d", len);
-                            Timber.i("Step reset");
                             return true;
                         }
                         break;
@@ -1292,7 +1388,7 @@ public class InmotionAdapterV2 extends BaseAdapter {
 
                     default:
                         if (c == (byte) 0xAA && oldc == (byte) 0xAA) {
-                            buffer = new ByteArrayOutputStream();
+                            buffer.reset();
                             buffer.write(0xAA);
                             buffer.write(0xAA);
                             state = UnpackerState.flagsearch;
@@ -1307,7 +1403,7 @@ public class InmotionAdapterV2 extends BaseAdapter {
         }
 
         void reset() {
-            buffer = new ByteArrayOutputStream();
+            buffer.reset();
             oldc = 0;
             state = UnpackerState.unknown;
 
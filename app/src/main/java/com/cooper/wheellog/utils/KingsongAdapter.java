@@ -1,6 +1,8 @@
 package com.cooper.wheellog.utils;
 import com.cooper.wheellog.WheelData;
 import com.cooper.wheellog.WheelLog;
+import com.cooper.wheellog.WriteQueue;
+import com.cooper.wheellog.telemetry.DecodeSettings;
 
 import java.util.Locale;
 import java.util.Objects;
@@ -21,7 +23,6 @@ public class KingsongAdapter extends BaseAdapter {
 
     @Override
     public boolean decode(byte[] data) {
-        Timber.i("Decode KingSong");
         WheelData wd = WheelData.getInstance();
         wd.resetRideTime();
         if (data.length >= 20) {
@@ -49,7 +50,7 @@ public class KingsongAdapter extends BaseAdapter {
                 }
 
                 int battery;
-                Boolean useBetterPercents = WheelLog.AppConfig.getUseBetterPercents();
+                boolean useBetterPercents = DecodeSettings.getCurrent().getUseBetterPercents();
                 if (is84vWheel()) {
                     if (useBetterPercents) {
                         if (voltage > 8350) {
@@ -422,19 +423,19 @@ public class KingsongAdapter extends BaseAdapter {
     public void wheelBeep() {
         byte[] data = getEmptyRequest();
         data[16] = (byte) 0x88;
-        WheelData.getInstance().bluetoothCmd(data);
+        WheelData.getInstance().bluetoothCmd(data, WriteQueue.Priority.SAFETY);
     }
 
     public void requestNameData() {
         byte[] data = getEmptyRequest();
         data[16] = (byte) 0x9B;
-        WheelData.getInstance().bluetoothCmd(data);
+        WheelData.getInstance().bluetoothCmd(data, WriteQueue.Priority.POLL);
     }
 
     public void requestSerialData() {
         byte[] data = getEmptyRequest();
         data[16] = 0x63;
-        WheelData.getInstance().bluetoothCmd(data);
+        WheelData.getInstance().bluetoothCmd(data, WriteQueue.Priority.POLL);
     }
 
     public void requestBms1Serial() {
@@ -476,7 +477,7 @@ public class KingsongAdapter extends BaseAdapter {
     public void requestAlarmSettingsAndMaxSpeed() {
         byte[] data = getEmptyRequest();
         data[16] = (byte) 0x98;
-        WheelData.getInstance().bluetoothCmd(data);
+        WheelData.getInstance().bluetoothCmd(data, WriteQueue.Priority.POLL);
     }
 
     @Override
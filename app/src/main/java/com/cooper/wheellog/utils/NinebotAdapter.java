@@ -1,6 +1,8 @@
 package com.cooper.wheellog.utils;
 
 import com.cooper.wheellog.WheelData;
+import com.cooper.wheellog.WriteQueue;
+import com.cooper.wheellog.telemetry.TraceRecorder;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -12,7 +14,11 @@ import timber.log.Timber;
  */
 public class NinebotAdapter extends BaseAdapter {
     private static NinebotAdapter INSTANCE;
-    private Timer keepAliveTimer;
+    private TickScheduler.Task keepAliveTimer;
+    private final AdaptivePoller poller = new AdaptivePoller("Ninebot", 5, CANMessage.Param.LiveData.getValue());
+    private final HandshakeCache handshake = new HandshakeCache("ninebot",
+            new int[]{CANMessage.Param.SerialNumber.getValue(), CANMessage.Param.Firmware.getValue()},
+            new int[]{CANMessage.Param.SerialNumber.getValue(), CANMessage.Param.Firmware.getValue()});
     private boolean settingCommandReady = false;
     private static int updateStep = 0;
     private byte[] settingCommand;
@@ -28,17 +34,25 @@ public class NinebotAdapter extends BaseAdapter {
         if (protoVer.compareTo("Mini") == 0) protoVersion = 2;
         updateStep = 0;
         stateCon = 0;
-        TimerTask timerTask = new TimerTask() {
+        if (handshake.load()) {
+            replayHandshake();
+            stateCon = 2;
+        }
+        Runnable keepAlive = new Runnable() {
             @Override
             public void run() {
                 if (updateStep == 0) {
+                    if (handshake.resumeFailed(poller.stats(CANMessage.Param.LiveData.getValue()))) {
+                        handshake.forget();
+                        stateCon = 0;
+                    }
                     if (stateCon == 0) {
-                        if (WheelData.getInstance().bluetoothCmd(NinebotAdapter.CANMessage.getSerialNumber().writeBuffer())) {
+                        if (poll(NinebotAdapter.CANMessage.getSerialNumber())) {
                             Timber.i("Sent serial number message");
                         } else updateStep = 39;
 
                     } else if (stateCon == 1) {
-                        if (WheelData.getInstance().bluetoothCmd(NinebotAdapter.CANMessage.getVersion().writeBuffer())) {
+                        if (poll(NinebotAdapter.CANMessage.getVersion())) {
                             Timber.i("Sent serial version message");
                         } else updateStep = 39;
 
@@ -48,22 +62,45 @@ public class NinebotAdapter extends BaseAdapter {
                             Timber.i("Sent command message");
                         } else updateStep = 39;
                     } else {
-                        if (!WheelData.getInstance().bluetoothCmd(NinebotAdapter.CANMessage.getLiveData().writeBuffer())) {
+                        int refresh = handshake.nextRefresh();
+                        if (refresh != HandshakeCache.NONE) {
+                            if (poll(refresh == CANMessage.Param.SerialNumber.getValue()
+                                    ? CANMessage.getSerialNumber() : CANMessage.getVersion())) {
+                                Timber.i("Sent handshake refresh %02X", refresh);
+                            } else updateStep = 39;
+
+                        } else if (!poll(NinebotAdapter.CANMessage.getLiveData())) {
                             Timber.i("Unable to send keep-alive message");
                             updateStep = 39;
-                        } else {
-                            Timber.i("Sent keep-alive message");
                         }
                     }
                 }
                 updateStep += 1;
                 updateStep %= 5;
-                Timber.i("Step: %d", updateStep);
             }
         };
         Timber.i("Ninebot timer started");
-        keepAliveTimer = new Timer();
-        keepAliveTimer.scheduleAtFixedRate(timerTask, 0, 25);
+        keepAliveTimer = poller.start(0, keepAlive);
+    }
+
+    private boolean poll(CANMessage message) {
+        if (!WheelData.getInstance().bluetoothCmd(message.writeBuffer(), WriteQueue.Priority.POLL)) {
+            return false;
+        }
+        poller.sent(message.parameter);
+        return true;
+    }
+
+    /**
+     * Parses the cached handshake replies as if the wheel had sent them again.
+     */
+    private void replayHandshake() {
+        WheelData wd = WheelData.getInstance();
+        CANMessage reply = new CANMessage();
+        reply.data = handshake.get(CANMessage.Param.SerialNumber.getValue());
+        apply(wd, reply.parseSerialNumber());
+        reply.data = handshake.get(CANMessage.Param.Firmware.getValue());
+        apply(wd, reply.parseVersionNumber());
     }
 
     public void resetConnection() {
@@ -75,7 +112,6 @@ public class NinebotAdapter extends BaseAdapter {
 
     @Override
     public boolean decode(byte[] data) {
-        Timber.i("Ninebot_decoding");
         ArrayList<NinebotAdapter.Status> statuses = charUpdated(data);
         if (statuses.size() < 1) {
             return false;
@@ -83,28 +119,36 @@ public class NinebotAdapter extends BaseAdapter {
         WheelData wd = WheelData.getInstance();
         wd.resetRideTime();
         for (NinebotAdapter.Status status : statuses) {
-            Timber.i(status.toString());
-            if (status instanceof NinebotAdapter.serialNumberStatus) {
-                wd.setSerial(((serialNumberStatus) status).getSerialNumber());
-                wd.setModel("Ninebot " + wd.getProtoVer());
-            } else if (status instanceof NinebotAdapter.versionStatus) {
-                wd.setVersion(((NinebotAdapter.versionStatus) status).getVersion());
-            } else {
-                int speed = status.getSpeed();
-                int voltage = status.getVoltage();
-                int battery = status.getBatt();
-                wd.setSpeed(speed);
-                wd.setVoltage(voltage);
-                wd.setCurrent(status.getCurrent());
-                wd.setTotalDistance(status.getDistance());
-                wd.setTemperature(status.getTemperature() * 10);
-                wd.updateRideTime();
-                wd.setBatteryLevel(battery);
-            }
+            apply(wd, status);
         }
         return true;
     }
 
+    private static void apply(WheelData wd, Status status) {
+        if (status instanceof NinebotAdapter.serialNumberStatus) {
+            wd.setSerial(((serialNumberStatus) status).getSerialNumber());
+            wd.setModel("Ninebot " + wd.getProtoVer());
+        } else if (status instanceof NinebotAdapter.versionStatus) {
+            wd.setVersion(((NinebotAdapter.versionStatus) status).getVersion());
+        } else {
+            int speed = status.getSpeed();
+            int voltage = status.getVoltage();
+            int battery = status.getBatt();
+            wd.setSpeed(speed);
+            wd.setVoltage(voltage);
+            wd.setCurrent(status.getCurrent());
+            wd.setTotalDistance(status.getDistance());
+            wd.setTemperature(status.getTemperature() * 10);
+            wd.updateRideTime();
+            wd.setBatteryLevel(battery);
+        }
+    }
+
+    @Override
+    public long getRequestInterval() {
+        return poller.getInterval();
+    }
+
     @Override
     public boolean isReady() {
         return !Objects.equals(WheelData.getInstance().getSerial(), "")
@@ -390,30 +434,28 @@ public class NinebotAdapter extends BaseAdapter {
             return check;
         }
 
-        static CANMessage verify(byte[] buffer) {
+        static CANMessage verify(byte[] buffer, int length) {
 
-            Timber.i("Verifying");
-            byte[] dataBuffer = Arrays.copyOfRange(buffer, 2, buffer.length);
+            byte[] dataBuffer = Arrays.copyOfRange(buffer, 2, length);
             dataBuffer = crypto(dataBuffer);
+            TraceRecorder.recordBytes("Ninebot", TraceRecorder.PAYLOAD, dataBuffer, dataBuffer.length);
 
             int check = (dataBuffer[dataBuffer.length - 1] << 8 | ((dataBuffer[dataBuffer.length - 2]) & 0xff)) & 0xffff;
             byte[] dataBufferCheck = Arrays.copyOfRange(dataBuffer, 0, dataBuffer.length - 2);
             int checkBuffer = computeCheck(dataBufferCheck);
             if (check == checkBuffer) {
-                Timber.i("Check OK");
+                TraceRecorder.record("Ninebot", TraceRecorder.VERIFY_OK, check, 0);
             } else {
-                Timber.i("Check FALSE, packet: %02X, calc: %02X", check, checkBuffer);
+                TraceRecorder.record("Ninebot", TraceRecorder.VERIFY_FAIL, checkBuffer, check);
             }
             return (check == checkBuffer) ? new CANMessage(dataBuffer) : null;
         }
 
         static byte[] crypto(byte[] buffer) {
             byte[] dataBuffer = Arrays.copyOfRange(buffer, 0, buffer.length);
-            Timber.i("Initial packet: %s", StringUtil.toHexString(dataBuffer));
             for (int j = 1; j < dataBuffer.length; j++) {
                 dataBuffer[j] ^= gamma[(j - 1) % 16];
             }
-            Timber.i("En/Decrypted packet: %s", StringUtil.toHexString(dataBuffer));
             return dataBuffer;
         }
 
@@ -555,19 +597,20 @@ public class NinebotAdapter extends BaseAdapter {
 
     public ArrayList<Status> charUpdated(byte[] data) {
         ArrayList<Status> outValues = new ArrayList<>();
-        Timber.i("Got data ");
         for (byte c : data) {
             if (unpacker.addChar(c)) {
-                Timber.i("Starting verification");
-                CANMessage result = CANMessage.verify(unpacker.getBuffer());
+                CANMessage result = CANMessage.verify(unpacker.getBuffer(), unpacker.getSize());
 
                 if (result != null) { // data OK
-                    Timber.i("Verification successful, command %02X", result.parameter);
+                    poller.answered(result.parameter);
                     if (result.parameter == CANMessage.Param.SerialNumber.getValue()) {
                         Timber.i("Get serial number");
                         serialNumberStatus infos = result.parseSerialNumber();
-                        stateCon = 1;
+                        if (!handshake.isRefreshing()) {
+                            stateCon = 1;
+                        }
                         if ((result.len - 2) == 14) {
+                            handshake.put(result.parameter, result.data);
                             if (infos != null)
                                 outValues.add(infos);
                         }
@@ -584,12 +627,15 @@ public class NinebotAdapter extends BaseAdapter {
                     } else if (result.parameter == CANMessage.Param.Firmware.getValue()) {
                         Timber.i("Get version number");
                         versionStatus infos = result.parseVersionNumber();
-                        stateCon = 2;
+                        handshake.put(result.parameter, result.data);
+                        if (!handshake.isRefreshing()) {
+                            stateCon = 2;
+                            handshake.save();
+                        }
                         if (infos != null)
                             outValues.add(infos);
 
                     } else if (result.parameter == CANMessage.Param.LiveData.getValue()) {
-                        Timber.i("Get life data1");
                         if (result.len - 2 == 32) {
                             Status status = result.parseLiveData();
                             if (status != null) {
@@ -597,22 +643,16 @@ public class NinebotAdapter extends BaseAdapter {
                             }
                         }
                     } else if (result.parameter == CANMessage.Param.LiveData2.getValue()) {
-                        Timber.i("Get life data2");
                         result.parseLiveData2();
                     } else if (result.parameter == CANMessage.Param.LiveData3.getValue()) {
-                        Timber.i("Get life data3");
                         result.parseLiveData3();
                     } else if (result.parameter == CANMessage.Param.LiveData4.getValue()) {
-                        Timber.i("Get life data4");
                         result.parseLiveData4();
                     } else if (result.parameter == CANMessage.Param.LiveData5.getValue()) {
-                        Timber.i("Get life data5");
                         Status status = result.parseLiveData5();
                         if (status != null) {
                             outValues.add(status);
                         }
-                    } else if (result.parameter == CANMessage.Param.LiveData6.getValue()) {
-                        Timber.i("Get life data");
                     }
 
                 }
@@ -630,13 +670,18 @@ public class NinebotAdapter extends BaseAdapter {
             done
         }
 
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final FrameAssembler buffer = new FrameAssembler();
         int oldc = 0;
         int len = 0;
         UnpackerState state = UnpackerState.unknown;
 
+        // backing array of the assembler, the frame starts at index 0
         byte[] getBuffer() {
-            return buffer.toByteArray();
+            return buffer.getArray();
+        }
+
+        int getSize() {
+            return buffer.getSize();
         }
 
         boolean addChar(int c) {
@@ -644,11 +689,10 @@ public class NinebotAdapter extends BaseAdapter {
             switch (state) {
                 case collecting:
                     buffer.write(c);
-                    if (buffer.size() == len + 6) {
+                    if (buffer.getSize() == len + 6) {
                         state = UnpackerState.done;
                         updateStep = 0;
-                        Timber.i("Len %d", len);
-                        Timber.i("Step reset");
+                        TraceRecorder.record("Ninebot", TraceRecorder.STATE, state.ordinal(), buffer.getSize());
                         return true;
                     }
                     break;
@@ -659,11 +703,11 @@ public class NinebotAdapter extends BaseAdapter {
                     break;
                 default:
                     if (c == (byte) 0xAA && oldc == (byte) 0x55) {
-                        Timber.i("Find start");
-                        buffer = new ByteArrayOutputStream();
+                        buffer.reset();
                         buffer.write(0x55);
                         buffer.write(0xAA);
                         state = UnpackerState.started;
+                        TraceRecorder.record("Ninebot", TraceRecorder.STATE, state.ordinal(), 2);
                     }
                     oldc = c;
             }
@@ -671,7 +715,7 @@ public class NinebotAdapter extends BaseAdapter {
         }
 
         void reset() {
-            buffer = new ByteArrayOutputStream();
+            buffer.reset();
             oldc = 0;
             state = UnpackerState.unknown;
 
@@ -2,6 +2,9 @@ package com.cooper.wheellog.utils;
 
 import com.cooper.wheellog.WheelData;
 import com.cooper.wheellog.WheelLog;
+import com.cooper.wheellog.WriteQueue;
+import com.cooper.wheellog.telemetry.LinkHealth;
+import com.cooper.wheellog.telemetry.TraceRecorder;
 import com.cooper.wheellog.R;
 
 import java.io.ByteArrayOutputStream;
@@ -14,7 +17,13 @@ import timber.log.Timber;
  */
 public class NinebotZAdapter extends BaseAdapter {
     private static NinebotZAdapter INSTANCE;
-    private Timer keepAliveTimer;
+    private TickScheduler.Task keepAliveTimer;
+    private final AdaptivePoller poller = new AdaptivePoller("Ninebot Z", 5, CANMessage.Param.LiveData.getValue());
+    private final HandshakeCache handshake = new HandshakeCache("ninebot_z",
+            new int[]{CANMessage.Param.SerialNumber.getValue(), CANMessage.Param.Firmware.getValue()},
+            new int[]{CANMessage.Param.SerialNumber.getValue(), CANMessage.Param.Firmware.getValue(),
+                    CANMessage.Param.LockMode.getValue(), CANMessage.Param.LedMode.getValue(),
+                    CANMessage.Param.SpeakerVolume.getValue()});
     protected boolean settingCommandReady = false;
     private boolean settingRequestReady = false;
     private static int updateStep = 0;
@@ -53,68 +62,76 @@ public class NinebotZAdapter extends BaseAdapter {
         Timber.i("Ninebot Z timer starting");
         updateStep = 0;
         stateCon = 0;
-        TimerTask timerTask = new TimerTask() {
+        if (handshake.load()) {
+            replayHandshake();
+            stateCon = 13;
+        }
+        Runnable keepAlive = new Runnable() {
             @Override
             public void run() {
                 if (updateStep == 0) {
-                    Timber.i("State connection %d", stateCon);
+                    if (handshake.resumeFailed(poller.stats(CANMessage.Param.LiveData.getValue()))) {
+                        handshake.forget();
+                        gamma = new byte[16];
+                        stateCon = 0;
+                    }
                     if (stateCon == 0) {
-                        if (WheelData.getInstance().bluetoothCmd(NinebotZAdapter.CANMessage.getBleVersion().writeBuffer())) {
+                        if (poll(NinebotZAdapter.CANMessage.getBleVersion())) {
                             Timber.i("Sent start message");
                         } else Timber.i("Unable to send start message");
 
                     } else if (stateCon == 1) {
-                        if (WheelData.getInstance().bluetoothCmd(NinebotZAdapter.CANMessage.getKey().writeBuffer())) {
+                        if (poll(NinebotZAdapter.CANMessage.getKey())) {
                             Timber.i("Sent getkey message");
                         } else Timber.i("Unable to send getkey message");
 
                     } else if (stateCon == 2) {
-                        if (WheelData.getInstance().bluetoothCmd(NinebotZAdapter.CANMessage.getSerialNumber().writeBuffer())) {
+                        if (poll(NinebotZAdapter.CANMessage.getSerialNumber())) {
                             Timber.i("Sent serial number message");
                         } else Timber.i("Unable to send serial number message");
 
                     } else if (stateCon == 3) {
-                        if (WheelData.getInstance().bluetoothCmd(NinebotZAdapter.CANMessage.getVersion().writeBuffer())) {
+                        if (poll(NinebotZAdapter.CANMessage.getVersion())) {
                             Timber.i("Sent version message");
                         } else Timber.i("Unable to send version message");
 
                     } else if (stateCon == 4) {
-                        if (WheelData.getInstance().bluetoothCmd(NinebotZAdapter.CANMessage.getParams1().writeBuffer())) {
+                        if (poll(NinebotZAdapter.CANMessage.getParams1())) {
                             Timber.i("Sent getParams1 message");
                         } else Timber.i("Unable to send getParams1 message");
 
                     } else if (stateCon == 5) {
-                        if (WheelData.getInstance().bluetoothCmd(NinebotZAdapter.CANMessage.getParams2().writeBuffer())) {
+                        if (poll(NinebotZAdapter.CANMessage.getParams2())) {
                             Timber.i("Sent getParams2 message");
                         } else Timber.i("Unable to send getParams2 message");
 
                     } else if (stateCon == 6) {
-                        if (WheelData.getInstance().bluetoothCmd(NinebotZAdapter.CANMessage.getParams3().writeBuffer())) {
+                        if (poll(NinebotZAdapter.CANMessage.getParams3())) {
                             Timber.i("Sent getParams3 message");
                         } else Timber.i("Unable to send getParams2 message");
 
                     } else if (stateCon == 7) {
-                        if (WheelData.getInstance().bluetoothCmd(NinebotZAdapter.CANMessage.getBms1Sn().writeBuffer())) {
+                        if (poll(NinebotZAdapter.CANMessage.getBms1Sn())) {
                             Timber.i("Sent BMS1 SN message");
                         } else Timber.i("Unable to send BMS1 SN message");
                     } else if (stateCon == 8) {
-                        if (WheelData.getInstance().bluetoothCmd(NinebotZAdapter.CANMessage.getBms1Life().writeBuffer())) {
+                        if (poll(NinebotZAdapter.CANMessage.getBms1Life())) {
                             Timber.i("Sent BMS1 life message");
                         } else Timber.i("Unable to send BMS1 life message");
                     } else if (stateCon == 9) {
-                        if (WheelData.getInstance().bluetoothCmd(NinebotZAdapter.CANMessage.getBms1Cells().writeBuffer())) {
+                        if (poll(NinebotZAdapter.CANMessage.getBms1Cells())) {
                             Timber.i("Sent BMS1 cells message");
                         } else Timber.i("Unable to send BMS1 cells message");
                     } else if (stateCon == 10) {
-                        if (WheelData.getInstance().bluetoothCmd(NinebotZAdapter.CANMessage.getBms2Sn().writeBuffer())) {
+                        if (poll(NinebotZAdapter.CANMessage.getBms2Sn())) {
                             Timber.i("Sent BMS2 SN message");
                         } else Timber.i("Unable to send BMS2 SN message");
                     } else if (stateCon == 11) {
-                        if (WheelData.getInstance().bluetoothCmd(NinebotZAdapter.CANMessage.getBms2Life().writeBuffer())) {
+                        if (poll(NinebotZAdapter.CANMessage.getBms2Life())) {
                             Timber.i("Sent BMS2 life message");
                         } else Timber.i("Unable to send BMS2 life message");
                     } else if (stateCon == 12) {
-                        if (WheelData.getInstance().bluetoothCmd(NinebotZAdapter.CANMessage.getBms2Cells().writeBuffer())) {
+                        if (poll(NinebotZAdapter.CANMessage.getBms2Cells())) {
                             Timber.i("Sent BMS2 cells message");
                         } else Timber.i("Unable to send BMS2 cells message");
 
@@ -131,10 +148,14 @@ public class NinebotZAdapter extends BaseAdapter {
                         } else Timber.i("Unable to send settings request message");
 
                     } else {
-                        if (!WheelData.getInstance().bluetoothCmd(NinebotZAdapter.CANMessage.getLiveData().writeBuffer())) {
+                        int refresh = handshake.nextRefresh();
+                        if (refresh != HandshakeCache.NONE) {
+                            if (poll(refreshRequest(refresh))) {
+                                Timber.i("Sent handshake refresh %02X", refresh);
+                            } else Timber.i("Unable to send handshake refresh");
+
+                        } else if (!poll(NinebotZAdapter.CANMessage.getLiveData())) {
                             Timber.i("Unable to send keep-alive message");
-                        } else {
-                            Timber.i("Sent keep-alive message");
                         }
                     }
 
@@ -143,24 +164,79 @@ public class NinebotZAdapter extends BaseAdapter {
 
                 if ((updateStep == 5) && (stateCon > 6) && (stateCon < 13)) {
                     stateCon += 1;
-                    Timber.i("Change state to %d 1", stateCon);
                     if (stateCon > 12) stateCon = 7;
                 }
                 if (bmsMode && (stateCon == 13)) {
                     stateCon = 7;
-                    Timber.i("Change state to %d 2", stateCon);
                 }
                 if (!bmsMode && (stateCon > 6) && (stateCon < 13)) {
                     stateCon = 13;
-                    Timber.i("Change state to %d 3", stateCon);
                 }
                 updateStep %= 5;
-                Timber.i("Step: %d", updateStep);
             }
         };
         Timber.i("Ninebot Z timer started");
-        keepAliveTimer = new Timer();
-        keepAliveTimer.scheduleAtFixedRate(timerTask, 200, 25);
+        keepAliveTimer = poller.start(200, keepAlive);
+    }
+
+    private boolean poll(CANMessage message) {
+        if (!WheelData.getInstance().bluetoothCmd(message.writeBuffer(), WriteQueue.Priority.POLL)) {
+            return false;
+        }
+        poller.sent(message.parameter);
+        return true;
+    }
+
+    private static CANMessage refreshRequest(int parameter) {
+        if (parameter == CANMessage.Param.SerialNumber.getValue()) {
+            return CANMessage.getSerialNumber();
+        } else if (parameter == CANMessage.Param.Firmware.getValue()) {
+            return CANMessage.getVersion();
+        } else if (parameter == CANMessage.Param.LockMode.getValue()) {
+            return CANMessage.getParams1();
+        } else if (parameter == CANMessage.Param.LedMode.getValue()) {
+            return CANMessage.getParams2();
+        }
+        return CANMessage.getParams3();
+    }
+
+    /**
+     * Parses the cached handshake replies as if the wheel had sent them again.
+     */
+    private void replayHandshake() {
+        byte[] key = handshake.get(CANMessage.Param.GetKey.getValue());
+        if (key != null) {
+            gamma = key;
+        }
+        CANMessage reply;
+        if ((reply = cachedReply(CANMessage.Param.SerialNumber)) != null) reply.parseSerialNumber();
+        if ((reply = cachedReply(CANMessage.Param.Firmware)) != null) reply.parseVersionNumber();
+        if ((reply = cachedReply(CANMessage.Param.LockMode)) != null) reply.parseParams1();
+        if ((reply = cachedReply(CANMessage.Param.LedMode)) != null) reply.parseParams2();
+        if ((reply = cachedReply(CANMessage.Param.SpeakerVolume)) != null) reply.parseParams3();
+    }
+
+    private CANMessage cachedReply(CANMessage.Param param) {
+        byte[] data = handshake.get(param.getValue());
+        if (data == null) {
+            return null;
+        }
+        CANMessage msg = new CANMessage();
+        msg.source = CANMessage.Addr.Controller.getValue();
+        msg.parameter = param.getValue();
+        msg.data = data;
+        msg.len = data.length;
+        return msg;
+    }
+
+    /**
+     * Caches a handshake reply and moves on to the next step, a refreshed reply keeps the state.
+     */
+    private void handshakeReply(CANMessage reply, int nextState) {
+        handshake.put(reply.parameter, reply.data);
+        if (!handshake.isRefreshing()) {
+            stateCon = nextState;
+        }
     }
 
     public void resetConnection() {
@@ -241,17 +317,15 @@ public class NinebotZAdapter extends BaseAdapter {
 
     @Override
     public boolean decode(byte[] data) {
-        Timber.i("Ninebot_z decoding");
         WheelData wd = WheelData.getInstance();
         setBmsReadingMode(wd.getBmsView());
         boolean retResult = false;
         for (byte c : data) {
             if (unpacker.addChar(c)) {
-                Timber.i("Starting verification");
-                CANMessage result = CANMessage.verify(unpacker.getBuffer());
+                CANMessage result = CANMessage.verify(unpacker.getBuffer(), unpacker.getSize());
 
                 if (result != null) { // data OK
-                    Timber.i("Verification successful, command %02X", result.parameter);
+                    poller.answered(result.parameter);
                     if ((result.parameter == CANMessage.Param.BleVersion.getValue()) && (result.source == CANMessage.Addr.Controller.getValue())) {
                         Timber.i("Get start answer");
                         stateCon = 2;
@@ -259,36 +333,42 @@ public class NinebotZAdapter extends BaseAdapter {
                     } else if ((result.parameter == CANMessage.Param.GetKey.getValue()) && (result.source == CANMessage.Addr.KeyGenerator.getValue())) {
                         Timber.i("Get encryption key");
                         gamma = result.parseKey();
+                        for (byte b : gamma) {
+                            if (b != 0) { // a zero key means no encryption, nothing to keep
+                                handshake.put(result.parameter, gamma);
+                                break;
+                            }
+                        }
                         stateCon = 2;
                         retResult = false;
 
                     } else if ((result.parameter == CANMessage.Param.SerialNumber.getValue()) && (result.source == CANMessage.Addr.Controller.getValue())) {
                         Timber.i("Get serial number");
                         result.parseSerialNumber();
-                        stateCon = 3;
+                        handshakeReply(result, 3);
 
                     } else if ((result.parameter == CANMessage.Param.LockMode.getValue()) && (result.source == CANMessage.Addr.Controller.getValue())) {
                         Timber.i("Get param1 number");
                         result.parseParams1();
-                        stateCon = 5;
+                        handshakeReply(result, 5);
 
                     } else if ((result.parameter == CANMessage.Param.LedMode.getValue()) && (result.source == CANMessage.Addr.Controller.getValue())) {
                         Timber.i("Get param2 number");
                         result.parseParams2();
-                        stateCon = 6;
+                        handshakeReply(result, 6);
 
                     } else if ((result.parameter == CANMessage.Param.SpeakerVolume.getValue()) && (result.source == CANMessage.Addr.Controller.getValue())) {
                         Timber.i("Get param3 number");
                         result.parseParams3();
-                        stateCon = 13;
+                        handshakeReply(result, 13);
+                        handshake.save();
 
                     } else if ((result.parameter == CANMessage.Param.Firmware.getValue()) && (result.source == CANMessage.Addr.Controller.getValue())) {
                         Timber.i("Get version number");
                         result.parseVersionNumber();
-                        stateCon = 4;
+                        handshakeReply(result, 4);
 
                     } else if ((result.parameter == CANMessage.Param.LiveData.getValue()) && (result.source == CANMessage.Addr.Controller.getValue())) {
-                        Timber.i("Get life data");
                         result.parseLiveData();
                         retResult = true;
 
@@ -329,6 +409,11 @@ public class NinebotZAdapter extends BaseAdapter {
         return retResult;
     }
 
+    @Override
+    public long getRequestInterval() {
+        return poller.getInterval();
+    }
+
     @Override
     public boolean isReady() {
         return !Objects.equals(WheelData.getInstance().getSerial(), "")
@@ -632,19 +717,20 @@ public class NinebotZAdapter extends BaseAdapter {
             return check;
         }
 
-        static CANMessage verify(byte[] buffer) {
+        static CANMessage verify(byte[] buffer, int length) {
 
-            Timber.i("Verifying");
-            byte[] dataBuffer = Arrays.copyOfRange(buffer, 2, buffer.length);
+            byte[] dataBuffer = Arrays.copyOfRange(buffer, 2, length);
             dataBuffer = crypto(dataBuffer);
+            TraceRecorder.recordBytes("NinebotZ", TraceRecorder.PAYLOAD, dataBuffer, dataBuffer.length);
 
             int check = (dataBuffer[dataBuffer.length - 1] << 8 | ((dataBuffer[dataBuffer.length - 2]) & 0xff)) & 0xffff;
             byte[] dataBufferCheck = Arrays.copyOfRange(dataBuffer, 0, dataBuffer.length - 2);
             int checkBuffer = computeCheck(dataBufferCheck);
             if (check == checkBuffer) {
-                Timber.i("Check OK");
+                TraceRecorder.record("NinebotZ", TraceRecorder.VERIFY_OK, check, 0);
             } else {
-                Timber.i("Check FALSE, packet: %02X, calc: %02X", check, checkBuffer);
+                TraceRecorder.record("NinebotZ", TraceRecorder.VERIFY_FAIL, checkBuffer, check);
+                LinkHealth.lost(length);
             }
             return (check == checkBuffer) ? new CANMessage(dataBuffer) : null;
         }
@@ -652,11 +738,9 @@ public class NinebotZAdapter extends BaseAdapter {
         static byte[] crypto(byte[] buffer) {
 
             byte[] dataBuffer = Arrays.copyOfRange(buffer, 0, buffer.length);
-            Timber.i("Initial packet: %s", StringUtil.toHexString(dataBuffer));
             for (int j = 1; j < dataBuffer.length; j++) {
                 dataBuffer[j] ^= gamma[(j - 1) % 16];
             }
-            Timber.i("En/Decrypted packet: %s", StringUtil.toHexString(dataBuffer));
             return dataBuffer;
         }
 
@@ -1209,13 +1293,18 @@ public class NinebotZAdapter extends BaseAdapter {
             done
         }
 
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final FrameAssembler buffer = new FrameAssembler();
         int oldc = 0;
         int len = 0;
         UnpackerState state = UnpackerState.unknown;
 
+        // backing array of the assembler, the frame starts at index 0
         byte[] getBuffer() {
-            return buffer.toByteArray();
+            return buffer.getArray();
+        }
+
+        int getSize() {
+            return buffer.getSize();
         }
 
         boolean addChar(int c) {
@@ -1223,11 +1312,10 @@ public class NinebotZAdapter extends BaseAdapter {
             switch (state) {
                 case collecting:
                     buffer.write(c);
-                    if (buffer.size() == len + 9) {
+                    if (buffer.getSize() == len + 9) {
                         state = UnpackerState.done;
                         updateStep = 0;
-                        Timber.i("Len %d", len);
-                        Timber.i("Step reset");
+                        TraceRecorder.record("NinebotZ", TraceRecorder.STATE, state.ordinal(), buffer.getSize());
                         return true;
                     }
                     break;
@@ -1238,11 +1326,11 @@ public class NinebotZAdapter extends BaseAdapter {
                     break;
                 default:
                     if (c == (byte) 0xA5 && oldc == (byte) 0x5A) {
-                        Timber.i("Find start");
-                        buffer = new ByteArrayOutputStream();
+                        buffer.reset();
                         buffer.write(0x5A);
                         buffer.write(0xA5);
                         state = UnpackerState.started;
+                        TraceRecorder.record("NinebotZ", TraceRecorder.STATE, state.ordinal(), 2);
                     }
                     oldc = c;
             }
@@ -14,11 +14,10 @@ import androidx.core.app.NotificationCompat
 import androidx.core.app.NotificationManagerCompat
 import com.cooper.wheellog.*
 import com.welie.blessed.ConnectionState
-import java.util.*
 
 class NotificationUtil(private val context: Context) {
     private val builder: NotificationCompat.Builder
-    private var kostilTimer: Timer? = null
+    private var kostilTimer: TickScheduler.Task? = null
     private var customText = ""
     private var buildIsSucceed = false
     var notificationMessageId = R.string.disconnected
@@ -184,20 +183,16 @@ class NotificationUtil(private val context: Context) {
     // https://github.com/Wheellog/Wheellog.Android/pull/249
     fun updateKostilTimer() {
         if (WheelLog.AppConfig.mibandFixRs && kostilTimer == null) {
-            kostilTimer = Timer().apply {
-                scheduleAtFixedRate(object : TimerTask() {
-                    override fun run() {
-                        val wd = WheelData.getInstance()
-                        if (wd == null) {
-                            kostilTimer?.cancel()
-                            kostilTimer = null
-                            return
-                        }
-                        if (WheelLog.AppConfig.mibandMode != MiBandEnum.Alarm && wd.speedDouble > 0) {
-                            update()
-                        }
-                    }
-                }, 5000, 1000)
+            kostilTimer = TickScheduler.schedule("miband fix", 5000, 1000) {
+                val wd = WheelData.getInstance()
+                if (wd == null) {
+                    kostilTimer?.cancel()
+                    kostilTimer = null
+                    return@schedule
+                }
+                if (WheelLog.AppConfig.mibandMode != MiBandEnum.Alarm && wd.speedDouble > 0) {
+                    update()
+                }
             }
         } else {
             kostilTimer?.cancel()
@@ -0,0 +1,148 @@
+package com.cooper.wheellog.utils
+
+/**
+ * Extrapolates the PWM a short time ahead from the trend of the recent frames, so the rider can
+ * be warned before the PWM alarm. PWM, speed, current and voltage of the frames of the last
+ * [WINDOW] ms are kept in preallocated rings and a least squares line is fitted to each of them
+ * on every frame, nothing is allocated per frame.
+ *
+ * A crossing is only predicted while the PWM rises and the wheel accelerates, draws more current
+ * or its voltage sags, so noise while cruising doesn't warn.
+ */
+class PwmPredictor @JvmOverloads constructor(private val capacity: Int = CAPACITY) {
+    private val times = LongArray(capacity)
+    private val pwms = DoubleArray(capacity)
+    private val speeds = DoubleArray(capacity)
+    private val currents = DoubleArray(capacity)
+    private val voltages = DoubleArray(capacity)
+    private var head = 0
+
+    /** frames in the window */
+    var size = 0
+        private set
+
+    /** fraction of full PWM, fitted for the last frame */
+    var pwm = 0.0
+        private set
+
+    /** per second */
+    var pwmSlope = 0.0
+        private set
+
+    /** km/h per second */
+    var speedSlope = 0.0
+        private set
+
+    /** A per second */
+    var currentSlope = 0.0
+        private set
+
+    /** V per second, negative while the voltage sags */
+    var voltageSlope = 0.0
+        private set
+
+    fun reset() {
+        size = 0
+        pwm = 0.0
+        pwmSlope = 0.0
+        speedSlope = 0.0
+        currentSlope = 0.0
+        voltageSlope = 0.0
+    }
+
+    /**
+     * Adds a frame, [time] in ms, [pwm] as a fraction of full PWM. Frames that are not newer than
+     * the last one are ignored, a gap longer than the window starts over.
+     */
+    fun add(time: Long, pwm: Double, speed: Double, current: Double, voltage: Double) {
+        if (size > 0) {
+            val last = times[(head + capacity - 1) % capacity]
+            if (time <= last) {
+                return
+            }
+            if (time - last > WINDOW) {
+                reset()
+            }
+        }
+        times[head] = time
+        pwms[head] = pwm
+        speeds[head] = speed
+        currents[head] = current
+        voltages[head] = voltage
+        head = (head + 1) % capacity
+        if (size < capacity) {
+            size++
+        }
+        while (time - times[(head + capacity - size) % capacity] > WINDOW) {
+            size--
+        }
+        fit(time)
+    }
+
+    private fun fit(time: Long) {
+        var sumX = 0.0
+        var sumXX = 0.0
+        var sumPwm = 0.0
+        var sumXPwm = 0.0
+        var sumXSpeed = 0.0
+        var sumSpeed = 0.0
+        var sumXCurrent = 0.0
+        var sumCurrent = 0.0
+        var sumXVoltage = 0.0
+        var sumVoltage = 0.0
+        for (n in 0 until size) {
+            val i = (head + capacity - size + n) % capacity
+            // seconds before the last frame, keeps the sums small
+            val x = (times[i] - time) / 1000.0
+            sumX += x
+            sumXX += x * x
+            sumPwm += pwms[i]
+            sumXPwm += x * pwms[i]
+            sumSpeed += speeds[i]
+            sumXSpeed += x * speeds[i]
+            sumCurrent += currents[i]
+            sumXCurrent += x * currents[i]
+            sumVoltage += voltages[i]
+            sumXVoltage += x * voltages[i]
+        }
+        val denominator = size * sumXX - sumX * sumX
+        if (size < MIN_FRAMES || denominator <= 0.0) {
+            pwm = pwms[(head + capacity - 1) % capacity]
+            pwmSlope = 0.0
+            speedSlope = 0.0
+            currentSlope = 0.0
+            voltageSlope = 0.0
+            return
+        }
+        pwmSlope = (size * sumXPwm - sumX * sumPwm) / denominator
+        speedSlope = (size * sumXSpeed - sumX * sumSpeed) / denominator
+        currentSlope = (size * sumXCurrent - sumX * sumCurrent) / denominator
+        voltageSlope = (size * sumXVoltage - sumX * sumVoltage) / denominator
+        pwm = (sumPwm - pwmSlope * sumX) / size
+    }
+
+    /**
+     * PWM expected in [horizon] ms.
+     */
+    fun predict(horizon: Long): Double {
+        return pwm + pwmSlope * horizon / 1000.0
+    }
+
+    /**
+     * True if the PWM is expected to reach [threshold] within [horizon] ms.
+     */
+    fun willCross(threshold: Double, horizon: Long): Boolean {
+        return size >= MIN_FRAMES
+                && pwmSlope > 0
+                && (speedSlope > 0 || currentSlope > 0 || voltageSlope < 0)
+                && predict(horizon) >= threshold
+    }
+
+    companion object {
+        /** ms of frames the trend is fitted to */
+        const val WINDOW = 1000L
+        const val CAPACITY = 32
+        /** frames needed for a trend */
+        const val MIN_FRAMES = 3
+    }
+}
@@ -0,0 +1,29 @@
+package com.cooper.wheellog.utils
+
+/**
+ * Binary capture of raw BLE notifications (RAW_*.wlr), written when raw data logging is enabled.
+ *
+ * File layout: [MAGIC], version byte, wall clock time and monotonic time of the capture start
+ * as varints. Records follow, each starting with a tag:
+ * [CHARACTERISTIC] declares an id for a characteristic UUID, [FRAME] holds the monotonic time
+ * as a zigzag varint delta from the previous frame, the characteristic id, the length and the bytes.
+ * Captures are read by RawCaptureReader of the test sources, which also converts them to RAW CSV.
+ */
+object RawCapture {
+    const val FILE_EXTENSION = ".wlr"
+    const val MIME_TYPE = "application/octet-stream"
+    const val VERSION = 1
+
+    @JvmField
+    val MAGIC = byteArrayOf('W'.code.toByte(), 'L'.code.toByte(), 'R'.code.toByte(), 'C'.code.toByte())
+    const val FRAME = 0x01
+    const val CHARACTERISTIC = 0x02
+
+    /** id of frames without a characteristic */
+    const val NO_CHARACTERISTIC = 0
+
+    @JvmStatic
+    fun isRawCapture(fileName: String): Boolean {
+        return fileName.endsWith(FILE_EXTENSION)
+    }
+}
@@ -0,0 +1,103 @@
+package com.cooper.wheellog.utils
+
+import java.util.*
+
+/**
+ * Encodes [RawCapture] records into a reusable buffer, the caller writes [buffer] after each call.
+ */
+class RawCaptureWriter {
+    var buffer = ByteArray(256)
+        private set
+    var length = 0
+        private set
+
+    private val characteristics = ArrayList<UUID>()
+    private var previousTime = 0L
+
+    /**
+     * Starts a new capture. [wallTime] is System.currentTimeMillis() and [monotonicTime]
+     * SystemClock.elapsedRealtime() taken at the same moment, frame times use the monotonic clock.
+     */
+    fun header(wallTime: Long, monotonicTime: Long) {
+        length = 0
+        characteristics.clear()
+        previousTime = monotonicTime
+        bytes(RawCapture.MAGIC, RawCapture.MAGIC.size)
+        byte(RawCapture.VERSION)
+        varint(wallTime)
+        varint(monotonicTime)
+    }
+
+    /**
+     * Encodes one notification received at [monotonicTime].
+     */
+    fun frame(monotonicTime: Long, characteristic: UUID?, data: ByteArray, dataLength: Int) {
+        length = 0
+        val id = characteristicId(characteristic)
+        byte(RawCapture.FRAME)
+        val delta = monotonicTime - previousTime
+        previousTime = monotonicTime
+        varint((delta shl 1) xor (delta shr 63))
+        byte(id)
+        varint(dataLength.toLong())
+        bytes(data, dataLength)
+    }
+
+    private fun characteristicId(characteristic: UUID?): Int {
+        if (characteristic == null) {
+            return RawCapture.NO_CHARACTERISTIC
+        }
+        val index = characteristics.indexOf(characteristic)
+        if (index != -1) {
+            return index + 1
+        }
+        if (characteristics.size >= MAX_CHARACTERISTICS) {
+            return RawCapture.NO_CHARACTERISTIC
+        }
+        characteristics.add(characteristic)
+        val id = characteristics.size
+        byte(RawCapture.CHARACTERISTIC)
+        byte(id)
+        long(characteristic.mostSignificantBits)
+        long(characteristic.leastSignificantBits)
+        return id
+    }
+
+    private fun varint(value: Long) {
+        ensure(10)
+        var v = value
+        while (v and 0x7FL.inv() != 0L) {
+            buffer[length++] = ((v and 0x7F) or 0x80).toByte()
+            v = v ushr 7
+        }
+        buffer[length++] = v.toByte()
+    }
+
+    private fun long(value: Long) {
+        ensure(8)
+        for (shift in 56 downTo 0 step 8) {
+            buffer[length++] = (value shr shift).toByte()
+        }
+    }
+
+    private fun byte(value: Int) {
+        ensure(1)
+        buffer[length++] = value.toByte()
+    }
+
+    private fun bytes(value: ByteArray, count: Int) {
+        ensure(count)
+        System.arraycopy(value, 0, buffer, length, count)
+        length += count
+    }
+
+    private fun ensure(extra: Int) {
+        if (length + extra > buffer.size) {
+            buffer = buffer.copyOf(maxOf(buffer.size * 2, length + extra))
+        }
+    }
+
+    companion object {
+        private const val MAX_CHARACTERISTICS = 255
+    }
+}
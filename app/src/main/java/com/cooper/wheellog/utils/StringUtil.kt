@@ -28,6 +28,11 @@ class StringUtil {
             return "[" + toHexStringRaw(buffer) + "]"
         }
 
+        @JvmStatic
+        fun toHexString(buffer: ByteArray, length: Int): String {
+            return "[" + buffer.joinToString("", limit = length, truncated = "") { "%02x".format(it) } + "]"
+        }
+
         @JvmStatic
         fun toHexStringRaw(buffer: ByteArray): String {
             return buffer.joinToString("") { "%02x".format(it) }
@@ -1,5 +1,7 @@
 package com.cooper.wheellog.utils
 
+import com.cooper.wheellog.telemetry.PipelineClock
+
 class TempBoolean {
     private var timeSetValue: Long = 0
     private var setValue: Boolean = false
@@ -9,14 +11,14 @@ class TempBoolean {
 
     var value: Boolean
         get() {
-            return if (System.currentTimeMillis() - timeSetValue < timeToResetToDefault) {
+            return if (PipelineClock.now() - timeSetValue < timeToResetToDefault) {
                 setValue
             } else {
                 defaultValue
             }
         }
         set(value) {
-            timeSetValue = System.currentTimeMillis()
+            timeSetValue = PipelineClock.now()
             setValue = value
         }
 }
\ No newline at end of file
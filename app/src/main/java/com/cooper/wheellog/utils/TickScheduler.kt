@@ -0,0 +1,203 @@
+package com.cooper.wheellog.utils
+
+import timber.log.Timber
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * Runs the periodic work of the app (keep-alives, alarm re-checks, riding time, reconnect and beep)
+ * on one thread instead of a java.util.Timer thread per subsystem.
+ *
+ * Periods are rounded up to [QUANTUM] and runs are aligned to multiples of the period on a shared clock,
+ * so tasks with related periods run on the same wake-up. A task that fell behind skips the missed runs
+ * instead of running them back to back. Without tasks the thread sleeps until one is scheduled.
+ */
+object TickScheduler {
+    /** ms, periods are multiples of it */
+    const val QUANTUM = 25L
+
+    /** ms, runs of longer periods are aligned to whole seconds */
+    private const val MAX_ALIGNMENT = 1000L
+
+    /** Group of the tasks that live as long as the wheel connection, cancelled on disconnect */
+    const val CONNECTION = "connection"
+
+    class Task internal constructor(
+        val name: String,
+        val group: String?,
+        period: Long,
+        private val action: Runnable
+    ) {
+        internal var due = 0L
+        @Volatile
+        internal var realign = false
+
+        /** ms, a new period applies from the next run */
+        @Volatile
+        var period = roundUp(period, QUANTUM)
+            set(value) {
+                require(value > 0) { "period must be positive" }
+                val rounded = roundUp(value, QUANTUM)
+                if (rounded != field) {
+                    field = rounded
+                    realign = true
+                }
+            }
+
+        @Volatile
+        var isCancelled = false
+            internal set
+
+        @Volatile
+        var runs = 0L
+            private set
+
+        fun cancel() {
+            TickScheduler.cancel(this)
+        }
+
+        internal fun run(): Boolean {
+            if (isCancelled) {
+                return false
+            }
+            try {
+                action.run()
+            } catch (e: Exception) {
+                // java.util.Timer died with the task, keep the others running
+                Timber.e(e, "Task %s failed", name)
+            }
+            runs++
+            return true
+        }
+    }
+
+    class Stats(val wakeUps: Long, val runs: Long, val tasks: Int) {
+        override fun toString(): String {
+            return "$tasks tasks, $runs runs in $wakeUps wake-ups"
+        }
+    }
+
+    private val lock = ReentrantLock()
+    private val changed = lock.newCondition()
+    private val tasks = ArrayList<Task>()
+    private val start = System.nanoTime()
+    private var thread: Thread? = null
+    private var wakeUps = 0L
+    @Volatile
+    private var runs = 0L
+
+    /**
+     * Runs [action] every [period] ms, the first time after at least [delay] ms.
+     * The tasks of a [group] can be cancelled together.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun schedule(name: String, delay: Long, period: Long, group: String? = null, action: Runnable): Task {
+        require(period > 0) { "period must be positive" }
+        val task = Task(name, group, period, action)
+        lock.withLock {
+            task.due = roundUp(now() + max(0L, delay), min(task.period, MAX_ALIGNMENT))
+            tasks.add(task)
+            if (thread == null) {
+                thread = Thread(::loop, "WheelLog-ticks").apply {
+                    isDaemon = true
+                    start()
+                }
+            }
+            changed.signal()
+        }
+        return task
+    }
+
+    @JvmStatic
+    fun cancel(task: Task) {
+        lock.withLock {
+            task.isCancelled = true
+            if (tasks.remove(task)) {
+                changed.signal()
+            }
+        }
+    }
+
+    /**
+     * Cancels all tasks of [group].
+     */
+    @JvmStatic
+    fun cancel(group: String) {
+        lock.withLock {
+            val iterator = tasks.iterator()
+            while (iterator.hasNext()) {
+                val task = iterator.next()
+                if (task.group == group) {
+                    task.isCancelled = true
+                    iterator.remove()
+                }
+            }
+            changed.signal()
+        }
+    }
+
+    /**
+     * Wake-ups of the scheduler thread and task runs since the start of the app.
+     */
+    @JvmStatic
+    val stats: Stats
+        get() = lock.withLock { Stats(wakeUps, runs, tasks.size) }
+
+    private fun now(): Long {
+        return (System.nanoTime() - start) / 1_000_000
+    }
+
+    private fun roundUp(value: Long, step: Long): Long {
+        return (value + step - 1) / step * step
+    }
+
+    private fun loop() {
+        val due = ArrayList<Task>()
+        while (true) {
+            lock.withLock {
+                while (true) {
+                    var next = Long.MAX_VALUE
+                    for (task in tasks) {
+                        next = min(next, task.due)
+                    }
+                    if (next == Long.MAX_VALUE) {
+                        changed.awaitUninterruptibly()
+                        continue
+                    }
+                    val wait = next - now()
+                    if (wait <= 0) {
+                        break
+                    }
+                    try {
+                        changed.await(wait, TimeUnit.MILLISECONDS)
+                    } catch (ignored: InterruptedException) {
+                    }
+                }
+                wakeUps++
+                val now = now()
+                for (task in tasks) {
+                    if (task.due <= now) {
+                        due.add(task)
+                        if (task.realign) {
+                            task.realign = false
+                            task.due = roundUp(now + 1, min(task.period, MAX_ALIGNMENT))
+                        } else {
+                            // skip the runs missed while the thread was late, keeping the alignment
+                            task.due += ((now - task.due) / task.period + 1) * task.period
+                        }
+                    }
+                }
+            }
+            for (task in due) {
+                if (task.run()) {
+                    runs++
+                }
+            }
+            due.clear()
+        }
+    }
+}
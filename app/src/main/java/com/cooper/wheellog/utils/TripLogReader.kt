@@ -0,0 +1,101 @@
+package com.cooper.wheellog.utils
+
+import java.io.*
+import java.text.SimpleDateFormat
+import java.util.*
+
+/**
+ * Row by row reader of a trip log, either CSV or [BinaryTripLog].
+ * Getters return values of the current row, missing or unparsable values are returned as 0 or "".
+ */
+interface TripLogReader : Closeable {
+    fun hasColumn(column: LogHeaderEnum): Boolean
+
+    /**
+     * Moves to the next row, returns false at the end of the log.
+     */
+    fun next(): Boolean
+
+    /** Time of the current row in ms */
+    val timestamp: Long
+
+    fun getDouble(column: LogHeaderEnum): Double
+    fun getInt(column: LogHeaderEnum): Int
+    fun getLong(column: LogHeaderEnum): Long
+    fun getString(column: LogHeaderEnum): String
+
+    companion object {
+        /**
+         * Detects the log format by its first bytes.
+         */
+        @JvmStatic
+        fun open(input: InputStream): TripLogReader {
+            val stream = BufferedInputStream(input)
+            stream.mark(BinaryTripLog.MAGIC.size)
+            val start = ByteArray(BinaryTripLog.MAGIC.size)
+            val read = stream.read(start)
+            stream.reset()
+            return if (read == start.size && start.contentEquals(BinaryTripLog.MAGIC)) {
+                BinaryTripLogReader(stream)
+            } else {
+                CsvTripLogReader(stream)
+            }
+        }
+    }
+}
+
+class CsvTripLogReader(input: InputStream) : TripLogReader {
+    private val reader = BufferedReader(InputStreamReader(input))
+    private val header = HashMap<LogHeaderEnum, Int>()
+    private val sdf = SimpleDateFormat("yyyy-MM-dd,HH:mm:ss.SSS", Locale.US)
+    private var row: List<String> = emptyList()
+    private var rowTimestamp: Long? = null
+
+    init {
+        val headerLine = reader.readLine()?.split(",") ?: emptyList()
+        for (i in headerLine.indices) {
+            try {
+                header[LogHeaderEnum.valueOf(headerLine[i].uppercase(Locale.US))] = i
+            } catch (ignored: IllegalArgumentException) {
+            }
+        }
+    }
+
+    override fun hasColumn(column: LogHeaderEnum): Boolean {
+        return header.containsKey(column)
+    }
+
+    override fun next(): Boolean {
+        val line = reader.readLine() ?: return false
+        row = line.split(",")
+        rowTimestamp = null
+        return true
+    }
+
+    override val timestamp: Long
+        get() {
+            return rowTimestamp ?: (sdf.parse(getString(LogHeaderEnum.DATE) + "," + getString(LogHeaderEnum.TIME))?.time ?: 0L)
+                .also { rowTimestamp = it }
+        }
+
+    override fun getDouble(column: LogHeaderEnum): Double {
+        return getString(column).toDoubleOrNull() ?: 0.0
+    }
+
+    override fun getInt(column: LogHeaderEnum): Int {
+        return getString(column).toIntOrNull() ?: 0
+    }
+
+    override fun getLong(column: LogHeaderEnum): Long {
+        return getString(column).toLongOrNull() ?: 0L
+    }
+
+    override fun getString(column: LogHeaderEnum): String {
+        val index = header[column] ?: return ""
+        return row.getOrElse(index) { "" }
+    }
+
+    override fun close() {
+        reader.close()
+    }
+}
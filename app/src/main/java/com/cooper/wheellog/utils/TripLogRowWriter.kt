@@ -0,0 +1,96 @@
+package com.cooper.wheellog.utils
+
+import com.cooper.wheellog.telemetry.TelemetrySample
+
+/**
+ * Encodes trip log rows column by column into a reusable buffer.
+ * Columns must be written in the order of [BinaryTripLog.columns].
+ */
+interface TripLogRowWriter {
+    val buffer: ByteArray
+    val length: Int
+
+    /** Starts the file, writes the header for [columns] */
+    fun header(columns: List<BinaryTripLog.Column>)
+    fun beginRow()
+    fun time(timestamp: Long)
+    fun fixed(value: Double, decimals: Int)
+    fun integer(value: Long)
+    fun text(value: String)
+    fun endRow()
+
+    /**
+     * Writes the wheel columns of [sample], the ones after the location columns.
+     */
+    fun telemetry(sample: TelemetrySample, alert: String) {
+        fixed(sample.speedDouble, 2)
+        fixed(sample.voltageDouble, 2)
+        fixed(sample.phaseCurrentDouble, 2)
+        fixed(sample.currentDouble, 2)
+        fixed(sample.powerDouble, 2)
+        fixed(sample.torque, 2)
+        fixed(sample.calculatedPwm, 2)
+        integer(sample.batteryLevel.toLong())
+        integer(sample.distance.toInt().toLong())
+        integer(sample.totalDistance)
+        integer(sample.temperature.toLong())
+        integer(sample.temperature2.toLong())
+        fixed(sample.angle, 2)
+        fixed(sample.roll, 2)
+        text(sample.modeStr)
+        text(alert)
+    }
+}
+
+/**
+ * Writes CSV rows separated with "\r\n".
+ */
+class CsvTripLogRowWriter : TripLogRowWriter {
+    private val encoder = CsvRowEncoder()
+    private var first = true
+
+    override val buffer: ByteArray
+        get() = encoder.buffer
+    override val length: Int
+        get() = encoder.length
+
+    override fun header(columns: List<BinaryTripLog.Column>) {
+        encoder.reset().text(BinaryTripLog.csvHeader(columns)).text("\r\n")
+    }
+
+    override fun beginRow() {
+        encoder.reset()
+        first = true
+    }
+
+    private fun separator() {
+        if (!first) {
+            encoder.comma()
+        }
+        first = false
+    }
+
+    override fun time(timestamp: Long) {
+        separator()
+        encoder.dateTime(timestamp)
+    }
+
+    override fun fixed(value: Double, decimals: Int) {
+        separator()
+        encoder.fixed(value, decimals)
+    }
+
+    override fun integer(value: Long) {
+        separator()
+        encoder.integer(value)
+    }
+
+    override fun text(value: String) {
+        separator()
+        encoder.text(value)
+    }
+
+    override fun endRow() {
+        encoder.text("\r\n")
+    }
+}
@@ -2,8 +2,11 @@ package com.cooper.wheellog.utils;
 
 import com.cooper.wheellog.WheelData;
 import com.cooper.wheellog.WheelLog;
+import com.cooper.wheellog.WriteQueue;
+import com.cooper.wheellog.telemetry.DecodeSettings;
+import com.cooper.wheellog.telemetry.LinkHealth;
+import com.cooper.wheellog.telemetry.PipelineClock;
 
-import java.io.ByteArrayOutputStream;
 import java.util.Locale;
 import timber.log.Timber;
 
@@ -16,35 +19,51 @@ public class VeteranAdapter extends BaseAdapter {
 
     @Override
     public boolean decode(byte[] data) {
-        Timber.i("Decode Veteran");
         WheelData wd = WheelData.getInstance();
         wd.resetRideTime();
-        long time_new = System.currentTimeMillis();
-        if ((time_new-time_old) > WAITING_TIME) // need to reset state in case of packet loose
+        long time_new = PipelineClock.now();
+        if ((time_new-time_old) > WAITING_TIME) { // need to reset state in case of packet loose
+            if (unpacker.state != veteranUnpacker.UnpackerState.unknown) {
+                // the rest of the frame was lost
+                LinkHealth.lost(unpacker.buffer.getSize());
+            }
             unpacker.reset();
+        }
         time_old = time_new;
         boolean newDataFound = false;
+        DecodeSettings settings = DecodeSettings.getCurrent();
+        boolean useBetterPercents = settings.getUseBetterPercents();
+        int veteranNegative = settings.getGotwayNegative();
         for (byte c : data) {
             if (unpacker.addChar(c)) {
+                // the array is reused, bytes past the frame belong to older frames
                 byte[] buff = unpacker.getBuffer();
-                Boolean useBetterPercents = WheelLog.AppConfig.getUseBetterPercents();
-                int veteranNegative = Integer.parseInt(WheelLog.AppConfig.getGotwayNegative());
+                int size = unpacker.getSize();
+                if (size < 20) {
+                    LinkHealth.lost(size);
+                    continue;
+                }
                 int voltage = MathsUtil.shortFromBytesBE(buff,4);
                 int speed = MathsUtil.signedShortFromBytesBE(buff,6) * 10;
                 int distance = MathsUtil.intFromBytesRevBE(buff,8);
                 int totalDistance = MathsUtil.intFromBytesRevBE(buff, 12);
                 int phaseCurrent = MathsUtil.signedShortFromBytesBE(buff,16) * 10;
                 int temperature = MathsUtil.signedShortFromBytesBE(buff, 18);
-                int autoOffSec = MathsUtil.shortFromBytesBE(buff,20);
-                int chargeMode = MathsUtil.shortFromBytesBE(buff,22);
-                int speedAlert = MathsUtil.shortFromBytesBE(buff, 24) * 10;
-                int speedTiltback = MathsUtil.shortFromBytesBE(buff,26) * 10;
-                int ver = MathsUtil.shortFromBytesBE(buff,28);
-                mVer = ver/1000;
-                String version = String.format(Locale.US, "%03d.%01d.%02d", ver/1000, (ver%1000)/100, (ver%100));
-                int pedalsMode = MathsUtil.shortFromBytesBE(buff, 30);
-                int reserved1 = MathsUtil.shortFromBytesBE(buff,32);
-                int hwPwm = MathsUtil.shortFromBytesBE(buff, 34);
+                // not used: 20 auto off seconds, 24 speed alert, 26 speed tiltback, 30 pedals mode
+                int chargeMode = -1;
+                if (size >= 24) {
+                    chargeMode = MathsUtil.shortFromBytesBE(buff,22);
+                }
+                String version = null;
+                if (size >= 30) {
+                    int ver = MathsUtil.shortFromBytesBE(buff,28);
+                    mVer = ver/1000;
+                    version = String.format(Locale.US, "%03d.%01d.%02d", ver/1000, (ver%1000)/100, (ver%100));
+                }
+                int hwPwm = -1;
+                if (size >= 36) {
+                    hwPwm = MathsUtil.shortFromBytesBE(buff, 34);
+                }
 
                 int battery;
                 if (useBetterPercents) {
@@ -75,7 +94,9 @@ public class VeteranAdapter extends BaseAdapter {
                     phaseCurrent = phaseCurrent * veteranNegative;
                 }
 
-                wd.setVersion(version);
+                if (version != null) {
+                    wd.setVersion(version);
+                }
                 wd.setSpeed(speed);
                 wd.setTopSpeed(speed);
                 wd.setWheelDistance(distance);
@@ -86,8 +107,12 @@ public class VeteranAdapter extends BaseAdapter {
                 wd.setVoltage(voltage);
                 wd.setVoltageSag(voltage);
                 wd.setBatteryLevel(battery);
-                wd.setChargingStatus(chargeMode);
-                wd.setOutput(hwPwm);
+                if (chargeMode >= 0) {
+                    wd.setChargingStatus(chargeMode);
+                }
+                if (hwPwm >= 0) {
+                    wd.setOutput(hwPwm);
+                }
                 wd.updateRideTime();
                 newDataFound = true;
             }
@@ -150,7 +175,7 @@ public class VeteranAdapter extends BaseAdapter {
 
     @Override
     public void wheelBeep() {
-        WheelData.getInstance().bluetoothCmd("b".getBytes());
+        WheelData.getInstance().bluetoothCmd("b".getBytes(), WriteQueue.Priority.SAFETY);
     }
 
     static class veteranUnpacker {
@@ -163,15 +188,20 @@ public class VeteranAdapter extends BaseAdapter {
         }
 
 
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final FrameAssembler buffer = new FrameAssembler();
         int old1 = 0;
         int old2 = 0;
         int len = 0;
 
         UnpackerState state = UnpackerState.unknown;
 
+        // backing array of the assembler, the frame starts at index 0
         byte[] getBuffer() {
-            return buffer.toByteArray();
+            return buffer.getArray();
+        }
+
+        int getSize() {
+            return buffer.getSize();
         }
 
         boolean addChar(int c) {
@@ -180,18 +210,17 @@ public class VeteranAdapter extends BaseAdapter {
 
                 case collecting:
 
-                    int bsize = buffer.size();
+                    int bsize = buffer.getSize();
                     if (((bsize == 22 || bsize == 30) && (c != 0x00)) || ((bsize == 23) && ((c & 0xFE) != 0x00)) || ((bsize == 31) && ((c & 0xFC) != 0x00))) {
                         state = UnpackerState.done;
                         Timber.i("Data verification failed");
+                        LinkHealth.lost(bsize);
                         reset();
                         return false;
                     }
                     buffer.write(c);
                     if (bsize == len+3) {
                         state = UnpackerState.done;
-                        Timber.i("Len %d", len);
-                        Timber.i("Step reset");
                         reset();
                         return true;
                     }
@@ -208,7 +237,7 @@ public class VeteranAdapter extends BaseAdapter {
 
                 default:
                     if (c == (byte) 0x5C && old1 == (byte) 0x5A && old2 == (byte) 0xDC) {
-                        buffer = new ByteArrayOutputStream();
+                        buffer.reset();
                         buffer.write(0xDC);
                         buffer.write(0x5A);
                         buffer.write(0x5C);
@@ -0,0 +1,109 @@
+package com.cooper.wheellog.utils
+
+import android.bluetooth.BluetoothGattService
+import android.content.Context
+import com.cooper.wheellog.R
+import org.json.JSONArray
+import org.json.JSONException
+import timber.log.Timber
+import java.util.UUID
+
+/**
+ * Adapters of the detection tables by the GATT services of the wheel. A wheel matches an entry
+ * if it has exactly the services of the entry, each with exactly its characteristics,
+ * so an entry is found by a signature of the sorted services and characteristics.
+ * The first entry of a signature wins, the tables are added in the order they were searched.
+ */
+class WheelDetectionIndex {
+    private val adapters = HashMap<String, String>()
+
+    val size: Int
+        get() = adapters.size
+
+    /**
+     * Adds the entries of a detection table: [{"adapter": name, service: [characteristic, ...], ...}, ...]
+     */
+    fun add(json: String) {
+        try {
+            val entries = JSONArray(json)
+            for (i in 0 until entries.length()) {
+                val entry = entries.getJSONObject(i)
+                val services = ArrayList<Pair<UUID, List<UUID>>>()
+                for (key in entry.keys()) {
+                    if (key == ADAPTER) {
+                        continue
+                    }
+                    val characteristics = entry.getJSONArray(key)
+                    services.add(UUID.fromString(key) to List(characteristics.length()) {
+                        UUID.fromString(characteristics.getString(it))
+                    })
+                }
+                val signature = signatureOf(services)
+                if (!adapters.containsKey(signature)) {
+                    adapters[signature] = entry.getString(ADAPTER)
+                }
+            }
+        } catch (e: JSONException) {
+            Timber.e(e, "Invalid detection table")
+        } catch (e: IllegalArgumentException) {
+            Timber.e(e, "Invalid UUID in detection table")
+        }
+    }
+
+    /**
+     * Adapter name of the table entry with [signature], null if there is none.
+     */
+    fun find(signature: String): String? {
+        return adapters[signature]
+    }
+
+    companion object {
+        private const val ADAPTER = "adapter"
+        private var instance: WheelDetectionIndex? = null
+
+        /**
+         * Index of bluetooth_services and bluetooth_proxy_services, read once.
+         */
+        @JvmStatic
+        @Synchronized
+        fun getInstance(context: Context): WheelDetectionIndex {
+            return instance ?: WheelDetectionIndex().apply {
+                add(StringUtil.getRawTextResource(context, R.raw.bluetooth_services))
+                add(StringUtil.getRawTextResource(context, R.raw.bluetooth_proxy_services))
+                Timber.i("Detection index with %d entries", size)
+                instance = this
+            }
+        }
+
+        @JvmStatic
+        fun signature(services: List<BluetoothGattService>): String {
+            return signatureOf(services.map { service -> service.uuid to service.characteristics.map { it.uuid } })
+        }
+
+        fun signatureOf(services: List<Pair<UUID, List<UUID>>>): String {
+            return services.map { (service, characteristics) ->
+                characteristics.map { it.toString() }.sorted().joinToString(",", "$service[", "]")
+            }.sorted().joinToString(";")
+        }
+
+        /**
+         * Remembers the adapter of a wheel along with a hash of its [signature], see [cachedAdapter].
+         */
+        @JvmStatic
+        fun cacheEntry(adapter: String, signature: String): String {
+            return "$adapter:${signature.hashCode()}"
+        }
+
+        /**
+         * Adapter of a [cacheEntry] if the wheel still has the services it was detected with.
+         */
+        @JvmStatic
+        fun cachedAdapter(entry: String, signature: String): String? {
+            val separator = entry.lastIndexOf(':')
+            if (separator <= 0 || entry.substring(separator + 1) != signature.hashCode().toString()) {
+                return null
+            }
+            return entry.substring(0, separator)
+        }
+    }
+}
@@ -16,6 +16,7 @@ import com.cooper.wheellog.*
 import com.cooper.wheellog.DialogHelper.setBlackIcon
 import com.cooper.wheellog.data.TripDatabase
 import com.cooper.wheellog.map.MapActivity
+import com.cooper.wheellog.utils.BinaryTripLog
 import com.cooper.wheellog.utils.ThemeIconEnum
 import com.google.common.io.ByteStreams
 import kotlinx.coroutines.*
@@ -103,9 +104,18 @@ class TripAdapter(var context: Context, private var tripModels: ArrayList<TripMo
                 Timber.i("Failed to create inputStream for %s", tripModel.title)
                 uploadInProgress(false)
             } else {
-                val data = ByteStreams.toByteArray(inputStream)
+                val data: ByteArray
+                var title = tripModel.title
+                if (BinaryTripLog.isBinary(title)) {
+                    val output = ByteArrayOutputStream()
+                    BinaryTripLog.exportCsv(inputStream, output)
+                    data = output.toByteArray()
+                    title = title.replace(BinaryTripLog.FILE_EXTENSION, ".csv")
+                } else {
+                    data = ByteStreams.toByteArray(inputStream)
+                }
                 inputStream.close()
-                ElectroClub.instance.uploadTrack(data, tripModel.title, false) { success ->
+                ElectroClub.instance.uploadTrack(data, title, false) { success ->
                     MainScope().launch {
                         uploadInProgress(false)
                     }
@@ -119,7 +129,7 @@ class TripAdapter(var context: Context, private var tripModels: ArrayList<TripMo
             val sendIntent: Intent = Intent().apply {
                 action = Intent.ACTION_SEND
                 putExtra(Intent.EXTRA_STREAM, tripModel.uri)
-                type = "text/csv"
+                type = if (BinaryTripLog.isBinary(tripModel.title)) BinaryTripLog.MIME_TYPE else "text/csv"
             }
 
             val shareIntent = Intent.createChooser(sendIntent, null)
@@ -12,6 +12,7 @@ import android.view.View
 import androidx.core.math.MathUtils
 import com.cooper.wheellog.*
 import com.cooper.wheellog.DialogHelper.setBlackIcon
+import com.cooper.wheellog.telemetry.LatencyStats
 import com.cooper.wheellog.utils.MathsUtil.dpToPx
 import com.cooper.wheellog.utils.MathsUtil.kmToMiles
 import com.cooper.wheellog.utils.ReflectUtil
@@ -63,6 +64,8 @@ class WheelView(context: Context, attrs: AttributeSet?) : View(context, attrs) {
     private var mPwm = 0.0
     private var mMaxPwm = 0.0
     private var mAverageSpeed = 0.0
+    /** arrival of the shown frame, counted by LatencyStats once it is drawn */
+    var frameReceived = 0L
     private var useMph: Boolean
     private var mWheelModel = ""
     private val versionString = String.format("ver %s %s", BuildConfig.VERSION_NAME, BuildConfig.BUILD_DATE)
@@ -873,6 +876,10 @@ class WheelView(context: Context, attrs: AttributeSet?) : View(context, attrs) {
             R.style.OriginalTheme -> drawOriginal(canvas)
             R.style.AJDMTheme -> drawAJDM(canvas)
         }
+        if (frameReceived != 0L) {
+            LatencyStats.record(LatencyStats.DRAW, frameReceived, LatencyStats.now())
+            frameReceived = 0
+        }
     }
 
     private fun updateCurrentValue(target: Int, current: Int): Int {
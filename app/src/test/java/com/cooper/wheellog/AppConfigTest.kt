@@ -0,0 +1,79 @@
+package com.cooper.wheellog
+
+import android.content.Context
+import android.content.SharedPreferences
+import androidx.preference.PreferenceManager
+import io.mockk.*
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+class AppConfigTest {
+
+    private lateinit var prefs: SharedPreferences
+    private lateinit var editor: SharedPreferences.Editor
+    private lateinit var config: AppConfig
+
+    @Before
+    fun setUp() {
+        prefs = mockk(relaxed = true)
+        editor = mockk(relaxed = true)
+        every { prefs.edit() } returns editor
+        every { prefs.getInt("versionSettings", any()) } returns 1
+        mockkStatic(PreferenceManager::class)
+        every { PreferenceManager.getDefaultSharedPreferences(any()) } returns prefs
+        config = AppConfig(mockkClass(Context::class, relaxed = true))
+    }
+
+    @After
+    fun tearDown() {
+        unmockkAll()
+    }
+
+    @Test
+    fun `unchanged value is not written`() {
+        // Arrange.
+        every { prefs.contains("key") } returns true
+        every { prefs.getString("key", null) } returns "2"
+
+        // Act.
+        config.setValue("key", "2")
+
+        // Assert.
+        verify(exactly = 0) { prefs.edit() }
+    }
+
+    @Test
+    fun `changed value is written`() {
+        // Arrange.
+        every { prefs.contains("key") } returns true
+        every { prefs.getBoolean("key", any()) } returns false
+
+        // Act.
+        config.setValue("key", true)
+
+        // Assert.
+        verify(exactly = 1) { editor.putBoolean("key", true) }
+        verify(exactly = 1) { editor.apply() }
+    }
+
+    @Test
+    fun `batch is applied once`() {
+        // Arrange.
+        every { prefs.contains(any()) } returns false
+
+        // Act.
+        config.beginBatch()
+        config.setValue("a", 1)
+        config.setValue("b", "x")
+        config.setValue("a", 2)
+        verify(exactly = 0) { editor.apply() }
+        config.endBatch()
+
+        // Assert.
+        verify(exactly = 1) { editor.putInt("a", 2) }
+        verify(exactly = 0) { editor.putInt("a", 1) }
+        verify(exactly = 1) { editor.putString("b", "x") }
+        verify(exactly = 1) { editor.apply() }
+    }
+}
@@ -0,0 +1,150 @@
+package com.cooper.wheellog
+
+import android.content.Context
+import com.cooper.wheellog.telemetry.PipelineClock
+import com.cooper.wheellog.telemetry.TelemetrySample
+import com.cooper.wheellog.utils.*
+import java.io.OutputStream
+
+/**
+ * Replays recorded notifications through the live decode path: [FrameRouter], WheelData.decodeResponse
+ * and the telemetry bus, optionally alarms and a trip log.
+ *
+ * While replaying, [PipelineClock] follows the recording, so ride time, riding time and alarm timing
+ * are the same on every run at any [speed]. The riding time timer of WheelData is stopped and
+ * riding time is counted on the recorded time instead. The clock, the timers and the connection
+ * state are restored when the replay ends, also when it fails.
+ */
+class ReplayEngine(private val context: Context) {
+
+    fun interface Sleeper {
+        fun sleep(ms: Long)
+    }
+
+    class Result(
+        val frames: Int,
+        val decodedFrames: Int,
+        val samples: Int,
+        /** ms between the first and the last notification */
+        val recordedTime: Long,
+        val elapsedNanos: Long
+    ) {
+        val framesPerSecond: Double
+            get() = if (elapsedNanos > 0) frames * 1e9 / elapsedNanos else 0.0
+    }
+
+    /** 1.0 replays in real time, 4.0 four times faster, 0 as fast as possible */
+    var speed = 1.0
+
+    /** Checks alarms on every frame like MainActivity does when alarms are enabled */
+    var alarms = false
+
+    /** Trip log rows without location are written here */
+    var tripLog: OutputStream? = null
+    var tripLogWriter: TripLogRowWriter = CsvTripLogRowWriter()
+
+    var sleeper = Sleeper { Thread.sleep(it) }
+
+    @Volatile
+    private var now = 0L
+
+    fun replay(source: ReplaySource): Result {
+        val wd = WheelData.getInstance()
+        val previousClock = PipelineClock.source
+        val wasConnected = wd.isConnected
+        val alarmTimer = Alarms.useTimer
+        var ridingTimer = false
+
+        var frames = 0
+        var decodedFrames = 0
+        var samples = 0
+        var firstTimestamp = 0L
+        var lastTimestamp = 0L
+        var nextRidingTick = 0L
+        var nextAlarmCheck = 0L
+        var lastSample: TelemetrySample = wd.sample
+        val startNanos = System.nanoTime()
+        try {
+            PipelineClock.source = PipelineClock.Source { now }
+            ridingTimer = wd.stopRidingTimerControl()
+            wd.setConnected(true)
+            if (alarms) {
+                Alarms.useTimer = false
+            }
+            tripLog?.let {
+                tripLogWriter.header(BinaryTripLog.columns(false))
+                it.write(tripLogWriter.buffer, 0, tripLogWriter.length)
+            }
+            while (source.next()) {
+                val timestamp = source.timestamp
+                if (frames == 0) {
+                    firstTimestamp = timestamp
+                    nextRidingTick = timestamp + RIDING_TICK
+                    nextAlarmCheck = timestamp + Alarms.checkPeriod
+                }
+                // timers that run between notifications in the app
+                while (nextRidingTick <= timestamp) {
+                    now = nextRidingTick
+                    wd.ridingTimerTick()
+                    nextRidingTick += RIDING_TICK
+                }
+                while (alarms && nextAlarmCheck <= timestamp) {
+                    now = nextAlarmCheck
+                    Alarms.recheck(context)
+                    nextAlarmCheck += Alarms.checkPeriod
+                }
+                now = timestamp
+                lastTimestamp = timestamp
+                if (speed > 0) {
+                    val due = startNanos + ((timestamp - firstTimestamp) * 1_000_000 / speed).toLong()
+                    val wait = (due - System.nanoTime()) / 1_000_000
+                    if (wait > 0) {
+                        sleeper.sleep(wait)
+                    }
+                }
+
+                frames++
+                val characteristic = source.characteristic ?: FrameRouter.readCharacteristic(wd.wheelType)
+                if (FrameRouter.route(source.data, characteristic, context)) {
+                    decodedFrames++
+                }
+                val sample = wd.sample
+                if (sample !== lastSample) {
+                    lastSample = sample
+                    samples++
+                    onSample(wd, sample)
+                }
+            }
+        } finally {
+            PipelineClock.source = previousClock
+            wd.setConnected(wasConnected)
+            if (ridingTimer) {
+                wd.startRidingTimerControl()
+            }
+            if (alarms) {
+                Alarms.stop()
+                Alarms.useTimer = alarmTimer
+            }
+            tripLog?.flush()
+        }
+        return Result(frames, decodedFrames, samples, lastTimestamp - firstTimestamp, System.nanoTime() - startNanos)
+    }
+
+    private fun onSample(wd: WheelData, sample: TelemetrySample) {
+        if (alarms && AlarmSettings.current.enabled) {
+            Alarms.checkAlarm(sample, context)
+        }
+        tripLog?.let {
+            val row = tripLogWriter
+            row.beginRow()
+            row.time(sample.timestamp)
+            row.telemetry(sample, wd.alert)
+            row.endRow()
+            it.write(row.buffer, 0, row.length)
+        }
+    }
+
+    companion object {
+        private const val RIDING_TICK = 1000L
+    }
+}
@@ -0,0 +1,143 @@
+package com.cooper.wheellog
+
+import android.content.Context
+import com.cooper.wheellog.telemetry.PipelineClock
+import com.cooper.wheellog.utils.*
+import com.google.common.truth.Truth.assertThat
+import io.mockk.*
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.IOException
+import java.util.*
+
+class ReplayEngineTest {
+    private lateinit var data: WheelData
+    private lateinit var config: AppConfig
+    private lateinit var context: Context
+    private val day = 1638173646123L
+
+    @Before
+    fun setUp() {
+        mockkObject(WheelLog)
+        context = mockkClass(Context::class, relaxed = true)
+        every { WheelLog.appContext } returns context
+        config = mockkClass(AppConfig::class, relaxed = true)
+        WheelLog.AppConfig = config
+        mockkStatic(WheelData::class)
+        every { WheelData.getInstance() } answers { data }
+    }
+
+    @After
+    fun tearDown() {
+        unmockkAll()
+    }
+
+    private fun newInmotionWheel() {
+        data = spyk(WheelData())
+        val adapter = spyk(InMotionAdapter())
+        every { adapter.isReady } returns false
+        every { data.adapter } returns adapter
+        data.wheelType = Constants.WHEEL_TYPE.INMOTION
+    }
+
+    private fun source(): ReplaySource {
+        return RawCsvReader(File("src/test/resources/RAW_inmotion_V5F.csv").inputStream(), day)
+    }
+
+    @Test
+    fun `unthrottled replay decodes capture`() {
+        // Arrange.
+        newInmotionWheel()
+        val engine = ReplayEngine(context)
+        engine.speed = 0.0
+
+        // Act.
+        val result = source().use { engine.replay(it) }
+
+        // Assert.
+        assertThat(result.frames).isEqualTo(877)
+        assertThat(result.decodedFrames).isEqualTo(877)
+        assertThat(result.samples).isGreaterThan(0)
+        assertThat(result.recordedTime).isEqualTo(101_313L)
+        assertThat(data.temperature).isEqualTo(28)
+        assertThat(data.voltageDouble).isEqualTo(74.43)
+        assertThat(data.modeStr).isEqualTo("Drive")
+        // ride time follows the recording, not the time the test took
+        assertThat(data.rideTime).isAtLeast(90)
+        assertThat(data.rideTime).isAtMost(101)
+    }
+
+    @Test
+    fun `replay is reproducible`() {
+        // Arrange.
+        val firstLog = ByteArrayOutputStream()
+        val secondLog = ByteArrayOutputStream()
+
+        // Act.
+        newInmotionWheel()
+        ReplayEngine(context).apply {
+            speed = 0.0
+            tripLog = firstLog
+        }.replay(source())
+        val firstRideTime = data.rideTime
+        newInmotionWheel()
+        ReplayEngine(context).apply {
+            speed = 0.0
+            tripLog = secondLog
+        }.replay(source())
+
+        // Assert.
+        assertThat(firstLog.size()).isGreaterThan(0)
+        assertThat(String(secondLog.toByteArray())).isEqualTo(String(firstLog.toByteArray()))
+        assertThat(data.rideTime).isEqualTo(firstRideTime)
+    }
+
+    @Test
+    fun `throttled replay follows recorded time`() {
+        // Arrange.
+        newInmotionWheel()
+        var sleeps = 0
+        val engine = ReplayEngine(context)
+        engine.speed = 200.0
+        engine.sleeper = ReplayEngine.Sleeper {
+            sleeps++
+            Thread.sleep(it)
+        }
+
+        // Act.
+        val result = source().use { engine.replay(it) }
+
+        // Assert.
+        assertThat(sleeps).isGreaterThan(0)
+        assertThat(result.elapsedNanos).isAtLeast((result.recordedTime / 200 - 1) * 1_000_000)
+    }
+
+    @Test
+    fun `failed replay restores the clock and the connection`() {
+        // Arrange.
+        newInmotionWheel()
+        val clock = PipelineClock.source
+        val engine = ReplayEngine(context)
+        engine.speed = 0.0
+        engine.alarms = true
+        val broken = object : ReplaySource {
+            override fun next(): Boolean = throw IOException("broken capture")
+            override val timestamp = 0L
+            override val characteristic: UUID? = null
+            override val data = ByteArray(0)
+            override fun close() {}
+        }
+
+        // Act.
+        val error = runCatching { engine.replay(broken) }.exceptionOrNull()
+
+        // Assert.
+        assertThat(error).isInstanceOf(IOException::class.java)
+        assertThat(PipelineClock.source).isSameInstanceAs(clock)
+        assertThat(data.isConnected).isFalse()
+        assertThat(Alarms.useTimer).isTrue()
+    }
+}
@@ -1,6 +1,7 @@
 package com.cooper.wheellog
 
 import android.content.Context
+import com.cooper.wheellog.utils.BaseAdapter
 import com.google.common.truth.Truth.assertThat
 import io.mockk.*
 import org.junit.After
@@ -81,4 +82,30 @@ class WheelDataTest {
         assertThat(data.currentDouble).isEqualTo(0.75)
         assertThat(data.maxCurrentDouble).isEqualTo(1)
     }
-}
\ No newline at end of file
+
+    @Test
+    fun `Sample is not changed by next frame`() {
+        // Arrange.
+        val adapter = mockkClass(BaseAdapter::class, relaxed = true)
+        every { adapter.decode(any()) } returns true
+        every { data.adapter } returns adapter
+        every { WheelLog.AppConfig.hwPwm } returns true
+        val context = mockkClass(Context::class, relaxed = true)
+        data.speed = 2500
+        data.voltage = 8400
+        data.current = 1000
+
+        // Act.
+        data.decodeResponse(byteArrayOf(), context)
+        val sample = data.sample
+        data.speed = 3000
+        data.voltage = 8000
+        data.current = 2000
+
+        // Assert.
+        assertThat(sample.speedDouble).isEqualTo(25)
+        assertThat(sample.voltageDouble).isEqualTo(84)
+        assertThat(sample.currentDouble).isEqualTo(10)
+        assertThat(data.sample).isSameInstanceAs(sample)
+    }
+}
@@ -0,0 +1,210 @@
+package com.cooper.wheellog
+
+import com.cooper.wheellog.WriteQueue.Priority
+import com.cooper.wheellog.utils.Constants.WHEEL_TYPE
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Test
+
+class WriteQueueTest {
+    private val writes = ArrayList<String>()
+    private val delayed = ArrayList<Pair<Runnable, Long>>()
+    private var accept = true
+    private var lastChunk = ByteArray(0)
+    private lateinit var queue: WriteQueue<String>
+
+    @Before
+    fun setUp() {
+        queue = WriteQueue(object : WriteQueue.Link<String> {
+            override fun write(target: String, chunk: ByteArray): Boolean {
+                if (accept) {
+                    writes.add("$target ${String(chunk)}")
+                    lastChunk = chunk.copyOf()
+                }
+                return accept
+            }
+
+            override fun postDelayed(action: Runnable, delay: Long) {
+                delayed.add(action to delay)
+            }
+        })
+    }
+
+    /** Completes the write in progress, runs the pause after it if there is one. */
+    private fun complete() {
+        queue.onWriteComplete("c", lastChunk, true)
+        val pause = delayed.lastOrNull { it.second != WriteQueue.WRITE_TIMEOUT }
+        delayed.clear()
+        pause?.first?.run()
+    }
+
+    @Test
+    fun `commands wait for the write completion`() {
+        // Arrange.
+        val results = ArrayList<Boolean>()
+
+        // Act.
+        queue.enqueue("c", "first".toByteArray(), Priority.COMMAND) { results.add(it) }
+        queue.enqueue("c", "second".toByteArray(), Priority.COMMAND) { results.add(it) }
+
+        // Assert.
+        assertThat(writes).containsExactly("c first")
+        complete()
+        assertThat(writes).containsExactly("c first", "c second").inOrder()
+        complete()
+        assertThat(results).containsExactly(true, true)
+        assertThat(queue.size).isEqualTo(0)
+    }
+
+    @Test
+    fun `safety and user commands go ahead of polls`() {
+        // Arrange.
+        queue.enqueue("c", "busy".toByteArray(), Priority.COMMAND)
+
+        // Act.
+        queue.enqueue("c", "poll".toByteArray(), Priority.POLL)
+        queue.enqueue("c", "light".toByteArray(), Priority.COMMAND)
+        queue.enqueue("c", "horn".toByteArray(), Priority.SAFETY)
+        repeat(4) { complete() }
+
+        // Assert.
+        assertThat(writes).containsExactly("c busy", "c horn", "c light", "c poll").inOrder()
+    }
+
+    @Test
+    fun `pending polls are not repeated`() {
+        // Arrange.
+        val results = ArrayList<Boolean>()
+        queue.enqueue("c", "busy".toByteArray(), Priority.COMMAND)
+
+        // Act.
+        repeat(3) {
+            queue.enqueue("c", "live".toByteArray(), Priority.POLL) { results.add(it) }
+        }
+        queue.enqueue("c", "serial".toByteArray(), Priority.POLL)
+        repeat(3) { complete() }
+
+        // Assert.
+        assertThat(writes).containsExactly("c busy", "c live", "c serial").inOrder()
+        assertThat(queue.mergedPolls).isEqualTo(2)
+        assertThat(results).containsExactly(true, true, true)
+    }
+
+    @Test
+    fun `inmotion commands are written in paced chunks`() {
+        // Arrange.
+        val command = "0123456789".repeat(5)
+        val pacing = WriteQueue.Pacing.forType(WHEEL_TYPE.INMOTION)
+
+        // Act.
+        queue.enqueue("c", command.toByteArray(), Priority.COMMAND, pacing)
+        queue.onWriteComplete("c", lastChunk, true)
+
+        // Assert.
+        assertThat(writes).hasSize(1)
+        assertThat(delayed.map { it.second }).contains(pacing.pause)
+        delayed.first { it.second == pacing.pause }.first.run()
+        complete()
+        assertThat(writes).containsExactly(
+            "c " + command.substring(0, 20),
+            "c " + command.substring(20, 40),
+            "c " + command.substring(40)
+        ).inOrder()
+    }
+
+    @Test
+    fun `caller may reuse the command array`() {
+        // Arrange.
+        val data = "first".toByteArray()
+        queue.enqueue("c", "busy".toByteArray(), Priority.COMMAND)
+
+        // Act.
+        queue.enqueue("c", data, Priority.COMMAND)
+        "other".toByteArray().copyInto(data)
+        complete()
+
+        // Assert.
+        assertThat(writes).containsExactly("c busy", "c first").inOrder()
+    }
+
+    @Test
+    fun `failed write moves on to the next command`() {
+        // Arrange.
+        val results = ArrayList<Boolean>()
+        queue.enqueue("c", "first".toByteArray(), Priority.COMMAND) { results.add(it) }
+        queue.enqueue("c", "second".toByteArray(), Priority.COMMAND) { results.add(it) }
+
+        // Act.
+        queue.onWriteComplete("c", lastChunk, false)
+        complete()
+
+        // Assert.
+        assertThat(writes).containsExactly("c first", "c second").inOrder()
+        assertThat(results).containsExactly(false, true).inOrder()
+    }
+
+    @Test
+    fun `write without completion times out`() {
+        // Arrange.
+        val results = ArrayList<Boolean>()
+        queue.enqueue("c", "lost".toByteArray(), Priority.COMMAND) { results.add(it) }
+        queue.enqueue("c", "next".toByteArray(), Priority.COMMAND)
+
+        // Act.
+        delayed.first { it.second == WriteQueue.WRITE_TIMEOUT }.first.run()
+
+        // Assert.
+        assertThat(results).containsExactly(false)
+        assertThat(writes).containsExactly("c lost", "c next").inOrder()
+    }
+
+    @Test
+    fun `late completion is not taken for the next write`() {
+        // Arrange.
+        val results = ArrayList<Boolean>()
+        queue.enqueue("c", "lost".toByteArray(), Priority.COMMAND) { results.add(it) }
+        queue.enqueue("c", "next".toByteArray(), Priority.COMMAND) { results.add(it) }
+        delayed.first { it.second == WriteQueue.WRITE_TIMEOUT }.first.run()
+
+        // Act.
+        queue.onWriteComplete("c", "lost".toByteArray(), true)
+
+        // Assert.
+        assertThat(results).containsExactly(false)
+        assertThat(queue.lateCompletions).isEqualTo(1)
+        assertThat(queue.size).isEqualTo(1)
+        complete()
+        assertThat(results).containsExactly(false, true).inOrder()
+    }
+
+    @Test
+    fun `clear drops all commands`() {
+        // Arrange.
+        val results = ArrayList<Boolean>()
+        queue.enqueue("c", "first".toByteArray(), Priority.COMMAND) { results.add(it) }
+        queue.enqueue("c", "poll".toByteArray(), Priority.POLL) { results.add(it) }
+
+        // Act.
+        queue.clear()
+        complete()
+        queue.enqueue("c", "after".toByteArray(), Priority.COMMAND)
+
+        // Assert.
+        assertThat(results).containsExactly(false, false)
+        assertThat(writes).containsExactly("c first", "c after").inOrder()
+    }
+
+    @Test
+    fun `command that can't be written fails`() {
+        // Arrange.
+        accept = false
+        var result: Boolean? = null
+
+        // Act.
+        queue.enqueue("c", "first".toByteArray(), Priority.COMMAND) { result = it }
+
+        // Assert.
+        assertThat(result).isFalse()
+        assertThat(queue.size).isEqualTo(0)
+    }
+}
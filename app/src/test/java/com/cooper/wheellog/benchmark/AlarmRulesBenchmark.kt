@@ -0,0 +1,74 @@
+package com.cooper.wheellog.benchmark
+
+import com.cooper.wheellog.telemetry.TelemetrySample
+import com.cooper.wheellog.utils.AlarmRules
+import com.cooper.wheellog.utils.SmartBms
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Test
+import java.util.*
+
+/**
+ * Alarm rules checked with every frame as Alarms does, with growing numbers of rules.
+ */
+class AlarmRulesBenchmark {
+    private val frames = 1000
+    private val samples = Array(frames) { i ->
+        TelemetrySample.EMPTY.copy(
+            timestamp = 1638173646123L + i * 50L,
+            speed = 2531 + i % 700,
+            voltage = 8412 - i % 300,
+            current = 1250 - i % 1500,
+            phaseCurrent = 2507 + i % 50,
+            power = 105360 + i,
+            temperature = 41 + i % 30,
+            temperature2 = 38 + i % 40,
+            batteryLevel = 87 - i / 100,
+            calculatedPwm = 45.125 + i % 50
+        )
+    }
+    private val bms = SmartBms().apply {
+        minCell = 3.61
+        cellDiff = 0.04
+    }
+
+    private val templates = arrayOf(
+        "temperature2 > %d and current > 40 for 2s",
+        "cell_diff > 0.%02d hysteresis 0.01 cooldown 60s",
+        "(sag > %d or pwm > 85) and speed > 20 cooldown 10s",
+        "temperature >= %d hysteresis 3",
+        "battery < %d and power > 3000 for 500ms"
+    )
+
+    @Before
+    fun setUp() {
+        Benchmark.assumeEnabled()
+    }
+
+    private fun rules(count: Int): AlarmRules {
+        val text = (0 until count).joinToString("\n") { i ->
+            String.format(Locale.US, templates[i % templates.size], 40 + i % 50)
+        }
+        return AlarmRules.compile(text).also { assertThat(it.rules).hasLength(count) }
+    }
+
+    private fun run(count: Int) {
+        val rules = rules(count)
+        var i = 0
+        val result = Benchmark.run("AlarmRules $count rules frame") {
+            it.consume(rules.check(samples[i++ % frames], bms, bms))
+        }
+        if (!result.bytesPerOp.isNaN()) {
+            assertThat(result.bytesPerOp).isLessThan(1.0)
+        }
+    }
+
+    @Test
+    fun `10 rules`() = run(10)
+
+    @Test
+    fun `100 rules`() = run(100)
+
+    @Test
+    fun `500 rules`() = run(500)
+}
@@ -0,0 +1,106 @@
+package com.cooper.wheellog.benchmark
+
+import org.junit.Assume
+import java.lang.management.ManagementFactory
+import java.util.*
+
+/**
+ * Small JMH style harness for the unit test JVM: warmup iterations, measured iterations,
+ * throughput and bytes allocated by the benchmark thread per operation.
+ * Benchmarks only run with -Pbenchmark, otherwise they are skipped.
+ */
+object Benchmark {
+    private const val WARMUP_ITERATIONS = 5
+    private const val ITERATIONS = 5
+    private const val ITERATION_TIME = 500_000_000L // ns
+
+    class Result(val name: String, val opsPerSecond: Double, val bytesPerOp: Double) {
+        override fun toString(): String {
+            return String.format(Locale.US, "%-40s %14.1f ops/s %12.1f B/op", name, opsPerSecond, bytesPerOp)
+        }
+    }
+
+    /**
+     * Takes the results of the benchmarks, so the JIT can't drop the work.
+     * Primitives are folded into a plain field and published once per iteration, nothing is boxed.
+     */
+    class Blackhole {
+        private var bits = 0L
+        private var last: Any? = null
+
+        @Volatile
+        var sink = 0L
+            private set
+
+        fun consume(value: Long) {
+            bits = bits xor value
+        }
+
+        fun consume(value: Int) = consume(value.toLong())
+
+        fun consume(value: Double) = consume(value.toRawBits())
+
+        fun consume(value: Boolean) = consume(if (value) 1L else 0L)
+
+        fun consume(value: Any?) {
+            last = value
+        }
+
+        internal fun publish() {
+            sink = bits xor System.identityHashCode(last).toLong()
+            last = null
+        }
+    }
+
+    fun interface Operation {
+        fun run(blackhole: Blackhole)
+    }
+
+    fun assumeEnabled() {
+        Assume.assumeTrue("Run with -Pbenchmark", System.getProperty("wheellog.benchmark") == "true")
+    }
+
+    /**
+     * Measures [operation], one call is one op.
+     * The operation passes its results to [blackhole], so the JIT can't drop the work.
+     */
+    fun run(name: String, operation: Operation): Result {
+        for (i in 0 until WARMUP_ITERATIONS) {
+            iteration(operation)
+        }
+        var ops = 0L
+        var nanos = 0L
+        var bytes = 0L
+        for (i in 0 until ITERATIONS) {
+            val startBytes = allocatedBytes()
+            val start = System.nanoTime()
+            val count = iteration(operation)
+            nanos += System.nanoTime() - start
+            bytes += allocatedBytes() - startBytes
+            ops += count
+        }
+        val result = Result(name, ops * 1e9 / nanos, if (allocationSupported) bytes.toDouble() / ops else Double.NaN)
+        println(result)
+        return result
+    }
+
+    val blackhole = Blackhole()
+
+    private fun iteration(operation: Operation): Long {
+        val end = System.nanoTime() + ITERATION_TIME
+        var count = 0L
+        do {
+            operation.run(blackhole)
+            count++
+        } while (System.nanoTime() < end)
+        blackhole.publish()
+        return count
+    }
+
+    private val threadBean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+    private val allocationSupported = threadBean?.isThreadAllocatedMemorySupported == true
+
+    private fun allocatedBytes(): Long {
+        return if (allocationSupported) threadBean!!.getThreadAllocatedBytes(Thread.currentThread().id) else 0L
+    }
+}
@@ -0,0 +1,119 @@
+package com.cooper.wheellog.benchmark
+
+import android.content.Context
+import com.cooper.wheellog.AppConfig
+import com.cooper.wheellog.WheelData
+import com.cooper.wheellog.WheelLog
+import com.cooper.wheellog.utils.*
+import com.cooper.wheellog.utils.Utils.Companion.hexToByteArray
+import io.mockk.*
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+
+/**
+ * Throughput of BaseAdapter.decode over recorded frames, one op decodes all frames of a set.
+ * Ninebot (non Z) is missing, there are no recorded frames of it in the tree.
+ */
+class DecoderBenchmark {
+    private lateinit var data: WheelData
+    private var previousInstance: WheelData? = null
+    private val instanceField = WheelData::class.java.getDeclaredField("mInstance").apply { isAccessible = true }
+
+    @Before
+    fun setUp() {
+        Benchmark.assumeEnabled()
+        mockkObject(WheelLog)
+        every { WheelLog.appContext } returns mockkClass(Context::class, relaxed = true)
+        val config = mockkClass(AppConfig::class, relaxed = true)
+        every { config.gotwayNegative } returns "1"
+        WheelLog.AppConfig = config
+        mockkConstructor(android.os.Handler::class)
+        every { anyConstructed<android.os.Handler>().postDelayed(any(), any()) } returns true
+        // a real instance, a mocked getInstance() would dominate the measurement
+        data = WheelData()
+        previousInstance = instanceField.get(null) as WheelData?
+        instanceField.set(null, data)
+    }
+
+    @After
+    fun tearDown() {
+        instanceField.set(null, previousInstance)
+        unmockkAll()
+    }
+
+    private fun rawFrames(fileName: String): List<ByteArray> {
+        return File("src/test/resources/$fileName").readLines().map { it.split(',')[1].hexToByteArray() }
+    }
+
+    private fun frames(vararg hex: String): List<ByteArray> {
+        return hex.map { it.hexToByteArray() }
+    }
+
+    private fun measure(name: String, adapter: BaseAdapter, frames: List<ByteArray>) {
+        Benchmark.run(name) {
+            var decoded = 0
+            for (frame in frames) {
+                if (adapter.decode(frame)) {
+                    decoded++
+                }
+            }
+            it.consume(decoded)
+        }
+    }
+
+    @Test
+    fun `gotway decode`() {
+        data.wheelType = Constants.WHEEL_TYPE.GOTWAY
+        measure("GotwayAdapter.decode", GotwayAdapter(), rawFrames("rawDecodeTest.csv") + frames(
+            "55AA19C1000000000000008CF0000001FFF80018",
+            "5A5A5A5A55AA000060D248001C20006400010007",
+            "000804185A5A5A5A"))
+    }
+
+    @Test
+    fun `veteran decode`() {
+        data.wheelType = Constants.WHEEL_TYPE.VETERAN
+        measure("VeteranAdapter.decode", VeteranAdapter(), frames(
+            "DC5A5C20238A0112121A00004D450005064611F2",
+            "0E1000000AF00AF0041B000300000000"))
+    }
+
+    @Test
+    fun `kingsong decode`() {
+        data.wheelType = Constants.WHEEL_TYPE.KINGSONG
+        measure("KingsongAdapter.decode", KingsongAdapter(), frames(
+            "aa554b532d5331382d30323035000000bb1484fd",
+            "aa556919030200009f36d700140500e0a9145a5a",
+            "aa550000090017011502140100004006b9145a5a",
+            "aa55000000000000000000000000400cf5145a5a"))
+    }
+
+    @Test
+    fun `ninebot z decode`() {
+        data.wheelType = Constants.WHEEL_TYPE.NINEBOT_Z
+        measure("NinebotZAdapter.decode", NinebotZAdapter(), frames(
+            "5aa520143e04b000000000489800004e009c0a7a",
+            "059b97280023016d0472011a1892119c0a7a052a"))
+    }
+
+    @Test
+    fun `inmotion decode`() {
+        data.wheelType = Constants.WHEEL_TYPE.INMOTION
+        measure("InMotionAdapter.decode", InMotionAdapter(), rawFrames("RAW_inmotion_V5F.csv"))
+    }
+
+    @Test
+    fun `inmotion v2 decode`() {
+        data.wheelType = Constants.WHEEL_TYPE.INMOTION_V2
+        measure("InmotionAdapterV2.decode", InmotionAdapterV2(), frames(
+            "AAAA110882010206010201009C",
+            "AAAA11178202313438304341313232323037303032420000000000FD",
+            "AAAA111D820622080004030F000602214000010110000602230D00010107000001F3",
+            "AAAA141AA0207C15C800106464140000000058020000006400001500100010",
+            "AAAA142B900001142614000000803E498AE00FB209D109CEB000C7DF010000BE720000AB1300008F040000AB0600004C",
+            "AAAA141991E86C000066191C002DB2040064E60000974D050000C7DF01A4",
+            "AAAA143184E61EEB0561094A11AE04A004DF01402958CBB000CE004A010000D4FF7C15641900000000492B00000000000000000000C6"))
+    }
+}
@@ -0,0 +1,108 @@
+package com.cooper.wheellog.benchmark
+
+import com.cooper.wheellog.telemetry.TelemetrySample
+import com.cooper.wheellog.utils.*
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+
+/**
+ * Trip log rows as LoggingService writes them and as ParserLogToWheelData and MapActivity read them.
+ */
+class TripLogBenchmark {
+    private val rows = 1000
+    private val samples = Array(rows) { i ->
+        TelemetrySample.EMPTY.copy(
+            timestamp = 1638173646123L + i * 200L,
+            speed = 2531 + i % 700,
+            voltage = 8412 - i / 10,
+            current = 1250 - i % 300,
+            phaseCurrent = 2507 + i % 50,
+            power = 105360 + i,
+            torque = 12.345,
+            temperature = 41,
+            temperature2 = 38,
+            batteryLevel = 87 - i / 100,
+            distance = 1203L + i,
+            totalDistance = 2405003L + i,
+            angle = -1.005,
+            roll = 0.3,
+            calculatedPwm = 45.125 + i % 20,
+            modeStr = "0"
+        )
+    }
+
+    @Before
+    fun setUp() {
+        Benchmark.assumeEnabled()
+    }
+
+    private fun writeRow(writer: TripLogRowWriter, sample: TelemetrySample) {
+        writer.beginRow()
+        writer.time(sample.timestamp)
+        writer.telemetry(sample, "")
+        writer.endRow()
+    }
+
+    private fun log(writer: TripLogRowWriter): ByteArray {
+        val output = ByteArrayOutputStream()
+        writer.header(BinaryTripLog.columns(false))
+        output.write(writer.buffer, 0, writer.length)
+        for (sample in samples) {
+            writeRow(writer, sample)
+            output.write(writer.buffer, 0, writer.length)
+        }
+        return output.toByteArray()
+    }
+
+    private fun read(log: ByteArray): Double {
+        var sum = 0.0
+        TripLogReader.open(ByteArrayInputStream(log)).use { reader ->
+            while (reader.next()) {
+                sum += reader.timestamp
+                sum += reader.getDouble(LogHeaderEnum.SPEED)
+                sum += reader.getDouble(LogHeaderEnum.VOLTAGE)
+                sum += reader.getDouble(LogHeaderEnum.CURRENT)
+                sum += reader.getDouble(LogHeaderEnum.POWER)
+                sum += reader.getInt(LogHeaderEnum.BATTERY_LEVEL)
+                sum += reader.getLong(LogHeaderEnum.TOTALDISTANCE)
+                sum += reader.getDouble(LogHeaderEnum.PWM)
+            }
+        }
+        return sum
+    }
+
+    @Test
+    fun `csv row encoding`() {
+        val writer = CsvTripLogRowWriter()
+        var i = 0
+        Benchmark.run("CsvTripLogRowWriter row") {
+            writeRow(writer, samples[i++ % rows])
+            it.consume(writer.length)
+        }
+    }
+
+    @Test
+    fun `binary row encoding`() {
+        val writer = BinaryTripLogWriter()
+        writer.header(BinaryTripLog.columns(false))
+        var i = 0
+        Benchmark.run("BinaryTripLogWriter row") {
+            writeRow(writer, samples[i++ % rows])
+            it.consume(writer.length)
+        }
+    }
+
+    @Test
+    fun `csv log parsing`() {
+        val log = log(CsvTripLogRowWriter())
+        Benchmark.run("CsvTripLogReader $rows rows") { it.consume(read(log)) }
+    }
+
+    @Test
+    fun `binary log parsing`() {
+        val log = log(BinaryTripLogWriter())
+        Benchmark.run("BinaryTripLogReader $rows rows") { it.consume(read(log)) }
+    }
+}
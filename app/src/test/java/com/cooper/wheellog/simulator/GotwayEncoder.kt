@@ -0,0 +1,52 @@
+package com.cooper.wheellog.simulator
+
+import com.cooper.wheellog.utils.Constants.WHEEL_TYPE
+
+/**
+ * Begode/Gotway: "NAME" and "GW" text replies, 24 byte frame A (live data) every tick
+ * and frame B (total distance and settings) with the slow data.
+ */
+class GotwayEncoder : WheelEncoder(WHEEL_TYPE.GOTWAY) {
+    var name = "MSuperX"
+    var firmware = "2102"
+
+    /**
+     * Gotway voltage setting the app uses, the wheel reports the pack voltage divided by it.
+     */
+    var voltageScaler = 1.0
+
+    override fun handshake(frames: MutableList<ByteArray>) {
+        frames.add("NAME $name".toByteArray())
+        frames.add("GW$firmware".toByteArray())
+    }
+
+    override fun live(state: RideProfile.State, tick: Int, frames: MutableList<ByteArray>) {
+        val a = frame(0x00)
+        a.shortBE(2, scaled(state.voltage / voltageScaler, 100))
+        a.shortBE(4, scaled(state.speed / 3.6, 100))
+        a.shortBE(8, state.distance.toInt())
+        a.shortBE(10, scaled(state.phaseCurrent, 100))
+        // MPU6050 temperature register
+        a.shortBE(12, scaled(state.temperature - 36.53, 340))
+        a.shortBE(14, scaled(state.pwm, 10))
+        frames.add(a)
+        if (tick % SLOW_TICKS == 0) {
+            val b = frame(0x04)
+            b.intBE(2, state.totalDistance.toInt())
+            b.shortBE(8, 3600) // power off time
+            frames.add(b)
+        }
+    }
+
+    private fun frame(type: Int): ByteArray {
+        val frame = ByteArray(24)
+        frame[0] = 0x55
+        frame[1] = 0xAA.toByte()
+        frame[18] = type.toByte()
+        frame[19] = 0x18
+        for (i in 20 until 24) {
+            frame[i] = 0x5A
+        }
+        return frame
+    }
+}
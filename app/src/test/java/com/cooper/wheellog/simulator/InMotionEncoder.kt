@@ -0,0 +1,92 @@
+package com.cooper.wheellog.simulator
+
+import com.cooper.wheellog.utils.Constants.WHEEL_TYPE
+import java.io.ByteArrayOutputStream
+
+/**
+ * InMotion V5/V8/V10: extended CAN messages in AA AA ... 55 55 frames with A5 escaping.
+ * Slow info (serial, model, firmware) on connect and with the slow data, fast info every tick.
+ */
+class InMotionEncoder : WheelEncoder(WHEEL_TYPE.INMOTION) {
+    var serial = 0x1234567890ABCDEFL
+
+    /** model id as InMotionAdapter.Model, "80" is a V8 */
+    var model = 80
+
+    override fun handshake(frames: MutableList<ByteArray>) {
+        frames.add(slowInfo())
+    }
+
+    override fun live(state: RideProfile.State, tick: Int, frames: MutableList<ByteArray>) {
+        val data = ByteArray(FAST_INFO_SIZE)
+        // speed of both motors, 3812 per m/s
+        val speed = scaled(state.speed / 3.6, SPEED_FACTOR)
+        data.intLE(12, speed)
+        data.intLE(16, speed)
+        data.intLE(20, scaled(state.current, 100))
+        data.intLE(24, scaled(state.voltage, 100))
+        data[32] = state.temperature.toInt().toByte()
+        data[34] = state.temperature.toInt().toByte()
+        data.intLE(44, state.totalDistance.toInt())
+        data.intLE(48, state.distance.toInt())
+        data.intLE(60, if (state.speed > 0) 1 else 0) // drive, idle
+        frames.add(message(FAST_INFO, data))
+        if (tick > 0 && tick % (SLOW_TICKS * 10) == 0) {
+            frames.add(slowInfo())
+        }
+    }
+
+    private fun slowInfo(): ByteArray {
+        val data = ByteArray(SLOW_INFO_SIZE)
+        for (i in 0 until 8) {
+            data[i] = (serial shr (i * 8)).toByte()
+        }
+        data.intLE(24, 0x01020010) // firmware 1.2.16
+        data.shortLE(60, 35_000) // max speed, m/h
+        data[104] = (model % 10).toByte()
+        data[107] = (model / 10).toByte()
+        return message(SLOW_INFO, data)
+    }
+
+    private fun message(id: Int, extended: ByteArray): ByteArray {
+        val can = ByteArray(16 + extended.size)
+        can.intLE(0, id)
+        can.intLE(4, extended.size)
+        can[12] = 0xFE.toByte() // extended data follows
+        can[13] = 0 // channel
+        can[14] = 1 // extended format
+        can[15] = 0 // data frame
+        System.arraycopy(extended, 0, can, 16, extended.size)
+        var check = 0
+        for (b in can) {
+            check += b
+        }
+        val out = ByteArrayOutputStream(can.size * 2)
+        out.write(0xAA)
+        out.write(0xAA)
+        for (b in can) {
+            escape(out, b.toInt())
+        }
+        // escaped like the rest, the unpacker would drop a bare A5
+        escape(out, check)
+        out.write(0x55)
+        out.write(0x55)
+        return out.toByteArray()
+    }
+
+    private fun escape(out: ByteArrayOutputStream, value: Int) {
+        val b = value and 0xFF
+        if (b == 0xAA || b == 0x55 || b == 0xA5) {
+            out.write(0xA5)
+        }
+        out.write(b)
+    }
+
+    companion object {
+        private const val FAST_INFO = 0x0F550113
+        private const val SLOW_INFO = 0x0F550114
+        private const val FAST_INFO_SIZE = 96
+        private const val SLOW_INFO_SIZE = 136
+        private const val SPEED_FACTOR = 3812
+    }
+}
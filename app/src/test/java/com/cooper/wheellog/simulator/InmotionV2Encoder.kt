@@ -0,0 +1,92 @@
+package com.cooper.wheellog.simulator
+
+import com.cooper.wheellog.utils.Constants.WHEEL_TYPE
+import java.io.ByteArrayOutputStream
+
+/**
+ * InMotion V11: AA AA flags, length, command frames with A5 escaping and a XOR check.
+ * Car type, serial and versions on connect, realtime info every tick.
+ */
+class InmotionV2Encoder : WheelEncoder(WHEEL_TYPE.INMOTION_V2) {
+    var serial = "1480CA122207002B"
+
+    override fun handshake(frames: MutableList<ByteArray>) {
+        // main series 2, series 6 (V11), type 1, batch 2, feature 1
+        frames.add(message(INITIAL, MAIN_INFO, byteArrayOf(0x01, 0x02, 0x06, 0x01, 0x02, 0x01, 0x00)))
+        val serialData = ByteArray(17)
+        serialData[0] = 0x02
+        serialData.ascii(1, serial.take(16))
+        frames.add(message(INITIAL, MAIN_INFO, serialData))
+        val versions = ByteArray(24)
+        versions[0] = 0x06
+        versions.shortLE(2, 24) // driver board 1.1.24
+        versions[4] = 1
+        versions[5] = 1
+        versions.shortLE(11, 50) // main board 1.3.50, realtime info without the 1.4 layout
+        versions[13] = 3
+        versions[14] = 1
+        versions.shortLE(20, 9) // BLE 1.0.9
+        versions[23] = 1
+        frames.add(message(INITIAL, MAIN_INFO, versions))
+    }
+
+    override fun live(state: RideProfile.State, tick: Int, frames: MutableList<ByteArray>) {
+        val data = ByteArray(REALTIME_INFO_SIZE)
+        data.shortLE(0, scaled(state.voltage, 100))
+        data.shortLE(2, scaled(state.current, 100))
+        data.shortLE(4, scaled(state.speed, 100))
+        data.shortLE(8, scaled(state.voltage * state.current, 1)) // battery power, W
+        data.shortLE(10, scaled(state.voltage * state.current, 1)) // motor power, W
+        data.shortLE(12, (state.distance / 10).toInt())
+        data[16] = state.battery.toByte()
+        val temperature = state.temperature.toInt() + TEMPERATURE_OFFSET
+        for (i in 17..21) {
+            data[i] = temperature.toByte()
+        }
+        data.shortLE(28, 5000) // speed limit
+        data.shortLE(30, 6500) // current limit
+        data[34] = temperature.toByte()
+        data[35] = temperature.toByte()
+        data.shortLE(36, scaled(state.pwm, 100))
+        if (state.speed > 0) {
+            data[38] = 0x40 // motor active
+        }
+        frames.add(message(DEFAULT, REALTIME_INFO, data))
+    }
+
+    private fun message(flags: Int, command: Int, data: ByteArray): ByteArray {
+        val out = ByteArrayOutputStream(data.size * 2 + 8)
+        out.write(0xAA)
+        out.write(0xAA)
+        var check = 0
+        for (value in intArrayOf(flags, data.size + 1, command or REPLY)) {
+            check = check xor value
+            escape(out, value)
+        }
+        for (b in data) {
+            check = check xor b.toInt()
+            escape(out, b.toInt())
+        }
+        // escaped like the rest, the unpacker would drop a bare A5
+        escape(out, check)
+        return out.toByteArray()
+    }
+
+    private fun escape(out: ByteArrayOutputStream, value: Int) {
+        val b = value and 0xFF
+        if (b == 0xAA || b == 0xA5) {
+            out.write(0xA5)
+        }
+        out.write(b)
+    }
+
+    companion object {
+        private const val INITIAL = 0x11
+        private const val DEFAULT = 0x14
+        private const val REPLY = 0x80
+        private const val MAIN_INFO = 0x02
+        private const val REALTIME_INFO = 0x04
+        private const val REALTIME_INFO_SIZE = 50
+        private const val TEMPERATURE_OFFSET = 176 // reported as t + 256 - 80
+    }
+}
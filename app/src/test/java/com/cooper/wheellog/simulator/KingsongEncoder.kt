@@ -0,0 +1,59 @@
+package com.cooper.wheellog.simulator
+
+import com.cooper.wheellog.utils.Constants.WHEEL_TYPE
+
+/**
+ * Kingsong: 20 byte frames, each in its own notification. 0xBB name on connect,
+ * 0xA9 live data every tick, 0xB9 distance and 0xF5 output with the slow data.
+ */
+class KingsongEncoder : WheelEncoder(WHEEL_TYPE.KINGSONG) {
+    /** model and firmware, "KS-S18-0205" is a S18 with firmware 2.05 */
+    var name = "KS-S18-0205"
+
+    override val framePerNotification = true
+
+    override fun handshake(frames: MutableList<ByteArray>) {
+        val frame = frame(0xBB)
+        frame.ascii(2, name.take(14))
+        frames.add(frame)
+    }
+
+    override fun live(state: RideProfile.State, tick: Int, frames: MutableList<ByteArray>) {
+        val live = frame(0xA9)
+        live.shortLE(2, scaled(state.voltage, 100))
+        live.shortLE(4, scaled(state.speed, 100))
+        live.int4R(6, state.totalDistance.toInt())
+        live.shortLE(10, scaled(state.current, 100))
+        live.shortLE(12, scaled(state.temperature, 100))
+        live[14] = 0 // ride mode
+        live[15] = 0xE0.toByte()
+        frames.add(live)
+        if (tick % SLOW_TICKS == 0) {
+            val distance = frame(0xB9)
+            distance.int4R(2, state.distance.toInt())
+            distance.shortLE(14, scaled(state.temperature, 100))
+            frames.add(distance)
+            val output = frame(0xF5)
+            output[14] = 20 // cpu load
+            output[15] = state.pwm.toInt().toByte()
+            frames.add(output)
+        }
+    }
+
+    private fun frame(type: Int): ByteArray {
+        val frame = ByteArray(20)
+        frame[0] = 0xAA.toByte()
+        frame[1] = 0x55
+        frame[16] = type.toByte()
+        frame[17] = 0x14
+        frame[18] = 0x5A
+        frame[19] = 0x5A
+        return frame
+    }
+
+    // MathsUtil.getInt4R, little endian words in big endian order
+    private fun ByteArray.int4R(offset: Int, value: Int) {
+        shortLE(offset, value shr 16)
+        shortLE(offset + 2, value)
+    }
+}
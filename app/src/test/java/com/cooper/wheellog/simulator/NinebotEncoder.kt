@@ -0,0 +1,71 @@
+package com.cooper.wheellog.simulator
+
+import com.cooper.wheellog.utils.Constants.WHEEL_TYPE
+import kotlin.math.min
+
+/**
+ * Ninebot One: 55 AA length, source, destination, parameter frames with an inverted sum check,
+ * encrypted with [gamma]. The app never negotiates a key with these wheels, so it stays zero.
+ * Serial number on connect, live data every tick.
+ */
+class NinebotEncoder : WheelEncoder(WHEEL_TYPE.NINEBOT) {
+    var serial = "N2GWC1234C5678"
+    var gamma = ByteArray(16)
+
+    override fun handshake(frames: MutableList<ByteArray>) {
+        val data = ByteArray(14)
+        data.ascii(0, serial.take(14))
+        frames.add(message(SERIAL_NUMBER, data))
+    }
+
+    override fun live(state: RideProfile.State, tick: Int, frames: MutableList<ByteArray>) {
+        val data = ByteArray(32)
+        data.shortLE(8, state.battery)
+        // m/h in a signed short, the wheel can't report more than 32 km/h
+        data.shortLE(10, scaled(min(state.speed, MAX_SPEED), 1000))
+        data.intLE(14, state.totalDistance.toInt())
+        data.shortLE(22, scaled(state.temperature, 10))
+        data.shortLE(24, scaled(state.voltage, 100))
+        data.shortLE(26, scaled(state.current, 100))
+        frames.add(message(LIVE_DATA, data))
+    }
+
+    private fun message(parameter: Int, data: ByteArray): ByteArray {
+        val payload = ByteArray(4 + data.size + 2)
+        payload[0] = (data.size + 2).toByte()
+        payload[1] = CONTROLLER.toByte()
+        payload[2] = APP.toByte()
+        payload[3] = parameter.toByte()
+        System.arraycopy(data, 0, payload, 4, data.size)
+        return frame(0x55, 0xAA, payload, gamma)
+    }
+
+    companion object {
+        private const val CONTROLLER = 0x01
+        private const val APP = 0x09
+        private const val SERIAL_NUMBER = 0x10
+        private const val LIVE_DATA = 0xB0
+        private const val MAX_SPEED = 32.0
+
+        /**
+         * Header and [payload] with the check in its last two bytes, encrypted from the second byte on.
+         */
+        internal fun frame(header1: Int, header2: Int, payload: ByteArray, gamma: ByteArray): ByteArray {
+            var check = 0
+            for (i in 0 until payload.size - 2) {
+                check += payload[i].toInt() and 0xFF
+            }
+            check = check xor 0xFFFF and 0xFFFF
+            payload[payload.size - 2] = check.toByte()
+            payload[payload.size - 1] = (check shr 8).toByte()
+            val frame = ByteArray(payload.size + 2)
+            frame[0] = header1.toByte()
+            frame[1] = header2.toByte()
+            frame[2] = payload[0]
+            for (j in 1 until payload.size) {
+                frame[j + 2] = (payload[j].toInt() xor gamma[(j - 1) % 16].toInt()).toByte()
+            }
+            return frame
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.cooper.wheellog.simulator
+
+import com.cooper.wheellog.utils.Constants.WHEEL_TYPE
+
+/**
+ * Ninebot Z: 5A A5 length, source, destination, command, parameter frames. The key generator
+ * sends [key] on connect, encrypted with the zero key, every later frame is encrypted with [key].
+ */
+class NinebotZEncoder : WheelEncoder(WHEEL_TYPE.NINEBOT_Z) {
+    var serial = "N3OTC2020T0001"
+    var key = byteArrayOf(
+        0x3A, 0x51, 0x07, 0x6E, 0x12, 0x7F, 0x2C, 0x45,
+        0x19, 0x60, 0x0B, 0x33, 0x58, 0x21, 0x4D, 0x76)
+
+    private var gamma = ByteArray(16)
+
+    override fun handshake(frames: MutableList<ByteArray>) {
+        gamma = ByteArray(16)
+        frames.add(message(KEY_GENERATOR, GET_KEY, 0x00, key))
+        gamma = key.copyOf()
+        val data = ByteArray(14)
+        data.ascii(0, serial.take(14))
+        frames.add(message(CONTROLLER, GET, SERIAL_NUMBER, data))
+    }
+
+    override fun live(state: RideProfile.State, tick: Int, frames: MutableList<ByteArray>) {
+        val data = ByteArray(32)
+        data.shortLE(8, state.battery)
+        data.shortLE(10, scaled(state.speed, 100))
+        data.intLE(14, state.totalDistance.toInt())
+        data.shortLE(18, (state.distance / 10).toInt())
+        data.shortLE(20, (state.time / 1000).toInt())
+        data.shortLE(22, scaled(state.temperature, 10))
+        data.shortLE(24, scaled(state.voltage, 100))
+        data.shortLE(26, scaled(state.current, 100))
+        data.shortLE(28, scaled(state.speed, 100))
+        frames.add(message(CONTROLLER, GET, LIVE_DATA, data))
+    }
+
+    private fun message(source: Int, command: Int, parameter: Int, data: ByteArray): ByteArray {
+        val payload = ByteArray(5 + data.size + 2)
+        payload[0] = data.size.toByte()
+        payload[1] = source.toByte()
+        payload[2] = APP.toByte()
+        payload[3] = command.toByte()
+        payload[4] = parameter.toByte()
+        System.arraycopy(data, 0, payload, 5, data.size)
+        return NinebotEncoder.frame(0x5A, 0xA5, payload, gamma)
+    }
+
+    companion object {
+        private const val CONTROLLER = 0x14
+        private const val KEY_GENERATOR = 0x16
+        private const val APP = 0x3E
+        private const val GET = 0x04
+        private const val GET_KEY = 0x5B
+        private const val SERIAL_NUMBER = 0x10
+        private const val LIVE_DATA = 0xB0
+    }
+}
@@ -0,0 +1,185 @@
+package com.cooper.wheellog.simulator
+
+import kotlin.math.abs
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.roundToInt
+
+/**
+ * Scripted ride for the wheel simulator. The speed follows linear ramps between targets,
+ * current, voltage sag, PWM, temperature and battery follow from the speed with a simple wheel model.
+ * Times are ms from the start of the ride.
+ */
+class RideProfile {
+    class Segment(val duration: Long, val speed: Double)
+
+    private val segments = ArrayList<Segment>()
+
+    /** Pack voltage when full and when empty, V */
+    var fullVoltage = 84.0
+    var emptyVoltage = 66.0
+
+    /** Ah */
+    var capacity = 20.0
+
+    /** Ohm, the voltage sags by current * resistance */
+    var resistance = 0.12
+
+    /** Battery charge at the start, 0..1 */
+    var startCharge = 0.95
+
+    /** km/h the wheel reaches at 100% PWM on a full battery without load */
+    var topSpeed = 60.0
+
+    /** rider and wheel, kg */
+    var mass = 100.0
+
+    /** °C */
+    var ambientTemperature = 25.0
+
+    /** Odometer of the wheel at the start, m */
+    var totalDistance = 1_000_000L
+
+    val duration: Long
+        get() = segments.sumOf { it.duration }
+
+    /**
+     * Changes the speed linearly to [speed] km/h within [duration] ms.
+     */
+    fun ramp(duration: Long, speed: Double): RideProfile {
+        require(duration > 0) { "duration must be positive" }
+        segments.add(Segment(duration, speed))
+        return this
+    }
+
+    /**
+     * Keeps the current speed for [duration] ms.
+     */
+    fun hold(duration: Long): RideProfile {
+        return ramp(duration, segments.lastOrNull()?.speed ?: 0.0)
+    }
+
+    /**
+     * Speed in km/h at [time], the ride starts standing still.
+     */
+    fun speedAt(time: Long): Double {
+        var start = 0L
+        var startSpeed = 0.0
+        for (segment in segments) {
+            val end = start + segment.duration
+            if (time < end) {
+                val position = max(0L, time - start).toDouble() / segment.duration
+                return startSpeed + (segment.speed - startSpeed) * position
+            }
+            start = end
+            startSpeed = segment.speed
+        }
+        return startSpeed
+    }
+
+    fun start(): State {
+        return State(this)
+    }
+
+    /**
+     * Wheel state at [time], move it forward with [advance].
+     */
+    class State internal constructor(private val profile: RideProfile) {
+        var time = 0L
+            private set
+
+        /** km/h */
+        var speed = 0.0
+            private set
+
+        /** km/h per s */
+        var acceleration = 0.0
+            private set
+
+        /** V */
+        var voltage = profile.fullVoltage
+            private set
+
+        /** battery current, A, negative while braking */
+        var current = 0.0
+            private set
+
+        /** A */
+        var phaseCurrent = 0.0
+            private set
+
+        /** 0..100 */
+        var pwm = 0.0
+            private set
+
+        /** °C */
+        var temperature = profile.ambientTemperature
+            private set
+
+        /** since the start, m */
+        var distance = 0.0
+            private set
+
+        private var charge = profile.startCharge
+
+        init {
+            voltage = openVoltage()
+        }
+
+        val totalDistance: Long
+            get() = profile.totalDistance + distance.toLong()
+
+        /** 0..100 */
+        val battery: Int
+            get() = (charge * 100).roundToInt()
+
+        fun advance(time: Long) {
+            val dt = (time - this.time) / 1000.0
+            if (dt <= 0) {
+                return
+            }
+            val newSpeed = profile.speedAt(time)
+            acceleration = (newSpeed - speed) / dt
+            distance += (speed + newSpeed) / 2 / 3.6 * dt
+            speed = newSpeed
+            this.time = time
+
+            val metersPerSecond = speed / 3.6
+            // rolling and air resistance plus the power to accelerate, regenerates while braking
+            val power = ROLLING_POWER + 6 * speed + 0.18 * speed * speed +
+                    profile.mass * acceleration / 3.6 * metersPerSecond
+            current = power / voltage
+            charge = min(1.0, max(0.0, charge - current * dt / 3600 / profile.capacity))
+            voltage = openVoltage() - current * profile.resistance
+            pwm = min(100.0, (speed / (profile.topSpeed * voltage / profile.fullVoltage) + abs(current) * 0.002) * 100)
+            phaseCurrent = max(-MAX_PHASE_CURRENT, min(MAX_PHASE_CURRENT, current / max(pwm / 100, 0.05)))
+            temperature += (profile.ambientTemperature + 0.8 * abs(current) - temperature) * min(1.0, dt / 120)
+        }
+
+        private fun openVoltage(): Double {
+            return profile.emptyVoltage + (profile.fullVoltage - profile.emptyVoltage) * charge
+        }
+    }
+
+    companion object {
+        private const val ROLLING_POWER = 40.0 // W
+        private const val MAX_PHASE_CURRENT = 150.0
+
+        /**
+         * About ten minutes of stop and go: accelerations, cruising, hard braking and standing.
+         */
+        @JvmStatic
+        fun commute(): RideProfile {
+            val profile = RideProfile()
+            for (i in 0 until 5) {
+                profile.ramp(8_000, 25.0 + i * 5)
+                    .hold(60_000)
+                    .ramp(4_000, 12.0)
+                    .hold(20_000)
+                    .ramp(3_000, 0.0)
+                    .hold(15_000)
+            }
+            return profile
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.cooper.wheellog.simulator
+
+import com.cooper.wheellog.FrameRouter
+import com.cooper.wheellog.utils.ReplaySource
+import java.util.ArrayDeque
+import java.util.Random
+import java.util.UUID
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * Notifications of a simulated wheel riding [profile], a stand-in for the BLE connection.
+ * Replay it with ReplayEngine after setting the wheel type of WheelData to [WheelEncoder.wheelType],
+ * speed 0 stresses the decode pipeline as fast as it goes.
+ *
+ * Every tick the encoder frames the current state, the frames are split into notifications of
+ * [chunkSize] bytes, delayed by up to [jitter] ms and dropped with the probability [loss].
+ * The handshake is never dropped, the app would ask for it again.
+ * The same settings and [seed] give the same notifications.
+ */
+class SimulatedLink(
+    private val encoder: WheelEncoder,
+    private val profile: RideProfile
+) : ReplaySource {
+
+    private class Notification(val timestamp: Long, val data: ByteArray)
+
+    /** Ticks per second */
+    var rate = 20
+        set(value) {
+            require(value in 1..MAX_RATE) { "rate must be 1..$MAX_RATE" }
+            field = value
+        }
+
+    /** BLE payload per notification, 20 without a larger MTU. Kingsong frames need at least 20. */
+    var chunkSize = 20
+        set(value) {
+            require(value > 0) { "chunkSize must be positive" }
+            field = value
+        }
+
+    /** ms, notifications keep their order */
+    var jitter = 0
+
+    /** 0..1 */
+    var loss = 0.0
+
+    var seed = 0L
+
+    /** Wall clock time of the first notification */
+    var startTime = System.currentTimeMillis()
+
+    /** ms of riding, the whole profile by default */
+    var duration = profile.duration
+
+    var ticks = 0
+        private set
+    var sentNotifications = 0
+        private set
+    var lostNotifications = 0
+        private set
+
+    override var timestamp = 0L
+        private set
+
+    override val characteristic: UUID? = FrameRouter.readCharacteristic(encoder.wheelType)
+
+    override var data = ByteArray(0)
+        private set
+
+    private val queue = ArrayDeque<Notification>()
+    private val frames = ArrayList<ByteArray>()
+    private var random = Random(seed)
+    private var state: RideProfile.State? = null
+    private var lastTimestamp = 0L
+
+    override fun next(): Boolean {
+        while (queue.isEmpty()) {
+            val state = state ?: start()
+            val time = ticks * 1000L / rate
+            if (time > duration) {
+                return false
+            }
+            state.advance(time)
+            frames.clear()
+            encoder.live(state, ticks, frames)
+            send(startTime + HANDSHAKE_TIME + time, true)
+            ticks++
+        }
+        val notification = queue.poll()!!
+        timestamp = notification.timestamp
+        data = notification.data
+        sentNotifications++
+        return true
+    }
+
+    private fun start(): RideProfile.State {
+        random = Random(seed)
+        lastTimestamp = startTime
+        frames.clear()
+        encoder.handshake(frames)
+        send(startTime, false)
+        return profile.start().also { state = it }
+    }
+
+    private fun send(time: Long, lossy: Boolean) {
+        // handshake replies are separate writes, the text replies of Gotway can't share a notification
+        if (encoder.framePerNotification || !lossy) {
+            for (frame in frames) {
+                split(frame, time, lossy)
+            }
+            return
+        }
+        // one write of the wheel per tick
+        val stream = ByteArray(frames.sumOf { it.size })
+        var offset = 0
+        for (frame in frames) {
+            System.arraycopy(frame, 0, stream, offset, frame.size)
+            offset += frame.size
+        }
+        split(stream, time, true)
+    }
+
+    private fun split(bytes: ByteArray, time: Long, lossy: Boolean) {
+        var offset = 0
+        while (offset < bytes.size) {
+            val end = min(bytes.size, offset + chunkSize)
+            val chunk = bytes.copyOfRange(offset, end)
+            offset = end
+            if (lossy && loss > 0 && random.nextDouble() < loss) {
+                lostNotifications++
+                continue
+            }
+            val delay = if (jitter > 0) random.nextInt(jitter + 1) else 0
+            lastTimestamp = max(lastTimestamp, time + delay)
+            queue.add(Notification(lastTimestamp, chunk))
+        }
+    }
+
+    override fun close() {
+        queue.clear()
+    }
+
+    companion object {
+        const val MAX_RATE = 1000
+
+        /** ms between the handshake and the first tick */
+        private const val HANDSHAKE_TIME = 100L
+    }
+}
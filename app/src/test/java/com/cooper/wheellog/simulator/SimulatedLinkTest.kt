@@ -0,0 +1,179 @@
+package com.cooper.wheellog.simulator
+
+import android.content.Context
+import com.cooper.wheellog.AppConfig
+import com.cooper.wheellog.ReplayEngine
+import com.cooper.wheellog.WheelData
+import com.cooper.wheellog.WheelLog
+import com.cooper.wheellog.utils.*
+import com.cooper.wheellog.utils.Constants.WHEEL_TYPE
+import com.google.common.truth.Truth.assertThat
+import io.mockk.*
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+class SimulatedLinkTest {
+    private lateinit var data: WheelData
+    private lateinit var context: Context
+    private val start = 1638173646123L
+
+    @Before
+    fun setUp() {
+        mockkObject(WheelLog)
+        context = mockkClass(Context::class, relaxed = true)
+        every { WheelLog.appContext } returns context
+        val config = mockkClass(AppConfig::class, relaxed = true)
+        every { config.gotwayNegative } returns "1"
+        WheelLog.AppConfig = config
+        mockkStatic(WheelData::class)
+        every { WheelData.getInstance() } answers { data }
+        mockkConstructor(android.os.Handler::class)
+        every { anyConstructed<android.os.Handler>().postDelayed(any(), any()) } returns true
+        // a key left by other tests would break the handshake
+        NinebotZAdapter().resetConnection()
+    }
+
+    @After
+    fun tearDown() {
+        unmockkAll()
+    }
+
+    private fun newWheel(wheelType: WHEEL_TYPE) {
+        data = spyk(WheelData())
+        val adapter = spyk(when (wheelType) {
+            WHEEL_TYPE.GOTWAY -> GotwayAdapter()
+            WHEEL_TYPE.VETERAN -> VeteranAdapter()
+            WHEEL_TYPE.KINGSONG -> KingsongAdapter()
+            WHEEL_TYPE.INMOTION -> InMotionAdapter()
+            WHEEL_TYPE.INMOTION_V2 -> InmotionAdapterV2()
+            WHEEL_TYPE.NINEBOT -> NinebotAdapter()
+            else -> NinebotZAdapter()
+        })
+        every { adapter.isReady } returns false
+        every { data.adapter } returns adapter
+        data.wheelType = wheelType
+    }
+
+    private fun profile(): RideProfile {
+        return RideProfile().ramp(3_000, 20.0).hold(5_000)
+    }
+
+    private fun link(wheelType: WHEEL_TYPE): SimulatedLink {
+        return SimulatedLink(WheelEncoder.forType(wheelType), profile()).apply { startTime = start }
+    }
+
+    private fun ride(wheelType: WHEEL_TYPE): SimulatedLink {
+        newWheel(wheelType)
+        val link = link(wheelType)
+        val result = ReplayEngine(context).apply { speed = 0.0 }.replay(link)
+
+        assertThat(result.decodedFrames).isEqualTo(link.sentNotifications)
+        // a frame is lost now and then to the escaping of the InMotion unpackers
+        assertThat(result.samples).isAtLeast(link.ticks * 95 / 100)
+        assertThat(data.speedDouble).isWithin(0.1).of(20.0)
+        // 95% charged, sagging a little at 20 km/h
+        assertThat(data.voltageDouble).isWithin(0.5).of(82.8)
+        return link
+    }
+
+    @Test
+    fun `gotway stream decodes`() {
+        ride(WHEEL_TYPE.GOTWAY)
+        assertThat(data.model).isEqualTo("MSuperX")
+        assertThat(data.totalDistance).isAtLeast(1_000_000L)
+    }
+
+    @Test
+    fun `veteran stream decodes`() {
+        ride(WHEEL_TYPE.VETERAN)
+        assertThat(data.version).isEqualTo("001.0.51")
+        assertThat(data.totalDistance).isAtLeast(1_000_000L)
+    }
+
+    @Test
+    fun `kingsong stream decodes`() {
+        ride(WHEEL_TYPE.KINGSONG)
+        assertThat(data.name).isEqualTo("KS-S18-0205")
+        assertThat(data.totalDistance).isAtLeast(1_000_000L)
+    }
+
+    @Test
+    fun `inmotion stream decodes`() {
+        ride(WHEEL_TYPE.INMOTION)
+        assertThat(data.serial).isEqualTo("1234567890ABCDEF")
+    }
+
+    @Test
+    fun `inmotion v2 stream decodes`() {
+        ride(WHEEL_TYPE.INMOTION_V2)
+        assertThat(data.serial).isEqualTo("1480CA122207002B")
+        assertThat(data.model).isEqualTo("Inmotion V11")
+    }
+
+    @Test
+    fun `ninebot stream decodes`() {
+        ride(WHEEL_TYPE.NINEBOT)
+        assertThat(data.serial).isEqualTo("N2GWC1234C5678")
+    }
+
+    @Test
+    fun `ninebot z stream decodes with a key`() {
+        ride(WHEEL_TYPE.NINEBOT_Z)
+        assertThat(data.serial).isEqualTo("N3OTC2020T0001")
+        assertThat(data.totalDistance).isAtLeast(1_000_000L)
+    }
+
+    @Test
+    fun `lossy link is reproducible`() {
+        // Arrange.
+        val first = link(WHEEL_TYPE.GOTWAY).apply {
+            rate = 200
+            jitter = 3
+            loss = 0.05
+            seed = 42
+        }
+        val second = link(WHEEL_TYPE.GOTWAY).apply {
+            rate = 200
+            jitter = 3
+            loss = 0.05
+            seed = 42
+        }
+
+        // Act.
+        val firstNotifications = ArrayList<String>()
+        while (first.next()) {
+            firstNotifications.add("${first.timestamp} ${first.data.contentToString()}")
+        }
+        val secondNotifications = ArrayList<String>()
+        while (second.next()) {
+            secondNotifications.add("${second.timestamp} ${second.data.contentToString()}")
+        }
+
+        // Assert.
+        assertThat(first.ticks).isEqualTo(1601)
+        assertThat(first.lostNotifications).isGreaterThan(0)
+        assertThat(secondNotifications).isEqualTo(firstNotifications)
+        assertThat(firstNotifications.map { it.substringBefore(' ').toLong() }).isInOrder()
+    }
+
+    @Test
+    fun `gotway decodes through loss and jitter`() {
+        // Arrange.
+        newWheel(WHEEL_TYPE.GOTWAY)
+        val link = link(WHEEL_TYPE.GOTWAY).apply {
+            rate = 500
+            jitter = 2
+            loss = 0.02
+            seed = 7
+        }
+
+        // Act.
+        val result = ReplayEngine(context).apply { speed = 0.0 }.replay(link)
+
+        // Assert.
+        assertThat(result.samples).isLessThan(link.ticks)
+        assertThat(result.samples).isGreaterThan(link.ticks / 2)
+        assertThat(data.speedDouble).isWithin(0.1).of(20.0)
+    }
+}
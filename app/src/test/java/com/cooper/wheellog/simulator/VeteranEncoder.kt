@@ -0,0 +1,40 @@
+package com.cooper.wheellog.simulator
+
+import com.cooper.wheellog.utils.Constants.WHEEL_TYPE
+
+/**
+ * Veteran: one 36 byte frame per tick, the wheel sends no handshake.
+ */
+class VeteranEncoder : WheelEncoder(WHEEL_TYPE.VETERAN) {
+    /** 1051 is reported as 001.0.51 */
+    var firmware = 1051
+
+    override fun handshake(frames: MutableList<ByteArray>) {
+    }
+
+    override fun live(state: RideProfile.State, tick: Int, frames: MutableList<ByteArray>) {
+        val frame = ByteArray(36)
+        frame[0] = 0xDC.toByte()
+        frame[1] = 0x5A
+        frame[2] = 0x5C
+        frame[3] = (frame.size - 4).toByte()
+        frame.shortBE(4, scaled(state.voltage, 100))
+        frame.shortBE(6, scaled(state.speed, 10))
+        frame.intRevBE(8, state.distance.toInt())
+        frame.intRevBE(12, state.totalDistance.toInt())
+        frame.shortBE(16, scaled(state.phaseCurrent, 10))
+        frame.shortBE(18, scaled(state.temperature, 100))
+        frame.shortBE(20, 3600) // auto off, s
+        frame.shortBE(24, 2800) // speed alert
+        frame.shortBE(26, 2800) // tiltback
+        frame.shortBE(28, firmware)
+        frame.shortBE(34, scaled(state.pwm, 100))
+        frames.add(frame)
+    }
+
+    // words swapped, see MathsUtil.intFromBytesRevBE
+    private fun ByteArray.intRevBE(offset: Int, value: Int) {
+        shortBE(offset, value)
+        shortBE(offset + 2, value shr 16)
+    }
+}
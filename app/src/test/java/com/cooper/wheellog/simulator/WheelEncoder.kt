@@ -0,0 +1,75 @@
+package com.cooper.wheellog.simulator
+
+import com.cooper.wheellog.utils.Constants.WHEEL_TYPE
+import kotlin.math.roundToInt
+
+/**
+ * Encodes the simulated wheel state into frames of one protocol, the way the wheel sends them.
+ * Frames are complete and unchunked, [SimulatedLink] splits them into notifications.
+ */
+abstract class WheelEncoder(val wheelType: WHEEL_TYPE) {
+
+    /**
+     * True if every frame has to arrive in its own notification, the decoder does not reassemble them.
+     */
+    open val framePerNotification = false
+
+    /**
+     * Frames the wheel sends while the app connects: name, serial, version, encryption key.
+     */
+    abstract fun handshake(frames: MutableList<ByteArray>)
+
+    /**
+     * Frames for one tick of [state]. [tick] counts from 0, slow data is sent every [SLOW_TICKS] ticks.
+     */
+    abstract fun live(state: RideProfile.State, tick: Int, frames: MutableList<ByteArray>)
+
+    protected fun ByteArray.shortBE(offset: Int, value: Int) {
+        this[offset] = (value shr 8).toByte()
+        this[offset + 1] = value.toByte()
+    }
+
+    protected fun ByteArray.shortLE(offset: Int, value: Int) {
+        this[offset] = value.toByte()
+        this[offset + 1] = (value shr 8).toByte()
+    }
+
+    protected fun ByteArray.intBE(offset: Int, value: Int) {
+        shortBE(offset, value shr 16)
+        shortBE(offset + 2, value)
+    }
+
+    protected fun ByteArray.intLE(offset: Int, value: Int) {
+        shortLE(offset, value)
+        shortLE(offset + 2, value shr 16)
+    }
+
+    protected fun ByteArray.ascii(offset: Int, text: String) {
+        for (i in text.indices) {
+            this[offset + i] = text[i].code.toByte()
+        }
+    }
+
+    /** [value] * [scale] rounded */
+    protected fun scaled(value: Double, scale: Int): Int {
+        return (value * scale).roundToInt()
+    }
+
+    companion object {
+        const val SLOW_TICKS = 10
+
+        @JvmStatic
+        fun forType(wheelType: WHEEL_TYPE): WheelEncoder {
+            return when (wheelType) {
+                WHEEL_TYPE.GOTWAY -> GotwayEncoder()
+                WHEEL_TYPE.VETERAN -> VeteranEncoder()
+                WHEEL_TYPE.KINGSONG -> KingsongEncoder()
+                WHEEL_TYPE.INMOTION -> InMotionEncoder()
+                WHEEL_TYPE.INMOTION_V2 -> InmotionV2Encoder()
+                WHEEL_TYPE.NINEBOT -> NinebotEncoder()
+                WHEEL_TYPE.NINEBOT_Z -> NinebotZEncoder()
+                else -> throw IllegalArgumentException("No simulator for $wheelType")
+            }
+        }
+    }
+}
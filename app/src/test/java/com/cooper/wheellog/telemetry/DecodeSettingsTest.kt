@@ -0,0 +1,92 @@
+package com.cooper.wheellog.telemetry
+
+import com.cooper.wheellog.AppConfig
+import com.cooper.wheellog.WheelLog
+import com.google.common.truth.Truth.assertThat
+import io.mockk.*
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+class DecodeSettingsTest {
+
+    private lateinit var config: AppConfig
+
+    @Before
+    fun setUp() {
+        mockkObject(WheelLog)
+        config = mockkClass(AppConfig::class, relaxed = true)
+        WheelLog.AppConfig = config
+        DecodeSettings.invalidate()
+    }
+
+    @After
+    fun tearDown() {
+        unmockkAll()
+    }
+
+    @Test
+    fun `gotway voltage is compiled into scaler and cells`() {
+        // Arrange.
+        every { config.gotwayVoltage } returns "3"
+        every { config.gotwayNegative } returns "-1"
+
+        // Act.
+        val settings = DecodeSettings.current
+
+        // Assert.
+        assertThat(settings.gotwayVoltageScaler).isWithin(1e-9).of(1.738095238)
+        assertThat(settings.gotwayCells).isEqualTo(24)
+        assertThat(settings.gotwayNegative).isEqualTo(-1)
+    }
+
+    @Test
+    fun `empty preferences fall back to defaults`() {
+        // Act.
+        val settings = DecodeSettings.current
+
+        // Assert.
+        assertThat(settings.gotwayVoltageScaler).isEqualTo(1.0)
+        assertThat(settings.gotwayCells).isEqualTo(24)
+        assertThat(settings.gotwayNegative).isEqualTo(0)
+    }
+
+    @Test
+    fun `snapshot is cached until invalidated`() {
+        // Arrange.
+        every { config.useRatio } returns false
+        val first = DecodeSettings.current
+        every { config.useRatio } returns true
+
+        // Act.
+        val cached = DecodeSettings.current
+        DecodeSettings.invalidate()
+        val rebuilt = DecodeSettings.current
+
+        // Assert.
+        assertThat(cached).isSameInstanceAs(first)
+        assertThat(rebuilt.useRatio).isTrue()
+        verify(exactly = 2) { config.useRatio }
+    }
+
+    @Test
+    fun `change while building is not cached`() {
+        // Arrange.
+        var enabled = false
+        every { config.useRatio } answers {
+            // the preference changes after it was read
+            val value = enabled
+            enabled = true
+            DecodeSettings.invalidate()
+            value
+        }
+
+        // Act.
+        val outdated = DecodeSettings.current
+        val rebuilt = DecodeSettings.current
+
+        // Assert.
+        assertThat(outdated.useRatio).isFalse()
+        assertThat(rebuilt.useRatio).isTrue()
+    }
+}
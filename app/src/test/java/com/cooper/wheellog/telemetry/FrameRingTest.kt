@@ -0,0 +1,83 @@
+package com.cooper.wheellog.telemetry
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import java.util.UUID
+
+class FrameRingTest {
+
+    private val uuid = UUID.fromString("0000ffe1-0000-1000-8000-00805f9b34fb")
+
+    private fun FrameRing.drainToList(): List<ByteArray> {
+        val result = mutableListOf<ByteArray>()
+        drain { buffer, length, _, _ -> result.add(buffer.copyOf(length)) }
+        return result
+    }
+
+    @Test
+    fun `frames are drained in order`() {
+        // Arrange.
+        val ring = FrameRing(4)
+
+        // Act.
+        ring.offer(byteArrayOf(1, 2), uuid, 1)
+        ring.offer(byteArrayOf(3), uuid, 2)
+        val frames = ring.drainToList()
+
+        // Assert.
+        assertThat(frames).hasSize(2)
+        assertThat(frames[0]).isEqualTo(byteArrayOf(1, 2))
+        assertThat(frames[1]).isEqualTo(byteArrayOf(3))
+        assertThat(ring.isEmpty).isTrue()
+    }
+
+    @Test
+    fun `full ring drops new frames`() {
+        // Arrange.
+        val ring = FrameRing(2)
+        ring.offer(byteArrayOf(1), uuid, 1)
+        ring.offer(byteArrayOf(2), uuid, 2)
+
+        // Act.
+        val accepted = ring.offer(byteArrayOf(3), uuid, 3)
+
+        // Assert.
+        assertThat(accepted).isFalse()
+        assertThat(ring.dropped).isEqualTo(1)
+        assertThat(ring.drainToList().map { it[0] }).containsExactly(1.toByte(), 2.toByte()).inOrder()
+    }
+
+    @Test
+    fun `slots are reused after wrap around`() {
+        // Arrange.
+        val ring = FrameRing(2)
+        val received = mutableListOf<Byte>()
+
+        // Act.
+        for (i in 0 until 10) {
+            ring.offer(byteArrayOf(i.toByte(), 0, 0), uuid, i.toLong())
+            ring.drain { buffer, length, characteristic, _ ->
+                assertThat(length).isEqualTo(3)
+                assertThat(characteristic).isEqualTo(uuid)
+                received.add(buffer[0])
+            }
+        }
+
+        // Assert.
+        assertThat(received).containsExactlyElementsIn((0 until 10).map { it.toByte() }).inOrder()
+        assertThat(ring.dropped).isEqualTo(0)
+    }
+
+    @Test
+    fun `too big frame is dropped`() {
+        // Arrange.
+        val ring = FrameRing()
+
+        // Act.
+        val accepted = ring.offer(ByteArray(FrameRing.MAX_FRAME_SIZE + 1), uuid, 0)
+
+        // Assert.
+        assertThat(accepted).isFalse()
+        assertThat(ring.isEmpty).isTrue()
+    }
+}
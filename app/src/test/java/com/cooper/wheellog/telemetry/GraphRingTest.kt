@@ -0,0 +1,81 @@
+package com.cooper.wheellog.telemetry
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+
+class GraphRingTest {
+
+    private fun GraphRing.speeds(): List<Float> {
+        val end = end
+        return (first(end) until end).map { speed(it) }
+    }
+
+    @Test
+    fun `points are read in order`() {
+        // Arrange.
+        val ring = GraphRing(4)
+
+        // Act.
+        ring.add(1000L, 10f, 1f)
+        ring.add(2000L, 20f, 2f)
+        val end = ring.end
+        val first = ring.first(end)
+
+        // Assert.
+        assertThat(end - first).isEqualTo(2)
+        assertThat(ring.time(first)).isEqualTo(1000L)
+        assertThat(ring.speed(first + 1)).isEqualTo(20f)
+        assertThat(ring.current(first + 1)).isEqualTo(2f)
+    }
+
+    @Test
+    fun `only the last maxPoints are visible`() {
+        // Arrange.
+        val ring = GraphRing(3)
+
+        // Act.
+        for (i in 0 until 3 + GraphRing.SLACK + 5) {
+            ring.add(i * 1000L, i.toFloat(), 0f)
+        }
+
+        // Assert.
+        val last = (3 + GraphRing.SLACK + 4).toFloat()
+        assertThat(ring.speeds()).containsExactly(last - 2, last - 1, last).inOrder()
+    }
+
+    @Test
+    fun `range taken before an append stays valid`() {
+        // Arrange.
+        val ring = GraphRing(3)
+        for (i in 0 until 3) {
+            ring.add(i * 1000L, i.toFloat(), 0f)
+        }
+        val end = ring.end
+        val first = ring.first(end)
+
+        // Act.
+        for (i in 3 until 3 + GraphRing.SLACK) {
+            ring.add(i * 1000L, i.toFloat(), 0f)
+        }
+
+        // Assert.
+        assertThat((first until end).map { ring.speed(it) }).containsExactly(0f, 1f, 2f).inOrder()
+    }
+
+    @Test
+    fun `clear hides earlier points`() {
+        // Arrange.
+        val ring = GraphRing(10)
+        ring.add(1000L, 1f, 0f)
+        ring.add(2000L, 2f, 0f)
+
+        // Act.
+        ring.clear()
+        val cleared = ring.speeds()
+        ring.add(3000L, 3f, 0f)
+
+        // Assert.
+        assertThat(cleared).isEmpty()
+        assertThat(ring.speeds()).containsExactly(3f)
+    }
+}
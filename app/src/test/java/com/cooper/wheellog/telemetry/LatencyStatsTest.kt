@@ -0,0 +1,101 @@
+package com.cooper.wheellog.telemetry
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Test
+
+class LatencyStatsTest {
+    private val ms = 1_000_000L
+
+    @Before
+    fun setUp() {
+        LatencyStats.adapter = "NINEBOT_Z"
+        LatencyStats.clear()
+    }
+
+    @Test
+    fun `latencies go to fixed buckets`() {
+        // Arrange.
+        val received = 10_000 * ms
+
+        // Act.
+        LatencyStats.record(LatencyStats.DECODE, received, received + 100_000)
+        LatencyStats.record(LatencyStats.DECODE, received, received + 3 * ms)
+        LatencyStats.record(LatencyStats.DECODE, received, received + 3 * ms)
+        LatencyStats.record(LatencyStats.DECODE, received, received + 2_000 * ms)
+
+        // Assert.
+        val histogram = LatencyStats.histogram("NINEBOT_Z", LatencyStats.DECODE)!!
+        assertThat(histogram.count).isEqualTo(4)
+        assertThat(histogram.counts[0]).isEqualTo(1)
+        assertThat(histogram.counts[4]).isEqualTo(2)
+        assertThat(histogram.counts[LatencyStats.BOUNDS.size]).isEqualTo(1)
+        assertThat(histogram.max).isEqualTo(2_000_000)
+        assertThat(histogram.percentile(50)).isEqualTo(5_000)
+        assertThat(histogram.percentile(99)).isEqualTo(-1)
+        assertThat(LatencyStats.histogram("NINEBOT_Z", LatencyStats.DRAW)!!.count).isEqualTo(0)
+    }
+
+    @Test
+    fun `stats are kept per adapter`() {
+        // Act.
+        LatencyStats.record(LatencyStats.ALARM, ms, 2 * ms)
+        LatencyStats.adapter = "GOTWAY"
+        LatencyStats.record(LatencyStats.ALARM, ms, 3 * ms)
+        LatencyStats.record(LatencyStats.ALARM, ms, 3 * ms)
+
+        // Assert.
+        assertThat(LatencyStats.histogram("NINEBOT_Z", LatencyStats.ALARM)!!.count).isEqualTo(1)
+        assertThat(LatencyStats.histogram("GOTWAY", LatencyStats.ALARM)!!.count).isEqualTo(2)
+        assertThat(LatencyStats.histogram("KINGSONG", LatencyStats.ALARM)).isNull()
+    }
+
+    @Test
+    fun `frames without arrival time are not counted`() {
+        // Act.
+        LatencyStats.record(LatencyStats.DECODE, 0, 5 * ms)
+        LatencyStats.record(LatencyStats.DECODE, TelemetrySample.EMPTY)
+
+        // Assert.
+        assertThat(LatencyStats.histogram("NINEBOT_Z", LatencyStats.DECODE)!!.count).isEqualTo(0)
+        assertThat(LatencyStats.dump()).isEqualTo("No latency data\n")
+    }
+
+    @Test
+    fun `arrival time is taken once`() {
+        // Act.
+        LatencyStats.frameReceived(42 * ms)
+        val first = LatencyStats.takeFrameReceived()
+        val second = LatencyStats.takeFrameReceived()
+
+        // Assert.
+        assertThat(first).isEqualTo(42 * ms)
+        assertThat(second).isEqualTo(0)
+    }
+
+    @Test
+    fun `dump lists stages with frames`() {
+        // Arrange.
+        LatencyStats.record(LatencyStats.DRAW, ms, 9 * ms)
+
+        // Act.
+        val dump = LatencyStats.dump()
+
+        // Assert.
+        assertThat(dump).isEqualTo(
+            "NINEBOT_Z draw: 1 frames, avg 8.00 ms, p50 ≤10.00 ms, p95 ≤10.00 ms, p99 ≤10.00 ms, max 8.00 ms\n" +
+                " ≤10.00 ms: 1\n")
+    }
+
+    @Test
+    fun `alarm sound latency is listed as audible`() {
+        // Arrange.
+        LatencyStats.record(LatencyStats.AUDIBLE, ms, 31 * ms)
+
+        // Act.
+        val dump = LatencyStats.dump()
+
+        // Assert.
+        assertThat(dump).startsWith("NINEBOT_Z audible: 1 frames, avg 30.00 ms")
+    }
+}
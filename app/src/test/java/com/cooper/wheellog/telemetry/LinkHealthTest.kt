@@ -0,0 +1,132 @@
+package com.cooper.wheellog.telemetry
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Test
+
+class LinkHealthTest {
+    private val stallTime = 750L
+
+    @Before
+    fun setUp() {
+        LinkHealth.clear()
+    }
+
+    /** Notifications of 20 bytes every [gap] ms, returns the time of the last one. */
+    private fun frames(start: Long, gap: Long, count: Int): Long {
+        for (i in 0 until count) {
+            LinkHealth.frame(start + i * gap, 20)
+        }
+        return start + (count - 1) * gap
+    }
+
+    @Test
+    fun `link stalls after the stall time without notifications`() {
+        // Arrange.
+        val last = frames(1000, 50, 30)
+
+        // Act.
+        val early = LinkHealth.check(last + 700, stallTime, 0, 0, 0)
+        val stalled = LinkHealth.check(last + 800, stallTime, 0, 0, 0)
+        val again = LinkHealth.check(last + 900, stallTime, 0, 0, 0)
+
+        // Assert.
+        assertThat(early).isEqualTo(LinkHealth.OK)
+        assertThat(stalled).isEqualTo(LinkHealth.STALLED)
+        assertThat(again).isEqualTo(LinkHealth.OK)
+        assertThat(LinkHealth.gaps()[2]).isEqualTo(29)
+    }
+
+    @Test
+    fun `slow wheels get a longer stall time`() {
+        // Arrange.
+        val last = frames(1000, 400, 40)
+
+        // Act.
+        val threshold = LinkHealth.stallThreshold(stallTime)
+        val early = LinkHealth.check(last + 1500, stallTime, 0, 0, 0)
+        val stalled = LinkHealth.check(last + 2100, stallTime, 0, 0, 0)
+
+        // Assert.
+        assertThat(threshold).isEqualTo(LinkHealth.STALL_GAPS * 500L)
+        assertThat(early).isEqualTo(LinkHealth.OK)
+        assertThat(stalled).isEqualTo(LinkHealth.STALLED)
+    }
+
+    @Test
+    fun `polled wheels stall after missed requests`() {
+        // Arrange.
+        val last = frames(1000, 200, 30)
+
+        // Act.
+        val threshold = LinkHealth.stallThreshold(stallTime, 1000)
+        val missed = LinkHealth.check(last + 2000, stallTime, 1000, 0, 0)
+        val stalled = LinkHealth.check(last + 4100, stallTime, 1000, 0, 0)
+
+        // Assert.
+        assertThat(threshold).isEqualTo(LinkHealth.STALL_REQUESTS * 1000L)
+        assertThat(missed).isEqualTo(LinkHealth.OK)
+        assertThat(stalled).isEqualTo(LinkHealth.STALLED)
+    }
+
+    @Test
+    fun `learned gap follows the link`() {
+        // Arrange.
+        val slow = frames(1000, 400, 100)
+        val learned = LinkHealth.stallThreshold(stallTime)
+
+        // Act.
+        frames(slow + 50, 50, 600)
+        val threshold = LinkHealth.stallThreshold(stallTime)
+
+        // Assert.
+        assertThat(learned).isEqualTo(LinkHealth.STALL_GAPS * 500L)
+        assertThat(threshold).isEqualTo(stallTime)
+    }
+
+    @Test
+    fun `lost bytes make the link lossy`() {
+        // Arrange.
+        LinkHealth.frame(1000, 100)
+        LinkHealth.lost(100)
+        LinkHealth.frame(1000 + LinkHealth.WINDOW, 100)
+
+        // Act.
+        val ignored = LinkHealth.check(1000 + LinkHealth.WINDOW, stallTime, 0, 0, 0)
+        val lossy = LinkHealth.check(1000 + LinkHealth.WINDOW, stallTime, 0, 30, 0)
+
+        // Assert.
+        assertThat(ignored).isEqualTo(LinkHealth.OK)
+        assertThat(lossy).isEqualTo(LinkHealth.LOSSY)
+    }
+
+    @Test
+    fun `notifications without live data make the link silent`() {
+        // Arrange.
+        val last = frames(1000, 50, 400)
+
+        // Act.
+        val alive = LinkHealth.check(last, stallTime, 0, 0, 100)
+        val dump = LinkHealth.dump()
+        val silent = LinkHealth.check(last, stallTime, 0, 0, Long.MAX_VALUE)
+
+        // Assert.
+        assertThat(alive).isEqualTo(LinkHealth.OK)
+        assertThat(silent).isEqualTo(LinkHealth.SILENT)
+        assertThat(dump).isEqualTo("Link: 400 frames, 8000 bytes, 0 lost, 20.0/s, 0.0% lost, rssi 0 dBm, " +
+            "reconnects stalled 0, lossy 0, silent 0\n ≤50 ms: 399\n")
+    }
+
+    @Test
+    fun `gap between connections is not counted`() {
+        // Act.
+        LinkHealth.frame(1000, 20)
+        LinkHealth.connected()
+        LinkHealth.frame(60_000, 20)
+        val result = LinkHealth.check(60_100, stallTime, 0, 0, 0)
+
+        // Assert.
+        assertThat(LinkHealth.gaps().sum()).isEqualTo(0)
+        assertThat(result).isEqualTo(LinkHealth.OK)
+    }
+}
@@ -0,0 +1,95 @@
+package com.cooper.wheellog.telemetry
+
+import android.content.Context
+import com.cooper.wheellog.AppConfig
+import com.cooper.wheellog.WheelLog
+import com.google.common.truth.Truth.assertThat
+import io.mockk.*
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+class TelemetryBusTest {
+
+    private val received = mutableListOf<TelemetrySample>()
+    private val listener = TelemetryListener { received.add(it) }
+
+    @Before
+    fun setUp() {
+        mockkObject(WheelLog)
+        WheelLog.AppConfig = mockkClass(AppConfig::class, relaxed = true)
+    }
+
+    @After
+    fun tearDown() {
+        TelemetryBus.unsubscribe(listener)
+        unmockkAll()
+    }
+
+    @Test
+    fun `subscriber receives published samples`() {
+        // Arrange.
+        TelemetryBus.subscribe(listener)
+        val sample = TelemetrySample.EMPTY.copy(timestamp = 1000, speed = 2500)
+
+        // Act.
+        TelemetryBus.publish(sample)
+
+        // Assert.
+        assertThat(received).containsExactly(sample)
+    }
+
+    @Test
+    fun `double subscribe delivers once`() {
+        // Arrange.
+        TelemetryBus.subscribe(listener)
+        TelemetryBus.subscribe(listener)
+
+        // Act.
+        TelemetryBus.publish(TelemetrySample.EMPTY)
+
+        // Assert.
+        assertThat(received).hasSize(1)
+    }
+
+    @Test
+    fun `unsubscribed listener is not called`() {
+        // Arrange.
+        TelemetryBus.subscribe(listener)
+        TelemetryBus.unsubscribe(listener)
+
+        // Act.
+        TelemetryBus.publish(TelemetrySample.EMPTY)
+
+        // Assert.
+        assertThat(received).isEmpty()
+    }
+
+    @Test
+    fun `failing listener does not break others`() {
+        // Arrange.
+        val failing = TelemetryListener { throw IllegalStateException() }
+        TelemetryBus.subscribe(failing)
+        TelemetryBus.subscribe(listener)
+
+        // Act.
+        TelemetryBus.publish(TelemetrySample.EMPTY)
+        TelemetryBus.unsubscribe(failing)
+
+        // Assert.
+        assertThat(received).hasSize(1)
+    }
+
+    @Test
+    fun `legacy broadcast is not sent when disabled`() {
+        // Arrange.
+        every { WheelLog.AppConfig.legacyDataBroadcast } returns false
+        val context = mockkClass(Context::class, relaxed = true)
+
+        // Act.
+        TelemetryBus.sendLegacyBroadcast(context, TelemetrySample.EMPTY.copy(graphUpdate = true))
+
+        // Assert.
+        verify(exactly = 0) { context.sendBroadcast(any()) }
+    }
+}
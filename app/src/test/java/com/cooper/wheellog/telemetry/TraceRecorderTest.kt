@@ -0,0 +1,61 @@
+package com.cooper.wheellog.telemetry
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+class TraceRecorderTest {
+
+    @Before
+    fun setUp() {
+        TraceRecorder.clear()
+    }
+
+    @After
+    fun tearDown() {
+        TraceRecorder.clear()
+    }
+
+    @Test
+    fun `events are formatted on dump`() {
+        // Arrange.
+        val frame = byteArrayOf(0x55, 0xAA.toByte(), 0x01, 0x02)
+
+        // Act.
+        TraceRecorder.recordBytes("Gotway", TraceRecorder.FRAME, frame, frame.size)
+        TraceRecorder.record("Gotway", TraceRecorder.VERIFY_FAIL, 0x1A, 0x2B)
+        val lines = TraceRecorder.dump().lines().filter { it.isNotEmpty() }
+
+        // Assert.
+        assertThat(lines).hasSize(2)
+        assertThat(lines[0]).endsWith("Gotway frame [55aa0102]")
+        assertThat(lines[1]).endsWith("Gotway check FALSE, calc: 1A, packet: 2B")
+    }
+
+    @Test
+    fun `ring keeps only last events`() {
+        // Act.
+        for (i in 0 until TraceRecorder.CAPACITY + 10) {
+            TraceRecorder.record("test", TraceRecorder.STATE, i, 0)
+        }
+        val lines = TraceRecorder.dump().lines().filter { it.isNotEmpty() }
+
+        // Assert.
+        assertThat(lines).hasSize(TraceRecorder.CAPACITY)
+        assertThat(lines.first()).endsWith("state 10, size 0")
+        assertThat(lines.last()).endsWith("state ${TraceRecorder.CAPACITY + 9}, size 0")
+    }
+
+    @Test
+    fun `long payload is truncated`() {
+        // Arrange.
+        val frame = ByteArray(TraceRecorder.MAX_PAYLOAD + 36)
+
+        // Act.
+        TraceRecorder.recordBytes("test", TraceRecorder.PAYLOAD, frame, frame.size)
+
+        // Assert.
+        assertThat(TraceRecorder.dump()).contains("(100 bytes)")
+    }
+}
@@ -0,0 +1,107 @@
+package com.cooper.wheellog.utils
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+
+class AdaptivePollerTest {
+    private val live = 0xB0
+    private val serial = 0x10
+    private val poller = AdaptivePoller("test", 5, live)
+
+    /** One request of [type] answered after [roundTrip] ms, requests are 125 ms apart at full rate. */
+    private fun exchange(type: Int, time: Long, roundTrip: Long = 20) {
+        poller.sent(type, time)
+        poller.answered(type, time + roundTrip)
+    }
+
+    @Test
+    fun `handshake is polled fast while parked`() {
+        // Act.
+        exchange(serial, 0)
+        poller.update(0.0)
+
+        // Assert.
+        assertThat(poller.period).isEqualTo(TickScheduler.QUANTUM)
+        assertThat(poller.interval).isEqualTo(125)
+    }
+
+    @Test
+    fun `parked wheel is polled slowly`() {
+        // Arrange.
+        exchange(live, 0)
+
+        // Act.
+        poller.update(0.0)
+        val parked = poller.rate
+        poller.update(25.0)
+        val riding = poller.rate
+
+        // Assert.
+        assertThat(parked).isWithin(0.01).of(2.0)
+        assertThat(riding).isWithin(0.01).of(8.0)
+    }
+
+    @Test
+    fun `missed replies back off until replies are timely again`() {
+        // Arrange.
+        exchange(live, 0)
+
+        // Act.
+        for (i in 1..3) {
+            poller.sent(live, i * 125L)
+        }
+        poller.update(25.0)
+        val congested = poller.period
+        poller.answered(live, 400)
+        var time = 1000L
+        repeat(AdaptivePoller.RECOVERY * 2) {
+            exchange(live, time)
+            time += poller.interval
+        }
+        poller.update(25.0)
+
+        // Assert.
+        assertThat(poller.stats(live)!!.missed).isEqualTo(2)
+        assertThat(congested).isEqualTo(4 * TickScheduler.QUANTUM)
+        assertThat(poller.period).isEqualTo(TickScheduler.QUANTUM)
+    }
+
+    @Test
+    fun `slow replies back off`() {
+        // Act.
+        exchange(live, 0, roundTrip = 300)
+        poller.update(25.0)
+
+        // Assert.
+        assertThat(poller.period).isEqualTo(2 * TickScheduler.QUANTUM)
+        assertThat(poller.stats(live)!!.roundTrip).isEqualTo(300)
+    }
+
+    @Test
+    fun `period is limited`() {
+        // Act.
+        for (i in 0..20) {
+            poller.sent(live, i * 125L)
+        }
+        poller.update(0.0)
+
+        // Assert.
+        assertThat(poller.period).isEqualTo(AdaptivePoller.MAX_PERIOD)
+    }
+
+    @Test
+    fun `round trips are kept per request type`() {
+        // Act.
+        exchange(serial, 0, roundTrip = 40)
+        exchange(live, 100, roundTrip = 10)
+        exchange(live, 200, roundTrip = 30)
+        poller.answered(0x55, 300)
+
+        // Assert.
+        assertThat(poller.stats(serial)!!.roundTrip).isEqualTo(40)
+        assertThat(poller.stats(live)!!.roundTrip).isEqualTo(15)
+        assertThat(poller.stats(live)!!.answered).isEqualTo(2)
+        assertThat(poller.stats(0x55)).isNull()
+        assertThat(poller.toString()).contains("B0 rtt 15 ms, missed 0 of 2")
+    }
+}
@@ -0,0 +1,123 @@
+package com.cooper.wheellog.utils
+
+import com.cooper.wheellog.telemetry.TelemetrySample
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+
+class AlarmRulesTest {
+    private val start = 1638173646123L
+
+    private fun sample(time: Long, temperature2: Int = 40, current: Int = 1000, voltage: Int = 8400) =
+        TelemetrySample.EMPTY.copy(
+            timestamp = start + time,
+            temperature2 = temperature2,
+            current = current,
+            voltage = voltage
+        )
+
+    @Test
+    fun `rule is parsed with options`() {
+        // Act.
+        val rule = AlarmRule.parse("Temperature2 > 70 and (current >= 40 or pwm > 80) for 2s hysteresis 5 cooldown 500ms")
+
+        // Assert.
+        assertThat(rule.hold).isEqualTo(2000)
+        assertThat(rule.hysteresis).isEqualTo(5.0)
+        assertThat(rule.coolDown).isEqualTo(500)
+        assertThat(rule.fields).containsExactly(AlarmField.TEMPERATURE2, AlarmField.CURRENT, AlarmField.PWM)
+    }
+
+    @Test
+    fun `invalid lines are reported`() {
+        // Act.
+        val errors = AlarmRules.errors("# comment\nspeed > 30\n\nspeed = 30\nvoltage > 60 for\nfoo < 1")
+
+        // Assert.
+        assertThat(errors.map { it.first }).containsExactly(4, 5, 6).inOrder()
+        assertThat(errors[0].second).isEqualTo("Unexpected \"= 30\"")
+        assertThat(errors[2].second).isEqualTo("Unknown field \"foo\"")
+        assertThat(AlarmRules.compile("speed = 30\nspeed > 30").rules).hasLength(1)
+    }
+
+    @Test
+    fun `rule is raised after holding`() {
+        // Arrange.
+        val rules = AlarmRules.compile("temperature2 > 70 and current > 40 for 2s")
+
+        // Act.
+        val raised = listOf(
+            rules.check(sample(0, temperature2 = 71, current = 4100), null, null),
+            rules.check(sample(1000, temperature2 = 72, current = 4500), null, null),
+            rules.check(sample(1500, temperature2 = 72, current = 3000), null, null),
+            rules.check(sample(2000, temperature2 = 72, current = 4500), null, null),
+            rules.check(sample(3999, temperature2 = 72, current = 4500), null, null),
+            rules.check(sample(4000, temperature2 = 72, current = 4500), null, null),
+            rules.check(sample(4200, temperature2 = 72, current = 4500), null, null)
+        )
+
+        // Assert.
+        assertThat(raised).containsExactly(0, 0, 0, 0, 0, 1, 0).inOrder()
+        assertThat(rules.activeCount).isEqualTo(1)
+    }
+
+    @Test
+    fun `hysteresis and cool down keep the alarm from flapping`() {
+        // Arrange.
+        val rules = AlarmRules.compile("temperature2 >= 70 hysteresis 3 cooldown 10s\ntemperature2 > 80")
+
+        // Act.
+        val raised = listOf(
+            rules.check(sample(0, temperature2 = 70), null, null),
+            rules.check(sample(200, temperature2 = 68), null, null),
+            rules.check(sample(400, temperature2 = 66), null, null),
+            rules.check(sample(600, temperature2 = 71), null, null),
+            rules.check(sample(10_000, temperature2 = 60), null, null),
+            rules.check(sample(10_200, temperature2 = 70), null, null)
+        )
+
+        // Assert.
+        assertThat(raised).containsExactly(1, 0, 0, 0, 0, 1).inOrder()
+        assertThat(rules.raised[0]).isEqualTo(0)
+    }
+
+    @Test
+    fun `active rule is raised again after the cool down`() {
+        // Arrange.
+        val rules = AlarmRules.compile("temperature2 > 70 cooldown 2s\ntemperature2 > 75")
+
+        // Act.
+        val raised = listOf(0L, 1000L, 2000L, 3000L, 4000L, 4999L, 5000L).map {
+            rules.check(sample(it, temperature2 = 80), null, null)
+        }
+
+        // Assert.
+        // the rule without cool-down repeats every REPEAT_PERIOD
+        assertThat(raised).containsExactly(2, 0, 1, 0, 1, 0, 1).inOrder()
+        assertThat(rules.raised[0]).isEqualTo(1)
+    }
+
+    @Test
+    fun `derived fields are computed`() {
+        // Arrange.
+        val rules = AlarmRules.compile("sag > 5\ncell_diff > 0.05 and min_cell < 3.5")
+        val bms1 = SmartBms().apply {
+            minCell = 3.6
+            cellDiff = 0.02
+        }
+        val bms2 = SmartBms().apply {
+            minCell = 3.45
+            cellDiff = 0.08
+        }
+
+        // Act.
+        val resting = rules.check(sample(0, current = 50, voltage = 8400), null, null)
+        val loaded = rules.check(sample(200, current = 4000, voltage = 7800), bms1, bms2)
+
+        // Assert.
+        assertThat(resting).isEqualTo(0)
+        assertThat(loaded).isEqualTo(2)
+        assertThat(rules.sag).isWithin(1e-9).of(6.0)
+        assertThat(rules.cellDiff).isWithin(1e-9).of(0.08)
+        assertThat(rules.minCell).isWithin(1e-9).of(3.45)
+    }
+}
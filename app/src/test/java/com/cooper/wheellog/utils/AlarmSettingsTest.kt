@@ -0,0 +1,91 @@
+package com.cooper.wheellog.utils
+
+import com.cooper.wheellog.AppConfig
+import com.cooper.wheellog.WheelLog
+import com.google.common.truth.Truth.assertThat
+import io.mockk.*
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+class AlarmSettingsTest {
+
+    private lateinit var config: AppConfig
+
+    @Before
+    fun setUp() {
+        mockkObject(WheelLog)
+        config = mockkClass(AppConfig::class, relaxed = true)
+        WheelLog.AppConfig = config
+        AlarmSettings.invalidate()
+    }
+
+    @After
+    fun tearDown() {
+        unmockkAll()
+    }
+
+    @Test
+    fun `thresholds are compiled into sample units`() {
+        // Arrange.
+        every { config.alarmFactor1 } returns 80
+        every { config.alarmFactor2 } returns 90
+        every { config.warningPwm } returns 70
+        every { config.warningSpeedPeriod } returns 5
+        every { config.alarmCurrent } returns 35
+        every { config.disablePhoneBeep } returns true
+        every { config.mibandMode } returns MiBandEnum.Alarm
+
+        // Act.
+        val settings = AlarmSettings.current
+
+        // Assert.
+        assertThat(settings.pwmStart).isWithin(1e-9).of(0.8)
+        assertThat(settings.pwmFull).isWithin(1e-9).of(0.9)
+        assertThat(settings.warningPwm).isWithin(1e-9).of(0.7)
+        assertThat(settings.warningPeriod).isEqualTo(5000)
+        assertThat(settings.current).isEqualTo(3500)
+        assertThat(settings.beep).isFalse()
+        assertThat(settings.vibrate).isTrue()
+        assertThat(settings.mibandText).isTrue()
+    }
+
+    @Test
+    fun `snapshot is cached until invalidated`() {
+        // Arrange.
+        every { config.alarmsEnabled } returns false
+        val first = AlarmSettings.current
+        every { config.alarmsEnabled } returns true
+
+        // Act.
+        val cached = AlarmSettings.current
+        AlarmSettings.invalidate()
+        val rebuilt = AlarmSettings.current
+
+        // Assert.
+        assertThat(cached).isSameInstanceAs(first)
+        assertThat(rebuilt.enabled).isTrue()
+        verify(exactly = 2) { config.alarmsEnabled }
+    }
+
+    @Test
+    fun `change while building is not cached`() {
+        // Arrange.
+        var enabled = false
+        every { config.alarmsEnabled } answers {
+            // the preference changes after it was read
+            val value = enabled
+            enabled = true
+            AlarmSettings.invalidate()
+            value
+        }
+
+        // Act.
+        val outdated = AlarmSettings.current
+        val rebuilt = AlarmSettings.current
+
+        // Assert.
+        assertThat(outdated.enabled).isFalse()
+        assertThat(rebuilt.enabled).isTrue()
+    }
+}
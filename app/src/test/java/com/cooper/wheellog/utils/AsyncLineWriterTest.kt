@@ -0,0 +1,97 @@
+package com.cooper.wheellog.utils
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class AsyncLineWriterTest {
+
+    @Test
+    fun `all lines are written on close`() {
+        // Arrange.
+        val output = ByteArrayOutputStream()
+        val writer = AsyncLineWriter(output, flushRows = 1000, flushInterval = 60_000)
+
+        // Act.
+        writer.writeLine("a,b")
+        writer.writeLine("1,2")
+        writer.close()
+
+        // Assert.
+        assertThat(output.toString()).isEqualTo("a,b\r\n1,2\r\n")
+        assertThat(writer.droppedLines).isEqualTo(0)
+    }
+
+    @Test
+    fun `lines are flushed after flushRows`() {
+        // Arrange.
+        val flushed = CountDownLatch(1)
+        val output = object : ByteArrayOutputStream() {
+            override fun flush() {
+                if (size() > 0) {
+                    flushed.countDown()
+                }
+            }
+        }
+        val writer = AsyncLineWriter(output, flushRows = 2, flushInterval = 60_000)
+
+        // Act.
+        writer.writeLine("1")
+        writer.writeLine("2")
+        val result = flushed.await(5, TimeUnit.SECONDS)
+
+        // Assert.
+        assertThat(result).isTrue()
+        assertThat(output.toString()).isEqualTo("1\r\n2\r\n")
+        writer.close()
+    }
+
+    @Test
+    fun `lines are dropped when queue is full`() {
+        // Arrange.
+        val release = CountDownLatch(1)
+        val output = object : OutputStream() {
+            override fun write(b: Int) {}
+            override fun flush() {
+                release.await()
+            }
+        }
+        val writer = AsyncLineWriter(output, flushRows = 1, flushInterval = 60_000, queueCapacity = 2)
+
+        // Act.
+        var accepted = 0
+        for (i in 0 until 10) {
+            if (writer.writeLine("$i")) {
+                accepted++
+            }
+        }
+        release.countDown()
+        writer.close()
+
+        // Assert.
+        assertThat(writer.droppedLines).isEqualTo(10 - accepted)
+        assertThat(writer.droppedLines).isAtLeast(7)
+    }
+
+    @Test
+    fun `lines written after close are counted`() {
+        // Arrange.
+        val output = ByteArrayOutputStream()
+        val writer = AsyncLineWriter(output, flushRows = 1000, flushInterval = 60_000)
+        for (i in 0 until 500) {
+            writer.writeLine("$i")
+        }
+
+        // Act.
+        writer.close()
+        val late = writer.writeLine("late")
+
+        // Assert.
+        assertThat(late).isFalse()
+        assertThat(writer.droppedLines).isEqualTo(1)
+        assertThat(output.toString().lines().filter { it.isNotEmpty() }).hasSize(500)
+    }
+}
@@ -0,0 +1,209 @@
+package com.cooper.wheellog.utils
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.util.TimeZone
+
+class BinaryTripLogTest {
+
+    private lateinit var defaultTimeZone: TimeZone
+    private val columns = BinaryTripLog.columns(true)
+
+    @Before
+    fun setUp() {
+        defaultTimeZone = TimeZone.getDefault()
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"))
+    }
+
+    @After
+    fun tearDown() {
+        TimeZone.setDefault(defaultTimeZone)
+    }
+
+    private fun writeRow(writer: TripLogRowWriter, output: ByteArrayOutputStream, i: Int) {
+        writer.beginRow()
+        writer.time(1638173646123L + i * 200L)
+        writer.text(if (i % 10 == 0) "" else (55.7558 + i / 1000.0).toString())
+        writer.text("37.6173")
+        writer.text("18.0")
+        writer.text("151.0")
+        writer.text("270.0")
+        writer.fixed(i * 1.5, 0)
+        writer.fixed(25.31 + i % 7, 2)
+        writer.fixed(84.12 - i / 100.0, 2)
+        writer.fixed(if (i % 50 == 0) Double.NaN else -0.004 * i, 2)
+        writer.fixed(-3.07, 2)
+        writer.fixed(if (i == 3) -0.0 else 1053.6, 2)
+        writer.fixed(0.0, 2)
+        writer.fixed(45.125, 2)
+        writer.integer(87L - i % 3)
+        writer.integer(1203L + i)
+        writer.integer(2405003L + i)
+        writer.integer(41L)
+        writer.integer(-5L)
+        writer.fixed(-1.005, 2)
+        writer.fixed(0.3, 2)
+        writer.text(if (i < 100) "0" else "Custom")
+        writer.text(if (i % 30 == 0) "Speed cut-off at speed 30.00 " else "")
+        writer.endRow()
+        output.write(writer.buffer, 0, writer.length)
+    }
+
+    private fun log(writer: TripLogRowWriter, rows: Int): ByteArray {
+        val output = ByteArrayOutputStream()
+        writer.header(columns)
+        output.write(writer.buffer, 0, writer.length)
+        for (i in 0 until rows) {
+            writeRow(writer, output, i)
+        }
+        return output.toByteArray()
+    }
+
+    @Test
+    fun `exported csv equals csv log`() {
+        // Arrange.
+        val csv = log(CsvTripLogRowWriter(), 600)
+        val binary = log(BinaryTripLogWriter(), 600)
+        val output = ByteArrayOutputStream()
+
+        // Act.
+        BinaryTripLog.exportCsv(ByteArrayInputStream(binary), output)
+
+        // Assert.
+        assertThat(String(output.toByteArray())).isEqualTo(String(csv))
+        assertThat(binary.size).isLessThan(csv.size / 3)
+    }
+
+    @Test
+    fun `reader returns row values`() {
+        // Arrange.
+        val binary = log(BinaryTripLogWriter(), 2)
+        val reader = TripLogReader.open(ByteArrayInputStream(binary))
+
+        // Act.
+        val first = reader.next()
+        val second = reader.next()
+        val third = reader.next()
+
+        // Assert.
+        assertThat(reader).isInstanceOf(BinaryTripLogReader::class.java)
+        assertThat(first).isTrue()
+        assertThat(second).isTrue()
+        assertThat(third).isFalse()
+        assertThat(reader.hasColumn(LogHeaderEnum.LATITUDE)).isTrue()
+        assertThat(reader.timestamp).isEqualTo(1638173646323L)
+        assertThat(reader.getString(LogHeaderEnum.DATE)).isEqualTo("2021-11-29")
+        assertThat(reader.getString(LogHeaderEnum.TIME)).isEqualTo("08:14:06.323")
+        assertThat(reader.getString(LogHeaderEnum.LATITUDE)).isEqualTo("55.7568")
+        assertThat(reader.getDouble(LogHeaderEnum.SPEED)).isWithin(0.001).of(26.31)
+        assertThat(reader.getString(LogHeaderEnum.PHASE_CURRENT)).isEqualTo("-0.00")
+        assertThat(reader.getInt(LogHeaderEnum.BATTERY_LEVEL)).isEqualTo(86)
+        assertThat(reader.getLong(LogHeaderEnum.TOTALDISTANCE)).isEqualTo(2405004L)
+        assertThat(reader.getString(LogHeaderEnum.MODE)).isEqualTo("0")
+    }
+
+    @Test
+    fun `csv log is detected`() {
+        // Arrange.
+        val csv = log(CsvTripLogRowWriter(), 2)
+        val reader = TripLogReader.open(ByteArrayInputStream(csv))
+
+        // Act.
+        reader.next()
+        reader.next()
+
+        // Assert.
+        assertThat(reader).isInstanceOf(CsvTripLogReader::class.java)
+        assertThat(reader.timestamp).isEqualTo(1638173646323L)
+        assertThat(reader.getDouble(LogHeaderEnum.SPEED)).isWithin(0.001).of(26.31)
+        assertThat(reader.getInt(LogHeaderEnum.BATTERY_LEVEL)).isEqualTo(86)
+    }
+
+    @Test
+    fun `damaged rows are skipped up to the next sync`() {
+        // Arrange.
+        val binary = log(BinaryTripLogWriter(), 600)
+        // damage rows in the first sync block
+        val start = binary.size / 4
+        for (i in start until start + 40) {
+            binary[i] = 0x7F
+        }
+        val reader = BinaryTripLogReader(ByteArrayInputStream(binary))
+        val timestamps = mutableListOf<Long>()
+
+        // Act.
+        while (reader.next()) {
+            timestamps.add(reader.timestamp)
+        }
+
+        // Assert.
+        assertThat(timestamps.size).isAtLeast(600 - BinaryTripLog.SYNC_INTERVAL)
+        assertThat(timestamps.size).isLessThan(600)
+        assertThat(timestamps.last()).isEqualTo(1638173646123L + 599 * 200L)
+    }
+
+    @Test
+    fun `cut off row at the end is ignored`() {
+        // Arrange.
+        val binary = log(BinaryTripLogWriter(), 10)
+        val truncated = binary.copyOf(binary.size - 5)
+        val reader = BinaryTripLogReader(ByteArrayInputStream(truncated))
+        var rows = 0
+
+        // Act.
+        while (reader.next()) {
+            rows++
+        }
+
+        // Assert.
+        assertThat(rows).isEqualTo(9)
+    }
+
+    @Test
+    fun `appended session starts with sync`() {
+        // Arrange.
+        val output = ByteArrayOutputStream()
+        output.write(log(BinaryTripLogWriter(), 5))
+        val writer = BinaryTripLogWriter()
+        writer.start(columns, false)
+        for (i in 5 until 10) {
+            writeRow(writer, output, i)
+        }
+        val exported = ByteArrayOutputStream()
+
+        // Act.
+        BinaryTripLog.exportCsv(ByteArrayInputStream(output.toByteArray()), exported)
+
+        // Assert.
+        assertThat(String(exported.toByteArray())).isEqualTo(String(log(CsvTripLogRowWriter(), 10)))
+    }
+
+    @Test
+    fun `session appended after a cut off row is read`() {
+        // Arrange.
+        val output = ByteArrayOutputStream()
+        val previous = log(BinaryTripLogWriter(), 5)
+        // the app was killed while writing the last row
+        output.write(previous, 0, previous.size - 5)
+        val writer = BinaryTripLogWriter()
+        writer.start(columns, false)
+        for (i in 5 until 10) {
+            writeRow(writer, output, i)
+        }
+        val reader = BinaryTripLogReader(ByteArrayInputStream(output.toByteArray()))
+        val timestamps = mutableListOf<Long>()
+
+        // Act.
+        while (reader.next()) {
+            timestamps.add(reader.timestamp)
+        }
+
+        // Assert.
+        assertThat(timestamps).containsExactlyElementsIn((0 until 10).filter { it != 4 }
+            .map { 1638173646123L + it * 200L }).inOrder()
+    }
+}
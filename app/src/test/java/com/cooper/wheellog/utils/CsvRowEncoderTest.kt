@@ -0,0 +1,133 @@
+package com.cooper.wheellog.utils
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.text.SimpleDateFormat
+import java.util.*
+
+class CsvRowEncoderTest {
+
+    private lateinit var defaultTimeZone: TimeZone
+
+    @Before
+    fun setUp() {
+        defaultTimeZone = TimeZone.getDefault()
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"))
+    }
+
+    @After
+    fun tearDown() {
+        TimeZone.setDefault(defaultTimeZone)
+    }
+
+    private fun CsvRowEncoder.values(vararg values: Any): CsvRowEncoder {
+        for (value in values) {
+            when (value) {
+                is Double -> fixed(value, 2)
+                is Int -> integer(value)
+                is Long -> integer(value)
+                else -> text(value.toString())
+            }
+            comma()
+        }
+        return this
+    }
+
+    @Test
+    fun `rows match golden file`() {
+        // Arrange.
+        val expected = File("src/test/resources/csvRowGolden.csv").readLines()
+        val encoder = CsvRowEncoder()
+        val rows = mutableListOf<String>()
+
+        // Act.
+        encoder.reset().dateTime(1638173646123L).comma()
+            .values(25.31, 84.12, 12.5, -3.07, 1053.6, 0.0, 45.125, 87, 1203, 2405003L, 41, 38, -1.005, 0.3, "0")
+        rows.add(encoder.toString())
+        encoder.reset().dateTime(1638176399999L).comma()
+            .values(0.0, 67.2, -0.004, 0.0, -0.0, 12.345, 100.0, 0, 0, 5L, -5, 0, 0.125, -0.125, "Custom")
+            .text("Speed cut-off at speed 30.00 ")
+        rows.add(encoder.toString())
+        encoder.reset().dateTime(1640995200000L).comma()
+            .text("55.7558,37.6173,18.0,151.0,270.0,").fixed(1234.5, 0).comma()
+            .values(42.195, 100.8, 150.0, 41.67, 4200.0, 78.9, 99.995, 5, 99999, 123456789L, 60, 55, 12.5, -7.25, "2")
+            .text("Tiltback at speed 40.00")
+        rows.add(encoder.toString())
+
+        // Assert.
+        assertThat(rows).containsExactlyElementsIn(expected).inOrder()
+    }
+
+    @Test
+    fun `raw data row matches previous format`() {
+        // Arrange.
+        val encoder = CsvRowEncoder()
+        val data = byteArrayOf(0x55, 0xAA.toByte(), 0x0A, 0x0B, 0x00, 0xFF.toByte())
+
+        // Act.
+        encoder.reset().time(1638173646123L).comma().hex(data)
+
+        // Assert.
+        assertThat(encoder.toString()).isEqualTo("08:14:06.123,55aa0a0b00ff")
+    }
+
+    @Test
+    fun `fixed matches String format`() {
+        // Arrange.
+        val random = Random(1)
+        val encoder = CsvRowEncoder()
+
+        for (i in 0 until 100000) {
+            val value = when (i % 3) {
+                0 -> (random.nextInt(2000000) - 1000000) / 100.0
+                1 -> (random.nextInt(200000) - 100000) / 1000.0
+                else -> random.nextGaussian() * 1000
+            }
+            for (decimals in 0..3) {
+                // Act.
+                encoder.reset().fixed(value, decimals)
+
+                // Assert.
+                assertThat(encoder.toString()).isEqualTo(String.format(Locale.US, "%.${decimals}f", value))
+            }
+        }
+    }
+
+    @Test
+    fun `date matches SimpleDateFormat across DST changes`() {
+        // Arrange.
+        TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"))
+        val sdf = SimpleDateFormat("yyyy-MM-dd,HH:mm:ss.SSS", Locale.US)
+        val encoder = CsvRowEncoder()
+        val random = Random(2)
+
+        // nights of the spring and autumn DST changes in 2022
+        for (start in longArrayOf(1648335600000L, 1667080800000L)) {
+            var timestamp = start
+            while (timestamp < start + 86400000L) {
+                // Act.
+                encoder.reset().dateTime(timestamp)
+
+                // Assert.
+                assertThat(encoder.toString()).isEqualTo(sdf.format(timestamp))
+                timestamp += random.nextInt(120000)
+            }
+        }
+    }
+
+    @Test
+    fun `buffer grows for long rows`() {
+        // Arrange.
+        val encoder = CsvRowEncoder(4)
+        val text = "x".repeat(100)
+
+        // Act.
+        encoder.reset().text(text).comma().integer(Long.MIN_VALUE)
+
+        // Assert.
+        assertThat(encoder.toString()).isEqualTo("$text,${Long.MIN_VALUE}")
+    }
+}
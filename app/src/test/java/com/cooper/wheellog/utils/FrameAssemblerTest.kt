@@ -0,0 +1,41 @@
+package com.cooper.wheellog.utils
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+
+class FrameAssemblerTest {
+
+    @Test
+    fun `reset reuses backing array`() {
+        // Arrange.
+        val assembler = FrameAssembler(4)
+        assembler.write(0x55)
+        assembler.write(0xAA)
+        val array = assembler.array
+
+        // Act.
+        assembler.reset()
+        assembler.write(0x01)
+
+        // Assert.
+        assertThat(assembler.array).isSameInstanceAs(array)
+        assertThat(assembler.size).isEqualTo(1)
+        assertThat(assembler.toByteArray()).isEqualTo(byteArrayOf(0x01))
+    }
+
+    @Test
+    fun `write fails when full`() {
+        // Arrange.
+        val assembler = FrameAssembler(2)
+        assembler.write(1)
+        assembler.write(2)
+
+        // Act.
+        val result = assembler.write(3)
+
+        // Assert.
+        assertThat(result).isFalse()
+        assertThat(assembler.size).isEqualTo(2)
+        assertThat(assembler[1]).isEqualTo(2.toByte())
+    }
+}
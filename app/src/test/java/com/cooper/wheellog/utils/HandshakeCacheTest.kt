@@ -0,0 +1,131 @@
+package com.cooper.wheellog.utils
+
+import com.cooper.wheellog.AppConfig
+import com.cooper.wheellog.WheelLog
+import com.google.common.truth.Truth.assertThat
+import io.mockk.*
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+class HandshakeCacheTest {
+    private val serial = 0x10
+    private val firmware = 0x1a
+    private val settings = 0xc6
+    private val cache = HandshakeCache("ninebot_z", intArrayOf(serial, firmware), intArrayOf(serial, firmware, settings))
+
+    @Before
+    fun setUp() {
+        mockkObject(WheelLog)
+        WheelLog.AppConfig = mockkClass(AppConfig::class, relaxed = true)
+    }
+
+    @After
+    fun tearDown() {
+        unmockkAll()
+    }
+
+    /** Live data requests until the cache asks for a handshake request. */
+    private fun nextRefresh(): Int {
+        repeat(HandshakeCache.REFRESH_EVERY - 1) {
+            assertThat(cache.nextRefresh()).isEqualTo(HandshakeCache.NONE)
+        }
+        return cache.nextRefresh()
+    }
+
+    @Test
+    fun `replies are kept until the next connection`() {
+        // Arrange.
+        cache.put(serial, "N2GWX1234C5678".toByteArray())
+        cache.put(firmware, byteArrayOf(0x08, 0x14))
+        cache.put(settings, byteArrayOf(-1, 0))
+
+        // Act.
+        val entry = cache.encode()
+        val other = HandshakeCache("ninebot_z", intArrayOf(serial, firmware), intArrayOf())
+        val resumed = other.load(entry)
+
+        // Assert.
+        assertThat(entry).isEqualTo("ninebot_z;10:4e32475758313233344335363738;1a:0814;c6:ff00")
+        assertThat(resumed).isTrue()
+        assertThat(other.isRefreshing).isTrue()
+        assertThat(String(other[serial]!!)).isEqualTo("N2GWX1234C5678")
+        assertThat(other[settings]).isEqualTo(byteArrayOf(-1, 0))
+    }
+
+    @Test
+    fun `incomplete or foreign entries start the full handshake`() {
+        // Assert.
+        assertThat(cache.load("ninebot_z;10:4e32")).isFalse()
+        assertThat(cache.load("inmotion_v2;10:4e32;1a:0814")).isFalse()
+        assertThat(cache.load("ninebot_z;10:4e32;1a:08x4")).isFalse()
+        assertThat(cache.load("")).isFalse()
+        assertThat(cache.isRefreshing).isFalse()
+        assertThat(cache.nextRefresh()).isEqualTo(HandshakeCache.NONE)
+    }
+
+    @Test
+    fun `handshake is read again between live requests`() {
+        // Arrange.
+        cache.load("ninebot_z;10:4e32;1a:0814")
+
+        // Act.
+        val first = nextRefresh()
+        cache.put(serial, byteArrayOf(0x4e, 0x32))
+        val second = nextRefresh()
+        cache.put(firmware, byteArrayOf(0x08, 0x15))
+        val third = nextRefresh()
+        cache.put(settings, byteArrayOf(1))
+        val done = nextRefresh()
+
+        // Assert.
+        assertThat(listOf(first, second, third)).containsExactly(serial, firmware, settings).inOrder()
+        assertThat(done).isEqualTo(HandshakeCache.NONE)
+        assertThat(cache.isRefreshing).isFalse()
+        verify { WheelLog.AppConfig.handshakeForWheel = "ninebot_z;10:4e32;1a:0815;c6:01" }
+    }
+
+    @Test
+    fun `unanswered refresh is given up`() {
+        // Arrange.
+        cache.load("ninebot_z;10:4e32;1a:0814;c6:01")
+        cache.put(serial, byteArrayOf(0x4e, 0x32))
+        cache.put(firmware, byteArrayOf(0x08, 0x14))
+
+        // Act.
+        val requests = ArrayList<Int>()
+        while (cache.isRefreshing) {
+            val type = cache.nextRefresh()
+            if (type != HandshakeCache.NONE) {
+                requests.add(type)
+            }
+        }
+
+        // Assert.
+        assertThat(requests).hasSize(3 * HandshakeCache.REFRESH_TRIES)
+        assertThat(requests.toSet()).containsExactly(settings)
+        verify(exactly = 0) { WheelLog.AppConfig.handshakeForWheel = any() }
+    }
+
+    @Test
+    fun `unanswered live data drops the cache`() {
+        // Arrange.
+        val poller = AdaptivePoller("test", 5, 0xb0)
+        cache.load("ninebot_z;10:4e32;1a:0814")
+
+        // Act.
+        val failed = ArrayList<Boolean>()
+        for (i in 0 until HandshakeCache.RESUME_ATTEMPTS) {
+            failed.add(cache.resumeFailed(poller.stats(0xb0)))
+            poller.sent(0xb0, i * 125L)
+        }
+        failed.add(cache.resumeFailed(poller.stats(0xb0)))
+        cache.forget()
+
+        // Assert.
+        assertThat(failed.dropLast(1)).doesNotContain(true)
+        assertThat(failed.last()).isTrue()
+        assertThat(cache.isRefreshing).isFalse()
+        verify { WheelLog.AppConfig.handshakeForWheel = "" }
+    }
+}
@@ -4,6 +4,7 @@ import android.content.Context
 import com.cooper.wheellog.AppConfig
 import com.cooper.wheellog.WheelData
 import com.cooper.wheellog.WheelLog
+import com.cooper.wheellog.WriteQueue
 import com.cooper.wheellog.utils.Utils.Companion.hexToByteArray
 import com.google.common.truth.Truth.assertThat
 import io.mockk.*
@@ -587,14 +588,15 @@ class InmotionAdapterTest {
     fun `wheel beep command`() {
         // Arrange.
         val expected = "aaaa1601a5550fb200000011000000080500004b5555".hexToByteArray()
+        val actual = slot<ByteArray>()
+        every { data.bluetoothCmd(capture(actual), WriteQueue.Priority.SAFETY) } returns true
 
         // Act.
         adapter.wheelBeep()
-        val actual = adapter.settingCommand
 
         // Assert.
-        assertThat(adapter.settingCommandReady).isEqualTo(true)
-        assertThat(actual).isEqualTo(expected)
+        assertThat(adapter.settingCommandReady).isEqualTo(false)
+        assertThat(actual.captured).isEqualTo(expected)
     }
 
     @Test
@@ -0,0 +1,196 @@
+package com.cooper.wheellog.utils
+
+import android.content.Context
+import com.cooper.wheellog.AppConfig
+import com.cooper.wheellog.R
+import com.cooper.wheellog.ReplayEngine
+import com.cooper.wheellog.WheelData
+import com.cooper.wheellog.WheelLog
+import com.cooper.wheellog.simulator.GotwayEncoder
+import com.cooper.wheellog.simulator.RideProfile
+import com.cooper.wheellog.simulator.SimulatedLink
+import com.cooper.wheellog.telemetry.DecodeSettings
+import com.cooper.wheellog.telemetry.PipelineClock
+import com.cooper.wheellog.telemetry.TelemetryBus
+import com.cooper.wheellog.telemetry.TelemetryListener
+import com.cooper.wheellog.telemetry.TelemetrySample
+import com.google.common.truth.Truth.assertThat
+import io.mockk.*
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+class PwmPredictorTest {
+    private val predictor = PwmPredictor()
+    private val horizon = 1000L
+    private val samples = ArrayList<TelemetrySample>()
+    private val listener = TelemetryListener { samples.add(it) }
+    private lateinit var data: WheelData
+    private var now = 0L
+
+    @Before
+    fun setUp() {
+        mockkObject(WheelLog)
+        val context = mockkClass(Context::class, relaxed = true)
+        every { WheelLog.appContext } returns context
+        val config = mockkClass(AppConfig::class, relaxed = true)
+        // PWM reported by the wheel
+        every { config.hwPwm } returns true
+        WheelLog.AppConfig = config
+        DecodeSettings.invalidate()
+        AlarmSettings.invalidate()
+        mockkStatic(WheelData::class)
+        every { WheelData.getInstance() } answers { data }
+        mockkConstructor(android.os.Handler::class)
+        every { anyConstructed<android.os.Handler>().postDelayed(any(), any()) } returns true
+        TelemetryBus.subscribe(listener)
+    }
+
+    @After
+    fun tearDown() {
+        TelemetryBus.unsubscribe(listener)
+        PipelineClock.source = PipelineClock.SYSTEM
+        unmockkAll()
+    }
+
+    /** Replays a ride of the simulator on a Gotway and returns its samples. */
+    private fun ride(profile: RideProfile): List<TelemetrySample> {
+        data = spyk(WheelData())
+        val adapter = spyk(GotwayAdapter())
+        every { adapter.isReady } returns false
+        every { data.adapter } returns adapter
+        data.wheelType = Constants.WHEEL_TYPE.GOTWAY
+        val link = SimulatedLink(GotwayEncoder(), profile).apply { startTime = 1638173646123L }
+        ReplayEngine(WheelLog.appContext!!).apply { speed = 0.0 }.replay(link)
+        return samples
+    }
+
+    private fun add(sample: TelemetrySample) {
+        predictor.add(sample.timestamp, sample.calculatedPwm / 100, sample.speedDouble,
+            sample.currentDouble, sample.voltageDouble)
+    }
+
+    @Test
+    fun `linear trend is extrapolated`() {
+        // Act.
+        for (i in 0..10) {
+            val seconds = i * 0.05
+            predictor.add(1000L + i * 50, 0.5 + 0.1 * seconds, 30.0 + 2 * seconds, 10.0, 80.0 - seconds)
+        }
+
+        // Assert.
+        assertThat(predictor.size).isEqualTo(11)
+        assertThat(predictor.pwm).isWithin(1e-9).of(0.55)
+        assertThat(predictor.pwmSlope).isWithin(1e-9).of(0.1)
+        assertThat(predictor.speedSlope).isWithin(1e-9).of(2.0)
+        assertThat(predictor.currentSlope).isWithin(1e-9).of(0.0)
+        assertThat(predictor.voltageSlope).isWithin(1e-9).of(-1.0)
+        assertThat(predictor.predict(horizon)).isWithin(1e-9).of(0.65)
+        assertThat(predictor.willCross(0.64, horizon)).isTrue()
+        assertThat(predictor.willCross(0.66, horizon)).isFalse()
+    }
+
+    @Test
+    fun `frames older than the window are dropped`() {
+        // Act.
+        for (i in 0..40) {
+            predictor.add(1000L + i * 50, 0.3, 20.0, 5.0, 80.0)
+        }
+        val window = predictor.size
+        predictor.add(1000L + 41 * 50 + PwmPredictor.WINDOW + 1, 0.3, 20.0, 5.0, 80.0)
+
+        // Assert.
+        assertThat(window).isEqualTo((PwmPredictor.WINDOW / 50 + 1).toInt())
+        assertThat(predictor.size).isEqualTo(1)
+        assertThat(predictor.willCross(0.0, horizon)).isFalse()
+    }
+
+    @Test
+    fun `falling pwm doesn't warn`() {
+        // Act.
+        for (i in 0..10) {
+            predictor.add(1000L + i * 50, 0.79 - 0.01 * i, 30.0, 10.0, 80.0)
+        }
+
+        // Assert.
+        assertThat(predictor.willCross(0.8, horizon)).isFalse()
+    }
+
+    @Test
+    fun `simulated acceleration warns ahead of the alarm`() {
+        // Arrange.
+        val ride = ride(RideProfile().hold(2_000).ramp(6_000, 45.0).hold(3_000))
+        val threshold = ride.maxOf { it.calculatedPwm } / 100 * 0.8
+        val crossing = ride.first { it.calculatedPwm / 100 >= threshold }.timestamp
+
+        // Act.
+        var warning = 0L
+        for (sample in ride) {
+            add(sample)
+            if (warning == 0L && predictor.willCross(threshold, horizon)) {
+                warning = sample.timestamp
+            }
+        }
+
+        // Assert.
+        assertThat(threshold).isGreaterThan(0.5)
+        assertThat(warning).isGreaterThan(ride.first().timestamp + 2_000)
+        assertThat(warning).isLessThan(crossing)
+        assertThat(crossing - warning).isAtMost(horizon + 250)
+    }
+
+    @Test
+    fun `simulated cruise below the alarm doesn't warn`() {
+        // Arrange.
+        val ride = ride(RideProfile().ramp(4_000, 35.0).hold(10_000))
+        val threshold = ride.maxOf { it.calculatedPwm } / 100 * 1.05
+        val cruise = ride.first().timestamp + 4_000 + PwmPredictor.WINDOW
+
+        // Act.
+        val warnings = ride.count {
+            add(it)
+            it.timestamp > cruise && predictor.willCross(threshold, horizon)
+        }
+
+        // Assert.
+        assertThat(warnings).isEqualTo(0)
+    }
+
+    @Test
+    fun `predicted warning is repeated once per period`() {
+        // Arrange.
+        data = spyk(WheelData())
+        val context = WheelLog.appContext!!
+        val config = WheelLog.AppConfig
+        every { config.alteredAlarms } returns true
+        every { config.alarmFactor1 } returns 80
+        every { config.alarmFactor2 } returns 90
+        every { config.pwmPredictionHorizon } returns 3000
+        mockkObject(AlarmOutput)
+        every { AlarmOutput.play(any(), any(), any()) } just Runs
+        PipelineClock.source = PipelineClock.Source { now }
+        // Alarms keeps its trend and last warning between tests, start after anything they saw
+        val start = System.currentTimeMillis() + 3_600_000
+
+        // Act.
+        // PWM rises from 65% to 79.75% in 3 s, below the alarm but reaching it within the horizon
+        val executed = (0 until 60).map { i ->
+            now = start + i * 50L
+            val seconds = i * 0.05
+            val sample = TelemetrySample.EMPTY.copy(
+                timestamp = now,
+                speed = (2000 + 200 * seconds).toInt(),
+                voltage = 8400,
+                current = 1000,
+                calculatedPwm = 65.0 + 5 * seconds
+            )
+            Alarms.checkAlarm(sample, context)
+        }
+
+        // Assert.
+        assertThat(executed).doesNotContain(true)
+        // the 3rd frame gives a trend, then once a second
+        verify(exactly = 3) { AlarmOutput.play(context, R.raw.warning_pwm, any()) }
+        verify(exactly = 3) { AlarmOutput.play(any(), any(), any()) }
+    }
+}
@@ -0,0 +1,144 @@
+package com.cooper.wheellog.utils
+
+import java.io.*
+import java.util.*
+
+/**
+ * Reads notifications of a [RawCapture] file, a record cut off at the end of the file is ignored.
+ */
+class RawCaptureReader(input: InputStream) : ReplaySource {
+    private val stream = if (input is BufferedInputStream) input else BufferedInputStream(input)
+    private val characteristics = HashMap<Int, UUID>()
+    private val wallStart: Long
+    private val monotonicStart: Long
+    private var monotonic: Long
+
+    override val timestamp: Long
+        get() = wallStart + (monotonic - monotonicStart)
+
+    /** SystemClock.elapsedRealtime() of the current frame */
+    val monotonicTime: Long
+        get() = monotonic
+
+    override var characteristic: UUID? = null
+        private set
+
+    override var data = ByteArray(0)
+        private set
+
+    init {
+        val magic = ByteArray(RawCapture.MAGIC.size)
+        if (readFully(magic) != magic.size || !magic.contentEquals(RawCapture.MAGIC)) {
+            throw IOException("Not a raw capture")
+        }
+        val version = stream.read()
+        if (version != RawCapture.VERSION) {
+            throw IOException("Unsupported raw capture version $version")
+        }
+        wallStart = varint()
+        monotonicStart = varint()
+        monotonic = monotonicStart
+    }
+
+    override fun next(): Boolean {
+        try {
+            while (true) {
+                when (val tag = stream.read()) {
+                    -1 -> return false
+                    RawCapture.CHARACTERISTIC -> {
+                        val id = readByte()
+                        characteristics[id] = UUID(long(), long())
+                    }
+                    RawCapture.FRAME -> {
+                        val zigzag = varint()
+                        val id = readByte()
+                        val length = varint().toInt()
+                        if (length < 0 || length > MAX_FRAME_LENGTH) {
+                            throw IOException("Bad frame length $length")
+                        }
+                        val frame = ByteArray(length)
+                        if (readFully(frame) != length) {
+                            return false
+                        }
+                        monotonic += (zigzag ushr 1) xor -(zigzag and 1)
+                        characteristic = characteristics[id]
+                        data = frame
+                        return true
+                    }
+                    else -> throw IOException("Unexpected tag $tag")
+                }
+            }
+        } catch (e: EOFException) {
+            return false
+        }
+    }
+
+    override fun close() {
+        stream.close()
+    }
+
+    private fun long(): Long {
+        var result = 0L
+        for (i in 0 until 8) {
+            result = (result shl 8) or readByte().toLong()
+        }
+        return result
+    }
+
+    private fun varint(): Long {
+        var result = 0L
+        var shift = 0
+        while (shift < 64) {
+            val b = readByte()
+            result = result or ((b and 0x7F).toLong() shl shift)
+            if (b and 0x80 == 0) {
+                return result
+            }
+            shift += 7
+        }
+        throw IOException("Malformed varint")
+    }
+
+    private fun readByte(): Int {
+        val b = stream.read()
+        if (b == -1) {
+            throw EOFException()
+        }
+        return b
+    }
+
+    private fun readFully(target: ByteArray): Int {
+        var total = 0
+        while (total < target.size) {
+            val read = stream.read(target, total, target.size - total)
+            if (read == -1) {
+                break
+            }
+            total += read
+        }
+        return total
+    }
+
+    companion object {
+        private const val MAX_FRAME_LENGTH = 64 * 1024
+
+        /**
+         * Streams [input] as a RAW CSV log, "HH:mm:ss.SSS,hex" per notification,
+         * the same format the CSV raw log used.
+         */
+        @JvmStatic
+        fun exportCsv(input: InputStream, output: OutputStream) {
+            val reader = RawCaptureReader(input)
+            val encoder = CsvRowEncoder()
+            while (reader.next()) {
+                encoder.reset()
+                    .time(reader.timestamp)
+                    .comma()
+                    .hex(reader.data)
+                    .text("\r\n")
+                output.write(encoder.buffer, 0, encoder.length)
+            }
+            output.flush()
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.cooper.wheellog.utils
+
+import com.cooper.wheellog.utils.Utils.Companion.hexToByteArray
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.text.SimpleDateFormat
+import java.util.*
+
+class RawCaptureTest {
+
+    private lateinit var defaultTimeZone: TimeZone
+    private val wallStart = 1638173646123L
+    private val monotonicStart = 5_000_000L
+
+    @Before
+    fun setUp() {
+        defaultTimeZone = TimeZone.getDefault()
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"))
+    }
+
+    @After
+    fun tearDown() {
+        TimeZone.setDefault(defaultTimeZone)
+    }
+
+    @Test
+    fun `converted capture equals csv fixture`() {
+        // Arrange.
+        val lines = File("src/test/resources/RAW_inmotion_V5F.csv").readLines()
+        val sdf = SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US)
+        val day = SimpleDateFormat("yyyy-MM-dd", Locale.US).format(Date(wallStart))
+        val writer = RawCaptureWriter()
+        val capture = ByteArrayOutputStream()
+        writer.header(wallStart, monotonicStart)
+        capture.write(writer.buffer, 0, writer.length)
+        for (line in lines) {
+            val row = line.split(',')
+            val time = sdf.parse(day + " " + row[0])!!.time
+            val data = row[1].hexToByteArray()
+            writer.frame(monotonicStart + time - wallStart, Constants.INMOTION_READ_CHARACTER_UUID, data, data.size)
+            capture.write(writer.buffer, 0, writer.length)
+        }
+        val csv = ByteArrayOutputStream()
+
+        // Act.
+        RawCaptureReader.exportCsv(ByteArrayInputStream(capture.toByteArray()), csv)
+
+        // Assert.
+        assertThat(String(csv.toByteArray()).lines().dropLast(1)).isEqualTo(lines)
+        assertThat(capture.size()).isLessThan(File("src/test/resources/RAW_inmotion_V5F.csv").length().toInt() / 2)
+    }
+
+    @Test
+    fun `frames keep time and characteristic`() {
+        // Arrange.
+        val writer = RawCaptureWriter()
+        val capture = ByteArrayOutputStream()
+        val frame = byteArrayOf(0x55, 0xAA.toByte(), 0x01, 0x02, 0x03)
+        writer.header(wallStart, monotonicStart)
+        capture.write(writer.buffer, 0, writer.length)
+        // the first frame arrived before the capture was started
+        writer.frame(monotonicStart - 5, Constants.KINGSONG_READ_CHARACTER_UUID, frame, 3)
+        capture.write(writer.buffer, 0, writer.length)
+        writer.frame(monotonicStart + 20, null, frame, 5)
+        capture.write(writer.buffer, 0, writer.length)
+        writer.frame(monotonicStart + 40, Constants.KINGSONG_READ_CHARACTER_UUID, frame, 5)
+        capture.write(writer.buffer, 0, writer.length)
+        // cut off the last frame
+        val bytes = capture.toByteArray().copyOf(capture.size() - 2)
+        val reader = RawCaptureReader(ByteArrayInputStream(bytes))
+
+        // Act.
+        val first = reader.next()
+        val firstTime = reader.timestamp
+        val firstCharacteristic = reader.characteristic
+        val firstData = reader.data
+        val second = reader.next()
+        val secondCharacteristic = reader.characteristic
+        val third = reader.next()
+
+        // Assert.
+        assertThat(first).isTrue()
+        assertThat(firstTime).isEqualTo(wallStart - 5)
+        assertThat(firstCharacteristic).isEqualTo(Constants.KINGSONG_READ_CHARACTER_UUID)
+        assertThat(firstData).isEqualTo(frame.copyOf(3))
+        assertThat(second).isTrue()
+        assertThat(reader.monotonicTime).isEqualTo(monotonicStart + 20)
+        assertThat(secondCharacteristic).isNull()
+        assertThat(third).isFalse()
+    }
+}
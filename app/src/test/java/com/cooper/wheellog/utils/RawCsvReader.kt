@@ -0,0 +1,111 @@
+package com.cooper.wheellog.utils
+
+import java.io.BufferedReader
+import java.io.InputStream
+import java.io.InputStreamReader
+import java.util.*
+
+/**
+ * Reads a RAW CSV log, "HH:mm:ss.SSS,hex" per notification. The file has no dates,
+ * so times are placed on the local day of [day] (ms) and continue on the next day after midnight.
+ * Lines that can't be parsed are skipped.
+ */
+class RawCsvReader(input: InputStream, day: Long) : ReplaySource {
+    private val reader = BufferedReader(InputStreamReader(input))
+    private val dayStart: Long
+    private var dayOffset = 0L
+    private var previousTimeOfDay = -1L
+
+    override var timestamp = 0L
+        private set
+
+    override val characteristic: UUID? = null
+
+    override var data = ByteArray(0)
+        private set
+
+    init {
+        val calendar = Calendar.getInstance()
+        calendar.timeInMillis = day
+        calendar.set(Calendar.HOUR_OF_DAY, 0)
+        calendar.set(Calendar.MINUTE, 0)
+        calendar.set(Calendar.SECOND, 0)
+        calendar.set(Calendar.MILLISECOND, 0)
+        dayStart = calendar.timeInMillis
+    }
+
+    override fun next(): Boolean {
+        while (true) {
+            val line = reader.readLine() ?: return false
+            val comma = line.indexOf(',')
+            if (comma == -1) {
+                continue
+            }
+            val timeOfDay = parseTime(line, comma)
+            val bytes = parseHex(line, comma + 1)
+            if (timeOfDay < 0 || bytes == null) {
+                continue
+            }
+            if (previousTimeOfDay - timeOfDay > HALF_DAY) {
+                dayOffset += DAY
+            }
+            previousTimeOfDay = timeOfDay
+            timestamp = dayStart + dayOffset + timeOfDay
+            data = bytes
+            return true
+        }
+    }
+
+    override fun close() {
+        reader.close()
+    }
+
+    // HH:mm:ss.SSS
+    private fun parseTime(line: String, end: Int): Long {
+        if (end != 12 || line[2] != ':' || line[5] != ':' || line[8] != '.') {
+            return -1
+        }
+        val hours = number(line, 0, 2)
+        val minutes = number(line, 3, 5)
+        val seconds = number(line, 6, 8)
+        val ms = number(line, 9, 12)
+        if (hours < 0 || minutes < 0 || seconds < 0 || ms < 0) {
+            return -1
+        }
+        return ((hours * 60L + minutes) * 60L + seconds) * 1000L + ms
+    }
+
+    private fun number(line: String, start: Int, end: Int): Int {
+        var result = 0
+        for (i in start until end) {
+            val digit = line[i] - '0'
+            if (digit !in 0..9) {
+                return -1
+            }
+            result = result * 10 + digit
+        }
+        return result
+    }
+
+    private fun parseHex(line: String, start: Int): ByteArray? {
+        val length = line.length - start
+        if (length % 2 != 0) {
+            return null
+        }
+        val result = ByteArray(length / 2)
+        for (i in result.indices) {
+            val high = Character.digit(line[start + i * 2], 16)
+            val low = Character.digit(line[start + i * 2 + 1], 16)
+            if (high == -1 || low == -1) {
+                return null
+            }
+            result[i] = ((high shl 4) or low).toByte()
+        }
+        return result
+    }
+
+    companion object {
+        private const val DAY = 24 * 60 * 60 * 1000L
+        private const val HALF_DAY = DAY / 2
+    }
+}
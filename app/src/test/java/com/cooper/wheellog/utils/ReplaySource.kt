@@ -0,0 +1,22 @@
+package com.cooper.wheellog.utils
+
+import java.io.Closeable
+import java.util.*
+
+/**
+ * Recorded BLE notifications in the order they arrived.
+ */
+interface ReplaySource : Closeable {
+    /**
+     * Moves to the next notification, returns false at the end of the recording.
+     */
+    fun next(): Boolean
+
+    /** Wall clock time of the current notification in ms */
+    val timestamp: Long
+
+    /** null if the recording does not know it */
+    val characteristic: UUID?
+
+    val data: ByteArray
+}
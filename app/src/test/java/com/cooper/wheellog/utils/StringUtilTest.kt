@@ -46,4 +46,16 @@ class StringUtilTest {
         assertThat(mac5Check).isEqualTo(true)
         assertThat(mac6Check).isEqualTo(true)
     }
+
+    @Test
+    fun `toHexString with length`() {
+        // Arrange.
+        val buffer = byteArrayOf(0x55, 0xAA.toByte(), 0x01, 0x02)
+
+        // Act.
+        val hex = StringUtil.toHexString(buffer, 3)
+
+        // Assert.
+        assertThat(hex).isEqualTo("[55aa01]")
+    }
 }
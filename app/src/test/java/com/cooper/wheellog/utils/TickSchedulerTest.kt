@@ -0,0 +1,103 @@
+package com.cooper.wheellog.utils
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class TickSchedulerTest {
+    private val group = "test"
+
+    @After
+    fun tearDown() {
+        TickScheduler.cancel(group)
+    }
+
+    @Test
+    fun `periods are rounded up to the quantum`() {
+        // Act.
+        val task = TickScheduler.schedule("rounded", 1000, 30, group) { }
+
+        // Assert.
+        assertThat(task.period).isEqualTo(50)
+    }
+
+    @Test
+    fun `related periods share wake-ups`() {
+        // Arrange.
+        val before = TickScheduler.stats
+
+        val slowRuns = CountDownLatch(3)
+
+        // Act.
+        val fast = TickScheduler.schedule("fast", 0, 25, group) { }
+        val slow = TickScheduler.schedule("slow", 0, 100, group) { slowRuns.countDown() }
+        val ran = slowRuns.await(5, TimeUnit.SECONDS)
+        TickScheduler.cancel(group)
+
+        // Assert.
+        val after = TickScheduler.stats
+        val wakeUps = after.wakeUps - before.wakeUps
+        assertThat(ran).isTrue()
+        assertThat(slow.runs).isAtLeast(3)
+        assertThat(fast.runs).isGreaterThan(slow.runs)
+        // the slow task always runs on a wake-up of the fast one
+        assertThat(wakeUps).isLessThan(fast.runs + slow.runs)
+    }
+
+    @Test
+    fun `cancelled task does not run again`() {
+        // Arrange.
+        lateinit var task: TickScheduler.Task
+        val scheduled = CountDownLatch(1)
+        val ticks = CountDownLatch(5)
+
+        // Act.
+        // cancelled from its own run, so no run is in progress afterwards
+        task = TickScheduler.schedule("cancelled", 0, 25, group) {
+            scheduled.await()
+            task.cancel()
+        }
+        scheduled.countDown()
+        TickScheduler.schedule("ticking", 0, 25, group) { ticks.countDown() }
+        val ticked = ticks.await(5, TimeUnit.SECONDS)
+
+        // Assert.
+        assertThat(ticked).isTrue()
+        assertThat(task.isCancelled).isTrue()
+        assertThat(task.runs).isEqualTo(1)
+    }
+
+    @Test
+    fun `group is cancelled together`() {
+        // Arrange.
+        val first = TickScheduler.schedule("first", 0, 25, group) { }
+        val second = TickScheduler.schedule("second", 0, 1000, group) { }
+        val other = TickScheduler.schedule("other", 0, 1000, "other") { }
+
+        // Act.
+        TickScheduler.cancel(group)
+
+        // Assert.
+        assertThat(first.isCancelled).isTrue()
+        assertThat(second.isCancelled).isTrue()
+        assertThat(other.isCancelled).isFalse()
+        other.cancel()
+    }
+
+    @Test
+    fun `failing task keeps running`() {
+        // Arrange.
+        val ran = CountDownLatch(3)
+
+        // Act.
+        TickScheduler.schedule("failing", 0, 25, group) {
+            ran.countDown()
+            throw IllegalStateException("test")
+        }
+
+        // Assert.
+        assertThat(ran.await(1, TimeUnit.SECONDS)).isTrue()
+    }
+}
@@ -114,6 +114,26 @@ class VeteranAdapterTest {
         assertThat(data.version).isEqualTo("000.0.00")
     }
 
+    @Test
+    fun `short frame sets only the fields it carries`() {
+        // Arrange.
+        val version = data.version
+        val short = "DC5A5C12238A0112121A00004D450005064611F20E10".hexToByteArray()
+        val cut = "DC5A5C08238A0112121A0000".hexToByteArray()
+
+        // Act.
+        val result = adapter.decode(short)
+        val cutResult = adapter.decode(cut)
+
+        // Assert.
+        assertThat(result).isTrue()
+        assertThat(data.voltageDouble).isEqualTo(90.98)
+        assertThat(data.temperature).isEqualTo(45)
+        assertThat(data.version).isEqualTo(version)
+        assertThat(adapter.ver).isEqualTo(0)
+        assertThat(cutResult).isFalse()
+    }
+
     @Test
     fun `decode veteran new board data`() {
         // Arrange.
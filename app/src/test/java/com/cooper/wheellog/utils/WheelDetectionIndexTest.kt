@@ -0,0 +1,95 @@
+package com.cooper.wheellog.utils
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.util.UUID
+
+class WheelDetectionIndexTest {
+    private lateinit var index: WheelDetectionIndex
+
+    private val gotwayServices = listOf(
+        uuid("0000180a") to listOf(
+            uuid("00002a23"), uuid("00002a24"), uuid("00002a25"), uuid("00002a26"), uuid("00002a27"),
+            uuid("00002a28"), uuid("00002a29"), uuid("00002a2a"), uuid("00002a50")
+        ),
+        uuid("0000ffe0") to listOf(uuid("0000ffe1")),
+        uuid("00001801") to listOf(uuid("00002a05")),
+        uuid("00001800") to listOf(uuid("00002a04"), uuid("00002a03"), uuid("00002a02"), uuid("00002a01"), uuid("00002a00"))
+    )
+
+    private fun uuid(short: String): UUID {
+        return UUID.fromString("$short-0000-1000-8000-00805f9b34fb")
+    }
+
+    @Before
+    fun setUp() {
+        index = WheelDetectionIndex()
+        index.add(File("src/main/res/raw/bluetooth_services.json").readText())
+        index.add(File("src/main/res/raw/bluetooth_proxy_services.json").readText())
+    }
+
+    @Test
+    fun `tables are compiled by signature`() {
+        // Assert.
+        assertThat(index.size).isEqualTo(16)
+    }
+
+    @Test
+    fun `wheel is found in any order of services and characteristics`() {
+        // Act.
+        val adapter = index.find(WheelDetectionIndex.signatureOf(gotwayServices))
+
+        // Assert.
+        assertThat(adapter).isEqualTo("gotway")
+    }
+
+    @Test
+    fun `extra characteristic does not match`() {
+        // Arrange.
+        val services = gotwayServices.toMutableList()
+        services[1] = uuid("0000ffe0") to listOf(uuid("0000ffe1"), uuid("0000ffe2"))
+
+        // Act.
+        val adapter = index.find(WheelDetectionIndex.signatureOf(services))
+
+        // Assert.
+        assertThat(adapter).isNull()
+    }
+
+    @Test
+    fun `missing service does not match`() {
+        // Act.
+        val adapter = index.find(WheelDetectionIndex.signatureOf(gotwayServices.dropLast(1)))
+
+        // Assert.
+        assertThat(adapter).isNull()
+    }
+
+    @Test
+    fun `cached adapter is used while the services are unchanged`() {
+        // Arrange.
+        val signature = WheelDetectionIndex.signatureOf(gotwayServices)
+        val entry = WheelDetectionIndex.cacheEntry("gotway", signature)
+
+        // Act.
+        val cached = WheelDetectionIndex.cachedAdapter(entry, signature)
+        val changed = WheelDetectionIndex.cachedAdapter(entry, WheelDetectionIndex.signatureOf(gotwayServices.drop(1)))
+
+        // Assert.
+        assertThat(cached).isEqualTo("gotway")
+        assertThat(changed).isNull()
+        assertThat(WheelDetectionIndex.cachedAdapter("", signature)).isNull()
+    }
+
+    @Test
+    fun `invalid table is skipped`() {
+        // Act.
+        index.add("[{\"adapter\": \"gotway\", \"not a uuid\": []}]")
+        index.add("{")
+
+        // Assert.
+        assertThat(index.size).isEqualTo(16)
+    }
+}